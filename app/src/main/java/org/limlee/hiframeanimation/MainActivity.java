@@ -6,16 +6,11 @@ import android.support.v7.app.AppCompatActivity;
 import android.util.Log;
 
 import org.limlee.hiframeanimationlib.FrameAnimationView;
-import org.limlee.hiframeanimationlib.FrameDrawable;
+import org.limlee.hiframecore.FrameManifest;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.io.InputStreamReader;
+import java.io.Reader;
 
 public class MainActivity extends AppCompatActivity {
     private static final String TAG = MainActivity.class.getSimpleName();
@@ -33,45 +28,21 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onPostCreate(@Nullable Bundle savedInstanceState) {
         super.onPostCreate(savedInstanceState);
-        List<String> frameList = null;
+        //描述文件中有帧数、路径模板和时长，不用列出目录再按序列号排序
+        FrameManifest manifest = null;
         try {
-            final String[] frames = getAssets().list(FRAME_NAME);
-            if (null != frames) {
-                frameList = Arrays.asList(frames);
+            final Reader reader = new InputStreamReader(getAssets().open(FRAME_NAME + FrameManifest.FILE_EXTENSION), "UTF-8");
+            try {
+                manifest = FrameManifest.parse(reader);
+            } finally {
+                reader.close();
             }
         } catch (IOException e) {
             e.printStackTrace();
         }
-        //按帧图片的序列号排序
-        if (null != frameList) {
-            Collections.sort(frameList, new Comparator<String>() {
-
-                private final String MATCH_FRAME_NUM = String.format("(?<=%s_).*(?=.png)", FRAME_NAME);
-                private final Pattern p = Pattern.compile(MATCH_FRAME_NUM);
-
-                @Override
-                public int compare(String lhs, String rhs) {
-                    try {
-                        final Matcher lhsMatcher = p.matcher(lhs);
-                        final Matcher rhsMatcher = p.matcher(rhs);
-                        if (lhsMatcher.find()
-                                && rhsMatcher.find()) {
-                            return Integer.valueOf(lhsMatcher.group()) - Integer.valueOf(rhsMatcher.group());
-                        }
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                    return 0;
-                }
-            });
-            //添加序列帧
-            List<FrameDrawable> frameDrawables = new ArrayList<>();
-            for (String framePath : frameList) {
-                FrameDrawable frameDrawable = new FrameDrawable(FRAME_NAME + "/" + framePath, 100);
-                frameDrawables.add(frameDrawable);
-            }
+        if (null != manifest) {
             mFrameAnimationView.setOneShot(false); //循环播放帧动画
-            mFrameAnimationView.addFrameDrawable(frameDrawables); //添加序列帧
+            mFrameAnimationView.setFrameManifest(manifest); //添加序列帧
             mFrameAnimationView.setOnFrameListener(new FrameAnimationView.OnFrameListener() { //添加监听器
                 @Override
                 public void onFrameStart() {
@@ -0,0 +1,174 @@
+package org.limlee.hiframeanimationlib;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+
+import org.limlee.hiframecore.AnimatedImage;
+import org.limlee.hiframecore.FrameStats;
+
+import java.util.List;
+
+/**
+ * 播放单文件动图：每一帧单独解码到复用池中的bitmap上，再按混合方式画到画布上，画完就归还；
+ * 上一帧显示完之后按处置方式清空或者恢复它的区域。内存中只有画布、正在合成的一帧，
+ * 用到“恢复成之前的样子”的动图再多一张保存区域的bitmap。画布按动图的原始尺寸，绘制的时候再缩放
+ */
+final class AnimatedFrameDecoder implements SequentialFrameDecoder {
+    private final AnimatedImageSource mFrameSource;
+    private final AnimatedImage mImage;
+    private final List<FrameDrawable> mFrameDrawables;
+    private final int[] mImageFrames; //每一帧在动图中的序号
+    private final FrameStats mStats;
+    private final Canvas mCanvas = new Canvas();
+    private final Canvas mSaveCanvas = new Canvas();
+    private final Paint mBlendPaint = new Paint();
+    private final Paint mCopyPaint = new Paint();
+    private final Paint mClearPaint = new Paint();
+    private final Rect mFrameRect = new Rect();
+    private final Rect mSavedRect = new Rect();
+
+    private Bitmap mBitmap; //画布，当前帧合成好的样子
+    private Bitmap mSavedBitmap; //画DISPOSE_PREVIOUS的帧之前，这一帧区域的内容
+    private int mBitmapFrame = -1;
+
+    /**
+     * @param frameSource
+     * @param frameDrawables 按名字对应到动图中的帧
+     * @param stats          记录每一帧的解码耗时（包括合成前面的帧），可以为null
+     */
+    AnimatedFrameDecoder(AnimatedImageSource frameSource, List<FrameDrawable> frameDrawables, FrameStats stats) {
+        mFrameSource = frameSource;
+        mImage = frameSource.getImage();
+        mFrameDrawables = frameDrawables;
+        mStats = stats;
+        mImageFrames = new int[frameDrawables.size()];
+        for (int i = 0; i < mImageFrames.length; i++) {
+            final FrameDrawable frameDrawable = frameDrawables.get(i);
+            mImageFrames[i] = null != frameDrawable ? frameSource.indexOf(frameDrawable.getDrawableResPath()) : -1;
+        }
+        mCopyPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+        mClearPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.CLEAR));
+    }
+
+    @Override
+    public boolean[] getKeyFrames() {
+        final boolean[] keyFrames = new boolean[mImageFrames.length];
+        for (int i = 0; i < keyFrames.length; i++) {
+            keyFrames[i] = mImageFrames[i] >= 0 && mImage.isKeyFrame(mImageFrames[i]);
+        }
+        return keyFrames;
+    }
+
+    @Override
+    public Bitmap decode(int frame) {
+        final int imageFrame = mImageFrames[frame];
+        if (imageFrame < 0) {
+            return null;
+        }
+        final long startTime = System.nanoTime();
+        if (null == mBitmap) {
+            mBitmap = Bitmap.createBitmap(mImage.getWidth(), mImage.getHeight(), Bitmap.Config.ARGB_8888);
+            if (null == mBitmap) {
+                return null;
+            }
+            mCanvas.setBitmap(mBitmap);
+            mBitmapFrame = -1;
+        }
+        int keyFrame = imageFrame;
+        while (!mImage.isKeyFrame(keyFrame)) {
+            keyFrame--;
+        }
+        if (mBitmapFrame < 0 || mBitmapFrame < keyFrame - 1 || mBitmapFrame > imageFrame) { //从关键帧开始合成
+            mBitmap.eraseColor(0);
+            mBitmapFrame = -1;
+        }
+        for (int i = mBitmapFrame < 0 ? keyFrame : mBitmapFrame + 1; i <= imageFrame; i++) {
+            if (!compose(i)) {
+                mBitmapFrame = -1;
+                return null;
+            }
+        }
+        if (null != mStats) {
+            mStats.recordDecode(System.nanoTime() - startTime, BitmapPool.getBitmapByteCount(mBitmap));
+        }
+        final FrameDrawable frameDrawable = mFrameDrawables.get(frame);
+        if (frameDrawable.mWidth <= 0) { //局部重绘要用
+            frameDrawable.mWidth = mBitmap.getWidth();
+            frameDrawable.mHeight = mBitmap.getHeight();
+        }
+        return mBitmap;
+    }
+
+    /**
+     * 先处置上一帧，再把这一帧画到画布上
+     */
+    private boolean compose(int imageFrame) {
+        if (mBitmapFrame >= 0 && mBitmapFrame == imageFrame - 1) {
+            dispose(mBitmapFrame);
+        }
+        setFrameRect(mFrameRect, imageFrame);
+        if (mImage.getDispose(imageFrame) == AnimatedImage.DISPOSE_PREVIOUS) {
+            saveRect(mFrameRect);
+        }
+        //config为null，没有透明的帧用RGB_565解码，画到ARGB_8888的画布上
+        final Bitmap frameBitmap = FrameDecoder.get().decode(mFrameSource, mFrameSource.getName(imageFrame), null,
+                0, 0, null);
+        if (null == frameBitmap) {
+            return false;
+        }
+        mCanvas.drawBitmap(frameBitmap, mFrameRect.left, mFrameRect.top,
+                mImage.isBlended(imageFrame) ? mBlendPaint : mCopyPaint);
+        Utils.releaseBitmap(frameBitmap);
+        mBitmapFrame = imageFrame;
+        return true;
+    }
+
+    private void dispose(int imageFrame) {
+        final int dispose = mImage.getDispose(imageFrame);
+        if (dispose == AnimatedImage.DISPOSE_BACKGROUND) {
+            setFrameRect(mFrameRect, imageFrame);
+            mCanvas.drawRect(mFrameRect, mClearPaint);
+        } else if (dispose == AnimatedImage.DISPOSE_PREVIOUS && null != mSavedBitmap) {
+            setFrameRect(mFrameRect, imageFrame);
+            mCanvas.drawBitmap(mSavedBitmap, mSavedRect, mFrameRect, mCopyPaint);
+        }
+    }
+
+    /**
+     * 保存画布上这块区域的内容，保存到一张和画布一样大的bitmap的左上角，只创建一次
+     */
+    private void saveRect(Rect rect) {
+        if (null == mSavedBitmap) {
+            mSavedBitmap = Bitmap.createBitmap(mImage.getWidth(), mImage.getHeight(), Bitmap.Config.ARGB_8888);
+            if (null == mSavedBitmap) {
+                return;
+            }
+            mSaveCanvas.setBitmap(mSavedBitmap);
+        }
+        mSavedRect.set(0, 0, rect.width(), rect.height());
+        mSaveCanvas.drawBitmap(mBitmap, rect, mSavedRect, mCopyPaint);
+    }
+
+    private void setFrameRect(Rect rect, int imageFrame) {
+        final int left = mImage.getFrameX(imageFrame);
+        final int top = mImage.getFrameY(imageFrame);
+        rect.set(left, top, left + mImage.getFrameWidth(imageFrame), top + mImage.getFrameHeight(imageFrame));
+    }
+
+    /**
+     * 和{@link #decode(int)}在同一个锁里调用，不会在合成的时候把画布拿走；
+     * 绘制线程可能还在画上一次返回的画布，所以不回收，只是不再引用
+     */
+    @Override
+    public void release() {
+        mCanvas.setBitmap(null);
+        mSaveCanvas.setBitmap(null);
+        mBitmap = null;
+        mSavedBitmap = null;
+        mBitmapFrame = -1;
+    }
+}
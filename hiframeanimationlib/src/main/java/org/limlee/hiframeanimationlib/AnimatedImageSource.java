@@ -0,0 +1,129 @@
+package org.limlee.hiframeanimationlib;
+
+import org.limlee.hiframecore.AnimatedImage;
+import org.limlee.hiframecore.ByteBufferInputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 单文件动图（animated webp、apng）作为帧来源，文件映射到内存，每一帧用到的时候才拷贝出这一帧的压缩数据；
+ * 帧的名字是序号，用{@link #createFrameDrawables()}生成所有的帧。
+ * 动图的帧只是画布上的一块区域，要按顺序合成，所以播放的时候不预解码、不缓存、不缩放解码
+ */
+public class AnimatedImageSource implements FrameSource {
+    private static final ThreadLocal<byte[]> sFrameBuffers = new ThreadLocal<>();
+
+    private final RandomAccessFile mFile;
+    private final AnimatedImage mImage;
+    private final String[] mNames;
+
+    public AnimatedImageSource(File imageFile) throws IOException {
+        mFile = new RandomAccessFile(imageFile, "r");
+        try {
+            final long size = mFile.length();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("animated image too large: " + size);
+            }
+            mImage = AnimatedImage.parse(mFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size));
+        } catch (IOException e) {
+            mFile.close();
+            throw e;
+        }
+        mNames = createNames(mImage.getFrameCount());
+    }
+
+    /**
+     * 从assets等流中读取，压缩的文件整个读到内存中，解码出来的帧还是用到的时候才解码
+     *
+     * @param inputStream 读完之后由调用者关闭
+     */
+    public AnimatedImageSource(InputStream inputStream) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(inputStream.available(), 8 * 1024));
+        final byte[] buffer = new byte[16 * 1024];
+        int count;
+        while ((count = inputStream.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        mFile = null;
+        mImage = AnimatedImage.parse(ByteBuffer.wrap(out.toByteArray()));
+        mNames = createNames(mImage.getFrameCount());
+    }
+
+    private static String[] createNames(int frameCount) {
+        final String[] names = new String[frameCount];
+        for (int i = 0; i < frameCount; i++) {
+            names[i] = String.valueOf(i);
+        }
+        return names;
+    }
+
+    public AnimatedImage getImage() {
+        return mImage;
+    }
+
+    /**
+     * 按动图中的顺序和时长生成所有的帧；动图中的循环次数见{@link AnimatedImage#getLoopCount()}
+     *
+     * @return
+     */
+    public List<FrameDrawable> createFrameDrawables() {
+        final int frameCount = mImage.getFrameCount();
+        final List<FrameDrawable> frameDrawables = new ArrayList<>(frameCount);
+        for (int i = 0; i < frameCount; i++) {
+            frameDrawables.add(new FrameDrawable(mNames[i], mImage.getDuration(i)));
+        }
+        return frameDrawables;
+    }
+
+    /**
+     * 帧的名字对应的序号，不是这个动图中的帧返回-1
+     */
+    int indexOf(String path) {
+        try {
+            final int frame = Integer.parseInt(path);
+            return frame >= 0 && frame < mNames.length ? frame : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    String getName(int frame) {
+        return mNames[frame];
+    }
+
+    /**
+     * 打开的是这一帧单独包装成的webp或者png（只有这一帧的区域，还没有合成到画布上）；
+     * 数据在当前线程复用的缓冲区中，下一次在这个线程中打开之前要读完
+     */
+    @Override
+    public InputStream open(String path) throws IOException {
+        final int frame = indexOf(path);
+        if (frame < 0) {
+            throw new FileNotFoundException(path + " not found in animated image");
+        }
+        final int size = mImage.getFrameFileSize(frame);
+        byte[] buffer = sFrameBuffers.get();
+        if (null == buffer || buffer.length < size) {
+            buffer = new byte[size + size / 4]; //留一点余量，后面稍大的帧不用再分配
+            sFrameBuffers.set(buffer);
+        }
+        final int length = mImage.writeFrame(frame, buffer);
+        return new ByteBufferInputStream(ByteBuffer.wrap(buffer, 0, length));
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (null != mFile) {
+            mFile.close();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package org.limlee.hiframeanimationlib;
+
+import android.content.res.AssetManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 从assets中读取帧图片
+ */
+public class AssetFrameSource implements FrameSource {
+    private final AssetManager mAssetManager;
+
+    public AssetFrameSource(AssetManager assetManager) {
+        mAssetManager = assetManager;
+    }
+
+    @Override
+    public InputStream open(String path) throws IOException {
+        return mAssetManager.open(path);
+    }
+
+    @Override
+    public void close() {
+        //AssetManager是全局的，不需要关闭
+    }
+
+    /**
+     * 同一个AssetManager的来源是相等的，不同的视图播放同一个assets动画可以共用{@link FrameCache}
+     */
+    @Override
+    public boolean equals(Object o) {
+        return this == o
+                || (o instanceof AssetFrameSource && mAssetManager == ((AssetFrameSource) o).mAssetManager);
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(mAssetManager);
+    }
+}
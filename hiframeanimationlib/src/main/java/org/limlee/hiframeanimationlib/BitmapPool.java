@@ -0,0 +1,173 @@
+package org.limlee.hiframeanimationlib;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+
+import org.limlee.hiframecore.QualityLadder;
+import org.limlee.hiframecore.ReusePool;
+
+/**
+ * 复用bitmap的对象池，按config和占用的字节数分桶，总大小有上限，超过了就淘汰最久没用的。
+ * 所有的动画共用一个池子，解码的时候通过inBitmap复用，帧绘制完成之后要调用{@link #release(Bitmap)}放回
+ */
+public final class BitmapPool {
+    private static final long DEFAULT_MAX_BYTE_COUNT = Runtime.getRuntime().maxMemory() / 8;
+
+    private static volatile BitmapPool sDefault;
+
+    private final ReusePool<Bitmap> mPool;
+    private volatile long mMaxByteCount;
+    private int mQualityLevel = QualityLadder.LEVEL_FULL;
+
+    public static BitmapPool getDefault() {
+        if (null == sDefault) {
+            synchronized (BitmapPool.class) {
+                if (null == sDefault) {
+                    sDefault = new BitmapPool(DEFAULT_MAX_BYTE_COUNT);
+                }
+            }
+        }
+        return sDefault;
+    }
+
+    public BitmapPool(long maxByteCount) {
+        mMaxByteCount = maxByteCount;
+        mPool = new ReusePool<>(new ReusePool.Adapter<Bitmap>() {
+            @Override
+            public long getByteCount(Bitmap bitmap) {
+                return getBitmapByteCount(bitmap);
+            }
+
+            @Override
+            public void onEvicted(Bitmap bitmap) {
+                bitmap.recycle();
+            }
+        }, maxByteCount);
+    }
+
+    /**
+     * 取出一个可以作为inBitmap解码options描述的图片的bitmap
+     *
+     * @param options 已经解码过边界，outWidth/outHeight是有效的
+     * @return 没有可以复用的返回null
+     */
+    public Bitmap acquire(BitmapFactory.Options options) {
+        final int sampleSize = Math.max(1, options.inSampleSize);
+        return acquire(options.inPreferredConfig, options.outWidth / sampleSize, options.outHeight / sampleSize);
+    }
+
+    /**
+     * 取出一个可以作为inBitmap解码出width*height大小的bitmap
+     *
+     * @param config
+     * @param width  解码出来的宽度
+     * @param height
+     * @return 没有可以复用的返回null
+     */
+    public Bitmap acquire(Bitmap.Config config, int width, int height) {
+        if (null == config) {
+            config = Bitmap.Config.ARGB_8888;
+        }
+        final Bitmap bitmap = mPool.acquire(groupOf(config, width, height),
+                (long) width * height * getBytesPerPixel(config));
+        if (null != bitmap && bitmap.isRecycled()) {
+            return null;
+        }
+        return bitmap;
+    }
+
+    /**
+     * 放回池子，调用之后就不能再使用这个bitmap了
+     *
+     * @param bitmap
+     */
+    public void release(Bitmap bitmap) {
+        if (null == bitmap
+                || !bitmap.isMutable()
+                || bitmap.isRecycled()) {
+            return;
+        }
+        final Bitmap.Config config = null != bitmap.getConfig() ? bitmap.getConfig() : Bitmap.Config.ARGB_8888;
+        mPool.release(groupOf(config, bitmap.getWidth(), bitmap.getHeight()), bitmap);
+    }
+
+    /**
+     * 在api19以上，只要config相同，大小足够就可以复用，否则宽高要完全一样
+     */
+    private static long groupOf(Bitmap.Config config, int width, int height) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return config.ordinal();
+        }
+        return ((long) config.ordinal() << 48) | ((long) width << 24) | height;
+    }
+
+    /**
+     * 总大小的上限，内存紧张的时候实际的上限按质量级别降低，压力过去之后恢复成这里设置的值
+     */
+    public synchronized void setMaxByteCount(long maxByteCount) {
+        mMaxByteCount = maxByteCount;
+        mPool.setMaxByteCount(QualityLadder.getBudget(mQualityLevel, maxByteCount));
+    }
+
+    /**
+     * 设置的上限，不是按质量级别降低之后的
+     */
+    public long getMaxByteCount() {
+        return mMaxByteCount;
+    }
+
+    /**
+     * 内存压力变了，由{@link MemoryGovernor}调用
+     *
+     * @param level QualityLadder.LEVEL_开头的常量
+     */
+    synchronized void setQualityLevel(int level) {
+        mQualityLevel = level;
+        mPool.setMaxByteCount(QualityLadder.getBudget(level, mMaxByteCount));
+    }
+
+    /**
+     * 池子里bitmap占用的总字节数
+     */
+    public long getByteCount() {
+        return mPool.getByteCount();
+    }
+
+    public long getHitCount() {
+        return mPool.getHitCount();
+    }
+
+    public long getMissCount() {
+        return mPool.getMissCount();
+    }
+
+    public long getEvictionCount() {
+        return mPool.getEvictionCount();
+    }
+
+    public void clear() {
+        mPool.clear();
+    }
+
+    static int getBitmapByteCount(Bitmap bitmap) {
+        if (null == bitmap) return 0;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return bitmap.getAllocationByteCount();
+        }
+        return bitmap.getByteCount();
+    }
+
+    static int getBytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.ARGB_8888) {
+            return 4;
+        } else if (config == Bitmap.Config.RGB_565) {
+            return 2;
+        } else if (config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        } else if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        }
+        return 1;
+    }
+}
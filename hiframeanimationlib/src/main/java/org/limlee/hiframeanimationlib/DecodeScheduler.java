@@ -0,0 +1,43 @@
+package org.limlee.hiframeanimationlib;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.limlee.hiframecore.TaskScheduler;
+
+/**
+ * 所有帧动画共用的后台解码线程池，线程数有上限，和绘制线程池分开。
+ * 预加载在这里解码，解码再慢也不会占住绘制线程，正在播放的动画不会因此掉帧
+ */
+final class DecodeScheduler extends TaskScheduler {
+    private static final String TAG = DecodeScheduler.class.getSimpleName();
+
+    private static final Clock UPTIME_CLOCK = new Clock() {
+        @Override
+        public long now() {
+            return SystemClock.uptimeMillis();
+        }
+    };
+
+    private static volatile DecodeScheduler sInstance;
+
+    static DecodeScheduler getInstance() {
+        if (null == sInstance) {
+            synchronized (DecodeScheduler.class) {
+                if (null == sInstance) {
+                    sInstance = new DecodeScheduler(getThreadCount(Runtime.getRuntime().availableProcessors()));
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    private DecodeScheduler(int threads) {
+        super(threads, "Animator Decode Thread", UPTIME_CLOCK);
+    }
+
+    @Override
+    protected void onTaskFailed(Task task, RuntimeException e) {
+        Log.e(TAG, "decode task failed", e);
+    }
+}
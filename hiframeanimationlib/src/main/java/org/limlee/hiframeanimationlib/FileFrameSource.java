@@ -0,0 +1,37 @@
+package org.limlee.hiframeanimationlib;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 从某个目录（比如sdcard）中读取帧图片，可以用来热更新帧动画
+ */
+public class FileFrameSource implements FrameSource {
+    private final File mDirectory;
+
+    public FileFrameSource(File directory) {
+        mDirectory = directory;
+    }
+
+    @Override
+    public InputStream open(String path) throws IOException {
+        return new FileInputStream(new File(mDirectory, path));
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o
+                || (o instanceof FileFrameSource && mDirectory.equals(((FileFrameSource) o).mDirectory));
+    }
+
+    @Override
+    public int hashCode() {
+        return mDirectory.hashCode();
+    }
+}
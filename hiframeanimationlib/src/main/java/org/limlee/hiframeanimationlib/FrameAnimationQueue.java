@@ -0,0 +1,273 @@
+package org.limlee.hiframeanimationlib;
+
+import org.limlee.hiframecore.FrameManifest;
+import org.limlee.hiframecore.PlayQueue;
+
+import java.util.List;
+
+/**
+ * 在一个{@link FrameAnimationView}上排队播放动画，比如直播间连续送的礼物：
+ * 优先级高的先播放，排队中的同一种动画合并成一次（见{@link PlayQueue}）；
+ * 当前的动画播放的时候就预加载下一个，播放完用{@link FrameAnimationView#switchTo}无缝换过去，
+ * 绘制任务、预解码和复用池中的bitmap都接着用，中间不会清空画布。
+ * 会占用视图的{@link FrameAnimationView.OnFrameListener}，只播放一次；在UI线程中使用
+ */
+public final class FrameAnimationQueue {
+    private static final int PRELOAD_FRAMES = 2;
+
+    public interface Listener {
+
+        /**
+         * 开始播放，第一帧已经要画出来了
+         *
+         * @param key   加入队列时的标识
+         * @param count 合并了几个，可以显示成“x10”
+         */
+        void onAnimationStart(String key, int count);
+
+        /**
+         * 播放完了，或者被{@link #skip()}、{@link #clear()}结束了
+         */
+        void onAnimationEnd(String key, int count);
+
+        /**
+         * 队列中的都播放完了，视图已经停止
+         */
+        void onQueueEmpty();
+    }
+
+    /**
+     * 播放一个动画需要的帧和帧来源
+     */
+    private static final class Animation {
+        final FrameSource frameSource;
+        final List<FrameDrawable> frameDrawables;
+        final FrameManifest manifest;
+
+        Animation(FrameSource frameSource, List<FrameDrawable> frameDrawables, FrameManifest manifest) {
+            this.frameSource = frameSource;
+            this.frameDrawables = frameDrawables;
+            this.manifest = manifest;
+        }
+    }
+
+    private final FrameAnimationView mView;
+    private final PlayQueue<Animation> mQueue;
+    private Listener mListener;
+
+    private PlayQueue.Entry<Animation> mCurrent; //正在播放的
+    private PlayQueue.Entry<Animation> mNext; //已经预加载并且交给视图、等着换过去的
+    private boolean mIsStopping; //自己停止视图的时候，结束回调中不再播放下一个
+
+    /**
+     * @param view
+     * @param capacity 最多排多少个
+     * @param maxCombo 同一种动画最多合并多少个，1表示不合并
+     */
+    public FrameAnimationQueue(FrameAnimationView view, int capacity, int maxCombo) {
+        mView = view;
+        mQueue = new PlayQueue<>(capacity, maxCombo);
+        mView.setOneShot(true);
+        mView.setOnFrameListener(new FrameAnimationView.OnFrameListener() {
+            @Override
+            public void onFrameStart() {
+                onAnimationStart();
+            }
+
+            @Override
+            public void onFrameEnd() {
+                onAnimationEnd();
+            }
+        });
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * 按描述文件播放
+     *
+     * @param key       同一种动画的标识，比如礼物id，null的话不合并
+     * @param priority  越大越先播放
+     * @param count     几个
+     * @param frameSource
+     * @param manifest
+     * @return false表示队列满了，有的被丢掉了
+     */
+    public boolean enqueue(String key, int priority, int count, FrameSource frameSource, FrameManifest manifest) {
+        return enqueue(key, priority, count, new Animation(frameSource, null, manifest));
+    }
+
+    /**
+     * 按帧列表播放，列表会被拷贝
+     */
+    public boolean enqueue(String key, int priority, int count, FrameSource frameSource,
+                           List<FrameDrawable> frameDrawables) {
+        return enqueue(key, priority, count, new Animation(frameSource, frameDrawables, null));
+    }
+
+    private boolean enqueue(String key, int priority, int count, Animation animation) {
+        final boolean accepted = mQueue.offer(key, priority, count, animation);
+        if (!mView.isRunning()) { //视图被停止了，比如离开了窗口，还没播放的放回队列
+            if (null != mNext) {
+                mQueue.requeue(mNext);
+                mNext = null;
+            }
+            mCurrent = null;
+        }
+        if (null == mCurrent && null == mNext) {
+            playNext();
+        } else {
+            scheduleNext();
+        }
+        return accepted;
+    }
+
+    /**
+     * 结束当前的动画，马上播放下一个
+     */
+    public void skip() {
+        if (null == mCurrent) {
+            return;
+        }
+        if (null == mNext) {
+            scheduleNext();
+        }
+        if (null != mNext) {
+            final FramePreload next = mView.cancelSwitch(); //改成马上换
+            if (null != next) {
+                mView.switchTo(next, false);
+            }
+        } else {
+            stopView();
+            if (null != mListener) {
+                mListener.onQueueEmpty();
+            }
+        }
+    }
+
+    /**
+     * 清空队列并且停止播放
+     */
+    public void clear() {
+        mQueue.clear();
+        final FramePreload next = mView.cancelSwitch();
+        if (null != next) {
+            next.cancel();
+        }
+        mNext = null;
+        stopView();
+        mCurrent = null;
+    }
+
+    private void stopView() {
+        mIsStopping = true;
+        mView.stop();
+        mIsStopping = false;
+    }
+
+    /**
+     * 排队等着播放的个数，不包括正在播放的
+     */
+    public int getPendingCount() {
+        return mQueue.size() + (null != mNext ? 1 : 0);
+    }
+
+    /**
+     * 因为队列满了丢掉的个数
+     */
+    public long getDroppedCount() {
+        return mQueue.getDroppedCount();
+    }
+
+    private void onAnimationStart() {
+        if (null != mNext) { //换到了下一个
+            mCurrent = mNext;
+            mNext = null;
+        }
+        if (null != mCurrent && null != mListener) {
+            mListener.onAnimationStart(mCurrent.getKey(), mCurrent.getCount());
+        }
+        scheduleNext();
+    }
+
+    private void onAnimationEnd() {
+        final PlayQueue.Entry<Animation> ended = mCurrent;
+        mCurrent = null;
+        if (null != ended && null != mListener) {
+            mListener.onAnimationEnd(ended.getKey(), ended.getCount());
+        }
+        if (mIsStopping) {
+            return;
+        }
+        if (!mView.isRunning()) { //被别人停止了，还没播放的放回队列，下次加入的时候接着播放
+            if (null != mNext) {
+                mQueue.requeue(mNext);
+                mNext = null;
+            }
+            return;
+        }
+        if (null == mNext && !playNext()) {
+            stopView();
+            if (null != mListener) {
+                mListener.onQueueEmpty();
+            }
+        }
+    }
+
+    /**
+     * 预加载队头，交给视图，当前的播放完换过去。
+     * 等着换过去的被优先级更高的超过了，就放回队列换成新的队头
+     */
+    private void scheduleNext() {
+        if (null != mNext && !mQueue.isEmpty() && mQueue.peek().getPriority() > mNext.getPriority()) {
+            final FramePreload next = mView.cancelSwitch();
+            if (null != next) {
+                next.cancel();
+                mQueue.requeue(mNext);
+                mNext = null;
+            }
+        }
+        if (null != mNext || null == mCurrent) {
+            return;
+        }
+        final PlayQueue.Entry<Animation> head = mQueue.peek();
+        if (null == head) {
+            return;
+        }
+        mQueue.poll();
+        final FramePreload preload = preload(head);
+        if (mView.switchTo(preload, true)) {
+            mNext = head;
+        } else { //不能播放的动画直接丢掉
+            preload.cancel();
+            scheduleNext();
+        }
+    }
+
+    /**
+     * 播放队头，视图还在运行的话直接换过去，不重新开始
+     *
+     * @return 队列是空的返回false
+     */
+    private boolean playNext() {
+        PlayQueue.Entry<Animation> head;
+        while (null != (head = mQueue.poll())) {
+            final FramePreload preload = preload(head);
+            if (mView.switchTo(preload, false)) {
+                mNext = head;
+                return true;
+            }
+            preload.cancel(); //不能播放的动画直接丢掉
+        }
+        return false;
+    }
+
+    private FramePreload preload(PlayQueue.Entry<Animation> entry) {
+        final Animation animation = entry.getPayload();
+        return null != animation.manifest
+                ? mView.preload(animation.frameSource, animation.manifest, PRELOAD_FRAMES, null)
+                : mView.preload(animation.frameSource, animation.frameDrawables, PRELOAD_FRAMES, null);
+    }
+}
@@ -1,18 +1,42 @@
 package org.limlee.hiframeanimationlib;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
 import android.os.SystemClock;
 import android.util.AttributeSet;
-import android.util.Log;
+import android.view.WindowManager;
+
+import org.limlee.hiframecore.FrameManifest;
+import org.limlee.hiframecore.FramePacer;
+import org.limlee.hiframecore.FrameTimeline;
+import org.limlee.hiframecore.PlaybackState;
+import org.limlee.hiframecore.QualityLadder;
+import org.limlee.hiframecore.SpriteSheet;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class FrameAnimationView extends FrameSurfaceView {
     private static final String TAG = FrameAnimationView.class.getSimpleName();
+
+    /**
+     * 每一帧都重新解码，只占用一两张帧图片的内存，适合大动画
+     */
+    public static final int PLAYBACK_MODE_STREAM = 0;
+    /**
+     * 解码好的帧放到{@link FrameCache}中，循环播放的时候不再解码，适合反复播放的小动画
+     */
+    public static final int PLAYBACK_MODE_CACHE = 1;
     private int mCurFrame = -1;
+    private int mPrevFrame = -1; //上一次绘制的帧
     private boolean mOneShot;
 
     private long mStart;
@@ -21,8 +45,78 @@ public class FrameAnimationView extends FrameSurfaceView {
 
     private AtomicBoolean mIsAnimating = new AtomicBoolean(false);
 
-    private List<FrameDrawable> mFrameDrawables = new ArrayList<>();
+    //播放进度只在绘制线程中改，UI线程通过这几个字段通知它重置或者平移
+    private volatile int mSession; //每次开始加一
+    private int mRenderSession; //绘制线程看到的，和mSession不一样的话重置播放进度
+    private long mPauseTime; //暂停的时候，uptimeMillis，UI线程
+    private final AtomicLong mPausedDuration = new AtomicLong(); //还没有加到mStart上的暂停时长
+    private boolean mIsDecodingReleased; //挂起的时候释放了，恢复的时候要重新准备
+
+    private static final int DEFAULT_DECODE_AHEAD = 2;
+    private int mDecodeAhead = DEFAULT_DECODE_AHEAD; //预解码的帧数，0表示在绘制线程中解码
+    private int mDecodeThreads = 1; //最多同时预解码几帧
+    private volatile FramePrefetcher mPrefetcher;
+    private Bitmap mPreparedBitmap; //已经准备好，将要绘制的帧
+    private long mPreparedDueTime; //准备好的帧在时间轴上开始的时间，uptimeMillis
+    private int mPreparedDroppedFrames; //和上一次绘制的帧之间跳过的帧数
+    private boolean mIsPrepared;
+    private volatile boolean mIsWaitingDecode; //预解码好一帧的时候唤醒绘制任务
+    private final Runnable mOnFrameReady = new Runnable() {
+        @Override
+        public void run() {
+            if (mIsWaitingDecode) {
+                requestDraw();
+            }
+        }
+    };
+
+    private volatile FrameTimeline mTimeline;
+    private boolean mIsVsyncEnabled;
+    private boolean mIsScaledDecodeEnabled = true;
+    private Bitmap.Config mBitmapConfig = Bitmap.Config.ARGB_8888;
+    private int mPlaybackMode = PLAYBACK_MODE_STREAM;
+    private volatile FrameCache.Lease mCacheLease;
+    private Bitmap.Config mCacheConfig; //缓存帧的解码格式，和getDecodeConfig不一样了就换新的缓存
+    private boolean mIsPreparedShared; //准备好的帧还有别人在用（缓存或者差量解码），不能归还给复用池
+    private volatile SequentialFrameDecoder mSequentialDecoder; //差量帧包或者单文件动图
+    private SpriteSheetSource mSpriteSheetSource;
+    private int[] mSpriteFrames; //每一帧在帧表中的序号
+    private boolean mIsDirtyRenderingEnabled;
+    private boolean mIsFrameSkipEnabled;
+    private final FramePacer mPacer = new FramePacer(); //解码和绘制耗时的估计，实际的帧率
+    private boolean[] mKeyFrames; //差量帧包或者动图中的关键帧，跳帧的时候尽量不跳过
+    private long mPrepareStartTime; //开始准备这一帧的时间，nanoTime
+    private long mPreparedDecodeTime; //准备这一帧的时候在绘制线程中解码的耗时，纳秒
+
+    //绘制线程中所有帧共用
+    private final Matrix mDrawMatrix = new Matrix();
+    private final Paint mDrawPaint = new Paint();
+    private final Rect mDrawSrcRect = new Rect();
+    private final RectF mDrawDstRect = new RectF();
+
+    private FramePreload mPreload; //prepare或者start(FramePreload)的时候设置，开始播放的时候用
+    private volatile FramePreload mActivePreload; //正在播放的动画预解码好的前几帧
+    private final AtomicReference<PendingSwitch> mPendingSwitch = new AtomicReference<>();
+    private final Object mDecodeLock = new Object(); //绘制线程中换动画和UI线程中停止，不能同时改解码的状态
+
+    private volatile List<FrameDrawable> mFrameDrawables = new ArrayList<>();
     private OnFrameListener mOnFrameListener;
+    private volatile FrameSource mFrameSource;
+
+    /**
+     * 等着绘制线程接着播放的下一个动画，时间轴在UI线程中先算好
+     */
+    private static final class PendingSwitch {
+        final FramePreload preload;
+        final FrameTimeline timeline;
+        final boolean afterCurrent;
+
+        PendingSwitch(FramePreload preload, FrameTimeline timeline, boolean afterCurrent) {
+            this.preload = preload;
+            this.timeline = timeline;
+            this.afterCurrent = afterCurrent;
+        }
+    }
 
     public interface OnFrameListener {
 
@@ -44,6 +138,7 @@ public class FrameAnimationView extends FrameSurfaceView {
 
     public FrameAnimationView(Context context, AttributeSet attrs) {
         super(context, attrs);
+        mFrameSource = new AssetFrameSource(context.getAssets());
     }
 
 
@@ -59,7 +154,8 @@ public class FrameAnimationView extends FrameSurfaceView {
     }
 
     /**
-     * 动画播放时长，如果不设置，就是所有帧的时间总和
+     * 动画播放时长，如果不设置，就是所有帧的时间总和；
+     * 设置了的话每一帧的时长会按比例缩放，保证一轮刚好播放这么长时间
      *
      * @param duration
      */
@@ -69,16 +165,67 @@ public class FrameAnimationView extends FrameSurfaceView {
         }
     }
 
+    /**
+     * 帧图片的来源，默认是assets，FrameDrawable的路径相对于这个来源；
+     * 来源由调用者负责关闭
+     *
+     * @param frameSource
+     */
+    public void setFrameSource(FrameSource frameSource) {
+        if (!isRunning() && null != frameSource) {
+            mFrameSource = frameSource;
+        }
+    }
+
+    /**
+     * 预解码的帧数，大于0的时候会在单独的线程中提前解码后面的帧，绘制线程只负责绘制，
+     * 内存中最多会有decodeAhead+1张帧图片；默认是2。设置成0的话在绘制线程中解码，只占用一张帧图片的内存
+     *
+     * @param decodeAhead
+     */
+    public void setDecodeAhead(int decodeAhead) {
+        if (!isRunning()) {
+            mDecodeAhead = Math.max(0, decodeAhead);
+        }
+    }
+
+    /**
+     * 最多同时预解码几帧，默认是1；一个核解码一帧超过一帧的时长的时候（全屏的高帧率动画），
+     * 在共用的解码线程池{@link DecodeScheduler}中同时解码后面的几帧，解码好的帧还是按顺序播放。
+     * 不超过CPU核数和预解码的帧数，正在解码的帧也算在预解码的帧数中，内存还是最多decodeAhead+1张帧图片
+     *
+     * @param decodeThreads
+     */
+    public void setDecodeThreads(int decodeThreads) {
+        if (!isRunning()) {
+            mDecodeThreads = Math.max(1, Math.min(decodeThreads, Runtime.getRuntime().availableProcessors()));
+        }
+    }
+
     public void addFrameDrawable(FrameDrawable frameDrawable) {
         if (!isRunning()) { //在绘制的时候不允许添加
+            if (mFrameDrawables instanceof ManifestFrameList) { //描述文件的帧列表不能改，换成普通的
+                mFrameDrawables = new ArrayList<>(mFrameDrawables);
+            }
             mFrameDrawables.add(frameDrawable);
         }
     }
 
     public void addFrameDrawable(List<FrameDrawable> frameDrawableList) {
         if (!isRunning()) {
-            mFrameDrawables.clear();
-            mFrameDrawables.addAll(frameDrawableList);
+            mFrameDrawables = new ArrayList<>(frameDrawableList);
+        }
+    }
+
+    /**
+     * 按描述文件播放，代替{@link #addFrameDrawable(List)}；
+     * 不会一次创建所有的帧，时间轴直接用描述文件中的时长生成，某一帧第一次用到的时候才创建它
+     *
+     * @param manifest
+     */
+    public void setFrameManifest(FrameManifest manifest) {
+        if (!isRunning() && null != manifest) {
+            mFrameDrawables = new ManifestFrameList(manifest);
         }
     }
 
@@ -107,77 +254,844 @@ public class FrameAnimationView extends FrameSurfaceView {
         return mIsAnimating.get();
     }
 
+    /**
+     * 是否把每一帧的绘制时间对齐到vsync上，对齐之后帧的显示时间更均匀
+     *
+     * @param vsyncEnabled
+     */
+    public void setVsyncEnabled(boolean vsyncEnabled) {
+        mIsVsyncEnabled = vsyncEnabled;
+        if (vsyncEnabled) {
+            final WindowManager windowManager = (WindowManager) getContext().getSystemService(Context.WINDOW_SERVICE);
+            if (null != windowManager) {
+                VsyncClock.getInstance().setRefreshRate(windowManager.getDefaultDisplay().getRefreshRate());
+            }
+        }
+    }
+
+    /**
+     * 帧比画布大的时候，是否在解码的时候就缩小到画布的尺寸，这样省内存，绘制的时候也不用再缩放；
+     * 默认开启
+     *
+     * @param scaledDecodeEnabled
+     */
+    public void setScaledDecodeEnabled(boolean scaledDecodeEnabled) {
+        if (!isRunning()) {
+            mIsScaledDecodeEnabled = scaledDecodeEnabled;
+        }
+    }
+
+    /**
+     * 帧的解码格式，默认是ARGB_8888；没有透明的全屏动画可以用RGB_565，内存和带宽都减半；
+     * 设置成null的话会自动检测每一帧，没有透明的帧用RGB_565，有透明的用ARGB_8888
+     *
+     * @param bitmapConfig
+     */
+    public void setBitmapConfig(Bitmap.Config bitmapConfig) {
+        if (!isRunning()) {
+            mBitmapConfig = bitmapConfig;
+        }
+    }
+
+    /**
+     * 播放模式，{@link #PLAYBACK_MODE_STREAM}或者{@link #PLAYBACK_MODE_CACHE}，默认每一帧都重新解码；
+     * 缓存模式下不使用预解码，缓存放不下的帧还是每次都解码
+     *
+     * @param playbackMode
+     */
+    public void setPlaybackMode(int playbackMode) {
+        if (!isRunning()) {
+            mPlaybackMode = playbackMode;
+        }
+    }
+
+    /**
+     * 是否只重绘相对上一帧变化的区域（{@link FrameDrawable#setDirtyRect}），大画布上只有一小块在动的动画能省很多填充；
+     * 跳帧、位置或者透明度变了的时候还是整帧重绘
+     *
+     * @param dirtyRenderingEnabled
+     */
+    public void setDirtyRenderingEnabled(boolean dirtyRenderingEnabled) {
+        mIsDirtyRenderingEnabled = dirtyRenderingEnabled;
+    }
+
+    /**
+     * 自适应跳帧：估计每一帧解码和绘制的耗时，提前选好准备完的时候应该显示的帧，
+     * 解码完了也来不及显示的帧直接跳过不解码，慢的设备上均匀地降低帧率而不是每一帧都迟到；
+     * 差量帧包和动图尽量不跳过关键帧。默认关闭，实际的帧率见{@link #getEffectiveFps()}
+     *
+     * @param frameSkipEnabled
+     */
+    public void setAdaptiveFrameSkipEnabled(boolean frameSkipEnabled) {
+        if (!isRunning()) {
+            mIsFrameSkipEnabled = frameSkipEnabled;
+        }
+    }
+
+    /**
+     * 最近实际显示的帧率，按帧之间间隔的移动平均算，还没有显示两帧的话返回0
+     */
+    public float getEffectiveFps() {
+        return mPacer.getEffectiveFps();
+    }
+
+    /**
+     * 从图集中播放，FrameDrawable按名字对应到帧表中的帧，位置、缩放、透明度和时长还是用FrameDrawable的；
+     * 图集只解码一次，不会预解码、缓存和缩放解码。设置成null就还是每一帧单独解码
+     *
+     * @param spriteSheetSource
+     */
+    public void setSpriteSheetSource(SpriteSheetSource spriteSheetSource) {
+        if (!isRunning()) {
+            mSpriteSheetSource = spriteSheetSource;
+        }
+    }
+
+    /**
+     * 在后台解码当前动画的前几帧，之后调用{@link #start()}的时候第一帧马上就能画出来；
+     * 开始播放之前改了帧或者帧来源的话，准备好的帧就不用了
+     *
+     * @param frameCount 解码前几帧，一般1到3帧就够了
+     * @param listener   解码好之后在UI线程中回调，可以为null
+     * @return 正在播放的时候返回null
+     */
+    public FramePreload prepare(int frameCount, FramePreload.OnPreparedListener listener) {
+        if (isRunning()) {
+            return null;
+        }
+        if (null != mPreload) {
+            mPreload.cancel();
+        }
+        mPreload = createPreload(mFrameSource, mFrameDrawables, frameCount, listener);
+        return mPreload;
+    }
+
+    /**
+     * 在后台解码另一个动画的前几帧，当前的动画可以还在播放，之后用{@link #start(FramePreload)}播放它。
+     * 解码的格式和尺寸按这个视图现在的设置；不播放的话要调用{@link FramePreload#cancel()}
+     *
+     * @param frameSource
+     * @param frameDrawables
+     * @param frameCount     解码前几帧
+     * @param listener       解码好之后在UI线程中回调，可以为null
+     * @return
+     */
+    public FramePreload preload(FrameSource frameSource, List<FrameDrawable> frameDrawables,
+                                int frameCount, FramePreload.OnPreparedListener listener) {
+        final List<FrameDrawable> frames = frameDrawables instanceof ManifestFrameList
+                ? frameDrawables : new ArrayList<>(frameDrawables);
+        return createPreload(frameSource, frames, frameCount, listener);
+    }
+
+    /**
+     * 同上，按描述文件准备
+     */
+    public FramePreload preload(FrameSource frameSource, FrameManifest manifest,
+                                int frameCount, FramePreload.OnPreparedListener listener) {
+        return createPreload(frameSource, new ManifestFrameList(manifest), frameCount, listener);
+    }
+
+    private FramePreload createPreload(FrameSource frameSource, List<FrameDrawable> frameDrawables,
+                                       int frameCount, FramePreload.OnPreparedListener listener) {
+        final FramePreload preload = new FramePreload(frameSource, frameDrawables, frameCount, getDecodeConfig(),
+                getDecodeWidth(), getDecodeHeight(), listener);
+        preload.start();
+        return preload;
+    }
+
+    /**
+     * 播放{@link #preload}准备好的动画，帧和帧来源换成它的；正在播放的话什么都不做
+     *
+     * @param preload
+     */
+    public void start(FramePreload preload) {
+        if (isRunning() || null == preload || preload.isCancelled()) {
+            return;
+        }
+        if (null != mPreload && mPreload != preload) {
+            mPreload.cancel();
+        }
+        mFrameSource = preload.getFrameSource();
+        mFrameDrawables = preload.getFrameDrawables();
+        mPreload = preload;
+        start();
+    }
+
+    /**
+     * 在播放的时候换成{@link #preload}准备好的动画，绘制任务和预解码都接着用，画布也不清空，
+     * 上一个动画的最后一帧一直显示到下一个动画的第一帧画出来；会先回调上一个的onFrameEnd，再回调下一个的onFrameStart。
+     * 没有在播放的话就是{@link #start(FramePreload)}；之前还没换过去的会被取消
+     *
+     * @param preload
+     * @param afterCurrent true表示当前的动画播放完（循环的话播放完这一轮）再换，false马上换
+     * @return 动画不能播放（没有帧或者时长都是0）返回false
+     */
+    public boolean switchTo(FramePreload preload, boolean afterCurrent) {
+        if (null == preload || preload.isCancelled()) {
+            return false;
+        }
+        if (!isRunning()) {
+            start(preload);
+            return isRunning();
+        }
+        final FrameTimeline timeline;
+        try {
+            timeline = createTimeline(preload.getFrameDrawables(), mDuration);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        final PendingSwitch replaced = mPendingSwitch.getAndSet(new PendingSwitch(preload, timeline, afterCurrent));
+        if (null != replaced && replaced.preload != preload) {
+            replaced.preload.cancel();
+        }
+        requestDraw(); //当前的动画可能已经播放完了
+        return true;
+    }
+
+    /**
+     * 取消{@link #switchTo}，已经换过去了的话返回null
+     *
+     * @return 还没换过去的动画，没有取消它，调用者可以之后再播放
+     */
+    public FramePreload cancelSwitch() {
+        final PendingSwitch pending = mPendingSwitch.getAndSet(null);
+        return null != pending ? pending.preload : null;
+    }
+
+    @Override
+    protected void onSurfaceSizeChanged(int width, int height) {
+        applyDecodeSettings(getDecodeWidth() > 0);
+    }
+
+    @Override
+    protected void onQualityLevelChanged(int level) {
+        applyDecodeSettings(false);
+    }
+
+    /**
+     * 解码的尺寸、格式或者预解码帧数变了，预解码和缓存换成新的设置
+     *
+     * @param isSizeChanged 缓存中按旧尺寸解码的帧都不用了
+     */
+    private void applyDecodeSettings(boolean isSizeChanged) {
+        synchronized (mDecodeLock) {
+            final FramePrefetcher prefetcher = mPrefetcher;
+            if (null != prefetcher) { //之前按旧尺寸解码的帧都要重新解码
+                prefetcher.setDecodeAhead(QualityLadder.getDecodeAhead(getQualityLevel(), mDecodeAhead));
+                prefetcher.setConfig(getDecodeConfig());
+                prefetcher.setTargetSize(getDecodeWidth(), getDecodeHeight());
+            }
+            final FrameCache.Lease cacheLease = mCacheLease;
+            if (null != cacheLease && (isSizeChanged || mCacheConfig != getDecodeConfig())) { //换成新的缓存
+                mCacheConfig = getDecodeConfig();
+                mCacheLease = FrameCache.getDefault().newLease(mFrameSource, mCacheConfig, mFrameDrawables.size());
+                cacheLease.close();
+            }
+        }
+    }
+
+    /**
+     * 解码的目标尺寸，0表示按原图尺寸；内存紧张的时候按画布一半的尺寸解码
+     */
+    private int getDecodeWidth() {
+        final int shift = QualityLadder.getResolutionShift(getQualityLevel());
+        return mIsScaledDecodeEnabled || shift > 0 ? getSurfaceWidth() >> shift : 0;
+    }
+
+    private int getDecodeHeight() {
+        final int shift = QualityLadder.getResolutionShift(getQualityLevel());
+        return mIsScaledDecodeEnabled || shift > 0 ? getSurfaceHeight() >> shift : 0;
+    }
+
+    /**
+     * 解码格式，内存紧张的时候ARGB_8888换成自动检测，没有透明的帧用RGB_565
+     */
+    private Bitmap.Config getDecodeConfig() {
+        final Bitmap.Config config = mBitmapConfig;
+        return QualityLadder.isRgb565Preferred(getQualityLevel()) && config == Bitmap.Config.ARGB_8888
+                ? null : config;
+    }
+
+    /**
+     * 预解码和预加载的帧占用的字节数，给{@link MemoryGovernor}统计
+     */
+    long getHeldByteCount() {
+        long byteCount = 0;
+        final FramePrefetcher prefetcher = mPrefetcher;
+        if (null != prefetcher) {
+            byteCount += prefetcher.getByteCount();
+        }
+        final FramePreload activePreload = mActivePreload;
+        if (null != activePreload) {
+            byteCount += activePreload.getByteCount();
+        }
+        final FramePreload preload = mPreload;
+        if (null != preload) {
+            byteCount += preload.getByteCount();
+        }
+        return byteCount;
+    }
+
     @Override
-    protected void startUpdate() {
-        if (isRunning()) return;
+    protected boolean onStartUpdate() {
         if (mFrameDrawables.isEmpty()) {
-            callOnFrameEnd();
+            return false;
+        }
+        try {
+            mTimeline = createTimeline(mFrameDrawables, mDuration);
+        } catch (IllegalArgumentException e) { //所有帧的时长都是0
+            return false;
+        }
+        mSession++;
+        mPausedDuration.set(0);
+        mIsDecodingReleased = false;
+        MemoryGovernor.getDefault().register(this);
+        final FramePreload preload = mPreload;
+        mPreload = null;
+        if (null != preload) {
+            if (null == mSpriteSheetSource && preload.isFor(mFrameSource, mFrameDrawables)) {
+                mActivePreload = preload;
+            } else { //准备之后换了帧，或者从图集播放
+                preload.cancel();
+            }
+        }
+        synchronized (mDecodeLock) {
+            setUpDecoding(null, getPreloadedFrameCount());
+        }
+        return true;
+    }
+
+    @Override
+    protected void onStartFailed() {
+        callOnFrameEnd();
+    }
+
+    @Override
+    protected void onPauseUpdate() {
+        mPauseTime = SystemClock.uptimeMillis();
+        if (mIsVsyncEnabled) { //挂起的时候主线程的回调可能不再来了
+            VsyncClock.getInstance().stop();
+        }
+    }
+
+    @Override
+    protected void onResumeUpdate() {
+        mPausedDuration.addAndGet(SystemClock.uptimeMillis() - mPauseTime);
+        if (mIsDecodingReleased) { //预解码从暂停时显示的帧的下一帧开始，而不是从头开始
+            mIsDecodingReleased = false;
+            final int numFrames = mFrameDrawables.size();
+            final int curFrame = mCurFrame; //暂停中绘制线程不会再改它
+            synchronized (mDecodeLock) {
+                setUpDecoding(null, curFrame >= 0 && numFrames > 0 ? (curFrame + 1) % numFrames : 0);
+            }
+        }
+    }
+
+    /**
+     * 挂起的时候释放预解码的帧、缓存和预加载的帧，播放进度保留
+     */
+    @Override
+    protected void onReleaseResources() {
+        if (mIsDecodingReleased) {
             return;
         }
-        if (mDuration == 0) {
-            for (FrameDrawable frameDrawable : mFrameDrawables) {
-                if (null != frameDrawable) {
-                    mDuration += frameDrawable.mDuration;
+        mIsDecodingReleased = true;
+        synchronized (mDecodeLock) {
+            releaseDecoding();
+        }
+    }
+
+    /**
+     * 在绘制线程中调用，重新开始了就重置播放进度，暂停过就把时间轴往后推
+     */
+    private void syncProgress() {
+        final int session = mSession;
+        if (session != mRenderSession) {
+            mRenderSession = session;
+            if (mIsPrepared && !mIsPreparedShared) { //上一次播放准备好了还没画的帧
+                Utils.releaseBitmap(mPreparedBitmap);
+            }
+            mPreparedBitmap = null;
+            mIsPrepared = false;
+            mIsWaitingDecode = false;
+            mCurFrame = -1;
+            mPrevFrame = -1;
+            mStart = 0;
+            mCurRepeats = 0;
+        }
+        final long paused = mPausedDuration.getAndSet(0);
+        if (paused > 0 && mStart != 0) {
+            mStart += paused;
+        }
+    }
+
+    /**
+     * 按帧来源和播放模式准备解码：图集、动图、差量帧、缓存或者预解码
+     *
+     * @param prefetcher 上一个动画的预解码，能接着用的话就不用重新创建，用不上的话退出
+     * @param startFrame 预解码从这一帧开始
+     */
+    private void setUpDecoding(FramePrefetcher prefetcher, int startFrame) {
+        final FrameManifest manifest = mFrameDrawables instanceof ManifestFrameList
+                ? ((ManifestFrameList) mFrameDrawables).getManifest() : null;
+        mSpriteFrames = null;
+        mKeyFrames = null;
+        mPacer.reset();
+        if (null != mSpriteSheetSource) {
+            final SpriteSheet spriteSheet = mSpriteSheetSource.getSpriteSheet();
+            mSpriteFrames = new int[mFrameDrawables.size()];
+            for (int i = 0; i < mSpriteFrames.length; i++) {
+                if (null != manifest) {
+                    mSpriteFrames[i] = spriteSheet.indexOf(manifest.getName(i));
+                    continue;
                 }
+                final FrameDrawable frameDrawable = mFrameDrawables.get(i);
+                mSpriteFrames[i] = null != frameDrawable ? spriteSheet.indexOf(frameDrawable.getDrawableResPath()) : -1;
+            }
+        } else if (mFrameSource instanceof AnimatedImageSource) { //动图的帧要按顺序合成，不预解码也不缓存
+            mSequentialDecoder = new AnimatedFrameDecoder((AnimatedImageSource) mFrameSource, mFrameDrawables,
+                    getStatsRecorder());
+            mKeyFrames = mSequentialDecoder.getKeyFrames();
+        } else if (PatchFrameDecoder.isNeeded(mFrameSource)) { //差量帧只能按顺序叠加，不预解码也不缓存
+            mSequentialDecoder = new PatchFrameDecoder((PackFrameSource) mFrameSource, mFrameDrawables, mBitmapConfig,
+                    getStatsRecorder());
+            mKeyFrames = mSequentialDecoder.getKeyFrames();
+        } else if (mPlaybackMode == PLAYBACK_MODE_CACHE) {
+            mCacheConfig = getDecodeConfig();
+            mCacheLease = FrameCache.getDefault().newLease(mFrameSource, mCacheConfig, mFrameDrawables.size());
+        } else if (mDecodeAhead > 0) {
+            final boolean isReused = null != prefetcher;
+            if (isReused) {
+                prefetcher.reset(mFrameDrawables, mFrameSource, startFrame);
+                mPrefetcher = prefetcher;
+                prefetcher = null;
+            } else {
+                mPrefetcher = new FramePrefetcher(mFrameDrawables, mFrameSource, getDecodeConfig(), mOneShot,
+                        mDecodeAhead, mDecodeThreads, getStatsRecorder(), startFrame);
+                mPrefetcher.setOnFrameReadyListener(mOnFrameReady);
+            }
+            mPrefetcher.setPacing(mIsFrameSkipEnabled ? mPacer : null, mTimeline);
+            applyDecodeSettings(false);
+            if (!isReused) {
+                mPrefetcher.start();
             }
         }
-        if (mDuration == 0) {
-            callOnFrameEnd();
-            return;
+        if (null != prefetcher) {
+            prefetcher.quit();
+        }
+    }
+
+    /**
+     * 正在播放的动画预加载了前几帧的话，预解码从预加载的后面开始
+     */
+    private int getPreloadedFrameCount() {
+        final FramePreload preload = mActivePreload;
+        return null != preload ? preload.getFrameCount() : 0;
+    }
+
+    /**
+     * 释放预解码、差量帧或者动图的解码器、缓存和预加载的帧
+     */
+    private void releaseDecoding() {
+        if (null != mPrefetcher) {
+            mPrefetcher.quit();
+            mPrefetcher = null;
+        }
+        if (null != mSequentialDecoder) {
+            mSequentialDecoder.release();
+            mSequentialDecoder = null;
         }
-        super.startUpdate();
+        if (null != mCacheLease) { //缓存的帧没人用了才会被淘汰，绘制线程还在画也没关系
+            mCacheLease.close();
+            mCacheLease = null;
+        }
+        if (null != mActivePreload) {
+            mActivePreload.cancel();
+            mActivePreload = null;
+        }
+    }
+
+    /**
+     * @param frameDrawables 按描述文件生成的话直接用描述文件中的时长
+     * @param duration
+     * @return
+     * @throws IllegalArgumentException 没有帧或者所有帧的时长都是0
+     */
+    private static FrameTimeline createTimeline(List<FrameDrawable> frameDrawables, long duration) {
+        if (frameDrawables instanceof ManifestFrameList) {
+            return ((ManifestFrameList) frameDrawables).getManifest().createTimeline(duration);
+        }
+        final long[] frameDurations = new long[frameDrawables.size()];
+        for (int i = 0; i < frameDurations.length; i++) {
+            final FrameDrawable frameDrawable = frameDrawables.get(i);
+            if (null != frameDrawable) {
+                frameDurations[i] = frameDrawable.mDuration;
+            }
+        }
+        return new FrameTimeline(frameDurations, duration);
+    }
+
+    /**
+     * 在绘制线程中换成下一个动画，不停止绘制任务，预解码接着用
+     *
+     * @param pending
+     */
+    private void switchAnimation(PendingSwitch pending) {
+        synchronized (mDecodeLock) {
+            if (!isRunning()) { //已经停止了
+                pending.preload.cancel();
+                return;
+            }
+            final FramePrefetcher prefetcher = mPrefetcher;
+            mPrefetcher = null;
+            releaseDecoding();
+            mFrameSource = pending.preload.getFrameSource();
+            mFrameDrawables = pending.preload.getFrameDrawables();
+            mTimeline = pending.timeline;
+            mActivePreload = null == mSpriteSheetSource ? pending.preload : null;
+            if (null == mActivePreload) {
+                pending.preload.cancel();
+            }
+            setUpDecoding(prefetcher, getPreloadedFrameCount());
+        }
+        if (mIsAnimating.compareAndSet(true, false)) {
+            post(new Runnable() {
+                @Override
+                public void run() {
+                    callOnFrameEnd();
+                }
+            });
+        }
+        mCurFrame = -1;
+        mPrevFrame = -1;
+        mStart = 0;
+        mCurRepeats = 0;
     }
 
+    /**
+     * 有没有要马上换过去的动画
+     *
+     * @param timeline 当前的时间轴
+     * @param curTime
+     * @return
+     */
+    private PendingSwitch takePendingSwitch(FrameTimeline timeline, long curTime) {
+        final PendingSwitch pending = mPendingSwitch.get();
+        if (null == pending) {
+            return null;
+        }
+        if (pending.afterCurrent && !isCurrentFinished(timeline, curTime)) {
+            return null;
+        }
+        return mPendingSwitch.compareAndSet(pending, null) ? pending : null;
+    }
+
+    /**
+     * 当前的动画是否播放完了，循环播放的话是否播放完了一轮
+     */
+    private boolean isCurrentFinished(FrameTimeline timeline, long curTime) {
+        return mStart != 0 && curTime - mStart >= timeline.getDuration();
+    }
+
+    /**
+     * 播放进度由绘制线程下一次开始的时候重置，这里只释放解码用到的东西
+     */
     @Override
-    protected void stopUpdate() {
-        if (mIsAnimating.get()) {
-            mIsAnimating.set(false);
+    protected void onStopUpdate() {
+        MemoryGovernor.getDefault().unregister(this);
+        if (mIsVsyncEnabled) {
+            VsyncClock.getInstance().stop();
+        }
+        synchronized (mDecodeLock) {
+            releaseDecoding();
+        }
+        final PendingSwitch pending = mPendingSwitch.getAndSet(null);
+        if (null != pending) {
+            pending.preload.cancel();
+        }
+        if (null != mPreload) {
+            mPreload.cancel();
+            mPreload = null;
+        }
+    }
+
+    @Override
+    protected void onUpdateStopped() {
+        if (mIsAnimating.getAndSet(false)) { //都停止了再回调，回调中可以重新开始
             callOnFrameEnd();
         }
-        mCurFrame = -1;
-        super.stopUpdate();
     }
 
     /**
-     * 绘制的逻辑
+     * 在lockCanvas之前根据时间轴选出要绘制的帧并且解码好，
+     * 还是同一帧或者预解码还没解码好就不锁画布
      *
-     * @param canvas
+     * @return
      */
     @Override
-    protected void drawFrame(Canvas canvas) {
-        final int numFrames = mFrameDrawables.size();
-        final int lastFrame = numFrames - 1;
+    protected boolean prepareFrame() {
+        syncProgress();
+        if (mIsPrepared) {
+            return true;
+        }
+        mPrepareStartTime = System.nanoTime();
+        mPreparedDecodeTime = 0;
+        FrameTimeline timeline = mTimeline;
+        if (null == timeline) {
+            return false;
+        }
         final long curTime = SystemClock.uptimeMillis();
-        if (mStart != 0
-                && curTime - mStart >= mDuration) {
-            if (mOneShot
-                    && mIsAnimating.get()) {
-                mIsAnimating.set(false);
-                post(new Runnable() {
-                    @Override
-                    public void run() {
-                        callOnFrameEnd();
+        final PendingSwitch pending = takePendingSwitch(timeline, curTime);
+        if (null != pending) {
+            switchAnimation(pending);
+            timeline = mTimeline;
+        }
+        int nextFrame = nextFrameIndex(timeline, curTime);
+        final FramePrefetcher prefetcher = mPrefetcher;
+        final boolean isFrameSkipping = mIsFrameSkipEnabled && mStart != 0;
+        if (isFrameSkipping) { //准备好的时候应该显示哪一帧，预解码的帧不用算解码的耗时
+            final long leadTime = mPacer.getDrawCost() + (null != prefetcher ? 0 : mPacer.getDecodeCost());
+            nextFrame = FramePacer.selectFrame(timeline, curTime - mStart, !mOneShot, leadTime, mKeyFrames, mCurFrame);
+        }
+        mIsWaitingDecode = false;
+        if (nextFrame == mCurFrame) { //这一帧已经画过了
+            return false;
+        }
+        final Bitmap preloaded = takePreloaded(nextFrame);
+        if (null != preloaded) { //预解码好的前几帧
+            mPreparedBitmap = preloaded;
+            mIsPreparedShared = false;
+        } else if (null != prefetcher) {
+            mIsWaitingDecode = true; //先标记再检查，检查之后才解码好的帧也会唤醒绘制任务
+            if (isFrameSkipping) { //预解码也在跳帧，取缓冲区中现在可以显示的最后一帧
+                final long seekTime = curTime - mStart + mPacer.getDecodeCost() + mPacer.getDrawCost();
+                final int readyFrame = prefetcher.pollReady(mCurFrame, nextFrame,
+                        FramePacer.selectFrame(timeline, seekTime, !mOneShot, 0, null, mCurFrame));
+                if (readyFrame < 0) {
+                    return false;
+                }
+                nextFrame = readyFrame;
+            } else if (!prefetcher.isReady(nextFrame)) {
+                return false;
+            }
+            mIsWaitingDecode = false;
+            mPreparedBitmap = prefetcher.take();
+            mIsPreparedShared = false;
+        } else {
+            final FrameDrawable frameDrawable = mFrameDrawables.get(nextFrame);
+            mPreparedBitmap = null;
+            mIsPreparedShared = false;
+            final int[] spriteFrames = mSpriteFrames;
+            if (null != spriteFrames) {
+                mPreparedBitmap = getSpritePage(spriteFrames[nextFrame], frameDrawable);
+                mIsPreparedShared = true;
+            } else if (null != mSequentialDecoder) {
+                final long decodeStart = System.nanoTime();
+                //UI线程停止或者挂起的时候会release，不能和解码同时进行
+                synchronized (mDecodeLock) {
+                    final SequentialFrameDecoder sequentialDecoder = mSequentialDecoder;
+                    if (null != sequentialDecoder) {
+                        mPreparedBitmap = sequentialDecoder.decode(nextFrame);
                     }
-                });
-                mStart = 0;
-                mCurRepeats = 0;
+                }
+                mPreparedDecodeTime = System.nanoTime() - decodeStart;
+                mIsPreparedShared = true;
+            } else if (null != frameDrawable) {
+                final int surfaceWidth = getDecodeWidth();
+                final int surfaceHeight = getDecodeHeight();
+                final FrameCache.Lease cacheLease = mCacheLease;
+                if (null != cacheLease) {
+                    mPreparedBitmap = cacheLease.get(nextFrame, frameDrawable, surfaceWidth, surfaceHeight);
+                }
+                mIsPreparedShared = null != mPreparedBitmap;
+                if (null == mPreparedBitmap) {
+                    final long decodeStart = System.nanoTime();
+                    mPreparedBitmap = frameDrawable.decodeBitmap(mFrameSource, surfaceWidth, surfaceHeight, getDecodeConfig(),
+                            getStatsRecorder());
+                    mPreparedDecodeTime = System.nanoTime() - decodeStart;
+                    if (null != cacheLease) {
+                        final Bitmap cached = cacheLease.offer(nextFrame, mPreparedBitmap);
+                        if (null != cached) { //放不下的话这一帧还是绘制完就归还
+                            mPreparedBitmap = cached;
+                            mIsPreparedShared = true;
+                        }
+                    }
+                }
             }
         }
-        int nextFrame = mCurFrame + 1;
-        if (mOneShot && nextFrame > lastFrame) {
-            nextFrame = lastFrame;
+        mPrevFrame = mCurFrame;
+        onFrameSelected(nextFrame, curTime);
+        mPreparedDueTime = getFrameDueTime(timeline, nextFrame, curTime);
+        mPreparedDroppedFrames = getDroppedFrames(timeline, mPrevFrame, nextFrame);
+        mIsPrepared = true;
+        return true;
+    }
+
+    @Override
+    protected void onFramePosted() {
+        if (!mIsPrepared) return;
+        mIsPrepared = false;
+        final long postedTime = SystemClock.uptimeMillis();
+        getStatsRecorder().recordFrame((postedTime - mPreparedDueTime) * 1000, mPreparedDroppedFrames);
+        if (mPreparedDecodeTime > 0) {
+            mPacer.recordDecode(mPreparedDecodeTime);
+        }
+        mPacer.recordDraw(System.nanoTime() - mPrepareStartTime - mPreparedDecodeTime);
+        mPacer.recordFrame(postedTime);
+        //已经绘制到surface上了，可以给后面的帧复用了；缓存的帧还要接着用
+        if (!mIsPreparedShared) {
+            Utils.releaseBitmap(mPreparedBitmap);
         }
-        if (!mOneShot && nextFrame >= numFrames) {
-            nextFrame = lastFrame;
-            if (mStart != 0
-                    && curTime - mStart >= mDuration) {
-                nextFrame = 0;
-            }
+        mPreparedBitmap = null;
+    }
+
+    /**
+     * 取出预解码好的帧，前几帧都取过之后就不再需要预解码了
+     */
+    private Bitmap takePreloaded(int frame) {
+        final FramePreload preload = mActivePreload;
+        if (null == preload || null != mSpriteFrames || null != mSequentialDecoder) {
+            return null;
+        }
+        if (frame >= preload.getFrameCount()) {
+            mActivePreload = null;
+            preload.cancel();
+            return null;
+        }
+        return preload.take(frame, getDecodeWidth(), getDecodeHeight());
+    }
+
+    /**
+     * 这一帧在时间轴上应该开始显示的时间
+     */
+    private long getFrameDueTime(FrameTimeline timeline, int frame, long curTime) {
+        final long elapsed = curTime - mStart;
+        final long loops = mOneShot ? 0 : timeline.getLoopCount(elapsed);
+        return mStart + loops * timeline.getDuration() + timeline.getFrameStart(frame);
+    }
+
+    /**
+     * 上一次绘制的帧和这一帧之间跳过了几帧，循环的时候跨过了一轮的也只算这一轮
+     */
+    private static int getDroppedFrames(FrameTimeline timeline, int prevFrame, int frame) {
+        if (prevFrame < 0) {
+            return 0;
         }
-        if (nextFrame == 0) { //第一帧的时候开始记录时间
-            mIsAnimating.set(true);
+        final int frameCount = timeline.getFrameCount();
+        return (frame - prevFrame - 1 + frameCount) % frameCount;
+    }
+
+    /**
+     * 这一帧所在的图集，第一次用到的时候解码
+     *
+     * @param spriteFrame
+     * @param frameDrawable
+     * @return
+     */
+    private Bitmap getSpritePage(int spriteFrame, FrameDrawable frameDrawable) {
+        final SpriteSheetSource spriteSheetSource = mSpriteSheetSource;
+        if (spriteFrame < 0 || null == frameDrawable || null == spriteSheetSource) {
+            return null;
+        }
+        final SpriteSheet spriteSheet = spriteSheetSource.getSpriteSheet();
+        if (frameDrawable.mWidth <= 0) { //局部重绘要用原图的尺寸
+            frameDrawable.mWidth = spriteSheet.getSourceWidth(spriteFrame);
+            frameDrawable.mHeight = spriteSheet.getSourceHeight(spriteFrame);
+        }
+        return spriteSheetSource.getPage(spriteSheet.getPageIndex(spriteFrame), mBitmapConfig);
+    }
+
+    /**
+     * 只有紧接着上一帧播放、变换也一样的时候，才能只重绘变化的区域
+     *
+     * @param dirty
+     * @return
+     */
+    @Override
+    protected boolean getDirtyRect(Rect dirty) {
+        if (!mIsDirtyRenderingEnabled || !mIsPrepared || mPrevFrame < 0 || null == mPreparedBitmap) {
+            return false;
+        }
+        final int frameCount = mFrameDrawables.size();
+        if ((mPrevFrame + 1) % frameCount != mCurFrame) { //跳帧了
+            return false;
+        }
+        final FrameDrawable frameDrawable = mFrameDrawables.get(mCurFrame);
+        final FrameDrawable prevFrameDrawable = mFrameDrawables.get(mPrevFrame);
+        if (null == frameDrawable
+                || null == prevFrameDrawable
+                || !frameDrawable.hasSameTransform(prevFrameDrawable)) {
+            return false;
+        }
+        return frameDrawable.getDirtyRect(dirty, getSurfaceWidth(), getSurfaceHeight());
+    }
+
+    /**
+     * 下一帧开始的时间；等待解码的时候预解码好了会马上唤醒，不用轮询。
+     * 还没开始或者只播放一次已经播放完了就不再安排，等解码好、surface有了尺寸或者{@link #switchTo}唤醒
+     *
+     * @param lastDrawTime
+     * @return
+     */
+    @Override
+    protected long getNextDrawTime(long lastDrawTime) {
+        syncProgress();
+        final FrameTimeline timeline = mTimeline;
+        final long now = SystemClock.uptimeMillis();
+        if (null == timeline || mStart == 0) {
+            return -1;
+        }
+        final long nextFrameTime = timeline.getNextFrameTime(now - mStart, !mOneShot);
+        if (nextFrameTime < 0) { //只播放一次，已经播放完了，有下一个动画的话马上换过去
+            return null != mPendingSwitch.get() ? now : -1;
+        }
+        final long nextDrawTime = mStart + nextFrameTime;
+        return mIsVsyncEnabled ? VsyncClock.getInstance().align(nextDrawTime) : nextDrawTime;
+    }
+
+    /**
+     * 绘制的逻辑
+     *
+     * @param canvas
+     */
+    @Override
+    protected void drawFrame(Canvas canvas) {
+        if (mIsPrepared) {
+            drawNext(canvas, mCurFrame, mPreparedBitmap);
+        }
+    }
+
+    /**
+     * 根据时间轴计算下一帧，只播放一次的话播放完了就结束
+     *
+     * @param timeline
+     * @param curTime
+     * @return
+     */
+    private int nextFrameIndex(FrameTimeline timeline, long curTime) {
+        if (mStart == 0) {
+            return 0;
+        }
+        final long elapsed = curTime - mStart;
+        if (mOneShot
+                && elapsed >= timeline.getDuration()
+                && mIsAnimating.compareAndSet(true, false)) {
+            post(new Runnable() {
+                @Override
+                public void run() {
+                    callOnFrameEnd();
+                }
+            });
+        }
+        return timeline.getFrameAt(elapsed, !mOneShot);
+    }
+
+    private void onFrameSelected(int nextFrame, long curTime) {
+        if (mStart == 0) { //第一帧的时候开始记录时间
             mStart = curTime;
-            if (++mCurRepeats == 1) {//第一次播放动画的时候回调
+            //已经停止了的话不再回调开始，否则会少一次结束的回调
+            if (++mCurRepeats == 1 && getPlaybackState() == PlaybackState.STATE_RUNNING) {
+                mIsAnimating.set(true);
                 post(new Runnable() {
                     @Override
                     public void run() {
@@ -187,29 +1101,26 @@ public class FrameAnimationView extends FrameSurfaceView {
             }
         }
         mCurFrame = nextFrame;
-        drawNext(canvas, nextFrame, curTime);
     }
 
     /**
      * @param canvas
      * @param nextFrame
-     * @param start     当前帧开始绘制的时间
+     * @param frameBitmap 解码好的帧
      */
-    private void drawNext(Canvas canvas, int nextFrame, long start) {
-        long frameDuration = 0;
+    private void drawNext(Canvas canvas, int nextFrame, Bitmap frameBitmap) {
         FrameDrawable frameDrawable = mFrameDrawables.get(nextFrame);
         if (null != frameDrawable) {
-            frameDuration = frameDrawable.mDuration;
             clearCanvas(canvas);
-            frameDrawable.draw(canvas, start);
-        }
-        final long cost = SystemClock.uptimeMillis() - start;
-        Log.d(TAG, "frame cost :" + cost);
-        if (frameDuration > cost) {
-            try {
-                Thread.sleep(frameDuration - cost);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+            final int[] spriteFrames = mSpriteFrames;
+            final SpriteSheetSource spriteSheetSource = mSpriteSheetSource;
+            if (null != spriteFrames) {
+                if (spriteFrames[nextFrame] >= 0 && null != spriteSheetSource) {
+                    frameDrawable.draw(canvas, frameBitmap, spriteSheetSource.getSpriteSheet(), spriteFrames[nextFrame],
+                            mDrawSrcRect, mDrawDstRect, mDrawPaint);
+                }
+            } else {
+                frameDrawable.draw(canvas, frameBitmap, mDrawMatrix, mDrawPaint);
             }
         }
     }
@@ -0,0 +1,211 @@
+package org.limlee.hiframeanimationlib;
+
+import android.graphics.Bitmap;
+
+import org.limlee.hiframecore.QualityLadder;
+import org.limlee.hiframecore.SharedLruCache;
+
+/**
+ * 解码好的帧的缓存，所有的动画共用，总大小有上限。
+ * 同一个来源、同一个路径、同样尺寸和格式的帧只解码一次，多个视图播放同一个小动画的时候共用；
+ * 正在播放的动画用到的帧不会被淘汰，放不下的帧退回到每次都解码
+ */
+public final class FrameCache {
+    private static final long DEFAULT_MAX_BYTE_COUNT = Runtime.getRuntime().maxMemory() / 16;
+
+    private static volatile FrameCache sDefault;
+
+    private final SharedLruCache<Key, Bitmap> mCache;
+    private volatile long mMaxByteCount;
+    private int mQualityLevel = QualityLadder.LEVEL_FULL;
+
+    public static FrameCache getDefault() {
+        if (null == sDefault) {
+            synchronized (FrameCache.class) {
+                if (null == sDefault) {
+                    sDefault = new FrameCache(DEFAULT_MAX_BYTE_COUNT);
+                }
+            }
+        }
+        return sDefault;
+    }
+
+    public FrameCache(long maxByteCount) {
+        mMaxByteCount = maxByteCount;
+        mCache = new SharedLruCache<>(new SharedLruCache.Adapter<Bitmap>() {
+            @Override
+            public void onEvicted(Bitmap bitmap) {
+                //刚停止的动画的绘制线程可能还在画它，不放回复用池也不recycle，交给GC
+            }
+        }, maxByteCount);
+    }
+
+    /**
+     * 总大小的上限，内存紧张的时候实际的上限按质量级别降低，压力过去之后恢复成这里设置的值
+     */
+    public synchronized void setMaxByteCount(long maxByteCount) {
+        mMaxByteCount = maxByteCount;
+        mCache.setMaxByteCount(QualityLadder.getBudget(mQualityLevel, maxByteCount));
+    }
+
+    /**
+     * 设置的上限，不是按质量级别降低之后的
+     */
+    public long getMaxByteCount() {
+        return mMaxByteCount;
+    }
+
+    /**
+     * 内存压力变了，由{@link MemoryGovernor}调用
+     *
+     * @param level QualityLadder.LEVEL_开头的常量
+     */
+    synchronized void setQualityLevel(int level) {
+        mQualityLevel = level;
+        mCache.setMaxByteCount(QualityLadder.getBudget(level, mMaxByteCount));
+    }
+
+    /**
+     * 缓存的帧占用的总字节数
+     */
+    public long getByteCount() {
+        return mCache.getByteCount();
+    }
+
+    public long getHitCount() {
+        return mCache.getHitCount();
+    }
+
+    public long getMissCount() {
+        return mCache.getMissCount();
+    }
+
+    /**
+     * 清掉没有在播放的动画的帧
+     */
+    public void clear() {
+        mCache.clear();
+    }
+
+    /**
+     * 一次播放用到的缓存帧，播放过程中一直持有，停止播放的时候{@link #close()}才允许淘汰
+     *
+     * @param frameSource
+     * @param config      解码格式
+     * @param frameCount
+     * @return
+     */
+    Lease newLease(FrameSource frameSource, Bitmap.Config config, int frameCount) {
+        return new Lease(frameSource, config, frameCount);
+    }
+
+    final class Lease {
+        private final FrameSource mFrameSource;
+        private final Bitmap.Config mConfig;
+        private final Key[] mKeys;
+        private final Bitmap[] mBitmaps;
+        private boolean mIsClosed;
+
+        private Lease(FrameSource frameSource, Bitmap.Config config, int frameCount) {
+            mFrameSource = frameSource;
+            mConfig = config;
+            mKeys = new Key[frameCount];
+            mBitmaps = new Bitmap[frameCount];
+        }
+
+        /**
+         * 取出缓存的帧
+         *
+         * @param frame
+         * @param frameDrawable
+         * @param surfaceWidth  和{@link FrameDrawable#decodeBitmap}的一样，不同尺寸的帧分开缓存
+         * @param surfaceHeight
+         * @return 没有缓存返回null，这时候解码之后调用{@link #offer(int, Bitmap)}
+         */
+        synchronized Bitmap get(int frame, FrameDrawable frameDrawable, int surfaceWidth, int surfaceHeight) {
+            if (null != mBitmaps[frame] || mIsClosed) {
+                return mBitmaps[frame];
+            }
+            if (null == mKeys[frame]) {
+                mKeys[frame] = new Key(mFrameSource, frameDrawable.getDrawableResPath(),
+                        (int) (surfaceWidth * frameDrawable.mScale), (int) (surfaceHeight * frameDrawable.mScale), mConfig);
+            }
+            mBitmaps[frame] = mCache.acquire(mKeys[frame]);
+            return mBitmaps[frame];
+        }
+
+        /**
+         * 把解码好的帧放入缓存
+         *
+         * @param frame
+         * @param bitmap 解码好的帧
+         * @return 缓存中的帧，可能和bitmap不是同一个（别的视图先放进去了，这时候bitmap已经归还给复用池）；
+         * 放不下返回null，bitmap还是由调用者归还
+         */
+        synchronized Bitmap offer(int frame, Bitmap bitmap) {
+            if (null == bitmap || mIsClosed || null == mKeys[frame]) {
+                return null;
+            }
+            final Bitmap cached = mCache.put(mKeys[frame], bitmap, BitmapPool.getBitmapByteCount(bitmap));
+            if (null != cached && cached != bitmap) {
+                Utils.releaseBitmap(bitmap);
+            }
+            mBitmaps[frame] = cached;
+            return cached;
+        }
+
+        /**
+         * 不再使用这些帧，之后get和offer都返回null
+         */
+        synchronized void close() {
+            if (mIsClosed) return;
+            mIsClosed = true;
+            for (int i = 0; i < mBitmaps.length; i++) {
+                if (null != mBitmaps[i]) {
+                    mCache.release(mKeys[i]);
+                    mBitmaps[i] = null;
+                }
+            }
+        }
+    }
+
+    private static final class Key {
+        private final FrameSource mFrameSource;
+        private final String mPath;
+        private final int mWidth;
+        private final int mHeight;
+        private final Bitmap.Config mConfig;
+        private final int mHashCode;
+
+        Key(FrameSource frameSource, String path, int width, int height, Bitmap.Config config) {
+            mFrameSource = frameSource;
+            mPath = path;
+            mWidth = width;
+            mHeight = height;
+            mConfig = config;
+            int hashCode = null != frameSource ? frameSource.hashCode() : 0;
+            hashCode = 31 * hashCode + (null != path ? path.hashCode() : 0);
+            hashCode = 31 * hashCode + width;
+            hashCode = 31 * hashCode + height;
+            hashCode = 31 * hashCode + (null != config ? config.hashCode() : 0);
+            mHashCode = hashCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            final Key key = (Key) o;
+            return (null != mFrameSource ? mFrameSource.equals(key.mFrameSource) : null == key.mFrameSource)
+                    && mWidth == key.mWidth
+                    && mHeight == key.mHeight
+                    && mConfig == key.mConfig
+                    && (null != mPath ? mPath.equals(key.mPath) : null == key.mPath);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+    }
+}
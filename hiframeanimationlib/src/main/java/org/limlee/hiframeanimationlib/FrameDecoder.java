@@ -0,0 +1,264 @@
+package org.limlee.hiframeanimationlib;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+
+import org.limlee.hiframecore.ByteBufferInputStream;
+import org.limlee.hiframecore.FrameReadBuffer;
+import org.limlee.hiframecore.FrameStats;
+import org.limlee.hiframecore.ImageHeader;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 每个解码线程一个，读取缓冲区、解码options和inTempStorage都是复用的；
+ * 第一次解码某一帧的时候记下它的宽高，之后就不用再解码一遍边界了，稳定之后解码一帧几乎不产生垃圾
+ */
+final class FrameDecoder {
+    private static final String TAG = FrameDecoder.class.getSimpleName();
+    private static final boolean isReusableBitmap = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+    //api19之前，inBitmap只能用在不缩放的解码上
+    private static final boolean isScalableDecode = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+
+    private static final ThreadLocal<FrameDecoder> sDecoders = new ThreadLocal<FrameDecoder>() {
+        @Override
+        protected FrameDecoder initialValue() {
+            return new FrameDecoder();
+        }
+    };
+
+    private final FrameReadBuffer mReadBuffer = new FrameReadBuffer();
+    private final BitmapFactory.Options mOptions = new BitmapFactory.Options();
+    private int mDecodeWidth; //缩放之后解码出来的尺寸
+    private int mDecodeHeight;
+
+    private FrameDecoder() {
+        mOptions.inTempStorage = new byte[16 * 1024];
+    }
+
+    /**
+     * 当前线程的解码器
+     */
+    static FrameDecoder get() {
+        return sDecoders.get();
+    }
+
+    /**
+     * 解码一帧，返回的bitmap不在复用池中
+     *
+     * @param frameSource
+     * @param path
+     * @param frameDrawable 用来缓存这一帧的宽高，可以为null
+     * @return
+     */
+    Bitmap decode(FrameSource frameSource, String path, FrameDrawable frameDrawable) {
+        return decode(frameSource, path, frameDrawable, 0, 0, Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * 解码一帧，如果帧比目标尺寸大，解码的时候就缩小到目标尺寸，绘制的时候就不用再缩放了
+     *
+     * @param frameSource
+     * @param path
+     * @param frameDrawable 用来缓存这一帧的宽高，可以为null
+     * @param targetWidth   目标宽度，小于等于0表示按原始尺寸解码
+     * @param targetHeight  目标高度
+     * @param config        解码的格式，null表示自动：没有透明的帧用RGB_565，否则用ARGB_8888
+     * @return 返回的bitmap不在复用池中
+     */
+    Bitmap decode(FrameSource frameSource, String path, FrameDrawable frameDrawable,
+                  int targetWidth, int targetHeight, Bitmap.Config config) {
+        return decode(frameSource, path, frameDrawable, targetWidth, targetHeight, config, null);
+    }
+
+    /**
+     * 同上，解码耗时、字节数和复用池有没有命中记录到stats中
+     *
+     * @param stats 可以为null
+     */
+    Bitmap decode(FrameSource frameSource, String path, FrameDrawable frameDrawable,
+                  int targetWidth, int targetHeight, Bitmap.Config config, FrameStats stats) {
+        final long startTime = null != stats ? System.nanoTime() : 0;
+        final Bitmap frameBitmap = decodeFrame(frameSource, path, frameDrawable,
+                targetWidth, targetHeight, config, stats, true);
+        if (null != stats && null != frameBitmap) {
+            stats.recordDecode(System.nanoTime() - startTime, BitmapPool.getBitmapByteCount(frameBitmap));
+        }
+        return frameBitmap;
+    }
+
+    /**
+     * 解码一帧，不复用池子里的bitmap，返回的bitmap是不可变的，也不能放回复用池，可以一直持有
+     *
+     * @param frameSource
+     * @param path
+     * @return
+     */
+    Bitmap decodeUnpooled(FrameSource frameSource, String path) {
+        return decodeFrame(frameSource, path, null, 0, 0, Bitmap.Config.ARGB_8888, null, false);
+    }
+
+    private Bitmap decodeFrame(FrameSource frameSource, String path, FrameDrawable frameDrawable,
+                               int targetWidth, int targetHeight, Bitmap.Config config, FrameStats stats,
+                               boolean isPooled) {
+        InputStream frameInputStream = null;
+        try {
+            frameInputStream = frameSource.open(path);
+            if (frameInputStream instanceof ByteBufferInputStream) { //映射到内存的帧，直接解码，不拷贝
+                return decode(frameInputStream, null, frameDrawable, targetWidth, targetHeight, config, stats,
+                        isPooled);
+            }
+            mReadBuffer.readFrom(frameInputStream);
+            return decode(null, mReadBuffer, frameDrawable, targetWidth, targetHeight, config, stats, isPooled);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            if (null != frameInputStream) {
+                try {
+                    frameInputStream.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return null;
+    }
+
+    private Bitmap decode(InputStream stream, FrameReadBuffer buffer, FrameDrawable frameDrawable,
+                          int targetWidth, int targetHeight, Bitmap.Config config,
+                          FrameStats stats, boolean isPooled) throws IOException {
+        final BitmapFactory.Options options = mOptions;
+        resetOptions(options);
+        int width;
+        int height;
+        boolean isOpaque;
+        if (null != frameDrawable && frameDrawable.mWidth > 0) { //已经知道宽高了，不用再解码边界
+            width = frameDrawable.mWidth;
+            height = frameDrawable.mHeight;
+            isOpaque = frameDrawable.mIsOpaque;
+        } else {
+            final ImageHeader header = null != buffer
+                    ? ImageHeader.probe(buffer.getBuffer(), 0, buffer.getLength())
+                    : ImageHeader.probe(((ByteBufferInputStream) stream).getBuffer());
+            if (null != header) { //认识的格式直接读文件头
+                width = header.width;
+                height = header.height;
+                isOpaque = !header.hasAlpha;
+            } else {
+                options.inJustDecodeBounds = true;
+                decodeOnce(stream, buffer, options);
+                options.inJustDecodeBounds = false;
+                width = options.outWidth;
+                height = options.outHeight;
+                isOpaque = false;
+            }
+            if (null != frameDrawable && width > 0) {
+                frameDrawable.mIsOpaque = isOpaque;
+                frameDrawable.mWidth = width;
+                frameDrawable.mHeight = height;
+            }
+        }
+        if (null == config) {
+            config = isOpaque ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+        }
+        options.inPreferredConfig = config;
+        options.inDither = config == Bitmap.Config.RGB_565;
+        if (width > 0 && height > 0) {
+            if (isScalableDecode && targetWidth > 0 && targetHeight > 0) {
+                applyScale(options, width, height, targetWidth, targetHeight);
+                width = mDecodeWidth;
+                height = mDecodeHeight;
+            }
+            if (isReusableBitmap && isPooled) {
+                options.inMutable = true;
+                options.inBitmap = BitmapPool.getDefault().acquire(options.inPreferredConfig, width, height);
+                if (null != stats) {
+                    stats.recordPoolAcquire(null != options.inBitmap);
+                }
+            }
+        }
+        try {
+            Bitmap frameBitmap;
+            try {
+                frameBitmap = decodeOnce(stream, buffer, options);
+            } catch (IllegalArgumentException e) { //inBitmap不能复用，可能帧被替换了，下次重新解码边界
+                Utils.releaseBitmap(options.inBitmap); //已经从复用池中取出来了，放回去，不然就漏出池子了
+                options.inBitmap = null;
+                if (null != frameDrawable) {
+                    frameDrawable.mWidth = 0;
+                }
+                frameBitmap = decodeOnce(stream, buffer, options);
+            }
+            if (null != frameBitmap && null != frameDrawable) {
+                frameDrawable.mConfig = frameBitmap.getConfig();
+                if (!frameBitmap.hasAlpha()) { //文件头看不出来，解码之后发现没有透明
+                    frameDrawable.mIsOpaque = true;
+                }
+            }
+            return frameBitmap;
+        } finally {
+            options.inBitmap = null;
+        }
+    }
+
+    /**
+     * 先用inSampleSize按2的幂缩小，再用inDensity/inTargetDensity缩小到目标尺寸，
+     * 宽高比一样的话解码出来的尺寸刚好是目标尺寸。只缩小不放大
+     */
+    private void applyScale(BitmapFactory.Options options, int width, int height,
+                            int targetWidth, int targetHeight) {
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= targetWidth
+                && height / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+        options.inSampleSize = sampleSize;
+        int sampledWidth = Math.max(1, width / sampleSize);
+        int sampledHeight = Math.max(1, height / sampleSize);
+        mDecodeWidth = sampledWidth;
+        mDecodeHeight = sampledHeight;
+        //哪个方向需要的缩放比例更大就按哪个方向缩放，保证两个方向都不小于目标尺寸
+        final boolean byWidth = (long) targetWidth * sampledHeight >= (long) targetHeight * sampledWidth;
+        final int density = byWidth ? sampledWidth : sampledHeight;
+        final int targetDensity = byWidth ? targetWidth : targetHeight;
+        if (targetDensity < density) {
+            options.inScaled = true;
+            options.inDensity = density;
+            options.inTargetDensity = targetDensity;
+            options.inScreenDensity = 0;
+            final float scale = (float) targetDensity / density;
+            mDecodeWidth = (int) (sampledWidth * scale + 0.5f);
+            mDecodeHeight = (int) (sampledHeight * scale + 0.5f);
+        }
+    }
+
+    private static Bitmap decodeOnce(InputStream stream, FrameReadBuffer buffer,
+                                     BitmapFactory.Options options) throws IOException {
+        if (null != buffer) {
+            return BitmapFactory.decodeByteArray(buffer.getBuffer(), 0, buffer.getLength(), options);
+        }
+        stream.mark(Integer.MAX_VALUE);
+        try {
+            return BitmapFactory.decodeStream(stream, null, options);
+        } finally {
+            stream.reset();
+        }
+    }
+
+    private static void resetOptions(BitmapFactory.Options options) {
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = 1;
+        options.inScaled = false;
+        options.inDensity = 0;
+        options.inTargetDensity = 0;
+        options.inScreenDensity = 0;
+        options.inMutable = false;
+        options.inBitmap = null;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inDither = false;
+        options.outWidth = 0;
+        options.outHeight = 0;
+    }
+}
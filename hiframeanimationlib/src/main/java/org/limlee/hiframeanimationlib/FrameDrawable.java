@@ -4,14 +4,30 @@ import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Matrix;
 import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import org.limlee.hiframecore.FrameStats;
+import org.limlee.hiframecore.SpriteSheet;
 
 
 final public class FrameDrawable {
     private static final String TAG = FrameDrawable.class.getSimpleName();
+    //过时的draw(Canvas, long)用的，每个线程一份，不用每一帧都创建
+    private static final ThreadLocal<Matrix> sLegacyMatrix = new ThreadLocal<Matrix>() {
+        @Override
+        protected Matrix initialValue() {
+            return new Matrix();
+        }
+    };
+    private static final ThreadLocal<Paint> sLegacyPaint = new ThreadLocal<Paint>() {
+        @Override
+        protected Paint initialValue() {
+            return new Paint();
+        }
+    };
 
     private String mDrawableResPath;
-    private Matrix mMatrix;
-    private Paint mPaint;
 
     float mX;
     float mY;
@@ -19,24 +35,183 @@ final public class FrameDrawable {
     float mAlpha = 1.0f;
     long mDuration; //当前帧持续显示时间
 
+    //第一次解码之后记下来，之后解码就不用再解码边界了
+    volatile int mWidth;
+    volatile int mHeight;
+    volatile Bitmap.Config mConfig;
+    volatile boolean mIsOpaque; //没有透明像素
+
+    //相对上一帧变化的区域，原图的像素坐标
+    private boolean mHasDirtyRect;
+    private int mDirtyLeft;
+    private int mDirtyTop;
+    private int mDirtyRight;
+    private int mDirtyBottom;
+
+    /**
+     * 绘制用的Matrix和Paint由视图共用，每一帧只有路径、时长和变换
+     *
+     * @param drawableResPath
+     * @param duration
+     */
     public FrameDrawable(String drawableResPath, long duration) {
         mDrawableResPath = drawableResPath;
         mDuration = duration;
-        mMatrix = new Matrix();
-        mPaint = new Paint();
     }
 
+    /**
+     * 这一帧在画布上的位置、缩放和透明度
+     *
+     * @param x     左上角的位置，单位像素
+     * @param y
+     * @param scale 在铺满画布的基础上再缩放
+     * @param alpha 0到1
+     */
+    public void setTransform(float x, float y, float scale, float alpha) {
+        mX = x;
+        mY = y;
+        mScale = scale;
+        mAlpha = alpha;
+    }
+
+    /**
+     * 这一帧相对上一帧（第一帧相对最后一帧）变化的区域，可以用hiframecore中的FrameDiff离线算出来，
+     * 序列帧包中已经带了；开启了局部重绘的话只重绘这个区域
+     *
+     * @param left   原图的像素坐标，right和bottom不包含；都是0表示和上一帧一样
+     * @param top
+     * @param right
+     * @param bottom
+     */
+    public void setDirtyRect(int left, int top, int right, int bottom) {
+        mDirtyLeft = left;
+        mDirtyTop = top;
+        mDirtyRight = right;
+        mDirtyBottom = bottom;
+        mHasDirtyRect = true;
+    }
+
+    String getDrawableResPath() {
+        return mDrawableResPath;
+    }
+
+    /**
+     * 从assets中加载并绘制当前帧，返回的bitmap不在复用池中，调用者可以一直持有
+     *
+     * @deprecated 依赖{@link HolderApplication}，FrameAnimationView会从{@link FrameSource}中加载
+     */
+    @Deprecated
     public Bitmap draw(Canvas canvas, long start) {
-        //这里是从assets中获取bitmap，当然也可以从sdcard中获取，这样就可以热更了帧动画了
         final Bitmap frameBitmap = Utils.loadBitmap(mDrawableResPath);
+        draw(canvas, frameBitmap, sLegacyMatrix.get(), sLegacyPaint.get());
+        return frameBitmap;
+    }
+
+    /**
+     * 解码当前帧，用完要归还给复用池
+     *
+     * @param frameSource
+     * @param surfaceWidth  绘制的画布尺寸，帧比它大的时候解码时就缩小，小于等于0表示不缩小
+     * @param surfaceHeight
+     * @param config        解码格式，null表示根据有没有透明自动选择
+     * @param stats         记录解码耗时，可以为null
+     * @return
+     */
+    Bitmap decodeBitmap(FrameSource frameSource, int surfaceWidth, int surfaceHeight,
+                        Bitmap.Config config, FrameStats stats) {
+        return FrameDecoder.get().decode(frameSource, mDrawableResPath, this,
+                (int) (surfaceWidth * mScale), (int) (surfaceHeight * mScale), config, stats);
+    }
+
+    /**
+     * 把变化的区域换算成画布上的区域，和{@link #draw(Canvas, Bitmap, Matrix, Paint)}的变换一致
+     *
+     * @param outRect
+     * @param canvasWidth
+     * @param canvasHeight
+     * @return 没有变化区域或者还不知道原图尺寸返回false，这时候要整帧重绘
+     */
+    boolean getDirtyRect(Rect outRect, int canvasWidth, int canvasHeight) {
+        final int width = mWidth;
+        final int height = mHeight;
+        if (!mHasDirtyRect || width <= 0 || height <= 0) {
+            return false;
+        }
+        if (mDirtyRight <= mDirtyLeft || mDirtyBottom <= mDirtyTop) {
+            outRect.setEmpty();
+            return true;
+        }
+        final float scaleX = (float) canvasWidth / width * mScale;
+        final float scaleY = (float) canvasHeight / height * mScale;
+        //多留1个像素，缩放的时候边缘会被过滤到
+        outRect.set((int) Math.floor(mX + mDirtyLeft * scaleX) - 1,
+                (int) Math.floor(mY + mDirtyTop * scaleY) - 1,
+                (int) Math.ceil(mX + mDirtyRight * scaleX) + 1,
+                (int) Math.ceil(mY + mDirtyBottom * scaleY) + 1);
+        if (!outRect.intersect(0, 0, canvasWidth, canvasHeight)) {
+            outRect.setEmpty();
+        }
+        return true;
+    }
+
+    /**
+     * 两帧的位置、缩放、透明度和尺寸都一样，局部重绘才是对的
+     */
+    boolean hasSameTransform(FrameDrawable other) {
+        return mX == other.mX
+                && mY == other.mY
+                && mScale == other.mScale
+                && mAlpha == other.mAlpha
+                && mWidth == other.mWidth
+                && mHeight == other.mHeight;
+    }
+
+    /**
+     * 绘制已经解码好的帧
+     *
+     * @param canvas
+     * @param frameBitmap
+     * @param matrix      绘制线程共用的，会被改掉
+     * @param paint
+     */
+    void draw(Canvas canvas, Bitmap frameBitmap, Matrix matrix, Paint paint) {
         if (null != frameBitmap) {
             final float scaleX = (float) canvas.getWidth() / frameBitmap.getWidth();
             final float scaleY = (float) canvas.getHeight() / frameBitmap.getHeight();
-            mMatrix.setTranslate(mX, mY);
-            mMatrix.preScale(scaleX * mScale, scaleY * mScale, 0, 0);
-            mPaint.setAlpha((int) (mAlpha * 255));
-            canvas.drawBitmap(frameBitmap, mMatrix, mPaint);
+            matrix.setTranslate(mX, mY);
+            matrix.preScale(scaleX * mScale, scaleY * mScale, 0, 0);
+            paint.setAlpha((int) (mAlpha * 255));
+            canvas.drawBitmap(frameBitmap, matrix, paint);
         }
-        return frameBitmap;
+    }
+
+    /**
+     * 从图集中画出这一帧，位置和缩放和{@link #draw(Canvas, Bitmap, Matrix, Paint)}画原图的时候一样
+     *
+     * @param canvas
+     * @param page        图集图片
+     * @param spriteSheet
+     * @param sheetFrame  这一帧在帧表中的序号
+     * @param srcRect     绘制线程共用的，会被改掉
+     * @param dstRect
+     * @param paint
+     */
+    void draw(Canvas canvas, Bitmap page, SpriteSheet spriteSheet, int sheetFrame,
+              Rect srcRect, RectF dstRect, Paint paint) {
+        final int width = spriteSheet.getWidth(sheetFrame);
+        final int height = spriteSheet.getHeight(sheetFrame);
+        if (null == page || width <= 0 || height <= 0) { //全透明的帧
+            return;
+        }
+        final int x = spriteSheet.getX(sheetFrame);
+        final int y = spriteSheet.getY(sheetFrame);
+        srcRect.set(x, y, x + width, y + height);
+        final float scaleX = (float) canvas.getWidth() / spriteSheet.getSourceWidth(sheetFrame) * mScale;
+        final float scaleY = (float) canvas.getHeight() / spriteSheet.getSourceHeight(sheetFrame) * mScale;
+        final float left = mX + spriteSheet.getOffsetX(sheetFrame) * scaleX;
+        final float top = mY + spriteSheet.getOffsetY(sheetFrame) * scaleY;
+        dstRect.set(left, top, left + width * scaleX, top + height * scaleY);
+        paint.setAlpha((int) (mAlpha * 255));
+        canvas.drawBitmap(page, srcRect, dstRect, paint);
     }
 }
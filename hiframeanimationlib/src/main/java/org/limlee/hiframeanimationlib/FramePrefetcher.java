@@ -0,0 +1,331 @@
+package org.limlee.hiframeanimationlib;
+
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+
+import org.limlee.hiframecore.FramePacer;
+import org.limlee.hiframecore.FrameStats;
+import org.limlee.hiframecore.FrameTimeline;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 预解码，提前解码后面的N帧放到环形缓冲区中，绘制线程只负责绘制。
+ * 解码在所有动画共用的{@link DecodeScheduler}中进行，这里只负责顺序：每个解码任务先按顺序在缓冲区中占好位置再解码，
+ * 解码完的帧按顺序交给绘制线程；可以有几个解码任务同时解码后面的几帧。缓冲区满了解码任务就停下，有空位了再安排。
+ * 同一时间最多有N+1张bitmap在内存中（缓冲区N张，包括正在解码的，再加上正在显示的一张）；
+ * 正在解码的帧也占着位置，seek或者清空之后作废的帧解码完之前也还占着，内存还是最多N+1张
+ */
+final class FramePrefetcher {
+    private List<FrameDrawable> mFrameDrawables; //换动画的时候会变，用this加锁
+    private FrameSource mFrameSource;
+    private FramePacer mPacer; //自适应跳帧，null表示按顺序解码每一帧；用this加锁
+    private FrameTimeline mTimeline;
+    private volatile Bitmap.Config mConfig;
+    private final boolean mOneShot;
+    private final FrameStats mStats;
+    private final FrameRingBuffer mRingBuffer;
+    private final DecodeScheduler.Task[] mDecodeTasks; //最多同时解码几帧
+    private int mNextIndex;
+    private boolean mIsQuited; //用this加锁
+    private volatile int mTargetWidth;
+    private volatile int mTargetHeight;
+    private volatile Runnable mOnFrameReady;
+
+    /**
+     * @param decodeThreads 最多同时解码几帧，不超过decodeAhead
+     * @param startFrame    从这一帧开始解码，前面的帧已经预解码好了
+     */
+    FramePrefetcher(List<FrameDrawable> frameDrawables, FrameSource frameSource, Bitmap.Config config,
+                    boolean oneShot, int decodeAhead, int decodeThreads, FrameStats stats, int startFrame) {
+        mFrameDrawables = copyOf(frameDrawables);
+        mFrameSource = frameSource;
+        mConfig = config;
+        mOneShot = oneShot;
+        mStats = stats;
+        mRingBuffer = new FrameRingBuffer(decodeAhead);
+        mNextIndex = startFrame < mFrameDrawables.size() ? startFrame : 0;
+        mDecodeTasks = new DecodeScheduler.Task[Math.max(1, Math.min(decodeThreads, decodeAhead))];
+        for (int i = 0; i < mDecodeTasks.length; i++) {
+            mDecodeTasks[i] = new DecodeScheduler.Task() {
+                @Override
+                protected long run() {
+                    return decodeNext() ? SystemClock.uptimeMillis() : -1;
+                }
+            };
+        }
+    }
+
+    /**
+     * 按描述文件生成的列表不会变，不用拷贝，拷贝的话会创建所有帧
+     */
+    private static List<FrameDrawable> copyOf(List<FrameDrawable> frameDrawables) {
+        return frameDrawables instanceof ManifestFrameList ? frameDrawables : new ArrayList<>(frameDrawables);
+    }
+
+    /**
+     * 换成另一个动画接着解码，解码任务接着用；已经解码好的帧都作废
+     *
+     * @param frameDrawables
+     * @param frameSource
+     * @param startFrame     从这一帧开始解码
+     */
+    void reset(List<FrameDrawable> frameDrawables, FrameSource frameSource, int startFrame) {
+        final List<FrameDrawable> frames = copyOf(frameDrawables);
+        synchronized (this) {
+            mFrameDrawables = frames;
+            mFrameSource = frameSource;
+            mRingBuffer.clear();
+            mNextIndex = startFrame < frames.size() ? startFrame : 0;
+        }
+        wake();
+    }
+
+    /**
+     * 自适应跳帧：按解码的速度跳过解码完了也来不及显示的帧
+     *
+     * @param pacer    null的话按顺序解码每一帧
+     * @param timeline 当前动画的时间轴
+     */
+    void setPacing(FramePacer pacer, FrameTimeline timeline) {
+        synchronized (this) {
+            mPacer = pacer;
+            mTimeline = timeline;
+        }
+    }
+
+    /**
+     * 每解码好一帧就在解码线程中调用，绘制线程等待解码的时候用它唤醒，不用轮询
+     */
+    void setOnFrameReadyListener(Runnable onFrameReady) {
+        mOnFrameReady = onFrameReady;
+    }
+
+    private void notifyFrameReady() {
+        final Runnable onFrameReady = mOnFrameReady;
+        if (null != onFrameReady) {
+            onFrameReady.run();
+        }
+    }
+
+    /**
+     * 需要的帧是否已经解码好了，如果缓冲区中没有这一帧，就从这一帧开始重新解码；
+     * 这一帧前面的帧都丢掉，这一帧还在解码的话接着等
+     */
+    boolean isReady(int frameIndex) {
+        boolean isDropped = false;
+        while (mRingBuffer.contains(frameIndex)
+                && mRingBuffer.peek(0) != frameIndex) {
+            mRingBuffer.drop();
+            isDropped = true;
+        }
+        if (isDropped) {
+            wake();
+        }
+        if (mRingBuffer.isReady(frameIndex)) {
+            return true;
+        }
+        if (!mRingBuffer.contains(frameIndex)) {
+            seek(frameIndex);
+        }
+        return false;
+    }
+
+    /**
+     * 解码的目标尺寸变了，已经解码好的帧都作废
+     *
+     * @param width
+     * @param height
+     */
+    void setTargetSize(int width, int height) {
+        synchronized (this) {
+            if (width == mTargetWidth && height == mTargetHeight) {
+                return;
+            }
+            mTargetWidth = width;
+            mTargetHeight = height;
+            mRingBuffer.clear();
+        }
+        wake();
+    }
+
+    /**
+     * 内存紧张的时候少预解码几帧
+     */
+    void setDecodeAhead(int decodeAhead) {
+        mRingBuffer.setLimit(decodeAhead);
+        wake();
+    }
+
+    /**
+     * 解码格式变了，已经解码好的帧接着用，之后的帧按新的格式解码
+     */
+    void setConfig(Bitmap.Config config) {
+        mConfig = config;
+    }
+
+    /**
+     * 自适应跳帧的时候用：缓冲区中在lastFrame之后、不晚于frameIndex的帧都可以显示，只留下最靠后的一帧；
+     * 一帧都没有并且正在解码的帧已经过时了，就从seekFrame开始重新解码
+     *
+     * @param lastFrame  上一次显示的帧
+     * @param frameIndex 现在应该显示的帧
+     * @param seekFrame  重新解码的话从哪一帧开始，一般是解码完的时候应该显示的帧
+     * @return 可以显示的帧，在队头，没有的话返回-1
+     */
+    int pollReady(int lastFrame, int frameIndex, int seekFrame) {
+        final int numFrames;
+        final int nextIndex;
+        synchronized (this) {
+            numFrames = mFrameDrawables.size();
+            nextIndex = mNextIndex;
+        }
+        final int distance = FramePacer.getDistance(lastFrame, frameIndex, numFrames);
+        boolean isDropped = false;
+        while (mRingBuffer.isFilled(1) && isDue(mRingBuffer.peek(1), lastFrame, distance, numFrames)) {
+            mRingBuffer.drop();
+            isDropped = true;
+        }
+        if (isDropped) {
+            wake();
+        }
+        final int head = mRingBuffer.peek(0);
+        if (isDue(head, lastFrame, distance, numFrames)) {
+            return mRingBuffer.isFilled(0) ? head : -1; //还在解码
+        }
+        if (head < 0 && FramePacer.getDistance(lastFrame, nextIndex, numFrames) < distance) {
+            seek(seekFrame);
+        }
+        return -1;
+    }
+
+    private static boolean isDue(int frame, int lastFrame, int distance, int numFrames) {
+        if (frame < 0) {
+            return false;
+        }
+        final int frameDistance = FramePacer.getDistance(lastFrame, frame, numFrames);
+        return frameDistance > 0 && frameDistance <= distance;
+    }
+
+    long getByteCount() {
+        return mRingBuffer.getByteCount();
+    }
+
+    /**
+     * 取出队头的帧，空出来的位置接着解码
+     */
+    Bitmap take() {
+        final Bitmap bitmap = mRingBuffer.take();
+        wake();
+        return bitmap;
+    }
+
+    private void seek(int frameIndex) {
+        synchronized (this) {
+            if (mNextIndex == frameIndex) {
+                return;
+            }
+            mRingBuffer.clear();
+            mNextIndex = frameIndex;
+        }
+        wake();
+    }
+
+    /**
+     * 开始解码
+     */
+    void start() {
+        wake();
+    }
+
+    /**
+     * 不再解码，缓冲区中的帧放回复用池；正在解码的帧解码完放不进来，由解码任务放回复用池
+     */
+    void quit() {
+        synchronized (this) {
+            mIsQuited = true;
+            mRingBuffer.clear();
+        }
+        for (DecodeScheduler.Task decodeTask : mDecodeTasks) {
+            DecodeScheduler.getInstance().cancel(decodeTask);
+        }
+    }
+
+    /**
+     * 缓冲区有了空位或者要解码的帧变了，停下的解码任务都重新安排；
+     * 正在执行的任务也要安排，它可能刚看到缓冲区满了，马上就要停下
+     */
+    private void wake() {
+        final long now = SystemClock.uptimeMillis();
+        for (DecodeScheduler.Task decodeTask : mDecodeTasks) {
+            DecodeScheduler.getInstance().schedule(decodeTask, now);
+        }
+    }
+
+    /**
+     * 解码完frameIndex之后接着解码哪一帧，在this的锁中调用
+     */
+    private int getNextIndex(FramePacer pacer, FrameTimeline timeline, int frameIndex, int numFrames) {
+        if (null != pacer && null != timeline && timeline.getFrameCount() == numFrames) {
+            return pacer.getNextDecodeFrame(timeline, frameIndex, !mOneShot, mDecodeTasks.length);
+        }
+        return mOneShot ? frameIndex + 1 : (frameIndex + 1) % numFrames;
+    }
+
+    /**
+     * 在解码线程中解码下一帧：在this的锁中取下一帧并且按顺序占好位置，然后不加锁解码；
+     * 解码的时候被seek或者清空了，占的位置就作废了，解码出来的帧放回复用池
+     *
+     * @return 还要不要接着解码，缓冲区满了或者不用再解码了返回false
+     */
+    private boolean decodeNext() {
+        final int frameIndex;
+        final long seq;
+        final FrameDrawable frameDrawable;
+        final FrameSource frameSource;
+        final FramePacer pacer;
+        synchronized (this) {
+            if (mIsQuited) {
+                return false;
+            }
+            final int numFrames = mFrameDrawables.size();
+            frameIndex = mNextIndex;
+            if (mOneShot && frameIndex >= numFrames) { //只播放一次的话，最后一帧解码完就不用再解码了，seek的时候再安排
+                return false;
+            }
+            seq = mRingBuffer.reserve(frameIndex);
+            if (seq < 0) { //满了，取走之后再安排
+                return false;
+            }
+            frameDrawable = mFrameDrawables.get(frameIndex);
+            frameSource = mFrameSource;
+            pacer = mPacer;
+            mNextIndex = getNextIndex(pacer, mTimeline, frameIndex, numFrames);
+        }
+        final Bitmap frameBitmap = decode(frameDrawable, frameSource, pacer);
+        if (mRingBuffer.fill(seq, frameBitmap)) {
+            notifyFrameReady();
+        } else { //作废了，解码完才空出位置，别的解码任务可能在等
+            Utils.releaseBitmap(frameBitmap);
+            wake();
+        }
+        return true;
+    }
+
+    /**
+     * 按当前的尺寸和格式解码一帧，每个解码线程从复用池中取自己的bitmap，用自己的FrameDecoder解码
+     */
+    private Bitmap decode(FrameDrawable frameDrawable, FrameSource frameSource, FramePacer pacer) {
+        if (null == frameDrawable) {
+            return null;
+        }
+        final long decodeStart = System.nanoTime();
+        final Bitmap frameBitmap = frameDrawable.decodeBitmap(frameSource,
+                mTargetWidth, mTargetHeight, mConfig, mStats);
+        if (null != pacer) {
+            pacer.recordDecode(System.nanoTime() - decodeStart);
+        }
+        return frameBitmap;
+    }
+}
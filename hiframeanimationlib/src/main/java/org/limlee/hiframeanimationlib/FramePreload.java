@@ -0,0 +1,201 @@
+package org.limlee.hiframeanimationlib;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.List;
+
+/**
+ * 提前解码一个动画的前几帧，开始播放之后第一帧马上就能画出来，不用等解码。
+ * 在共用的后台解码线程池{@link DecodeScheduler}中以低优先级一帧一帧地解码，不占用绘制线程，
+ * 上一个动画还在播放的时候就可以准备下一个；
+ * 同时也读好了帧的宽高，播放完的帧放回复用池之后，后面的帧解码直接复用它们。
+ * 由{@link FrameAnimationView#prepare}或者{@link FrameAnimationView#preload}创建
+ */
+public final class FramePreload {
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    public interface OnPreparedListener {
+
+        /**
+         * 前几帧都解码好了，在UI线程中回调；取消了的话不会回调
+         *
+         * @param preload
+         */
+        void onPrepared(FramePreload preload);
+    }
+
+    private final FrameSource mFrameSource;
+    private final List<FrameDrawable> mFrameDrawables;
+    private final Bitmap.Config mConfig;
+    private final int mTargetWidth;
+    private final int mTargetHeight;
+    private final Bitmap[] mBitmaps; //前几帧解码好的结果，被取走之后是null
+    private final OnPreparedListener mListener;
+    private int mNextFrame; //下一个要解码的帧
+    private volatile boolean mIsPrepared;
+    private volatile boolean mIsCancelled;
+
+    private final DecodeScheduler.Task mDecodeTask = new DecodeScheduler.Task() {
+        @Override
+        protected long run() {
+            return decodeNext() ? SystemClock.uptimeMillis() : -1;
+        }
+    };
+
+    private final Runnable mPreparedCallback = new Runnable() {
+        @Override
+        public void run() {
+            if (!mIsCancelled && null != mListener) {
+                mListener.onPrepared(FramePreload.this);
+            }
+        }
+    };
+
+    /**
+     * @param frameSource
+     * @param frameDrawables 会一直持有，不能再修改
+     * @param frameCount     解码前几帧
+     * @param config         和播放的时候一样
+     * @param targetWidth    缩放解码的尺寸，和播放的时候不一样的话预解码的帧就不用了
+     * @param targetHeight
+     * @param listener       可以为null
+     */
+    FramePreload(FrameSource frameSource, List<FrameDrawable> frameDrawables, int frameCount,
+                 Bitmap.Config config, int targetWidth, int targetHeight, OnPreparedListener listener) {
+        mFrameSource = frameSource;
+        mFrameDrawables = frameDrawables;
+        mConfig = config;
+        mTargetWidth = targetWidth;
+        mTargetHeight = targetHeight;
+        mListener = listener;
+        //差量帧和动图的帧不能单独解码
+        final int count = PatchFrameDecoder.isNeeded(frameSource) || frameSource instanceof AnimatedImageSource
+                ? 0 : frameCount;
+        mBitmaps = new Bitmap[Math.max(0, Math.min(count, frameDrawables.size()))];
+    }
+
+    void start() {
+        DecodeScheduler.getInstance().setPriority(mDecodeTask, FrameSurfaceView.PRIORITY_LOW);
+        DecodeScheduler.getInstance().schedule(mDecodeTask, SystemClock.uptimeMillis());
+    }
+
+    /**
+     * 在解码线程中解码下一帧
+     *
+     * @return 还有没有要解码的
+     */
+    private boolean decodeNext() {
+        final int frame;
+        synchronized (this) {
+            if (mIsCancelled) {
+                return false;
+            }
+            frame = mNextFrame;
+        }
+        if (frame < mBitmaps.length) {
+            final FrameDrawable frameDrawable = mFrameDrawables.get(frame);
+            final Bitmap bitmap = null != frameDrawable
+                    ? frameDrawable.decodeBitmap(mFrameSource, mTargetWidth, mTargetHeight, mConfig, null) : null;
+            synchronized (this) {
+                if (mIsCancelled) {
+                    Utils.releaseBitmap(bitmap);
+                    return false;
+                }
+                mBitmaps[frame] = bitmap;
+                mNextFrame = frame + 1;
+            }
+            if (frame + 1 < mBitmaps.length) {
+                return true;
+            }
+        }
+        mIsPrepared = true;
+        sMainHandler.post(mPreparedCallback);
+        return false;
+    }
+
+    public FrameSource getFrameSource() {
+        return mFrameSource;
+    }
+
+    public List<FrameDrawable> getFrameDrawables() {
+        return mFrameDrawables;
+    }
+
+    /**
+     * 前几帧是否都解码好了
+     */
+    public boolean isPrepared() {
+        return mIsPrepared;
+    }
+
+    public boolean isCancelled() {
+        return mIsCancelled;
+    }
+
+    /**
+     * 不用了，还没被取走的帧放回复用池
+     */
+    public void cancel() {
+        synchronized (this) {
+            if (mIsCancelled) {
+                return;
+            }
+            mIsCancelled = true;
+            for (int i = 0; i < mBitmaps.length; i++) {
+                Utils.releaseBitmap(mBitmaps[i]);
+                mBitmaps[i] = null;
+            }
+        }
+        DecodeScheduler.getInstance().cancel(mDecodeTask);
+        sMainHandler.removeCallbacks(mPreparedCallback);
+    }
+
+    /**
+     * 还没被取走的帧占用的字节数
+     */
+    synchronized long getByteCount() {
+        long byteCount = 0;
+        for (Bitmap bitmap : mBitmaps) {
+            byteCount += BitmapPool.getBitmapByteCount(bitmap);
+        }
+        return byteCount;
+    }
+
+    /**
+     * 是不是为这些帧准备的
+     */
+    boolean isFor(FrameSource frameSource, List<FrameDrawable> frameDrawables) {
+        return mFrameSource == frameSource && mFrameDrawables == frameDrawables;
+    }
+
+    /**
+     * 准备了几帧，播放的时候预解码从这一帧开始
+     */
+    int getFrameCount() {
+        return mBitmaps.length;
+    }
+
+    /**
+     * 取走预解码好的一帧，之后由调用者归还给复用池
+     *
+     * @param frame
+     * @param targetWidth  播放时缩放解码的尺寸
+     * @param targetHeight
+     * @return 没有解码好或者尺寸不一样返回null
+     */
+    synchronized Bitmap take(int frame, int targetWidth, int targetHeight) {
+        if (mIsCancelled || frame >= mBitmaps.length) {
+            return null;
+        }
+        final Bitmap bitmap = mBitmaps[frame];
+        mBitmaps[frame] = null;
+        if (targetWidth != mTargetWidth || targetHeight != mTargetHeight) {
+            Utils.releaseBitmap(bitmap);
+            return null;
+        }
+        return bitmap;
+    }
+}
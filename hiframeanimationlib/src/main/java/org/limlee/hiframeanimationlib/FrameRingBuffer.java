@@ -0,0 +1,28 @@
+package org.limlee.hiframeanimationlib;
+
+import android.graphics.Bitmap;
+
+import org.limlee.hiframecore.ReorderBuffer;
+
+/**
+ * 预解码帧的环形缓冲区，解码任务往里放，绘制线程从里面取。
+ * 占位置和按顺序交付的逻辑在{@link ReorderBuffer}中，编号是帧序号；丢弃和清空的帧放回复用池，
+ * 作废了还在解码的帧解码完放不进来，由解码任务放回复用池
+ */
+final class FrameRingBuffer extends ReorderBuffer<Bitmap> {
+    private static final Adapter<Bitmap> BITMAP_ADAPTER = new Adapter<Bitmap>() {
+        @Override
+        public long getByteCount(Bitmap bitmap) {
+            return BitmapPool.getBitmapByteCount(bitmap);
+        }
+
+        @Override
+        public void onDropped(Bitmap bitmap) {
+            Utils.releaseBitmap(bitmap);
+        }
+    };
+
+    FrameRingBuffer(int capacity) {
+        super(BITMAP_ADAPTER, capacity);
+    }
+}
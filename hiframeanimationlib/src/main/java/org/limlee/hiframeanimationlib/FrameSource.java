@@ -0,0 +1,21 @@
+package org.limlee.hiframeanimationlib;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 序列帧图片的来源，可以是assets、sdcard上的目录或者一个压缩包，
+ * 这样下载下来的帧动画也可以直接播放
+ */
+public interface FrameSource extends Closeable {
+
+    /**
+     * 打开一帧图片
+     *
+     * @param path 帧图片的路径，相对于这个来源
+     * @return 调用者负责关闭
+     * @throws IOException
+     */
+    InputStream open(String path) throws IOException;
+}
@@ -1,39 +1,124 @@
 package org.limlee.hiframeanimationlib;
 
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.Paint;
 import android.graphics.PixelFormat;
 import android.graphics.PorterDuff;
-import android.graphics.PorterDuffXfermode;
-import android.graphics.RectF;
+import android.graphics.Rect;
+import android.os.Build;
 import android.os.SystemClock;
 import android.util.AttributeSet;
+import android.util.Log;
+import android.view.Surface;
 import android.view.SurfaceHolder;
 import android.view.SurfaceView;
+import android.view.View;
+
+import org.limlee.hiframecore.FramePresenter;
+import org.limlee.hiframecore.FrameRenderer;
+import org.limlee.hiframecore.FrameStats;
+import org.limlee.hiframecore.PlaybackState;
+import org.limlee.hiframecore.QualityLadder;
+
+import java.util.concurrent.atomic.AtomicInteger;
 
 abstract class FrameSurfaceView extends SurfaceView {
     private static final String TAG = FrameSurfaceView.class.getSimpleName();
+    public static final int PRIORITY_LOW = -10;
+    public static final int PRIORITY_NORMAL = 0;
+    public static final int PRIORITY_HIGH = 10;
+    /**
+     * 软件画布，CPU缩放和混合，支持局部重绘
+     */
+    public static final int RENDER_MODE_SOFTWARE = 0;
+    /**
+     * 硬件加速画布（api 23及以上），缩放和透明度交给GPU，每一帧都整帧重绘；低版本上还是用软件画布
+     */
+    public static final int RENDER_MODE_HARDWARE = 1;
+    /**
+     * 挂起的原因，见{@link #getSuspendReasons()}：调用了{@link #pause()}
+     */
+    public static final int SUSPEND_PAUSED = 1;
+    /**
+     * 自己、父视图或者窗口不可见
+     */
+    public static final int SUSPEND_HIDDEN = 1 << 1;
+    /**
+     * 不在窗口上，挂起的时候总是释放解码用到的内存
+     */
+    public static final int SUSPEND_DETACHED = 1 << 2;
+    /**
+     * surface还没创建或者已经销毁了
+     */
+    public static final int SUSPEND_NO_SURFACE = 1 << 3;
+    /**
+     * 内存严重不足，低优先级（小于{@link #PRIORITY_NORMAL}）的动画暂停，见{@link MemoryGovernor}
+     */
+    public static final int SUSPEND_MEMORY = 1 << 4;
     private static final int MIN_UPDATE_RATE = 16;
-    private static RectF RECT = new RectF();
-    private static Paint PAINT = new Paint();
 
     private int mFrameUpdateRate = MIN_UPDATE_RATE;
     private volatile boolean mIsSurfaceCreated;
+    private volatile int mRenderMode = RENDER_MODE_SOFTWARE;
+    //surface创建的时候按mRenderMode选定，同一个surface不能混用软件和硬件画布
+    private volatile FrameRenderer<Canvas> mRenderer = new SoftwareRenderer();
+    private final Rect mDirtyRect = new Rect();
+    private final FrameStats mFrameStats = new FrameStats();
+    private final FramePresenter<Canvas> mPresenter = new FramePresenter<>(new FramePresenter.Callback<Canvas>() {
+        @Override
+        public boolean prepareFrame() {
+            return FrameSurfaceView.this.prepareFrame();
+        }
+
+        @Override
+        public boolean getDirtyRect(int[] dirty) {
+            final Rect dirtyRect = mDirtyRect;
+            if (!FrameSurfaceView.this.getDirtyRect(dirtyRect)) {
+                return false;
+            }
+            dirty[0] = dirtyRect.left;
+            dirty[1] = dirtyRect.top;
+            dirty[2] = dirtyRect.right;
+            dirty[3] = dirtyRect.bottom;
+            return true;
+        }
 
-    private UpdateThread mUpdateThread;
+        @Override
+        public void drawFrame(Canvas canvas) {
+            FrameSurfaceView.this.drawFrame(canvas);
+        }
+
+        @Override
+        public void onFramePosted() {
+            FrameSurfaceView.this.onFramePosted();
+        }
+    });
 
-    private boolean mIsUpdateStarted;
+    private final RenderScheduler.Task mRenderTask = new RenderScheduler.Task() {
+
+        @Override
+        protected long run() {
+            if (mState.get() != PlaybackState.STATE_RUNNING) {
+                return -1;
+            }
+            final long drawTime = SystemClock.uptimeMillis();
+            drawSurface();
+            //按绝对时间安排下一次绘制，误差不会累积
+            return mState.get() == PlaybackState.STATE_RUNNING ? getNextDrawTime(drawTime) : -1;
+        }
+    };
+
+    private final PlaybackState mState = new PlaybackState();
+    //有任何一个原因就挂起：绘制任务取消，不会再唤醒绘制线程，恢复的时候从挂起的位置接着播放
+    private final AtomicInteger mSuspendReasons = new AtomicInteger(SUSPEND_DETACHED | SUSPEND_NO_SURFACE);
+    private volatile boolean mIsReleaseOnSuspend;
+    private volatile int mQualityLevel = QualityLadder.LEVEL_FULL;
 
     private volatile int mSurfaceWidth;
     private volatile int mSurfaceHeight;
 
-    static {
-        PAINT.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.CLEAR));
-        PAINT.setColor(Color.TRANSPARENT);
-    }
-
     /**
      * 如何绘制交给它的子类去实现
      *
@@ -41,6 +126,60 @@ abstract class FrameSurfaceView extends SurfaceView {
      */
     protected abstract void drawFrame(Canvas canvas);
 
+    /**
+     * 在lockCanvas之前调用，返回false的话这一次就不绘制了，比如帧还没有解码好
+     *
+     * @return
+     */
+    protected boolean prepareFrame() {
+        return true;
+    }
+
+    /**
+     * 在prepareFrame之后调用，返回true的话只lock并重绘dirty区域，区域外面保留上一帧的内容；
+     * dirty是空的表示和上一帧一样，不用画。
+     * 只有上一帧完整地画到了surface上才会调用
+     *
+     * @param dirty
+     * @return 默认整个surface重绘
+     */
+    protected boolean getDirtyRect(Rect dirty) {
+        return false;
+    }
+
+    /**
+     * surface的尺寸变了，在UI线程中调用
+     *
+     * @param width
+     * @param height
+     */
+    protected void onSurfaceSizeChanged(int width, int height) {
+    }
+
+    protected int getSurfaceWidth() {
+        return mSurfaceWidth;
+    }
+
+    protected int getSurfaceHeight() {
+        return mSurfaceHeight;
+    }
+
+    /**
+     * 下一次绘制的时间，默认按固定的频率绘制
+     *
+     * @param lastDrawTime 上一次开始绘制的时间
+     * @return uptimeMillis，小于0表示先不绘制，等{@link #requestDraw()}唤醒
+     */
+    protected long getNextDrawTime(long lastDrawTime) {
+        return lastDrawTime + mFrameUpdateRate;
+    }
+
+    /**
+     * unlockCanvasAndPost之后调用，这个时候上一帧已经不再需要了
+     */
+    protected void onFramePosted() {
+    }
+
     public FrameSurfaceView(Context context) {
         this(context, null);
     }
@@ -51,7 +190,9 @@ abstract class FrameSurfaceView extends SurfaceView {
     }
 
     private void init() {
+        mPresenter.setStats(mFrameStats);
         if (!isInEditMode()) {
+            MemoryGovernor.getDefault().install(getContext());
             setZOrderMediaOverlay(true);
             setZOrderOnTop(true);
         }
@@ -62,64 +203,312 @@ abstract class FrameSurfaceView extends SurfaceView {
         getHolder().addCallback(new SurfaceHolder.Callback() {
             @Override
             public void surfaceCreated(SurfaceHolder holder) {
+                mRenderer = createRenderer(mRenderMode);
                 mIsSurfaceCreated = true;
+                mPresenter.invalidate();
                 clearSurface();
+                setSuspended(SUSPEND_NO_SURFACE, false);
             }
 
             @Override
             public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
                 mIsSurfaceCreated = true;
-                mSurfaceWidth = width;
-                mSurfaceHeight = height;
+                mPresenter.invalidate();
+                if (width != mSurfaceWidth || height != mSurfaceHeight) {
+                    mSurfaceWidth = width;
+                    mSurfaceHeight = height;
+                    onSurfaceSizeChanged(width, height);
+                    requestDraw(); //没有尺寸的时候没有绘制，绘制任务可能停下来了
+                }
             }
 
             @Override
             public void surfaceDestroyed(SurfaceHolder holder) {
                 mIsSurfaceCreated = false;
+                setSuspended(SUSPEND_NO_SURFACE, true);
             }
         });
     }
 
-    public synchronized void start() {
-        startUpdate();
+    /**
+     * 绘制后端，{@link #RENDER_MODE_SOFTWARE}或者{@link #RENDER_MODE_HARDWARE}，默认是软件画布；
+     * 一个surface只能用一种画布，surface已经创建了的话下一次创建的时候才生效，最好在添加到界面之前设置。
+     * 不管用哪一种，{@link #drawFrame(Canvas)}都是一样的
+     *
+     * @param renderMode
+     */
+    public void setRenderMode(int renderMode) {
+        mRenderMode = renderMode;
     }
 
-    public synchronized void stop() {
-        stopUpdate();
+    public int getRenderMode() {
+        return mRenderMode;
     }
 
     /**
-     * 是否当前绘制线程在跑
+     * 当前surface实际在用的是不是硬件加速画布
+     *
+     * @return
+     */
+    public boolean isHardwareRendering() {
+        return mRenderer instanceof HardwareRenderer;
+    }
+
+    /**
+     * 拷贝一份播放统计的快照，不产生垃圾，可以定期调用上报
+     *
+     * @param out 调用者自己的对象，可以反复使用
+     */
+    public void getFrameStats(FrameStats out) {
+        mFrameStats.copyTo(out);
+    }
+
+    public void resetFrameStats() {
+        mFrameStats.reset();
+    }
+
+    /**
+     * 子类往里面记录解码和帧的统计
+     */
+    final FrameStats getStatsRecorder() {
+        return mFrameStats;
+    }
+
+    private FrameRenderer<Canvas> createRenderer(int renderMode) {
+        if (renderMode == RENDER_MODE_HARDWARE
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            return new HardwareRenderer(getHolder().getSurface());
+        }
+        return new SoftwareRenderer();
+    }
+
+    /**
+     * 开始播放，已经开始了或者正在停止的话什么都不做；不加锁，可以在任何线程调用。
+     * 暂停中调用的话和{@link #resume()}一样，从暂停的位置接着播放，要从头播放的话先{@link #stop()}
+     */
+    public void start() {
+        setSuspended(SUSPEND_PAUSED, false); //暂停中的话接着播放；没开始的时候调用过pause的话也能开始
+        if (!mState.begin()) {
+            return;
+        }
+        if (!onStartUpdate()) {
+            mState.abort();
+            onStartFailed();
+            return;
+        }
+        if (mState.prepared()) {
+            if (mSuspendReasons.get() != 0 && mState.pause()) { //挂起中，先不绘制
+                onPauseUpdate();
+                updateSuspended();
+            } else {
+                RenderScheduler.getInstance().schedule(mRenderTask, SystemClock.uptimeMillis());
+            }
+        } else { //准备的时候被别的线程停止了，准备好的由这里释放
+            onStopUpdate();
+            mState.stopped();
+            onUpdateStopped();
+        }
+    }
+
+    /**
+     * 停止播放，不会等待绘制线程，绘制线程画完这一帧就不再画了
+     */
+    public void stop() {
+        final int state = mState.stop();
+        if (state == PlaybackState.STATE_IDLE) {
+            return;
+        }
+        RenderScheduler.getInstance().cancel(mRenderTask);
+        if (state != PlaybackState.STATE_PREPARING) {
+            onStopUpdate();
+            mState.stopped();
+            onUpdateStopped();
+        }
+    }
+
+    /**
+     * 暂停，解码好的帧、预解码和缓存都保留，{@link #resume()}之后从暂停的位置接着播放
+     */
+    public void pause() {
+        setSuspended(SUSPEND_PAUSED, true);
+    }
+
+    /**
+     * 继续播放，不可见或者不在窗口上的话等到可见了才继续
+     */
+    public void resume() {
+        setSuspended(SUSPEND_PAUSED, false);
+    }
+
+    /**
+     * 因为不可见或者surface销毁而挂起的时候，是否释放预解码的帧、缓存和预加载的帧，它们的bitmap都放回复用池；
+     * 默认不释放，恢复的时候不用重新解码。不在窗口上的时候总是释放
+     *
+     * @param releaseOnSuspend
+     */
+    public void setReleaseOnSuspend(boolean releaseOnSuspend) {
+        mIsReleaseOnSuspend = releaseOnSuspend;
+        updateSuspended();
+    }
+
+    /**
+     * @return SUSPEND_开头的常量的组合，0表示没有挂起
+     */
+    public int getSuspendReasons() {
+        return mSuspendReasons.get();
+    }
+
+    private void setSuspended(int reason, boolean suspended) {
+        while (true) {
+            final int reasons = mSuspendReasons.get();
+            final int newReasons = suspended ? reasons | reason : reasons & ~reason;
+            if (reasons == newReasons || mSuspendReasons.compareAndSet(reasons, newReasons)) {
+                break;
+            }
+        }
+        updateSuspended();
+    }
+
+    /**
+     * 按挂起的原因暂停或者继续，可以重复调用，最后总会和原因一致。
+     * 读原因和切换状态之间别的线程可能改了原因（它的切换因为状态还没变而失败了），
+     * 所以切换之后再读一次，不一致的话再切换一次
+     */
+    private void updateSuspended() {
+        while (true) {
+            final int reasons = mSuspendReasons.get();
+            if (reasons == 0) {
+                if (!mState.resume()) {
+                    return;
+                }
+                onResumeUpdate();
+                RenderScheduler.getInstance().schedule(mRenderTask, SystemClock.uptimeMillis());
+                if (mSuspendReasons.get() == 0) {
+                    return;
+                }
+                continue; //继续的时候又挂起了，再暂停
+            }
+            if (mState.pause()) {
+                RenderScheduler.getInstance().cancel(mRenderTask);
+                onPauseUpdate();
+            }
+            final boolean releaseNeeded = (reasons & (SUSPEND_DETACHED | SUSPEND_MEMORY)) != 0
+                    || (mIsReleaseOnSuspend && (reasons & (SUSPEND_HIDDEN | SUSPEND_NO_SURFACE)) != 0);
+            if (releaseNeeded && mState.get() == PlaybackState.STATE_PAUSED) {
+                onReleaseResources();
+            }
+            if (mSuspendReasons.get() != 0 || mState.get() != PlaybackState.STATE_PAUSED) {
+                return;
+            }
+            //暂停的时候原因都清掉了，再继续
+        }
+    }
+
+    /**
+     * 内存压力变了，或者开始播放注册的时候，由{@link MemoryGovernor}调用
+     *
+     * @param level QualityLadder.LEVEL_开头的常量
+     */
+    void setQualityLevel(int level) {
+        mQualityLevel = level;
+        setSuspended(SUSPEND_MEMORY, QualityLadder.isLowPriorityPaused(level) && getRenderPriority() < PRIORITY_NORMAL);
+        onQualityLevelChanged(level);
+    }
+
+    /**
+     * 当前的质量级别，QualityLadder.LEVEL_开头的常量
+     */
+    public int getQualityLevel() {
+        return mQualityLevel;
+    }
+
+    /**
+     * 质量级别变了，在UI线程中调用
+     */
+    protected void onQualityLevelChanged(int level) {
+    }
+
+    /**
+     * 可见性在UI线程中判断，绘制线程不再调用isShown
+     */
+    private void updateVisibility() {
+        if (null == mSuspendReasons) { //在父类的构造函数中就可能回调
+            return;
+        }
+        setSuspended(SUSPEND_HIDDEN, !isShown() || getWindowVisibility() != View.VISIBLE);
+    }
+
+    @Override
+    protected void onVisibilityChanged(View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        updateVisibility();
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        updateVisibility();
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        setSuspended(SUSPEND_DETACHED, false);
+        updateVisibility();
+    }
+
+    /**
+     * 是否开始了，暂停和挂起中也算
      *
      * @return
      */
     public boolean isRunning() {
-        return mIsUpdateStarted;
+        return mState.isActive();
+    }
+
+    /**
+     * 暂停或者挂起了
+     */
+    public boolean isPaused() {
+        return mState.get() == PlaybackState.STATE_PAUSED;
     }
 
+    /**
+     * @return {@link PlaybackState}中STATE_开头的常量
+     */
+    public int getPlaybackState() {
+        return mState.get();
+    }
+
+    /**
+     * 离开窗口的时候挂起并且释放解码用到的内存，回到窗口上之后接着播放；不再播放的话要调用{@link #stop()}
+     */
     @Override
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
-        stopUpdate();
+        setSuspended(SUSPEND_DETACHED, true);
     }
 
     final protected void clearSurface() {
         if (mIsSurfaceCreated) {
-            Canvas canvas = getHolder().lockCanvas();
+            mPresenter.invalidate();
+            final FrameRenderer<Canvas> renderer = mRenderer;
+            Canvas canvas = renderer.lockCanvas(null);
             if (null != canvas) {
                 clearCanvas(canvas);
-                if (mIsSurfaceCreated) {
-                    getHolder().unlockCanvasAndPost(canvas);
-                }
+                renderer.unlockCanvasAndPost(canvas);
             }
         }
     }
 
+    /**
+     * 清空画布，局部重绘的时候只清空lock的区域
+     *
+     * @param canvas
+     */
     final protected void clearCanvas(Canvas canvas) {
         canvas.drawColor(Color.TRANSPARENT,
                 PorterDuff.Mode.CLEAR);
-        RECT.set(0, 0, canvas.getWidth(), canvas.getHeight());
-        canvas.drawRect(RECT, PAINT);
     }
 
     final protected long drawSurface() {
@@ -130,57 +519,154 @@ abstract class FrameSurfaceView extends SurfaceView {
                 || mSurfaceHeight == 0) {
             return 0;
         }
-        if (!isShown()) {
-            clearSurface();
-            return 0;
-        }
         final long startTime = SystemClock.uptimeMillis();
-        if (mIsSurfaceCreated) {
-            Canvas canvas = getHolder().lockCanvas();
-            if (null != canvas) {
-                drawFrame(canvas);
-                if (mIsSurfaceCreated) {
-                    getHolder().unlockCanvasAndPost(canvas);
-                }
-            }
-        }
+        mPresenter.present(mRenderer);
         return SystemClock.uptimeMillis() - startTime;
     }
 
-    protected void stopUpdate() {
-        mIsUpdateStarted = false;
-        if (null != mUpdateThread) {
-            UpdateThread updateThread = mUpdateThread;
-            mUpdateThread = null;
-            updateThread.quit();
-            updateThread.interrupt();
+    /**
+     * SurfaceHolder.lockCanvas的软件画布
+     */
+    private final class SoftwareRenderer implements FrameRenderer<Canvas> {
+        private final Rect mLockRect = new Rect();
+
+        @Override
+        public Canvas lockCanvas(int[] dirty) {
+            if (!mIsSurfaceCreated) {
+                return null;
+            }
+            if (null == dirty) {
+                return getHolder().lockCanvas();
+            }
+            final Rect lockRect = mLockRect;
+            lockRect.set(dirty[0], dirty[1], dirty[2], dirty[3]);
+            final Canvas canvas = getHolder().lockCanvas(lockRect);
+            //lock的时候dirty可能会被扩大
+            dirty[0] = lockRect.left;
+            dirty[1] = lockRect.top;
+            dirty[2] = lockRect.right;
+            dirty[3] = lockRect.bottom;
+            return canvas;
+        }
+
+        @Override
+        public boolean unlockCanvasAndPost(Canvas canvas) {
+            if (!mIsSurfaceCreated) {
+                return false;
+            }
+            getHolder().unlockCanvasAndPost(canvas);
+            return true;
+        }
+
+        @Override
+        public boolean isDirtyRectSupported() {
+            return true;
         }
     }
 
-    protected void startUpdate() {
-        if (mIsUpdateStarted) return;
-        mUpdateThread = new UpdateThread("Animator Update Thread") {
+    /**
+     * Surface.lockHardwareCanvas的硬件加速画布，每次锁住的都是整个surface，内容不保留
+     */
+    @TargetApi(Build.VERSION_CODES.M)
+    private final class HardwareRenderer implements FrameRenderer<Canvas> {
+        private final Surface mSurface;
 
-            @Override
-            public void run() {
-                try {
-                    while (!isQuited()
-                            && !Thread.currentThread().isInterrupted()) {
-                        long drawTime = drawSurface();
-                        long diffTime = mFrameUpdateRate - drawTime;
-                        if (isQuited()) {
-                            break;
-                        }
-                        if (diffTime > 0) {
-                            SystemClock.sleep(diffTime);
-                        }
-                    }
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
+        HardwareRenderer(Surface surface) {
+            mSurface = surface;
+        }
+
+        @Override
+        public Canvas lockCanvas(int[] dirty) {
+            if (!mIsSurfaceCreated || !mSurface.isValid()) {
+                return null;
+            }
+            try {
+                return mSurface.lockHardwareCanvas();
+            } catch (IllegalStateException e) { //surface刚好被销毁了
+                Log.w(TAG, "lockHardwareCanvas failed", e);
+                return null;
+            }
+        }
+
+        @Override
+        public boolean unlockCanvasAndPost(Canvas canvas) {
+            if (!mIsSurfaceCreated) {
+                return false;
             }
-        };
-        mIsUpdateStarted = true;
-        mUpdateThread.start();
+            mSurface.unlockCanvasAndPost(canvas);
+            return true;
+        }
+
+        @Override
+        public boolean isDirtyRectSupported() {
+            return false;
+        }
+    }
+
+    /**
+     * 绘制的优先级，多个动画同时播放、绘制线程忙不过来的时候，优先级高的先画
+     *
+     * @param priority {@link #PRIORITY_LOW}、{@link #PRIORITY_NORMAL}、{@link #PRIORITY_HIGH}或者其他整数
+     */
+    public void setRenderPriority(int priority) {
+        RenderScheduler.getInstance().setPriority(mRenderTask, priority);
+    }
+
+    public int getRenderPriority() {
+        return mRenderTask.getPriority();
+    }
+
+    /**
+     * 马上绘制一次，不用等到下一帧的时间；没有在播放的话什么都不做
+     */
+    final protected void requestDraw() {
+        if (mState.get() == PlaybackState.STATE_RUNNING) {
+            RenderScheduler.getInstance().schedule(mRenderTask, SystemClock.uptimeMillis());
+        }
+    }
+
+    /**
+     * 开始之前准备，这个时候是PREPARING状态，绘制任务还没开始
+     *
+     * @return false表示不能播放
+     */
+    protected boolean onStartUpdate() {
+        return true;
+    }
+
+    /**
+     * onStartUpdate返回false之后调用，这个时候已经回到IDLE状态了
+     */
+    protected void onStartFailed() {
+    }
+
+    /**
+     * 释放onStartUpdate准备的东西，绘制任务已经取消了，但是绘制线程可能还在画最后一帧
+     */
+    protected void onStopUpdate() {
+    }
+
+    /**
+     * 已经回到IDLE状态了，这个时候可以重新开始
+     */
+    protected void onUpdateStopped() {
+    }
+
+    /**
+     * 暂停之后调用，绘制任务已经取消了
+     */
+    protected void onPauseUpdate() {
+    }
+
+    /**
+     * 继续之前调用
+     */
+    protected void onResumeUpdate() {
+    }
+
+    /**
+     * 挂起中需要释放内存，可能调用多次；恢复的时候会先调用onResumeUpdate
+     */
+    protected void onReleaseResources() {
     }
 }
@@ -0,0 +1,45 @@
+package org.limlee.hiframeanimationlib;
+
+import org.limlee.hiframecore.FrameManifest;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 按描述文件生成的帧列表，某一帧第一次用到的时候才创建它的FrameDrawable，
+ * 几百帧的动画开始播放的时候不用一次创建所有的对象。大小不能改，绘制线程和解码线程可以同时读
+ */
+final class ManifestFrameList extends AbstractList<FrameDrawable> implements RandomAccess {
+    private final FrameManifest mManifest;
+    private final AtomicReferenceArray<FrameDrawable> mFrameDrawables;
+
+    ManifestFrameList(FrameManifest manifest) {
+        mManifest = manifest;
+        mFrameDrawables = new AtomicReferenceArray<>(manifest.getFrameCount());
+    }
+
+    FrameManifest getManifest() {
+        return mManifest;
+    }
+
+    @Override
+    public FrameDrawable get(int frame) {
+        final FrameDrawable frameDrawable = mFrameDrawables.get(frame);
+        if (null != frameDrawable) {
+            return frameDrawable;
+        }
+        final FrameDrawable created = new FrameDrawable(mManifest.getName(frame), mManifest.getDuration(frame));
+        if (mManifest.hasTransforms()) {
+            created.setTransform(mManifest.getX(frame), mManifest.getY(frame),
+                    mManifest.getScale(frame), mManifest.getAlpha(frame));
+        }
+        //两个线程同时创建的话用先放进去的，帧的宽高缓存在它上面
+        return mFrameDrawables.compareAndSet(frame, null, created) ? created : mFrameDrawables.get(frame);
+    }
+
+    @Override
+    public int size() {
+        return mFrameDrawables.length();
+    }
+}
@@ -0,0 +1,155 @@
+package org.limlee.hiframeanimationlib;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import org.limlee.hiframecore.QualityLadder;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 按系统的内存压力（onTrimMemory）降低所有正在播放的动画的质量，压力过去之后慢慢升回来，
+ * 质量的级别见{@link QualityLadder}。第一个帧动画视图创建的时候自动注册到Application上，不用手动调用
+ */
+public final class MemoryGovernor implements ComponentCallbacks2 {
+    private static final long RECOVERY_INTERVAL = 30 * 1000; //30秒没有新的内存压力就升回一级
+
+    private static volatile MemoryGovernor sDefault;
+
+    private final QualityLadder mLadder = new QualityLadder(RECOVERY_INTERVAL);
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    //正在播放的视图，弱引用，挂起之后没有停止的视图也不会泄漏
+    private final CopyOnWriteArrayList<WeakReference<FrameAnimationView>> mViews = new CopyOnWriteArrayList<>();
+    private volatile int mLevel = QualityLadder.LEVEL_FULL;
+    private boolean mIsInstalled;
+
+    private final Runnable mRecoverRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (mLadder.recover(SystemClock.uptimeMillis())) {
+                applyLevel();
+            }
+            scheduleRecovery();
+        }
+    };
+
+    public static MemoryGovernor getDefault() {
+        if (null == sDefault) {
+            synchronized (MemoryGovernor.class) {
+                if (null == sDefault) {
+                    sDefault = new MemoryGovernor();
+                }
+            }
+        }
+        return sDefault;
+    }
+
+    private MemoryGovernor() {
+    }
+
+    /**
+     * 注册到Application上，只有第一次有效；在UI线程中调用
+     *
+     * @param context
+     */
+    public void install(Context context) {
+        if (mIsInstalled || null == context) {
+            return;
+        }
+        mIsInstalled = true;
+        context.getApplicationContext().registerComponentCallbacks(this);
+    }
+
+    /**
+     * 当前的质量级别，QualityLadder.LEVEL_开头的常量
+     */
+    public int getLevel() {
+        return mLevel;
+    }
+
+    /**
+     * 复用池、缓存和正在播放的动画预解码的帧一共占用的字节数
+     */
+    public long getByteCount() {
+        long byteCount = BitmapPool.getDefault().getByteCount() + FrameCache.getDefault().getByteCount();
+        for (WeakReference<FrameAnimationView> reference : mViews) {
+            final FrameAnimationView view = reference.get();
+            if (null != view) {
+                byteCount += view.getHeldByteCount();
+            }
+        }
+        return byteCount;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_BACKGROUND) { //在后台，动画都挂起了，没在用的bitmap都不要了
+            BitmapPool.getDefault().clear();
+            FrameCache.getDefault().clear();
+        }
+        if (mLadder.onTrimMemory(level, SystemClock.uptimeMillis())) {
+            applyLevel();
+        }
+        scheduleRecovery();
+    }
+
+    @Override
+    public void onLowMemory() {
+        onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    private void scheduleRecovery() {
+        mHandler.removeCallbacks(mRecoverRunnable);
+        final long recoveryTime = mLadder.getNextRecoveryTime();
+        if (recoveryTime >= 0) {
+            mHandler.postAtTime(mRecoverRunnable, recoveryTime);
+        }
+    }
+
+    private void applyLevel() {
+        final int level = mLadder.getLevel();
+        mLevel = level;
+        //复用池和缓存按调用者现在设置的上限降低，不会把安装之后改过的上限恢复成旧的
+        BitmapPool.getDefault().setQualityLevel(level);
+        FrameCache.getDefault().setQualityLevel(level);
+        for (WeakReference<FrameAnimationView> reference : mViews) {
+            final FrameAnimationView view = reference.get();
+            if (null == view) {
+                mViews.remove(reference);
+            } else {
+                view.setQualityLevel(level);
+            }
+        }
+    }
+
+    /**
+     * 开始播放的时候注册，马上按当前的级别设置；先加入再读级别，和{@link #applyLevel()}同时调用也不会漏掉
+     */
+    void register(FrameAnimationView view) {
+        for (WeakReference<FrameAnimationView> reference : mViews) {
+            if (reference.get() == view) {
+                return;
+            }
+        }
+        mViews.add(new WeakReference<>(view));
+        view.setQualityLevel(mLevel);
+    }
+
+    void unregister(FrameAnimationView view) {
+        for (WeakReference<FrameAnimationView> reference : mViews) {
+            final FrameAnimationView registered = reference.get();
+            if (null == registered || registered == view) {
+                mViews.remove(reference);
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package org.limlee.hiframeanimationlib;
+
+import org.limlee.hiframecore.ByteBufferInputStream;
+import org.limlee.hiframecore.FramePackIndex;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 从序列帧包（hiframecore中的FramePacker打包）中读取帧，整个包映射到内存，
+ * 帧数据直接从映射的内存中解码，不会拷贝出一个byte[]
+ */
+public class PackFrameSource implements FrameSource {
+    private final File mPackFile;
+    private final RandomAccessFile mFile;
+    private final MappedByteBuffer mBuffer;
+    private final FramePackIndex mIndex;
+
+    public PackFrameSource(File packFile) throws IOException {
+        mPackFile = packFile.getAbsoluteFile();
+        mFile = new RandomAccessFile(packFile, "r");
+        try {
+            final long size = mFile.length();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("frame pack too large: " + size);
+            }
+            mBuffer = mFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+            mIndex = FramePackIndex.parse(mBuffer);
+        } catch (IOException e) {
+            mFile.close();
+            throw e;
+        }
+    }
+
+    public FramePackIndex getIndex() {
+        return mIndex;
+    }
+
+    /**
+     * 按包中的顺序和时长生成所有的帧，包中有变化区域的话也带上
+     *
+     * @return
+     */
+    public List<FrameDrawable> createFrameDrawables() {
+        final int frameCount = mIndex.getFrameCount();
+        final List<FrameDrawable> frameDrawables = new ArrayList<>(frameCount);
+        final int[] dirtyRect = new int[4];
+        for (int i = 0; i < frameCount; i++) {
+            final FrameDrawable frameDrawable = new FrameDrawable(mIndex.getName(i), mIndex.getDuration(i));
+            if (mIndex.getDirtyRect(i, dirtyRect)) {
+                frameDrawable.setDirtyRect(dirtyRect[0], dirtyRect[1], dirtyRect[2], dirtyRect[3]);
+            }
+            frameDrawables.add(frameDrawable);
+        }
+        return frameDrawables;
+    }
+
+    /**
+     * 包中第frame帧的数据，和映射的内存共享内容
+     */
+    ByteBuffer getFrameBuffer(int frame) {
+        return mIndex.slice(mBuffer, frame);
+    }
+
+    @Override
+    public InputStream open(String path) throws IOException {
+        final int frame = mIndex.indexOf(path);
+        if (frame < 0) {
+            throw new FileNotFoundException(path + " not found in frame pack");
+        }
+        return new ByteBufferInputStream(mIndex.slice(mBuffer, frame));
+    }
+
+    @Override
+    public void close() throws IOException {
+        mFile.close();
+    }
+
+    /**
+     * 同一个包文件的来源是相等的，不同的视图分别打开同一个包也可以共用{@link FrameCache}
+     */
+    @Override
+    public boolean equals(Object o) {
+        return this == o
+                || (o instanceof PackFrameSource && mPackFile.equals(((PackFrameSource) o).mPackFile));
+    }
+
+    @Override
+    public int hashCode() {
+        return mPackFile.hashCode();
+    }
+}
@@ -0,0 +1,147 @@
+package org.limlee.hiframeanimationlib;
+
+import android.graphics.Bitmap;
+
+import org.limlee.hiframecore.FramePackIndex;
+import org.limlee.hiframecore.FramePatch;
+import org.limlee.hiframecore.FramePatchDecoder;
+import org.limlee.hiframecore.FrameStats;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * 播放带有差量帧的序列帧包：关键帧正常解码，差量帧直接覆盖到上一帧的bitmap上，不用再解码整张图。
+ * 一直只有一张bitmap，每次返回的都是它，所以只能在绘制线程中边解码边绘制，不能预解码也不能缓存；
+ * 差量帧是按原图尺寸编码的，所以也不会缩放解码
+ */
+final class PatchFrameDecoder implements SequentialFrameDecoder {
+    private final PackFrameSource mFrameSource;
+    private final FramePackIndex mIndex;
+    private final List<FrameDrawable> mFrameDrawables;
+    private final int[] mPackFrames; //每一帧在包中的序号
+    private final Bitmap.Config mConfig;
+    private final FrameStats mStats;
+    private final FramePatchDecoder mPatchDecoder = new FramePatchDecoder();
+    private byte[] mPatchBytes = new byte[0];
+
+    private Bitmap mBitmap; //当前帧的内容，差量帧就覆盖在它上面
+    private int mBitmapFrame = -1;
+
+    private final FramePatch.PixelTarget mPixelTarget = new FramePatch.PixelTarget() {
+        @Override
+        public void setPixels(int[] pixels, int offset, int stride, int x, int y, int width, int height) {
+            mBitmap.setPixels(pixels, offset, stride, x, y, width, height);
+        }
+    };
+
+    /**
+     * @param frameSource
+     * @param frameDrawables 按名字对应到包中的帧
+     * @param config         null的话用ARGB_8888，差量帧中可能有透明的像素
+     * @param stats          记录每一帧的解码耗时（关键帧加上叠加的差量帧），可以为null
+     */
+    PatchFrameDecoder(PackFrameSource frameSource, List<FrameDrawable> frameDrawables,
+                      Bitmap.Config config, FrameStats stats) {
+        mFrameSource = frameSource;
+        mIndex = frameSource.getIndex();
+        mFrameDrawables = frameDrawables;
+        mConfig = null != config ? config : Bitmap.Config.ARGB_8888;
+        mStats = stats;
+        mPackFrames = new int[frameDrawables.size()];
+        for (int i = 0; i < mPackFrames.length; i++) {
+            final FrameDrawable frameDrawable = frameDrawables.get(i);
+            mPackFrames[i] = null != frameDrawable ? mIndex.indexOf(frameDrawable.getDrawableResPath()) : -1;
+        }
+    }
+
+    /**
+     * 包中有差量帧的时候才需要用它
+     */
+    static boolean isNeeded(FrameSource frameSource) {
+        return frameSource instanceof PackFrameSource
+                && ((PackFrameSource) frameSource).getIndex().hasPatches();
+    }
+
+    @Override
+    public boolean[] getKeyFrames() {
+        final boolean[] keyFrames = new boolean[mPackFrames.length];
+        for (int i = 0; i < keyFrames.length; i++) {
+            keyFrames[i] = mPackFrames[i] >= 0 && !mIndex.isPatch(mPackFrames[i]);
+        }
+        return keyFrames;
+    }
+
+    @Override
+    public Bitmap decode(int frame) {
+        final int packFrame = mPackFrames[frame];
+        if (packFrame < 0) {
+            return null;
+        }
+        final long startTime = System.nanoTime();
+        try {
+            final int keyFrame = mIndex.getKeyFrame(packFrame);
+            int from = mBitmapFrame;
+            if (null == mBitmap || from < keyFrame || from > packFrame) { //从关键帧开始
+                if (!decodeKeyFrame(keyFrame)) {
+                    return null;
+                }
+                from = keyFrame;
+            }
+            for (int i = from + 1; i <= packFrame; i++) {
+                applyPatch(i);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            mBitmapFrame = -1;
+            return null;
+        }
+        if (null != mStats) {
+            mStats.recordDecode(System.nanoTime() - startTime, BitmapPool.getBitmapByteCount(mBitmap));
+        }
+        final FrameDrawable frameDrawable = mFrameDrawables.get(frame);
+        if (frameDrawable.mWidth <= 0) { //局部重绘要用
+            frameDrawable.mWidth = mBitmap.getWidth();
+            frameDrawable.mHeight = mBitmap.getHeight();
+        }
+        return mBitmap;
+    }
+
+    private boolean decodeKeyFrame(int keyFrame) {
+        Bitmap bitmap = FrameDecoder.get().decode(mFrameSource, mIndex.getName(keyFrame), null, 0, 0, mConfig);
+        if (null == bitmap) {
+            return false;
+        }
+        if (!bitmap.isMutable()) { //api11之前不能inMutable
+            final Bitmap mutableBitmap = bitmap.copy(bitmap.getConfig(), true);
+            bitmap.recycle();
+            if (null == mutableBitmap) {
+                return false;
+            }
+            bitmap = mutableBitmap;
+        }
+        //绘制线程画完了才会解码下一帧，上一帧的bitmap已经不用了
+        Utils.releaseBitmap(mBitmap);
+        mBitmap = bitmap;
+        mBitmapFrame = keyFrame;
+        return true;
+    }
+
+    private void applyPatch(int packFrame) throws IOException {
+        final ByteBuffer patch = mFrameSource.getFrameBuffer(packFrame);
+        final int length = patch.remaining();
+        if (mPatchBytes.length < length) {
+            mPatchBytes = new byte[length];
+        }
+        patch.get(mPatchBytes, 0, length);
+        mPatchDecoder.apply(mPatchBytes, 0, length, mBitmap.getWidth(), mBitmap.getHeight(), mPixelTarget);
+        mBitmapFrame = packFrame;
+    }
+
+    @Override
+    public void release() {
+        mBitmap = null;
+        mBitmapFrame = -1;
+    }
+}
@@ -0,0 +1,44 @@
+package org.limlee.hiframeanimationlib;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.limlee.hiframecore.TaskScheduler;
+
+/**
+ * 所有帧动画共用的绘制线程池，大概每个核一个线程。
+ * 每个动画是一个任务，按下一次绘制的时间排队；同时到期的任务，优先级高的先画，
+ * 这样忙不过来的时候大礼物动画不会被装饰性的小动画拖慢。排队的逻辑在{@link TaskScheduler}中
+ */
+final class RenderScheduler extends TaskScheduler {
+    private static final String TAG = RenderScheduler.class.getSimpleName();
+
+    private static final Clock UPTIME_CLOCK = new Clock() {
+        @Override
+        public long now() {
+            return SystemClock.uptimeMillis();
+        }
+    };
+
+    private static volatile RenderScheduler sInstance;
+
+    static RenderScheduler getInstance() {
+        if (null == sInstance) {
+            synchronized (RenderScheduler.class) {
+                if (null == sInstance) {
+                    sInstance = new RenderScheduler(getThreadCount(Runtime.getRuntime().availableProcessors()));
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    private RenderScheduler(int threads) {
+        super(threads, "Animator Update Thread", UPTIME_CLOCK);
+    }
+
+    @Override
+    protected void onTaskFailed(Task task, RuntimeException e) {
+        Log.e(TAG, "render task failed", e);
+    }
+}
@@ -0,0 +1,29 @@
+package org.limlee.hiframeanimationlib;
+
+import android.graphics.Bitmap;
+
+/**
+ * 只能按顺序在一张bitmap上合成的帧：差量帧包和单文件动图。
+ * 一直只有一张bitmap，每次返回的都是它，所以只能在绘制线程中边解码边绘制，不能预解码也不能缓存
+ */
+interface SequentialFrameDecoder {
+
+    /**
+     * 解码一帧，返回的bitmap下一次解码的时候会被改掉，不能归还给复用池
+     *
+     * @param frame
+     * @return 解码失败返回null
+     */
+    Bitmap decode(int frame);
+
+    /**
+     * 哪些帧是关键帧，跳帧的时候尽量不跳过它们：落在关键帧上不用再合成前面的帧
+     */
+    boolean[] getKeyFrames();
+
+    /**
+     * 停止播放，绘制线程可能还在画，bitmap不放回复用池；
+     * 调用者保证不会和{@link #decode(int)}同时调用，FrameAnimationView中都在mDecodeLock里
+     */
+    void release();
+}
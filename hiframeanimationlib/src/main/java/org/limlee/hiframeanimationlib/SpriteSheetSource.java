@@ -0,0 +1,84 @@
+package org.limlee.hiframeanimationlib;
+
+import android.graphics.Bitmap;
+
+import org.limlee.hiframecore.SpriteSheet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 图集（hiframecore中的SpriteSheetPacker打包）：一个或多个图集图片加帧表。
+ * 图集图片只解码一次，之后每一帧都是从图集中画出一块，不用再解码；
+ * 多个视图可以共用同一个图集，适合循环播放很久的小动画
+ */
+public class SpriteSheetSource {
+    private final FrameSource mFrameSource;
+    private final SpriteSheet mSpriteSheet;
+    private final String mDirectory; //帧表所在的目录，图集图片的路径相对于它
+    private final Bitmap[] mPages;
+
+    /**
+     * @param frameSource 帧表和图集图片的来源
+     * @param sheetPath   帧表（.atlas）的路径
+     * @throws IOException 帧表读不出来或者格式不对
+     */
+    public SpriteSheetSource(FrameSource frameSource, String sheetPath) throws IOException {
+        mFrameSource = frameSource;
+        final InputStream in = frameSource.open(sheetPath);
+        try {
+            mSpriteSheet = SpriteSheet.parse(new InputStreamReader(in, "UTF-8"));
+        } finally {
+            in.close();
+        }
+        final int slash = sheetPath.lastIndexOf('/');
+        mDirectory = slash >= 0 ? sheetPath.substring(0, slash + 1) : "";
+        mPages = new Bitmap[mSpriteSheet.getPageCount()];
+    }
+
+    public SpriteSheet getSpriteSheet() {
+        return mSpriteSheet;
+    }
+
+    /**
+     * 按帧表中的顺序和时长生成所有的帧
+     *
+     * @return
+     */
+    public List<FrameDrawable> createFrameDrawables() {
+        final int frameCount = mSpriteSheet.getFrameCount();
+        final List<FrameDrawable> frameDrawables = new ArrayList<>(frameCount);
+        for (int i = 0; i < frameCount; i++) {
+            frameDrawables.add(new FrameDrawable(mSpriteSheet.getName(i), mSpriteSheet.getDuration(i)));
+        }
+        return frameDrawables;
+    }
+
+    /**
+     * 图集图片，第一次用到的时候解码，之后一直保留
+     *
+     * @param page
+     * @param config 第一次解码的时候用的格式
+     * @return 解码失败返回null
+     */
+    synchronized Bitmap getPage(int page, Bitmap.Config config) {
+        if (null == mPages[page]) {
+            mPages[page] = FrameDecoder.get().decode(mFrameSource, mDirectory + mSpriteSheet.getPage(page),
+                    null, 0, 0, config);
+        }
+        return mPages[page];
+    }
+
+    /**
+     * 不再播放的时候释放解码好的图集，之后用到的话会重新解码；
+     * 绘制线程可能还在画，所以不recycle，交给GC
+     */
+    public synchronized void release() {
+        for (int i = 0; i < mPages.length; i++) {
+            mPages[i] = null;
+        }
+    }
+}
@@ -1,23 +0,0 @@
-package org.limlee.hiframeanimationlib;
-
-public class UpdateThread extends Thread {
-    volatile boolean mIsQuited;
-
-    public UpdateThread(String name) {
-        super(name);
-    }
-
-    public void quit() {
-        mIsQuited = true;
-    }
-
-    public boolean isQuited() {
-        return mIsQuited;
-    }
-
-    @Override
-    public void run() {
-        if (mIsQuited) return;
-    }
-
-}
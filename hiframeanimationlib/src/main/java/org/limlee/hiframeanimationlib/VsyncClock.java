@@ -0,0 +1,150 @@
+package org.limlee.hiframeanimationlib;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+/**
+ * 记录vsync的相位和周期，用来把下一帧的绘制时间对齐到vsync上。
+ * 只是偶尔在主线程中通过Choreographer连续采样几帧，不会每个vsync都唤醒主线程；
+ * 周期用屏幕的刷新率作为初始值，采样的时候去掉掉帧的间隔再取平均，一个晚到的帧不会带偏周期
+ */
+final class VsyncClock {
+    private static final long DEFAULT_PERIOD_NANOS = 1000000000L / 60;
+    private static final long RESAMPLE_INTERVAL_MILLIS = 1000;
+    private static final long SAMPLE_TIMEOUT_MILLIS = 500; //采样的回调这么久还没来，就当作停了，下次重新采
+    private static final int SAMPLE_FRAMES = 8; //每次连续采这么多帧，得到SAMPLE_FRAMES-1个间隔
+
+    private static volatile VsyncClock sInstance;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private volatile long mLastVsyncNanos;
+    private volatile long mPeriodNanos = DEFAULT_PERIOD_NANOS;
+    private volatile long mLastSampleMillis;
+    private volatile boolean mIsSampling;
+    private volatile int mSampleGeneration; //停止之后，还没回来的采样回调作废
+
+    static VsyncClock getInstance() {
+        if (null == sInstance) {
+            synchronized (VsyncClock.class) {
+                if (null == sInstance) {
+                    sInstance = new VsyncClock();
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    private VsyncClock() {
+    }
+
+    /**
+     * 屏幕的刷新率，作为周期的初始值，采样的间隔离它太远的都当作掉帧
+     *
+     * @param refreshRate Display.getRefreshRate
+     */
+    void setRefreshRate(float refreshRate) {
+        if (refreshRate >= 20 && refreshRate <= 240 && mLastVsyncNanos == 0) {
+            mPeriodNanos = (long) (1000000000L / refreshRate);
+        }
+    }
+
+    /**
+     * 停止采样，还没回来的回调作废，下次对齐的时候重新开始采样
+     */
+    void stop() {
+        mSampleGeneration++;
+        mIsSampling = false;
+        mLastSampleMillis = 0;
+    }
+
+    /**
+     * 对齐到time之后（包括time）的第一个vsync
+     *
+     * @param timeMillis uptimeMillis
+     * @return
+     */
+    long align(long timeMillis) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            return timeMillis;
+        }
+        resampleIfNeeded();
+        final long lastVsyncNanos = mLastVsyncNanos;
+        if (lastVsyncNanos == 0) {
+            return timeMillis;
+        }
+        final long periodNanos = mPeriodNanos;
+        final long timeNanos = timeMillis * 1000000L;
+        long delta = timeNanos - lastVsyncNanos;
+        if (delta <= 0) {
+            return timeMillis;
+        }
+        final long periods = (delta + periodNanos - 1) / periodNanos;
+        return (lastVsyncNanos + periods * periodNanos + 999999L) / 1000000L;
+    }
+
+    private void resampleIfNeeded() {
+        final long now = SystemClock.uptimeMillis();
+        if (mIsSampling && now - mLastSampleMillis < SAMPLE_TIMEOUT_MILLIS) {
+            return;
+        }
+        if (!mIsSampling && now - mLastSampleMillis < RESAMPLE_INTERVAL_MILLIS) {
+            return;
+        }
+        mIsSampling = true;
+        mLastSampleMillis = now;
+        final int generation = ++mSampleGeneration;
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                sample(generation);
+            }
+        });
+    }
+
+    /**
+     * 连续采SAMPLE_FRAMES个vsync，得到相位和平均周期
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void sample(final int generation) {
+        Choreographer.getInstance().postFrameCallback(new Choreographer.FrameCallback() {
+            private long mPrevFrameNanos;
+            private long mPeriodSum;
+            private int mPeriodCount;
+            private long mMinPeriod = Long.MAX_VALUE;
+            private int mFrames;
+
+            @Override
+            public void doFrame(long frameTimeNanos) {
+                if (generation != mSampleGeneration) { //已经停止了或者重新开始了
+                    return;
+                }
+                if (mFrames > 0) {
+                    final long period = frameTimeNanos - mPrevFrameNanos;
+                    final long expected = mPeriodNanos;
+                    mMinPeriod = Math.min(mMinPeriod, period);
+                    if (period > expected * 3 / 4 && period < expected * 5 / 4) { //中间掉了帧或者回调晚了就不算
+                        mPeriodSum += period;
+                        mPeriodCount++;
+                    }
+                }
+                mPrevFrameNanos = frameTimeNanos;
+                if (++mFrames < SAMPLE_FRAMES) {
+                    Choreographer.getInstance().postFrameCallback(this);
+                    return;
+                }
+                if (mPeriodCount > 0) {
+                    mPeriodNanos = mPeriodSum / mPeriodCount;
+                } else if (mMinPeriod > 0 && mMinPeriod < Long.MAX_VALUE) { //刷新率变了，掉帧只会让间隔变长，取最短的
+                    mPeriodNanos = mMinPeriod;
+                }
+                mLastVsyncNanos = frameTimeNanos;
+                mLastSampleMillis = SystemClock.uptimeMillis();
+                mIsSampling = false;
+            }
+        });
+    }
+}
@@ -0,0 +1,50 @@
+package org.limlee.hiframeanimationlib;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * 从一个zip包中读取帧图片，zip包只打开一次，之后通过中央目录随机读取每一帧，
+ * 省掉了每一帧都要打开一次文件的开销。帧图片建议用存储（不压缩）的方式打包
+ */
+public class ZipFrameSource implements FrameSource {
+    private final File mFile;
+    private final ZipFile mZipFile;
+
+    public ZipFrameSource(File zipFile) throws IOException {
+        mFile = zipFile.getAbsoluteFile();
+        mZipFile = new ZipFile(zipFile);
+    }
+
+    @Override
+    public InputStream open(String path) throws IOException {
+        final ZipEntry zipEntry = mZipFile.getEntry(path);
+        if (null == zipEntry) {
+            throw new FileNotFoundException(path + " not found in " + mZipFile.getName());
+        }
+        return mZipFile.getInputStream(zipEntry);
+    }
+
+    @Override
+    public void close() throws IOException {
+        mZipFile.close();
+    }
+
+    /**
+     * 帧路径就是zip中的条目名，所以同一个zip文件的来源是相等的，可以共用{@link FrameCache}
+     */
+    @Override
+    public boolean equals(Object o) {
+        return this == o
+                || (o instanceof ZipFrameSource && mFile.equals(((ZipFrameSource) o).mFile));
+    }
+
+    @Override
+    public int hashCode() {
+        return mFile.hashCode();
+    }
+}
@@ -0,0 +1,102 @@
+package org.limlee.hiframeanimationlib;
+
+import org.junit.Test;
+import org.limlee.hiframecore.FramePackWriter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * FrameCache按来源和帧路径缓存，同一个文件分别打开的来源要能命中同一份缓存
+ */
+public class FrameSourceKeyTest {
+
+    private static File writePack() throws IOException {
+        final File file = File.createTempFile("frames", ".hfp");
+        file.deleteOnExit();
+        new FramePackWriter()
+                .addFrame("a_0.png", new byte[]{1, 2, 3}, 100, 10, 10)
+                .writeTo(file);
+        return file;
+    }
+
+    private static File writeZip() throws IOException {
+        final File file = File.createTempFile("frames", ".zip");
+        file.deleteOnExit();
+        final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            out.putNextEntry(new ZipEntry("a_0.png"));
+            out.write(new byte[]{1, 2, 3});
+            out.closeEntry();
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    @Test
+    public void packSourcesOfSameFileShareCacheKey() throws Exception {
+        final File file = writePack();
+        final PackFrameSource first = new PackFrameSource(file);
+        final PackFrameSource second = new PackFrameSource(new File(file.getPath()));
+        final PackFrameSource other = new PackFrameSource(writePack());
+        try {
+            assertEquals(first, second);
+            assertEquals(first.hashCode(), second.hashCode());
+            assertFalse(first.equals(other));
+
+            final Map<FrameSource, String> cache = new HashMap<>();
+            cache.put(first, "a_0.png");
+            assertEquals("a_0.png", cache.get(second));
+            assertNull(cache.get(other));
+        } finally {
+            first.close();
+            second.close();
+            other.close();
+        }
+    }
+
+    @Test
+    public void zipSourcesOfSameFileShareCacheKey() throws Exception {
+        final File file = writeZip();
+        final ZipFrameSource first = new ZipFrameSource(file);
+        final ZipFrameSource second = new ZipFrameSource(new File(file.getPath()));
+        final ZipFrameSource other = new ZipFrameSource(writeZip());
+        try {
+            assertEquals(first, second);
+            assertEquals(first.hashCode(), second.hashCode());
+            assertFalse(first.equals(other));
+
+            final Map<FrameSource, String> cache = new HashMap<>();
+            cache.put(first, "a_0.png");
+            assertEquals("a_0.png", cache.get(second));
+            assertNull(cache.get(other));
+        } finally {
+            first.close();
+            second.close();
+            other.close();
+        }
+    }
+
+    @Test
+    public void packAndZipSourcesAreNeverEqual() throws Exception {
+        final PackFrameSource pack = new PackFrameSource(writePack());
+        final ZipFrameSource zip = new ZipFrameSource(writeZip());
+        try {
+            assertFalse(pack.equals(zip));
+            assertFalse(zip.equals(pack));
+        } finally {
+            pack.close();
+            zip.close();
+        }
+    }
+}
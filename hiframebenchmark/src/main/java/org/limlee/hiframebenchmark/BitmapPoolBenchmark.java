@@ -0,0 +1,102 @@
+package org.limlee.hiframebenchmark;
+
+import org.limlee.hiframecore.ReusePool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 复用池取出、放回的开销，分组的方式和BitmapPool一样：
+ * api19以上按config分组，之前按config加宽高分组
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BitmapPoolBenchmark {
+    private static final int FRAME_WIDTH = 360; //youting的帧尺寸
+    private static final int FRAME_HEIGHT = 370;
+
+    /**
+     * 池子里预先放的bitmap数，相当于预解码的帧数加上正在显示的一帧
+     */
+    @Param({"2", "8"})
+    public int pooledCount;
+
+    @Param({"true", "false"})
+    public boolean groupByConfigOnly;
+
+    private ReusePool<FakeBitmap> mPool;
+    private long mGroup;
+    private long mByteCount;
+
+    @Setup
+    public void setUp() {
+        mPool = new ReusePool<>(new ReusePool.Adapter<FakeBitmap>() {
+            @Override
+            public long getByteCount(FakeBitmap bitmap) {
+                return bitmap.byteCount;
+            }
+
+            @Override
+            public void onEvicted(FakeBitmap bitmap) {
+                bitmap.recycled = true;
+            }
+        }, 64L * 1024 * 1024);
+        mGroup = groupOf(FakeBitmap.CONFIG_ARGB_8888, FRAME_WIDTH, FRAME_HEIGHT);
+        mByteCount = (long) FRAME_WIDTH * FRAME_HEIGHT * FakeBitmap.bytesPerPixel(FakeBitmap.CONFIG_ARGB_8888);
+        for (int i = 0; i < pooledCount; i++) {
+            mPool.release(mGroup, new FakeBitmap(FRAME_WIDTH, FRAME_HEIGHT, FakeBitmap.CONFIG_ARGB_8888));
+        }
+    }
+
+    /**
+     * 解码一帧取出一张，绘制完放回去
+     */
+    @Benchmark
+    public FakeBitmap acquireRelease() {
+        FakeBitmap bitmap = mPool.acquire(mGroup, mByteCount);
+        if (null == bitmap) {
+            bitmap = new FakeBitmap(FRAME_WIDTH, FRAME_HEIGHT, FakeBitmap.CONFIG_ARGB_8888);
+        }
+        mPool.release(mGroup, bitmap);
+        return bitmap;
+    }
+
+    /**
+     * 多个解码线程和绘制线程同时取出、放回
+     */
+    @Benchmark
+    @Threads(4)
+    public FakeBitmap acquireReleaseContended() {
+        return acquireRelease();
+    }
+
+    /**
+     * 池子里没有合适的，比如换了一个尺寸更大的动画
+     */
+    @Benchmark
+    public FakeBitmap acquireMiss() {
+        return mPool.acquire(groupOf(FakeBitmap.CONFIG_RGB_565, FRAME_WIDTH, FRAME_HEIGHT), mByteCount);
+    }
+
+    private long groupOf(int config, int width, int height) {
+        if (groupByConfigOnly) {
+            return config;
+        }
+        return ((long) config << 48) | ((long) width << 24) | height;
+    }
+}
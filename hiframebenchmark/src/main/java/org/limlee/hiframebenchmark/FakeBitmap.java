@@ -0,0 +1,26 @@
+package org.limlee.hiframebenchmark;
+
+/**
+ * 代替android的Bitmap，只有复用池关心的宽高、格式和占用的字节数
+ */
+final class FakeBitmap {
+    static final int CONFIG_ARGB_8888 = 0;
+    static final int CONFIG_RGB_565 = 1;
+
+    final int width;
+    final int height;
+    final int config;
+    final long byteCount;
+    boolean recycled;
+
+    FakeBitmap(int width, int height, int config) {
+        this.width = width;
+        this.height = height;
+        this.config = config;
+        this.byteCount = (long) width * height * bytesPerPixel(config);
+    }
+
+    static int bytesPerPixel(int config) {
+        return config == CONFIG_RGB_565 ? 2 : 4;
+    }
+}
@@ -0,0 +1,121 @@
+package org.limlee.hiframebenchmark;
+
+import org.limlee.hiframecore.FramePackIndex;
+import org.limlee.hiframecore.FramePacker;
+import org.limlee.hiframecore.FrameReadBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 读取一帧的开销：原来的读法（Okio的readByteArray）每帧读出一个新数组，FrameReadBuffer复用缓冲区，
+ * 序列帧包映射到内存之后直接切片。每次读下一帧，样本默认是app/src/main/assets/youting
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameReadBenchmark {
+    private static final String CORPUS_PROPERTY = "hiframe.corpus";
+    private static final String DEFAULT_CORPUS = "app/src/main/assets/youting";
+
+    private File[] mFrames;
+    private File mPackFile;
+    private RandomAccessFile mPackRandomAccessFile;
+    private ByteBuffer mPackBuffer;
+    private FramePackIndex mPackIndex;
+    private final FrameReadBuffer mReadBuffer = new FrameReadBuffer();
+    private byte[] mCopyBuffer = new byte[0];
+    private int mNextFrame;
+
+    @Setup
+    public void setUp() throws IOException {
+        final File corpus = new File(System.getProperty(CORPUS_PROPERTY, DEFAULT_CORPUS));
+        mFrames = FramePacker.listFrames(corpus);
+        if (mFrames.length == 0) {
+            throw new IOException("no frames in " + corpus.getAbsolutePath());
+        }
+        mPackFile = File.createTempFile("corpus", ".hfp");
+        FramePacker.pack(corpus, 100).writeTo(mPackFile);
+        mPackRandomAccessFile = new RandomAccessFile(mPackFile, "r");
+        final FileChannel channel = mPackRandomAccessFile.getChannel();
+        mPackBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        mPackIndex = FramePackIndex.parse(mPackBuffer);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mPackRandomAccessFile.close();
+        if (!mPackFile.delete()) {
+            mPackFile.deleteOnExit();
+        }
+    }
+
+    private int nextFrame() {
+        final int frame = mNextFrame;
+        mNextFrame = (frame + 1) % mFrames.length;
+        return frame;
+    }
+
+    /**
+     * 和原来用Okio的时候一样：分段读进来，最后拷贝成一个新数组
+     */
+    @Benchmark
+    public int newArrayPerFrame() throws IOException {
+        final FileInputStream in = new FileInputStream(mFrames[nextFrame()]);
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] segment = new byte[8192];
+            int count;
+            while ((count = in.read(segment)) != -1) {
+                out.write(segment, 0, count);
+            }
+            return out.toByteArray().length;
+        } finally {
+            in.close();
+        }
+    }
+
+    @Benchmark
+    public int readBuffer() throws IOException {
+        final FileInputStream in = new FileInputStream(mFrames[nextFrame()]);
+        try {
+            return mReadBuffer.readFrom(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * 解码的时候会读完整帧的数据，这里拷贝一遍，和上面两种读出同样多的字节
+     */
+    @Benchmark
+    public int mappedPack() {
+        final ByteBuffer frame = mPackIndex.slice(mPackBuffer, nextFrame() % mPackIndex.getFrameCount());
+        final int length = frame.remaining();
+        if (mCopyBuffer.length < length) {
+            mCopyBuffer = new byte[length];
+        }
+        frame.get(mCopyBuffer, 0, length);
+        return length;
+    }
+}
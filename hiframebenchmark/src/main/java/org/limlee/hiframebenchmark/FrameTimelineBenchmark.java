@@ -0,0 +1,83 @@
+package org.limlee.hiframebenchmark;
+
+import org.limlee.hiframecore.FrameTimeline;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每次绘制都要根据经过的时间算出当前帧和下一帧的时间，
+ * 和逐帧累加时长的线性查找对比
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameTimelineBenchmark {
+    private static final long DRAW_INTERVAL = 16;
+
+    @Param({"20", "129", "1000"}) //129是youting的帧数
+    public int frameCount;
+
+    private long[] mFrameDurations;
+    private FrameTimeline mTimeline;
+    private long mElapsed;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(frameCount);
+        mFrameDurations = new long[frameCount];
+        for (int i = 0; i < frameCount; i++) {
+            mFrameDurations[i] = 40 + random.nextInt(80);
+        }
+        mTimeline = new FrameTimeline(mFrameDurations, 0);
+    }
+
+    @Benchmark
+    public int frameAt() {
+        mElapsed += DRAW_INTERVAL;
+        return mTimeline.getFrameAt(mElapsed, true);
+    }
+
+    @Benchmark
+    public long nextFrameTime() {
+        mElapsed += DRAW_INTERVAL;
+        return mTimeline.getNextFrameTime(mElapsed, true);
+    }
+
+    /**
+     * 绘制线程一次要做的：当前帧加上下一次绘制的时间
+     */
+    @Benchmark
+    public long frameAndNextFrameTime() {
+        mElapsed += DRAW_INTERVAL;
+        return mTimeline.getFrameAt(mElapsed, true) + mTimeline.getNextFrameTime(mElapsed, true);
+    }
+
+    @Benchmark
+    public int linearScan() {
+        mElapsed += DRAW_INTERVAL;
+        final long position = mElapsed % mTimeline.getDuration();
+        long end = 0;
+        for (int i = 0; i < mFrameDurations.length; i++) {
+            end += mFrameDurations[i];
+            if (position < end) {
+                return i;
+            }
+        }
+        return mFrameDurations.length - 1;
+    }
+}
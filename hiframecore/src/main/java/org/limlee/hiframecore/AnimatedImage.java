@@ -0,0 +1,522 @@
+package org.limlee.hiframecore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * 单文件动图（animated webp和apng）的容器解析，不解码像素：读出画布尺寸、循环次数和每一帧的位置、时长、
+ * 处置和混合方式；需要哪一帧的时候，把这一帧的压缩数据重新包装成一张单独的webp或者png交给系统解码。
+ * 一次只拷贝一帧的压缩数据，整个动图不会展开到内存中；帧数据直接从传入的ByteBuffer（可以是映射到内存的文件）中读取。
+ * 解析完之后不会再改，可以在多个线程中同时调用{@link #writeFrame(int, byte[])}
+ */
+public final class AnimatedImage {
+    public static final int FORMAT_WEBP = 1;
+    public static final int FORMAT_PNG = 2;
+
+    /**
+     * 这一帧显示完之后，画布保持不变
+     */
+    public static final int DISPOSE_NONE = 0;
+    /**
+     * 这一帧显示完之后，这一帧的区域清成透明
+     */
+    public static final int DISPOSE_BACKGROUND = 1;
+    /**
+     * 这一帧显示完之后，这一帧的区域恢复成画这一帧之前的样子，只有apng有
+     */
+    public static final int DISPOSE_PREVIOUS = 2;
+
+    private static final long PNG_SIGNATURE = 0x89504E470D0A1A0AL;
+    private static final int PNG_IHDR = 0x49484452;
+    private static final int PNG_ACTL = 0x6163544C;
+    private static final int PNG_FCTL = 0x6663544C;
+    private static final int PNG_IDAT = 0x49444154;
+    private static final int PNG_FDAT = 0x66644154;
+    private static final int PNG_IEND = 0x49454E44;
+    private static final byte[] PNG_IEND_CHUNK = {0, 0, 0, 0, 0x49, 0x45, 0x4E, 0x44, (byte) 0xAE, 0x42, 0x60, (byte) 0x82};
+
+    private static final int RIFF = 0x52494646;
+    private static final int WEBP = 0x57454250;
+    private static final int WEBP_VP8X = 0x56503858;
+    private static final int WEBP_ANIM = 0x414E494D;
+    private static final int WEBP_ANMF = 0x414E4D46;
+    private static final int WEBP_ALPH = 0x414C5048;
+    private static final int WEBP_VP8X_ANIMATION = 0x02;
+    private static final int WEBP_VP8X_ALPHA = 0x10;
+
+    private static final int MIN_DURATION = 10; //和浏览器一样，时长不超过10毫秒的帧按100毫秒播放
+    private static final int DEFAULT_DURATION = 100;
+
+    private static final class Frame {
+        int x;
+        int y;
+        int width;
+        int height;
+        int duration;
+        int dispose;
+        boolean blend;
+        int dataOffset; //webp：这一帧的数据（ALPH、VP8/VP8L块）在文件中的位置
+        int dataLength;
+        boolean hasAlphaChunk;
+        int firstChunk; //apng：这一帧的IDAT/fdAT块在mChunks中的位置
+        int chunkCount;
+    }
+
+    private final ByteBuffer mData;
+    private final int mFormat;
+    private final int mWidth;
+    private final int mHeight;
+    private final int mLoopCount;
+    private final Frame[] mFrames;
+    private final int mHeaderOffset; //apng的IHDR块
+    private final int[] mSharedChunks; //apng中所有帧共用的块（PLTE、tRNS等）
+    private final int[] mChunks; //apng中每一帧的IDAT/fdAT块的位置
+    private final CRC32 mCrc = new CRC32(); //重新计算apng块的CRC，每一帧复用，用它自己加锁
+
+    private AnimatedImage(ByteBuffer data, int format, int width, int height, int loopCount, List<Frame> frames,
+                          int headerOffset, int[] sharedChunks, int[] chunks) throws IOException {
+        if (frames.isEmpty()) {
+            throw new IOException("no frames");
+        }
+        for (Frame frame : frames) {
+            if (frame.x < 0 || frame.y < 0 || frame.width <= 0 || frame.height <= 0
+                    || frame.x + frame.width > width || frame.y + frame.height > height) {
+                throw new IOException("frame out of canvas");
+            }
+            if (format == FORMAT_PNG ? frame.chunkCount == 0 : frame.dataLength <= 0) {
+                throw new IOException("frame without image data");
+            }
+        }
+        final Frame first = frames.get(0);
+        if (first.dispose == DISPOSE_PREVIOUS) { //第一帧之前的画布是空的
+            first.dispose = DISPOSE_BACKGROUND;
+        }
+        mData = data;
+        mFormat = format;
+        mWidth = width;
+        mHeight = height;
+        mLoopCount = loopCount;
+        mFrames = frames.toArray(new Frame[frames.size()]);
+        mHeaderOffset = headerOffset;
+        mSharedChunks = sharedChunks;
+        mChunks = chunks;
+    }
+
+    /**
+     * 是不是animated webp或者apng，只看文件头，不解析所有的帧
+     *
+     * @param data position不会改变
+     */
+    public static boolean isAnimated(ByteBuffer data) {
+        final ByteBuffer in = data.slice();
+        in.order(ByteOrder.BIG_ENDIAN);
+        try {
+            if (in.remaining() >= 21 && in.getInt(0) == RIFF && in.getInt(8) == WEBP) {
+                return in.getInt(12) == WEBP_VP8X && (in.get(20) & WEBP_VP8X_ANIMATION) != 0;
+            }
+            if (in.remaining() >= 16 && in.getLong(0) == PNG_SIGNATURE) {
+                int position = 8;
+                while (position + 8 <= in.limit()) { //acTL一定在IDAT之前
+                    final int type = in.getInt(position + 4);
+                    if (type == PNG_ACTL) {
+                        return true;
+                    }
+                    if (type == PNG_IDAT) {
+                        return false;
+                    }
+                    position += 12 + in.getInt(position);
+                    if (position < 0) {
+                        return false;
+                    }
+                }
+            }
+        } catch (IndexOutOfBoundsException e) {
+            //文件被截断了
+        }
+        return false;
+    }
+
+    /**
+     * @param data 整个文件的内容，解析之后还会从中读取帧数据，不能再改
+     * @throws IOException 不是动图或者文件损坏
+     */
+    public static AnimatedImage parse(ByteBuffer data) throws IOException {
+        final ByteBuffer in = data.slice();
+        in.order(ByteOrder.BIG_ENDIAN);
+        try {
+            if (in.remaining() >= 30 && in.getInt(0) == RIFF && in.getInt(8) == WEBP) {
+                return parseWebp(in);
+            }
+            if (in.remaining() >= 33 && in.getLong(0) == PNG_SIGNATURE) {
+                return parsePng(in);
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("truncated animated image");
+        }
+        throw new IOException("not an animated webp or png");
+    }
+
+    public static AnimatedImage parse(byte[] data) throws IOException {
+        return parse(ByteBuffer.wrap(data));
+    }
+
+    private static AnimatedImage parseWebp(ByteBuffer in) throws IOException {
+        if (in.getInt(12) != WEBP_VP8X || (in.get(20) & WEBP_VP8X_ANIMATION) == 0) {
+            throw new IOException("not an animated webp");
+        }
+        final int width = 1 + readUInt24(in, 24);
+        final int height = 1 + readUInt24(in, 27);
+        final int end = (int) Math.min(in.limit(), 8 + (readIntLE(in, 4) & 0xFFFFFFFFL));
+        final List<Frame> frames = new ArrayList<>();
+        int loopCount = 0;
+        int position = 12;
+        while (position + 8 <= end) {
+            final int type = in.getInt(position);
+            final int size = readIntLE(in, position + 4);
+            final int payload = position + 8;
+            if (size < 0 || payload + size > end) {
+                throw new IOException("truncated webp chunk");
+            }
+            if (type == WEBP_ANIM) {
+                loopCount = (in.get(payload + 4) & 0xFF) | (in.get(payload + 5) & 0xFF) << 8;
+            } else if (type == WEBP_ANMF) {
+                final Frame frame = new Frame();
+                frame.x = 2 * readUInt24(in, payload);
+                frame.y = 2 * readUInt24(in, payload + 3);
+                frame.width = 1 + readUInt24(in, payload + 6);
+                frame.height = 1 + readUInt24(in, payload + 9);
+                frame.duration = clampDuration(readUInt24(in, payload + 12));
+                final int flags = in.get(payload + 15);
+                frame.dispose = (flags & 0x01) != 0 ? DISPOSE_BACKGROUND : DISPOSE_NONE;
+                frame.blend = (flags & 0x02) == 0;
+                frame.dataOffset = payload + 16;
+                frame.dataLength = size - 16;
+                frame.hasAlphaChunk = frame.dataLength >= 8 && in.getInt(frame.dataOffset) == WEBP_ALPH;
+                frames.add(frame);
+            }
+            position = payload + size + (size & 1); //块的长度是奇数的话后面补一个字节
+        }
+        return new AnimatedImage(in, FORMAT_WEBP, width, height, loopCount, frames, 0, null, null);
+    }
+
+    private static AnimatedImage parsePng(ByteBuffer in) throws IOException {
+        if (in.getInt(12) != PNG_IHDR) {
+            throw new IOException("missing IHDR");
+        }
+        final int width = in.getInt(16);
+        final int height = in.getInt(20);
+        final List<Frame> frames = new ArrayList<>();
+        final IntList sharedChunks = new IntList();
+        final IntList chunks = new IntList();
+        boolean isAnimated = false;
+        boolean hasImageData = false;
+        int loopCount = 0;
+        Frame current = null;
+        int position = 33;
+        while (position + 12 <= in.limit()) {
+            final int length = in.getInt(position);
+            final int type = in.getInt(position + 4);
+            final int data = position + 8;
+            if (length < 0 || data + length + 4 > in.limit()) {
+                throw new IOException("truncated png chunk");
+            }
+            if (type == PNG_IEND) {
+                break;
+            }
+            if (type == PNG_ACTL) {
+                isAnimated = true;
+                loopCount = in.getInt(data + 4);
+            } else if (type == PNG_FCTL) {
+                if (null != current) {
+                    current.chunkCount = chunks.size() - current.firstChunk;
+                }
+                current = new Frame();
+                current.width = in.getInt(data + 4);
+                current.height = in.getInt(data + 8);
+                current.x = in.getInt(data + 12);
+                current.y = in.getInt(data + 16);
+                final int delayNum = in.getShort(data + 20) & 0xFFFF;
+                final int delayDen = in.getShort(data + 22) & 0xFFFF;
+                current.duration = clampDuration(delayNum * 1000 / (delayDen == 0 ? 100 : delayDen));
+                current.dispose = Math.min(in.get(data + 24), DISPOSE_PREVIOUS);
+                current.blend = in.get(data + 25) != 0;
+                current.firstChunk = chunks.size();
+                frames.add(current);
+            } else if (type == PNG_IDAT) {
+                //IDAT之前有fcTL的话是第一帧，否则是不参与动画的默认图片
+                if (null != current && frames.size() == 1) {
+                    chunks.add(position);
+                }
+                hasImageData = true;
+            } else if (type == PNG_FDAT) {
+                if (null != current && length > 4) {
+                    chunks.add(position);
+                }
+            } else if (!hasImageData) { //PLTE、tRNS等解码每一帧都要用到
+                sharedChunks.add(position);
+            }
+            position = data + length + 4;
+        }
+        if (!isAnimated) {
+            throw new IOException("not an animated png");
+        }
+        if (null != current) {
+            current.chunkCount = chunks.size() - current.firstChunk;
+        }
+        return new AnimatedImage(in, FORMAT_PNG, width, height, loopCount, frames, 8,
+                sharedChunks.toArray(), chunks.toArray());
+    }
+
+    private static int clampDuration(int duration) {
+        return duration <= MIN_DURATION ? DEFAULT_DURATION : duration;
+    }
+
+    public int getFormat() {
+        return mFormat;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * 循环次数，0表示无限循环
+     */
+    public int getLoopCount() {
+        return mLoopCount;
+    }
+
+    public int getFrameCount() {
+        return mFrames.length;
+    }
+
+    public int getFrameX(int frame) {
+        return mFrames[frame].x;
+    }
+
+    public int getFrameY(int frame) {
+        return mFrames[frame].y;
+    }
+
+    public int getFrameWidth(int frame) {
+        return mFrames[frame].width;
+    }
+
+    public int getFrameHeight(int frame) {
+        return mFrames[frame].height;
+    }
+
+    /**
+     * 毫秒
+     */
+    public int getDuration(int frame) {
+        return mFrames[frame].duration;
+    }
+
+    /**
+     * DISPOSE_开头的常量
+     */
+    public int getDispose(int frame) {
+        return mFrames[frame].dispose;
+    }
+
+    /**
+     * true表示按透明度叠加到画布上，false表示直接覆盖这一帧的区域
+     */
+    public boolean isBlended(int frame) {
+        return mFrames[frame].blend;
+    }
+
+    /**
+     * 画这一帧不需要之前的画布内容：第一帧、覆盖整个画布并且不叠加的帧、上一帧覆盖整个画布并且显示完清空了。
+     * 跳到一帧的时候从它前面最近的关键帧开始合成
+     */
+    public boolean isKeyFrame(int frame) {
+        if (frame == 0) {
+            return true;
+        }
+        final Frame current = mFrames[frame];
+        if (isFullFrame(current) && !current.blend) {
+            return true;
+        }
+        final Frame prev = mFrames[frame - 1];
+        return isFullFrame(prev) && prev.dispose == DISPOSE_BACKGROUND;
+    }
+
+    private boolean isFullFrame(Frame frame) {
+        return frame.x == 0 && frame.y == 0 && frame.width == mWidth && frame.height == mHeight;
+    }
+
+    /**
+     * 这一帧单独包装成一张图片之后的字节数
+     */
+    public int getFrameFileSize(int frame) {
+        final Frame current = mFrames[frame];
+        if (mFormat == FORMAT_WEBP) {
+            return 12 + (current.hasAlphaChunk ? 18 : 0) + current.dataLength;
+        }
+        int size = 8 + 25 + PNG_IEND_CHUNK.length;
+        for (int chunk : mSharedChunks) {
+            size += 12 + mData.getInt(chunk);
+        }
+        for (int i = 0; i < current.chunkCount; i++) {
+            final int chunk = mChunks[current.firstChunk + i];
+            size += 12 + mData.getInt(chunk) - (mData.getInt(chunk + 4) == PNG_FDAT ? 4 : 0);
+        }
+        return size;
+    }
+
+    /**
+     * 把这一帧包装成一张单独的webp或者png，尺寸是这一帧的尺寸，不是画布的尺寸
+     *
+     * @param frame
+     * @param out   至少{@link #getFrameFileSize(int)}个字节，可以复用
+     * @return 写入的字节数
+     */
+    public int writeFrame(int frame, byte[] out) {
+        final ByteBuffer in = mData.duplicate();
+        return mFormat == FORMAT_WEBP ? writeWebpFrame(in, mFrames[frame], out) : writePngFrame(in, mFrames[frame], out);
+    }
+
+    private int writeWebpFrame(ByteBuffer in, Frame frame, byte[] out) {
+        int position = 0;
+        position = writeInt(out, position, RIFF);
+        position = writeIntLE(out, position, 4 + (frame.hasAlphaChunk ? 18 : 0) + frame.dataLength);
+        position = writeInt(out, position, WEBP);
+        if (frame.hasAlphaChunk) { //ALPH块只能放在扩展格式中
+            position = writeInt(out, position, WEBP_VP8X);
+            position = writeIntLE(out, position, 10);
+            out[position++] = WEBP_VP8X_ALPHA;
+            out[position++] = 0;
+            out[position++] = 0;
+            out[position++] = 0;
+            position = writeUInt24(out, position, frame.width - 1);
+            position = writeUInt24(out, position, frame.height - 1);
+        }
+        return copy(in, frame.dataOffset, out, position, frame.dataLength);
+    }
+
+    private int writePngFrame(ByteBuffer in, Frame frame, byte[] out) {
+        final CRC32 crc = mCrc;
+        int position = writeInt(out, 0, (int) (PNG_SIGNATURE >>> 32));
+        position = writeInt(out, position, (int) PNG_SIGNATURE);
+        final int header = position;
+        position = copy(in, mHeaderOffset, out, position, 25);
+        writeInt(out, header + 8, frame.width);
+        writeInt(out, header + 12, frame.height);
+        writeChunkCrc(crc, out, header, 13);
+        for (int chunk : mSharedChunks) {
+            position = copy(in, chunk, out, position, 12 + in.getInt(chunk));
+        }
+        for (int i = 0; i < frame.chunkCount; i++) {
+            final int chunk = mChunks[frame.firstChunk + i];
+            final int length = in.getInt(chunk);
+            if (in.getInt(chunk + 4) == PNG_IDAT) {
+                position = copy(in, chunk, out, position, 12 + length);
+                continue;
+            }
+            //fdAT去掉4字节的序号就是IDAT
+            final int start = position;
+            position = writeInt(out, position, length - 4);
+            position = writeInt(out, position, PNG_IDAT);
+            position = copy(in, chunk + 12, out, position, length - 4);
+            writeChunkCrc(crc, out, start, length - 4);
+            position += 4;
+        }
+        System.arraycopy(PNG_IEND_CHUNK, 0, out, position, PNG_IEND_CHUNK.length);
+        return position + PNG_IEND_CHUNK.length;
+    }
+
+    /**
+     * 重新计算块的CRC，写在数据后面
+     *
+     * @param chunk  块开始的位置（长度字段）
+     * @param length 数据的长度
+     */
+    private static void writeChunkCrc(CRC32 crc, byte[] out, int chunk, int length) {
+        final int value;
+        synchronized (crc) { //多个线程同时写帧的时候共用一个
+            crc.reset();
+            crc.update(out, chunk + 4, 4 + length);
+            value = (int) crc.getValue();
+        }
+        writeInt(out, chunk + 8 + length, value);
+    }
+
+    private static int copy(ByteBuffer in, int offset, byte[] out, int position, int length) {
+        in.position(offset);
+        in.get(out, position, length);
+        return position + length;
+    }
+
+    private static int writeInt(byte[] out, int position, int value) {
+        out[position] = (byte) (value >>> 24);
+        out[position + 1] = (byte) (value >>> 16);
+        out[position + 2] = (byte) (value >>> 8);
+        out[position + 3] = (byte) value;
+        return position + 4;
+    }
+
+    private static int writeIntLE(byte[] out, int position, int value) {
+        out[position] = (byte) value;
+        out[position + 1] = (byte) (value >>> 8);
+        out[position + 2] = (byte) (value >>> 16);
+        out[position + 3] = (byte) (value >>> 24);
+        return position + 4;
+    }
+
+    private static int writeUInt24(byte[] out, int position, int value) {
+        out[position] = (byte) value;
+        out[position + 1] = (byte) (value >>> 8);
+        out[position + 2] = (byte) (value >>> 16);
+        return position + 3;
+    }
+
+    private static int readIntLE(ByteBuffer in, int position) {
+        return (in.get(position) & 0xFF)
+                | (in.get(position + 1) & 0xFF) << 8
+                | (in.get(position + 2) & 0xFF) << 16
+                | (in.get(position + 3) & 0xFF) << 24;
+    }
+
+    private static int readUInt24(ByteBuffer in, int position) {
+        return (in.get(position) & 0xFF)
+                | (in.get(position + 1) & 0xFF) << 8
+                | (in.get(position + 2) & 0xFF) << 16;
+    }
+
+    /**
+     * 解析的时候收集块的位置
+     */
+    private static final class IntList {
+        private int[] mValues = new int[8];
+        private int mSize;
+
+        void add(int value) {
+            if (mSize == mValues.length) {
+                final int[] values = new int[mSize * 2];
+                System.arraycopy(mValues, 0, values, 0, mSize);
+                mValues = values;
+            }
+            mValues[mSize++] = value;
+        }
+
+        int size() {
+            return mSize;
+        }
+
+        int[] toArray() {
+            final int[] values = new int[mSize];
+            System.arraycopy(mValues, 0, values, 0, mSize);
+            return values;
+        }
+    }
+}
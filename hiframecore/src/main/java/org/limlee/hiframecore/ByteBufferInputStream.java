@@ -0,0 +1,61 @@
+package org.limlee.hiframecore;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * 直接从ByteBuffer（比如映射到内存的文件）中读取，不会拷贝出一个完整的byte[]
+ */
+public class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer mBuffer;
+
+    public ByteBufferInputStream(ByteBuffer buffer) {
+        mBuffer = buffer;
+    }
+
+    public ByteBuffer getBuffer() {
+        return mBuffer;
+    }
+
+    @Override
+    public int read() {
+        return mBuffer.hasRemaining() ? mBuffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) return 0;
+        if (!mBuffer.hasRemaining()) return -1;
+        final int count = Math.min(len, mBuffer.remaining());
+        mBuffer.get(b, off, count);
+        return count;
+    }
+
+    @Override
+    public long skip(long n) {
+        if (n <= 0) return 0;
+        final int count = (int) Math.min(n, mBuffer.remaining());
+        mBuffer.position(mBuffer.position() + count);
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return mBuffer.remaining();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(int readLimit) {
+        mBuffer.mark();
+    }
+
+    @Override
+    public synchronized void reset() {
+        mBuffer.reset();
+    }
+}
@@ -0,0 +1,78 @@
+package org.limlee.hiframecore;
+
+/**
+ * 离线比较相邻两帧，算出变化的区域，播放的时候只重绘这个区域
+ */
+public final class FrameDiff {
+
+    private FrameDiff() {
+    }
+
+    /**
+     * 两帧中像素不一样的区域的外接矩形
+     *
+     * @param previous 上一帧的像素，ARGB，按行存储
+     * @param current  这一帧的像素
+     * @param width
+     * @param height
+     * @param outRect  left top right bottom，right和bottom不包含；两帧一样的时候是空的（全是0）
+     */
+    public static void changedBounds(int[] previous, int[] current, int width, int height, int[] outRect) {
+        if (previous.length < width * height || current.length < width * height) {
+            throw new IllegalArgumentException("pixels smaller than " + width + "x" + height);
+        }
+        int top = -1;
+        int bottom = -1;
+        for (int y = 0; y < height && top < 0; y++) {
+            if (!rowEquals(previous, current, y * width, width)) {
+                top = y;
+            }
+        }
+        if (top < 0) {
+            outRect[0] = outRect[1] = outRect[2] = outRect[3] = 0;
+            return;
+        }
+        for (int y = height - 1; y >= top && bottom < 0; y--) {
+            if (!rowEquals(previous, current, y * width, width)) {
+                bottom = y + 1;
+            }
+        }
+        int left = width;
+        int right = 0;
+        for (int y = top; y < bottom; y++) {
+            final int row = y * width;
+            for (int x = 0; x < left; x++) { //左边只需要找比已知更靠左的
+                if (!pixelEquals(previous[row + x], current[row + x])) {
+                    left = x;
+                    break;
+                }
+            }
+            for (int x = width - 1; x >= right; x--) {
+                if (!pixelEquals(previous[row + x], current[row + x])) {
+                    right = x + 1;
+                    break;
+                }
+            }
+        }
+        outRect[0] = left;
+        outRect[1] = top;
+        outRect[2] = right;
+        outRect[3] = bottom;
+    }
+
+    private static boolean rowEquals(int[] previous, int[] current, int offset, int width) {
+        for (int i = offset, end = offset + width; i < end; i++) {
+            if (!pixelEquals(previous[i], current[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 完全透明的像素颜色不一样也看作一样
+     */
+    private static boolean pixelEquals(int lhs, int rhs) {
+        return lhs == rhs || ((lhs >>> 24) == 0 && (rhs >>> 24) == 0);
+    }
+}
@@ -0,0 +1,312 @@
+package org.limlee.hiframecore;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * 序列帧的描述文件，不用列出目录、排序、逐帧创建对象，文本格式，每行一项：
+ * <pre>
+ * count &lt;帧数&gt;                                必须在最前面
+ * pattern &lt;路径模板&gt; [第一帧的序号]               比如youting/youting_%d.png，%03d表示补0到3位
+ * duration &lt;时长ms&gt;                           所有帧的时长
+ * duration &lt;from&gt; &lt;to&gt; &lt;时长ms&gt;               第from到to帧（包含）的时长
+ * transform &lt;from&gt; &lt;to&gt; x y scale alpha        第from到to帧的位置、缩放和透明度
+ * frame &lt;序号&gt; &lt;路径&gt;                          单独指定某一帧的路径，没有pattern的话每一帧都要指定
+ * </pre>
+ * 时长和变换都存在基本类型的数组中，路径用到的时候才按模板拼出来；#开头的行是注释
+ */
+public final class FrameManifest {
+    public static final String FILE_EXTENSION = ".frames";
+
+    private static final int X = 0;
+    private static final int Y = 1;
+    private static final int SCALE = 2;
+    private static final int ALPHA = 3;
+    private static final int TRANSFORM_FIELD_COUNT = 4;
+
+    private final int mFrameCount;
+    private final int[] mDurations;
+    private int mDefaultDuration;
+    private float[] mTransforms; //没有设置过变换的话是null
+
+    //路径模板：前缀 + 补0到mPatternWidth位的序号 + 后缀
+    private String mPattern;
+    private String mPatternPrefix;
+    private String mPatternSuffix;
+    private int mPatternWidth;
+    private int mFirstIndex;
+    private String[] mNames; //单独指定的路径，没有的话是null
+
+    /**
+     * @param frameCount
+     * @param duration   每一帧的时长，单位毫秒
+     */
+    public FrameManifest(int frameCount, int duration) {
+        if (frameCount <= 0) {
+            throw new IllegalArgumentException("frame count must be positive: " + frameCount);
+        }
+        mFrameCount = frameCount;
+        mDurations = new int[frameCount];
+        setDuration(duration);
+    }
+
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * 按模板生成每一帧的路径
+     *
+     * @param pattern    比如youting/youting_%d.png，只能有一个%d或者%0Nd
+     * @param firstIndex 第一帧的序号
+     * @return
+     */
+    public FrameManifest setPattern(String pattern, int firstIndex) {
+        final int start = pattern.indexOf('%');
+        final int end = pattern.indexOf('d', start + 1);
+        if (start < 0 || end < 0 || pattern.indexOf('%', end) >= 0) {
+            throw new IllegalArgumentException("bad pattern " + pattern);
+        }
+        final String width = pattern.substring(start + 1, end);
+        if (!width.isEmpty() && (!width.startsWith("0") || width.length() < 2)) {
+            throw new IllegalArgumentException("bad pattern " + pattern);
+        }
+        mPatternWidth = width.isEmpty() ? 0 : Integer.parseInt(width.substring(1));
+        mPatternPrefix = pattern.substring(0, start);
+        mPatternSuffix = pattern.substring(end + 1);
+        mPattern = pattern;
+        mFirstIndex = firstIndex;
+        return this;
+    }
+
+    /**
+     * 所有帧的时长
+     */
+    public FrameManifest setDuration(int duration) {
+        mDefaultDuration = Math.max(0, duration);
+        Arrays.fill(mDurations, mDefaultDuration);
+        return this;
+    }
+
+    /**
+     * 第from到to帧（包含）的时长
+     */
+    public FrameManifest setDuration(int from, int to, int duration) {
+        checkRange(from, to);
+        Arrays.fill(mDurations, from, to + 1, Math.max(0, duration));
+        return this;
+    }
+
+    /**
+     * 第from到to帧（包含）的位置、缩放和透明度
+     */
+    public FrameManifest setTransform(int from, int to, float x, float y, float scale, float alpha) {
+        checkRange(from, to);
+        if (null == mTransforms) {
+            mTransforms = new float[mFrameCount * TRANSFORM_FIELD_COUNT];
+            for (int i = 0; i < mFrameCount; i++) {
+                mTransforms[i * TRANSFORM_FIELD_COUNT + SCALE] = 1;
+                mTransforms[i * TRANSFORM_FIELD_COUNT + ALPHA] = 1;
+            }
+        }
+        for (int i = from; i <= to; i++) {
+            final int base = i * TRANSFORM_FIELD_COUNT;
+            mTransforms[base + X] = x;
+            mTransforms[base + Y] = y;
+            mTransforms[base + SCALE] = scale;
+            mTransforms[base + ALPHA] = alpha;
+        }
+        return this;
+    }
+
+    /**
+     * 单独指定某一帧的路径，优先于模板
+     */
+    public FrameManifest setName(int frame, String path) {
+        checkRange(frame, frame);
+        if (null == mNames) {
+            mNames = new String[mFrameCount];
+        }
+        mNames[frame] = path;
+        return this;
+    }
+
+    /**
+     * 这一帧的路径，按模板生成的话每次都会拼一个新的字符串
+     *
+     * @param frame
+     * @return 没有模板也没有单独指定的话返回null
+     */
+    public String getName(int frame) {
+        if (null != mNames && null != mNames[frame]) {
+            return mNames[frame];
+        }
+        if (null == mPattern) {
+            return null;
+        }
+        final String index = String.valueOf(mFirstIndex + frame);
+        final StringBuilder name = new StringBuilder(mPatternPrefix.length() + mPatternWidth
+                + index.length() + mPatternSuffix.length());
+        name.append(mPatternPrefix);
+        for (int i = index.length(); i < mPatternWidth; i++) {
+            name.append('0');
+        }
+        return name.append(index).append(mPatternSuffix).toString();
+    }
+
+    /**
+     * 显示时长，单位毫秒
+     */
+    public int getDuration(int frame) {
+        return mDurations[frame];
+    }
+
+    public boolean hasTransforms() {
+        return null != mTransforms;
+    }
+
+    public float getX(int frame) {
+        return null != mTransforms ? mTransforms[frame * TRANSFORM_FIELD_COUNT + X] : 0;
+    }
+
+    public float getY(int frame) {
+        return null != mTransforms ? mTransforms[frame * TRANSFORM_FIELD_COUNT + Y] : 0;
+    }
+
+    public float getScale(int frame) {
+        return null != mTransforms ? mTransforms[frame * TRANSFORM_FIELD_COUNT + SCALE] : 1;
+    }
+
+    public float getAlpha(int frame) {
+        return null != mTransforms ? mTransforms[frame * TRANSFORM_FIELD_COUNT + ALPHA] : 1;
+    }
+
+    /**
+     * 直接用时长数组生成时间轴，不经过每一帧的对象
+     *
+     * @param duration 一轮的时长，小于等于0的话就是所有帧的时长总和
+     * @return
+     */
+    public FrameTimeline createTimeline(long duration) {
+        final long[] frameDurations = new long[mFrameCount];
+        for (int i = 0; i < mFrameCount; i++) {
+            frameDurations[i] = mDurations[i];
+        }
+        return new FrameTimeline(frameDurations, duration);
+    }
+
+    private void checkRange(int from, int to) {
+        if (from < 0 || to >= mFrameCount || from > to) {
+            throw new IllegalArgumentException("bad frame range " + from + "-" + to + " of " + mFrameCount);
+        }
+    }
+
+    /**
+     * 读取描述文件
+     *
+     * @param reader
+     * @return
+     * @throws IOException 格式不对，或者有的帧没有路径
+     */
+    public static FrameManifest parse(Reader reader) throws IOException {
+        final BufferedReader in = new BufferedReader(reader);
+        FrameManifest manifest = null;
+        String line;
+        int lineNumber = 0;
+        while (null != (line = in.readLine())) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            final String[] fields = line.split("\\s+");
+            try {
+                if ("count".equals(fields[0]) && fields.length == 2 && null == manifest) {
+                    manifest = new FrameManifest(Integer.parseInt(fields[1]), 0);
+                } else if (null == manifest) {
+                    throw new IOException("manifest line " + lineNumber + " before count: " + line);
+                } else if ("pattern".equals(fields[0]) && (fields.length == 2 || fields.length == 3)) {
+                    manifest.setPattern(fields[1], fields.length == 3 ? Integer.parseInt(fields[2]) : 0);
+                } else if ("duration".equals(fields[0]) && fields.length == 2) {
+                    manifest.setDuration(Integer.parseInt(fields[1]));
+                } else if ("duration".equals(fields[0]) && fields.length == 4) {
+                    manifest.setDuration(Integer.parseInt(fields[1]), Integer.parseInt(fields[2]),
+                            Integer.parseInt(fields[3]));
+                } else if ("transform".equals(fields[0]) && fields.length == 7) {
+                    manifest.setTransform(Integer.parseInt(fields[1]), Integer.parseInt(fields[2]),
+                            Float.parseFloat(fields[3]), Float.parseFloat(fields[4]),
+                            Float.parseFloat(fields[5]), Float.parseFloat(fields[6]));
+                } else if ("frame".equals(fields[0]) && fields.length == 3) {
+                    manifest.setName(Integer.parseInt(fields[1]), fields[2]);
+                } else {
+                    throw new IOException("bad manifest line " + lineNumber + ": " + line);
+                }
+            } catch (IllegalArgumentException e) { //NumberFormatException也是
+                throw new IOException("bad manifest line " + lineNumber + ": " + line, e);
+            }
+        }
+        if (null == manifest) {
+            throw new IOException("no count in manifest");
+        }
+        for (int i = 0; i < manifest.mFrameCount; i++) {
+            if (null == manifest.getName(i)) {
+                throw new IOException("no path for frame " + i);
+            }
+        }
+        return manifest;
+    }
+
+    /**
+     * 写成描述文件，连续相同的时长和变换合并成一行；路径中不能有空白字符
+     *
+     * @param writer
+     * @throws IOException
+     */
+    public void writeTo(Writer writer) throws IOException {
+        writer.write("# hiframe manifest\n");
+        writer.write("count " + mFrameCount + "\n");
+        if (null != mPattern) {
+            writer.write("pattern " + mPattern + " " + mFirstIndex + "\n");
+        }
+        writer.write("duration " + mDefaultDuration + "\n");
+        int from = 0;
+        for (int i = 1; i <= mFrameCount; i++) {
+            if (i == mFrameCount || mDurations[i] != mDurations[from]) {
+                if (mDurations[from] != mDefaultDuration) {
+                    writer.write("duration " + from + " " + (i - 1) + " " + mDurations[from] + "\n");
+                }
+                from = i;
+            }
+        }
+        if (null != mTransforms) {
+            from = 0;
+            for (int i = 1; i <= mFrameCount; i++) {
+                if (i == mFrameCount || !sameTransform(i, from)) {
+                    writer.write("transform " + from + " " + (i - 1) + " " + getX(from) + " " + getY(from)
+                            + " " + getScale(from) + " " + getAlpha(from) + "\n");
+                    from = i;
+                }
+            }
+        }
+        if (null != mNames) {
+            for (int i = 0; i < mFrameCount; i++) {
+                if (null != mNames[i]) {
+                    writer.write("frame " + i + " " + mNames[i] + "\n");
+                }
+            }
+        }
+        writer.flush();
+    }
+
+    private boolean sameTransform(int lhs, int rhs) {
+        for (int field = 0; field < TRANSFORM_FIELD_COUNT; field++) {
+            if (mTransforms[lhs * TRANSFORM_FIELD_COUNT + field] != mTransforms[rhs * TRANSFORM_FIELD_COUNT + field]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,153 @@
+package org.limlee.hiframecore;
+
+/**
+ * 自适应跳帧：用指数加权移动平均估计一个动画解码和绘制一帧的耗时，
+ * 慢了就提前选帧、跳过来不及显示的帧，不去解码显示出来就已经过时的帧；
+ * 60fps的序列帧在慢的设备上会平滑地降到30fps，而不是每一帧都晚一点。
+ * 尽量跳过非关键帧，关键帧（差量帧包中的整帧）只要还没有过时就不跳。
+ * 解码线程和绘制线程都会调用，所有方法都加锁；时间都是毫秒
+ */
+public final class FramePacer {
+    private static final double WEIGHT = 0.125; //新的样本占的比重，和TCP估计RTT一样
+    private static final long MAX_INTERVAL = 1000; //两帧之间隔了这么久（暂停、播放完）不算进帧率
+
+    private double mDecodeCost = -1;
+    private double mDrawCost = -1;
+    private double mFrameInterval = -1;
+    private long mLastFrameTime = -1;
+
+    /**
+     * 换了动画或者重新开始，之前的估计都不要了
+     */
+    public synchronized void reset() {
+        mDecodeCost = -1;
+        mDrawCost = -1;
+        mFrameInterval = -1;
+        mLastFrameTime = -1;
+    }
+
+    /**
+     * @param nanos 解码一帧的耗时
+     */
+    public synchronized void recordDecode(long nanos) {
+        mDecodeCost = average(mDecodeCost, nanos / 1000000.0);
+    }
+
+    /**
+     * @param nanos 从选好帧到显示出来，除了解码之外的耗时
+     */
+    public synchronized void recordDraw(long nanos) {
+        mDrawCost = average(mDrawCost, nanos / 1000000.0);
+    }
+
+    /**
+     * 一帧显示出来了，用来计算实际的帧率
+     *
+     * @param now 显示的时间
+     */
+    public synchronized void recordFrame(long now) {
+        if (mLastFrameTime >= 0) {
+            final long interval = now - mLastFrameTime;
+            if (interval >= 0 && interval < MAX_INTERVAL) {
+                mFrameInterval = average(mFrameInterval, interval);
+            }
+        }
+        mLastFrameTime = now;
+    }
+
+    private static double average(double average, double sample) {
+        return average < 0 ? sample : average + WEIGHT * (sample - average);
+    }
+
+    /**
+     * 解码一帧的估计耗时，还没有样本的话返回0
+     */
+    public synchronized long getDecodeCost() {
+        return mDecodeCost < 0 ? 0 : Math.round(mDecodeCost);
+    }
+
+    /**
+     * 绘制一帧的估计耗时，还没有样本的话返回0
+     */
+    public synchronized long getDrawCost() {
+        return mDrawCost < 0 ? 0 : Math.round(mDrawCost);
+    }
+
+    /**
+     * 实际显示的帧率，还没有显示两帧的话返回0
+     */
+    public synchronized float getEffectiveFps() {
+        return mFrameInterval <= 0 ? 0 : (float) (1000 / mFrameInterval);
+    }
+
+    /**
+     * 现在开始准备的话应该选哪一帧：准备好的时候（加上leadTime之后）应该显示的帧；
+     * 要跳过的帧中有关键帧的话选最早的那个关键帧，它现在还没有过时
+     *
+     * @param timeline
+     * @param elapsed   从开始播放到现在的时间
+     * @param loop      是否循环播放
+     * @param leadTime  准备一帧的估计耗时
+     * @param keyFrames 哪些帧是关键帧，null表示没有关键帧，都可以跳过
+     * @param lastFrame 上一次显示的帧，已经显示过的关键帧不再选
+     * @return
+     */
+    public static int selectFrame(FrameTimeline timeline, long elapsed, boolean loop, long leadTime,
+                                  boolean[] keyFrames, int lastFrame) {
+        final int dueFrame = timeline.getFrameAt(elapsed, loop);
+        if (leadTime <= 0) {
+            return dueFrame;
+        }
+        final int frame = timeline.getFrameAt(elapsed + leadTime, loop);
+        if (null == keyFrames) {
+            return frame;
+        }
+        final int frameCount = timeline.getFrameCount();
+        for (int i = dueFrame; i != frame; i = (i + 1) % frameCount) {
+            if (keyFrames[i] && i != lastFrame) {
+                return i;
+            }
+        }
+        return frame;
+    }
+
+    /**
+     * 解码线程解码完frame之后接着解码哪一帧：按现在的解码速度，解码完的时候时间轴走到了哪一帧，
+     * 中间的帧解码出来也来不及显示，直接跳过；解码比播放快的话就是下一帧
+     *
+     * @param timeline
+     * @param frame    刚解码完的帧
+     * @param loop     是否循环播放
+     * @return 不循环并且已经到最后一帧了返回帧数
+     */
+    public int getNextDecodeFrame(FrameTimeline timeline, int frame, boolean loop) {
+        return getNextDecodeFrame(timeline, frame, loop, 1);
+    }
+
+    /**
+     * 同上，decoders个线程并行解码的时候，平均每解码一帧只用一个线程耗时的1/decoders
+     *
+     * @param decoders 并行解码的线程数
+     */
+    public int getNextDecodeFrame(FrameTimeline timeline, int frame, boolean loop, int decoders) {
+        final int frameCount = timeline.getFrameCount();
+        final int nextFrame = loop ? (frame + 1) % frameCount : frame + 1;
+        final long decodeCost = getDecodeCost() / Math.max(1, decoders);
+        if (decodeCost <= 0 || nextFrame == frameCount) {
+            return nextFrame;
+        }
+        final long time = timeline.getFrameStart(frame) + decodeCost;
+        if (!loop && time >= timeline.getDuration()) { //最后一帧要显示
+            return frameCount - 1;
+        }
+        final int dueFrame = timeline.getFrameAt(time, loop);
+        return getDistance(frame, dueFrame, frameCount) > 1 ? dueFrame : nextFrame;
+    }
+
+    /**
+     * 从from往后播放多少帧到to，循环的话跨过一轮
+     */
+    public static int getDistance(int from, int to, int frameCount) {
+        return from < 0 ? to + 1 : ((to - from) % frameCount + frameCount) % frameCount;
+    }
+}
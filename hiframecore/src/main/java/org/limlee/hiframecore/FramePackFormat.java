@@ -0,0 +1,39 @@
+package org.limlee.hiframecore;
+
+/**
+ * 序列帧打包格式（大端）：
+ * <pre>
+ * 文件头   magic(4) version(4) frameCount(4) reserved(4)
+ * 索引     每帧一项，共frameCount项：
+ *          offset(8) length(4) duration(4) width(4) height(4) flags(4) nameOffset(4)
+ *          dirtyLeft(4) dirtyTop(4) dirtyRight(4) dirtyBottom(4)（版本2才有）
+ * 名字表   每帧一项：nameLength(2) name(UTF-8)
+ * 帧数据   每一帧编码好的图片（png/jpg/webp）或者差量帧（{@link FramePatch}）依次拼接
+ * </pre>
+ * offset和nameOffset都是相对于文件开头的偏移；
+ * dirty是这一帧相对上一帧（第一帧相对最后一帧）变化的区域，flags中有{@link #FLAG_DIRTY_RECT}的时候才有效
+ */
+public final class FramePackFormat {
+    public static final int MAGIC = 0x4846504B; //"HFPK"
+    public static final int VERSION = 2;
+    public static final int VERSION_1 = 1;
+
+    public static final int HEADER_SIZE = 16;
+    public static final int INDEX_ENTRY_SIZE = 48;
+    public static final int INDEX_ENTRY_SIZE_V1 = 32;
+
+    /**
+     * 索引中有这一帧的变化区域
+     */
+    public static final int FLAG_DIRTY_RECT = 1;
+
+    /**
+     * 这一帧是差量帧，要覆盖到上一帧上
+     */
+    public static final int FLAG_PATCH = 2;
+
+    public static final String FILE_EXTENSION = ".hfp";
+
+    private FramePackFormat() {
+    }
+}
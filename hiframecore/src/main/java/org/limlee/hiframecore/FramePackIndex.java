@@ -0,0 +1,215 @@
+package org.limlee.hiframecore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 序列帧包的索引，只解析文件头、索引和名字表，不会读取帧数据
+ */
+public final class FramePackIndex {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final long[] mOffsets;
+    private final int[] mLengths;
+    private final int[] mDurations;
+    private final int[] mWidths;
+    private final int[] mHeights;
+    private final int[] mFlags;
+    private final int[] mDirtyRects; //每帧4个：left top right bottom
+    private final String[] mNames;
+    private final Map<String, Integer> mNameIndexes;
+
+    private FramePackIndex(int frameCount) {
+        mOffsets = new long[frameCount];
+        mLengths = new int[frameCount];
+        mDurations = new int[frameCount];
+        mWidths = new int[frameCount];
+        mHeights = new int[frameCount];
+        mFlags = new int[frameCount];
+        mDirtyRects = new int[frameCount * 4];
+        mNames = new String[frameCount];
+        mNameIndexes = new HashMap<>(frameCount * 2);
+    }
+
+    /**
+     * 从包的开头解析索引，不会改变buffer的position
+     *
+     * @param buffer 整个包的内容，通常是映射到内存的文件
+     * @return
+     * @throws IOException 格式不对
+     */
+    public static FramePackIndex parse(ByteBuffer buffer) throws IOException {
+        final ByteBuffer in = buffer.duplicate();
+        in.order(ByteOrder.BIG_ENDIAN);
+        in.position(0);
+        final long size = in.limit();
+        if (size < FramePackFormat.HEADER_SIZE) {
+            throw new IOException("frame pack too small: " + size);
+        }
+        final int magic = in.getInt();
+        if (magic != FramePackFormat.MAGIC) {
+            throw new IOException("not a frame pack, magic: " + Integer.toHexString(magic));
+        }
+        final int version = in.getInt();
+        if (version != FramePackFormat.VERSION && version != FramePackFormat.VERSION_1) {
+            throw new IOException("unsupported frame pack version: " + version);
+        }
+        final int entrySize = version == FramePackFormat.VERSION_1
+                ? FramePackFormat.INDEX_ENTRY_SIZE_V1 : FramePackFormat.INDEX_ENTRY_SIZE;
+        final int frameCount = in.getInt();
+        in.getInt(); //reserved
+        if (frameCount < 0
+                || FramePackFormat.HEADER_SIZE + (long) frameCount * entrySize > size) {
+            throw new IOException("bad frame count: " + frameCount);
+        }
+        final FramePackIndex index = new FramePackIndex(frameCount);
+        final int[] nameOffsets = new int[frameCount];
+        for (int i = 0; i < frameCount; i++) {
+            index.mOffsets[i] = in.getLong();
+            index.mLengths[i] = in.getInt();
+            index.mDurations[i] = in.getInt();
+            index.mWidths[i] = in.getInt();
+            index.mHeights[i] = in.getInt();
+            index.mFlags[i] = in.getInt();
+            nameOffsets[i] = in.getInt();
+            if (version != FramePackFormat.VERSION_1) {
+                for (int j = 0; j < 4; j++) {
+                    index.mDirtyRects[i * 4 + j] = in.getInt();
+                }
+            } else {
+                index.mFlags[i] &= ~FramePackFormat.FLAG_DIRTY_RECT;
+            }
+            if (index.mOffsets[i] < 0
+                    || index.mLengths[i] < 0
+                    || index.mOffsets[i] + index.mLengths[i] > size) {
+                throw new IOException("frame " + i + " out of bounds");
+            }
+        }
+        for (int i = 0; i < frameCount; i++) {
+            if (nameOffsets[i] < 0 || nameOffsets[i] + 2 > size) {
+                throw new IOException("name of frame " + i + " out of bounds");
+            }
+            in.position(nameOffsets[i]);
+            final int nameLength = in.getShort() & 0xFFFF;
+            if (in.remaining() < nameLength) {
+                throw new IOException("name of frame " + i + " out of bounds");
+            }
+            final byte[] nameBytes = new byte[nameLength];
+            in.get(nameBytes);
+            final String name = new String(nameBytes, UTF_8);
+            index.mNames[i] = name;
+            index.mNameIndexes.put(name, i);
+        }
+        return index;
+    }
+
+    public int getFrameCount() {
+        return mOffsets.length;
+    }
+
+    /**
+     * 帧数据相对于包开头的偏移
+     */
+    public long getOffset(int frame) {
+        return mOffsets[frame];
+    }
+
+    public int getLength(int frame) {
+        return mLengths[frame];
+    }
+
+    /**
+     * 帧的显示时长，单位毫秒
+     */
+    public int getDuration(int frame) {
+        return mDurations[frame];
+    }
+
+    public int getWidth(int frame) {
+        return mWidths[frame];
+    }
+
+    public int getHeight(int frame) {
+        return mHeights[frame];
+    }
+
+    public int getFlags(int frame) {
+        return mFlags[frame];
+    }
+
+    /**
+     * 这一帧相对上一帧（第一帧相对最后一帧）变化的区域
+     *
+     * @param frame
+     * @param outRect left top right bottom，原图的像素坐标
+     * @return 包中没有记录返回false
+     */
+    public boolean getDirtyRect(int frame, int[] outRect) {
+        if ((mFlags[frame] & FramePackFormat.FLAG_DIRTY_RECT) == 0) {
+            return false;
+        }
+        System.arraycopy(mDirtyRects, frame * 4, outRect, 0, 4);
+        return true;
+    }
+
+    /**
+     * 是不是差量帧，是的话要先有上一帧的内容
+     */
+    public boolean isPatch(int frame) {
+        return (mFlags[frame] & FramePackFormat.FLAG_PATCH) != 0;
+    }
+
+    /**
+     * 要显示这一帧，需要从哪一个完整的帧开始解码
+     *
+     * @param frame
+     * @return
+     */
+    public int getKeyFrame(int frame) {
+        while (frame > 0 && isPatch(frame)) {
+            frame--;
+        }
+        return frame;
+    }
+
+    public boolean hasPatches() {
+        for (int i = 0; i < mFlags.length; i++) {
+            if (isPatch(i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public String getName(int frame) {
+        return mNames[frame];
+    }
+
+    /**
+     * @param name
+     * @return 找不到返回-1
+     */
+    public int indexOf(String name) {
+        final Integer frame = mNameIndexes.get(name);
+        return null != frame ? frame : -1;
+    }
+
+    /**
+     * 返回一个只包含这一帧数据的buffer，和原buffer共享内容，不会拷贝
+     *
+     * @param buffer 整个包的内容
+     * @param frame
+     * @return
+     */
+    public ByteBuffer slice(ByteBuffer buffer, int frame) {
+        final ByteBuffer frameBuffer = buffer.duplicate();
+        final int offset = (int) mOffsets[frame];
+        frameBuffer.limit(offset + mLengths[frame]);
+        frameBuffer.position(offset);
+        return frameBuffer.slice();
+    }
+}
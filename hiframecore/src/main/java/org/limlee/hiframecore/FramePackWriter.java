@@ -0,0 +1,141 @@
+package org.limlee.hiframecore;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 把编码好的帧写成一个序列帧包，格式见{@link FramePackFormat}
+ */
+public final class FramePackWriter {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final List<Frame> mFrames = new ArrayList<>();
+
+    private static final class Frame {
+        final byte[] name;
+        final byte[] data;
+        final int duration;
+        final int width;
+        final int height;
+        int flags;
+        final int[] dirtyRect = new int[4];
+
+        Frame(byte[] name, byte[] data, int duration, int width, int height) {
+            this.name = name;
+            this.data = data;
+            this.duration = duration;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    /**
+     * @param name     帧的名字，播放的时候用它来查找
+     * @param data     编码好的图片
+     * @param duration 显示时长，单位毫秒
+     * @param width
+     * @param height
+     */
+    public FramePackWriter addFrame(String name, byte[] data, int duration, int width, int height) {
+        return addFrame(name, data, duration, width, height, 0);
+    }
+
+    /**
+     * @param flags {@link FramePackFormat#FLAG_PATCH}等
+     */
+    public FramePackWriter addFrame(String name, byte[] data, int duration, int width, int height, int flags) {
+        final byte[] nameBytes = name.getBytes(UTF_8);
+        if (nameBytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("frame name too long: " + name);
+        }
+        if (mFrames.isEmpty() && (flags & FramePackFormat.FLAG_PATCH) != 0) {
+            throw new IllegalArgumentException("first frame can not be a patch");
+        }
+        final Frame frame = new Frame(nameBytes, data, duration, width, height);
+        frame.flags = flags;
+        mFrames.add(frame);
+        return this;
+    }
+
+    /**
+     * 记录这一帧相对上一帧变化的区域，播放的时候只重绘这个区域
+     *
+     * @param frame
+     * @param left   原图的像素坐标
+     * @param top
+     * @param right
+     * @param bottom
+     */
+    public FramePackWriter setDirtyRect(int frame, int left, int top, int right, int bottom) {
+        final Frame f = mFrames.get(frame);
+        f.flags |= FramePackFormat.FLAG_DIRTY_RECT;
+        f.dirtyRect[0] = left;
+        f.dirtyRect[1] = top;
+        f.dirtyRect[2] = right;
+        f.dirtyRect[3] = bottom;
+        return this;
+    }
+
+    public int getFrameCount() {
+        return mFrames.size();
+    }
+
+    public void writeTo(File file) throws IOException {
+        final OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            writeTo(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    public void writeTo(OutputStream outputStream) throws IOException {
+        final int frameCount = mFrames.size();
+        final DataOutputStream out = new DataOutputStream(outputStream);
+        final long nameTableOffset = FramePackFormat.HEADER_SIZE
+                + (long) frameCount * FramePackFormat.INDEX_ENTRY_SIZE;
+        long dataOffset = nameTableOffset;
+        for (Frame frame : mFrames) {
+            dataOffset += 2 + frame.name.length;
+        }
+        if (dataOffset > Integer.MAX_VALUE) {
+            throw new IOException("name table too large");
+        }
+
+        out.writeInt(FramePackFormat.MAGIC);
+        out.writeInt(FramePackFormat.VERSION);
+        out.writeInt(frameCount);
+        out.writeInt(0);
+
+        long nameOffset = nameTableOffset;
+        for (Frame frame : mFrames) {
+            out.writeLong(dataOffset);
+            out.writeInt(frame.data.length);
+            out.writeInt(frame.duration);
+            out.writeInt(frame.width);
+            out.writeInt(frame.height);
+            out.writeInt(frame.flags);
+            out.writeInt((int) nameOffset);
+            for (int value : frame.dirtyRect) {
+                out.writeInt(value);
+            }
+            dataOffset += frame.data.length;
+            nameOffset += 2 + frame.name.length;
+        }
+        for (Frame frame : mFrames) {
+            out.writeShort(frame.name.length);
+            out.write(frame.name);
+        }
+        for (Frame frame : mFrames) {
+            out.write(frame.data);
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,192 @@
+package org.limlee.hiframecore;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.imageio.ImageIO;
+
+/**
+ * 打包工具，把一个序列帧目录（比如assets/youting）打包成一个序列帧包：
+ * <pre>
+ * java org.limlee.hiframecore.FramePacker &lt;输入目录&gt; &lt;输出文件&gt; [每帧时长ms] [关键帧间隔]
+ * </pre>
+ * 关键帧间隔大于0的话，两个关键帧之间的png帧存成差量帧（{@link FramePatch}），比原图小的时候才用；
+ * 帧按文件名末尾的序号排序，帧的名字就是文件名；
+ * 能解码的帧（png/jpg）还会记录相对上一帧变化的区域，见{@link FrameDiff}
+ */
+public final class FramePacker {
+    private static final Pattern FRAME_NUMBER = Pattern.compile("(\\d+)(?=\\.[^.]+$)");
+    private static final String[] IMAGE_EXTENSIONS = {".png", ".jpg", ".jpeg", ".webp"};
+
+    private FramePacker() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: FramePacker <input dir> <output file> [frame duration ms] [key frame interval]");
+            System.exit(1);
+        }
+        final int duration = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        final int keyFrameInterval = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+        final FramePackWriter writer = pack(new File(args[0]), duration, keyFrameInterval);
+        writer.writeTo(new File(args[1]));
+        System.out.println("packed " + writer.getFrameCount() + " frames into " + args[1]);
+    }
+
+    /**
+     * 读取目录中的所有帧，并算出每一帧变化的区域
+     *
+     * @param directory
+     * @param duration  每一帧的时长，单位毫秒
+     * @return
+     * @throws IOException
+     */
+    public static FramePackWriter pack(File directory, int duration) throws IOException {
+        return pack(directory, duration, 0);
+    }
+
+    /**
+     * 读取目录中的所有帧，算出每一帧变化的区域，关键帧之间的帧尽量存成差量帧
+     *
+     * @param directory
+     * @param duration         每一帧的时长，单位毫秒
+     * @param keyFrameInterval 每隔多少帧一个关键帧，0表示都存原图
+     * @return
+     * @throws IOException
+     */
+    public static FramePackWriter pack(File directory, int duration, int keyFrameInterval) throws IOException {
+        final File[] files = listFrames(directory);
+        final FramePackWriter writer = new FramePackWriter();
+        final int[] dirtyRect = new int[4];
+        int[] firstPixels = null;
+        int[] previousPixels = null;
+        for (int i = 0; i < files.length; i++) {
+            final byte[] data = readFully(files[i]);
+            final BufferedImage image = ImageIO.read(new ByteArrayInputStream(data));
+            int width = 0;
+            int height = 0;
+            final ImageHeader header = ImageHeader.probe(data);
+            if (null != header) {
+                width = header.width;
+                height = header.height;
+            } else if (null != image) {
+                width = image.getWidth();
+                height = image.getHeight();
+            }
+            //ImageIO不认识的格式（webp）或者尺寸变了的帧不记录，播放的时候整帧重绘
+            final int[] pixels = null != image && image.getWidth() == width && image.getHeight() == height
+                    ? image.getRGB(0, 0, width, height, null, 0, width) : null;
+            byte[] patch = null;
+            //有损的格式在手机上解码出来的像素和这里不完全一样，只有png可以在上一帧上叠加
+            if (keyFrameInterval > 0 && i % keyFrameInterval != 0
+                    && null != pixels && null != previousPixels && previousPixels.length == pixels.length
+                    && isLossless(files[i]) && isLossless(files[i - 1])) {
+                patch = FramePatchEncoder.encode(previousPixels, pixels, width, height);
+            }
+            if (null != patch && patch.length < data.length) {
+                writer.addFrame(files[i].getName(), patch, duration, width, height, FramePackFormat.FLAG_PATCH);
+            } else {
+                writer.addFrame(files[i].getName(), data, duration, width, height);
+            }
+            if (null != pixels && null != previousPixels && previousPixels.length == pixels.length) {
+                FrameDiff.changedBounds(previousPixels, pixels, width, height, dirtyRect);
+                writer.setDirtyRect(i, dirtyRect[0], dirtyRect[1], dirtyRect[2], dirtyRect[3]);
+            }
+            if (i == 0) {
+                firstPixels = pixels;
+            } else if (i == files.length - 1
+                    && null != pixels && null != firstPixels && firstPixels.length == pixels.length) {
+                //循环播放的时候第一帧接在最后一帧后面
+                FrameDiff.changedBounds(pixels, firstPixels, width, height, dirtyRect);
+                writer.setDirtyRect(0, dirtyRect[0], dirtyRect[1], dirtyRect[2], dirtyRect[3]);
+            }
+            previousPixels = pixels;
+        }
+        return writer;
+    }
+
+    private static boolean isLossless(File file) {
+        return file.getName().toLowerCase().endsWith(".png");
+    }
+
+    /**
+     * 列出目录中的帧图片，按文件名末尾的序号排序
+     */
+    public static File[] listFrames(File directory) throws IOException {
+        final File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                final String lowerName = name.toLowerCase();
+                for (String extension : IMAGE_EXTENSIONS) {
+                    if (lowerName.endsWith(extension)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        });
+        if (null == files) {
+            throw new IOException("not a directory: " + directory);
+        }
+        final long[] frameNumbers = new long[files.length];
+        for (int i = 0; i < files.length; i++) {
+            frameNumbers[i] = frameNumber(files[i].getName());
+        }
+        final Integer[] order = new Integer[files.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer lhs, Integer rhs) {
+                final int result = compareLong(frameNumbers[lhs], frameNumbers[rhs]);
+                return result != 0 ? result : files[lhs].getName().compareTo(files[rhs].getName());
+            }
+        });
+        final File[] sorted = new File[files.length];
+        for (int i = 0; i < order.length; i++) {
+            sorted[i] = files[order[i]];
+        }
+        return sorted;
+    }
+
+    private static long frameNumber(String name) {
+        final Matcher matcher = FRAME_NUMBER.matcher(name);
+        return matcher.find() ? Long.parseLong(matcher.group(1)) : -1;
+    }
+
+    private static int compareLong(long lhs, long rhs) {
+        return lhs < rhs ? -1 : (lhs == rhs ? 0 : 1);
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        final long length = file.length();
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("frame too large: " + file);
+        }
+        final byte[] data = new byte[(int) length];
+        final InputStream in = new FileInputStream(file);
+        try {
+            int read = 0;
+            while (read < data.length) {
+                final int count = in.read(data, read, data.length - read);
+                if (count < 0) {
+                    throw new IOException("unexpected end of " + file);
+                }
+                read += count;
+            }
+        } finally {
+            in.close();
+        }
+        return data;
+    }
+}
@@ -0,0 +1,47 @@
+package org.limlee.hiframecore;
+
+/**
+ * 差量帧格式（大端），记录这一帧相对上一帧变化的那些块的像素：
+ * <pre>
+ * 文件头   magic(4) width(4) height(4) rectCount(4)
+ * 矩形     每个矩形一项，共rectCount项：x(2) y(2) width(2) height(2)
+ * 像素     所有矩形的像素依次拼接（ARGB，非预乘，按行存储），整体用deflate压缩
+ * </pre>
+ * 序列帧包中flags带有{@link FramePackFormat#FLAG_PATCH}的帧就是差量帧，
+ * 要在上一帧的内容上覆盖这些矩形才是完整的这一帧
+ */
+public final class FramePatch {
+    public static final int MAGIC = 0x48465044; //"HFPD"
+
+    public static final int HEADER_SIZE = 16;
+    public static final int RECT_SIZE = 8;
+
+    /**
+     * 编码的时候按这个大小的块比较
+     */
+    public static final int TILE_SIZE = 16;
+
+    /**
+     * 接收差量像素，签名和android.graphics.Bitmap#setPixels一样
+     */
+    public interface PixelTarget {
+        void setPixels(int[] pixels, int offset, int stride, int x, int y, int width, int height);
+    }
+
+    private FramePatch() {
+    }
+
+    /**
+     * 是不是差量帧
+     *
+     * @param data
+     * @param offset
+     * @param length
+     * @return
+     */
+    public static boolean isPatch(byte[] data, int offset, int length) {
+        return length >= HEADER_SIZE
+                && ((data[offset] & 0xFF) << 24 | (data[offset + 1] & 0xFF) << 16
+                | (data[offset + 2] & 0xFF) << 8 | (data[offset + 3] & 0xFF)) == MAGIC;
+    }
+}
@@ -0,0 +1,105 @@
+package org.limlee.hiframecore;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * 把差量帧覆盖到上一帧上，格式见{@link FramePatch}。
+ * 解压用的Inflater和像素缓存都会复用，一个线程用一个
+ */
+public final class FramePatchDecoder {
+    private final Inflater mInflater = new Inflater();
+    private byte[] mBytes = new byte[0];
+    private int[] mPixels = new int[0];
+
+    /**
+     * @param data   整个差量帧
+     * @param offset
+     * @param length
+     * @param width  上一帧的尺寸，和差量帧的不一样就不能覆盖
+     * @param height
+     * @param target 上一帧的内容，覆盖之后就是这一帧
+     * @throws IOException 格式不对
+     */
+    public void apply(byte[] data, int offset, int length, int width, int height,
+                      FramePatch.PixelTarget target) throws IOException {
+        if (!FramePatch.isPatch(data, offset, length)) {
+            throw new IOException("not a frame patch");
+        }
+        final int patchWidth = readInt(data, offset + 4);
+        final int patchHeight = readInt(data, offset + 8);
+        final int rectCount = readInt(data, offset + 12);
+        if (patchWidth != width || patchHeight != height) {
+            throw new IOException("patch is " + patchWidth + "x" + patchHeight
+                    + ", frame is " + width + "x" + height);
+        }
+        final int pixelsOffset = offset + FramePatch.HEADER_SIZE + rectCount * FramePatch.RECT_SIZE;
+        if (rectCount < 0 || pixelsOffset > offset + length) {
+            throw new IOException("bad rect count: " + rectCount);
+        }
+        mInflater.reset();
+        mInflater.setInput(data, pixelsOffset, offset + length - pixelsOffset);
+        for (int i = 0; i < rectCount; i++) {
+            final int rectOffset = offset + FramePatch.HEADER_SIZE + i * FramePatch.RECT_SIZE;
+            final int x = readShort(data, rectOffset);
+            final int y = readShort(data, rectOffset + 2);
+            final int rectWidth = readShort(data, rectOffset + 4);
+            final int rectHeight = readShort(data, rectOffset + 6);
+            if (x + rectWidth > width || y + rectHeight > height) {
+                throw new IOException("rect " + i + " out of bounds");
+            }
+            final int pixelCount = rectWidth * rectHeight;
+            inflate(pixelCount * 4);
+            if (mPixels.length < pixelCount) {
+                mPixels = new int[pixelCount];
+            }
+            final byte[] bytes = mBytes;
+            final int[] pixels = mPixels;
+            for (int p = 0, b = 0; p < pixelCount; p++, b += 4) {
+                pixels[p] = (bytes[b] & 0xFF) << 24 | (bytes[b + 1] & 0xFF) << 16
+                        | (bytes[b + 2] & 0xFF) << 8 | (bytes[b + 3] & 0xFF);
+            }
+            if (pixelCount > 0) {
+                target.setPixels(pixels, 0, rectWidth, x, y, rectWidth, rectHeight);
+            }
+        }
+    }
+
+    /**
+     * 解压出byteCount个字节到mBytes中
+     */
+    private void inflate(int byteCount) throws IOException {
+        if (mBytes.length < byteCount) {
+            mBytes = new byte[byteCount];
+        }
+        int read = 0;
+        try {
+            while (read < byteCount) {
+                final int count = mInflater.inflate(mBytes, read, byteCount - read);
+                if (count == 0 && (mInflater.finished() || mInflater.needsInput() || mInflater.needsDictionary())) {
+                    throw new IOException("truncated frame patch");
+                }
+                read += count;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("bad frame patch", e);
+        }
+    }
+
+    /**
+     * 不再使用之后释放native的解压缓存
+     */
+    public void release() {
+        mInflater.end();
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return (data[offset] & 0xFF) << 24 | (data[offset + 1] & 0xFF) << 16
+                | (data[offset + 2] & 0xFF) << 8 | (data[offset + 3] & 0xFF);
+    }
+
+    private static int readShort(byte[] data, int offset) {
+        return (data[offset] & 0xFF) << 8 | (data[offset + 1] & 0xFF);
+    }
+}
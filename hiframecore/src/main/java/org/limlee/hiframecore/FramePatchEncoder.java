@@ -0,0 +1,123 @@
+package org.limlee.hiframecore;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * 把相邻两帧编码成差量帧，格式见{@link FramePatch}。
+ * 按{@link FramePatch#TILE_SIZE}分块比较，同一行相邻的变化块合并成一个矩形，
+ * 上下相邻、左右对齐的矩形再合并
+ */
+public final class FramePatchEncoder {
+
+    private FramePatchEncoder() {
+    }
+
+    /**
+     * @param previous 上一帧的像素，ARGB，按行存储
+     * @param current  这一帧的像素
+     * @param width
+     * @param height
+     * @return 编码好的差量帧
+     */
+    public static byte[] encode(int[] previous, int[] current, int width, int height) {
+        if (previous.length < width * height || current.length < width * height) {
+            throw new IllegalArgumentException("pixels smaller than " + width + "x" + height);
+        }
+        if (width > 0xFFFF || height > 0xFFFF) {
+            throw new IllegalArgumentException("frame too large: " + width + "x" + height);
+        }
+        final List<int[]> rects = findChangedRects(previous, current, width, height);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            final DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(FramePatch.MAGIC);
+            out.writeInt(width);
+            out.writeInt(height);
+            out.writeInt(rects.size());
+            for (int[] rect : rects) {
+                for (int value : rect) {
+                    out.writeShort(value);
+                }
+            }
+            out.flush();
+            final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+            final DataOutputStream pixels = new DataOutputStream(new DeflaterOutputStream(bytes, deflater));
+            for (int[] rect : rects) {
+                for (int y = rect[1]; y < rect[1] + rect[3]; y++) {
+                    final int row = y * width;
+                    for (int x = rect[0]; x < rect[0] + rect[2]; x++) {
+                        pixels.writeInt(current[row + x]);
+                    }
+                }
+            }
+            pixels.close();
+            deflater.end();
+        } catch (IOException e) {
+            throw new IllegalStateException(e); //写到内存里不会出错
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return 每个矩形是x y width height
+     */
+    static List<int[]> findChangedRects(int[] previous, int[] current, int width, int height) {
+        final int tile = FramePatch.TILE_SIZE;
+        final int columns = (width + tile - 1) / tile;
+        final int rows = (height + tile - 1) / tile;
+        final List<int[]> rects = new ArrayList<>();
+        List<int[]> openRects = new ArrayList<>(); //上一行的矩形，可以继续往下延伸
+        for (int row = 0; row < rows; row++) {
+            final int top = row * tile;
+            final int tileHeight = Math.min(tile, height - top);
+            final List<int[]> rowRects = new ArrayList<>();
+            int start = -1;
+            for (int column = 0; column <= columns; column++) {
+                final boolean changed = column < columns
+                        && tileChanged(previous, current, width, column * tile, top,
+                        Math.min(tile, width - column * tile), tileHeight);
+                if (changed && start < 0) {
+                    start = column;
+                } else if (!changed && start >= 0) {
+                    final int left = start * tile;
+                    final int right = Math.min(width, column * tile);
+                    rowRects.add(extendOrCreate(openRects, rects, left, top, right - left, tileHeight));
+                    start = -1;
+                }
+            }
+            openRects = rowRects;
+        }
+        return rects;
+    }
+
+    private static int[] extendOrCreate(List<int[]> openRects, List<int[]> rects,
+                                        int x, int y, int width, int height) {
+        for (int[] rect : openRects) {
+            if (rect[0] == x && rect[2] == width && rect[1] + rect[3] == y) {
+                rect[3] += height;
+                return rect;
+            }
+        }
+        final int[] rect = {x, y, width, height};
+        rects.add(rect);
+        return rect;
+    }
+
+    private static boolean tileChanged(int[] previous, int[] current, int stride,
+                                       int x, int y, int width, int height) {
+        for (int row = y; row < y + height; row++) {
+            for (int i = row * stride + x, end = i + width; i < end; i++) {
+                if (previous[i] != current[i]) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
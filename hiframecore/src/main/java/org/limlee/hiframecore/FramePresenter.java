@@ -0,0 +1,117 @@
+package org.limlee.hiframecore;
+
+/**
+ * 一次绘制的流程：准备帧、算出要重绘的区域、锁画布、绘制、提交。
+ * 和具体的绘制后端{@link FrameRenderer}无关，绘制的一方不用管画布是软件的还是硬件加速的
+ *
+ * @param <C> 画布的类型
+ */
+public final class FramePresenter<C> {
+    /**
+     * 帧还没准备好，什么都没画
+     */
+    public static final int RESULT_SKIPPED = 0;
+    /**
+     * 和上一帧一样，没有锁画布
+     */
+    public static final int RESULT_UNCHANGED = 1;
+    /**
+     * 画好并且提交了
+     */
+    public static final int RESULT_POSTED = 2;
+    /**
+     * 锁画布或者提交失败了，下一帧整帧重绘
+     */
+    public static final int RESULT_FAILED = 3;
+
+    public interface Callback<C> {
+
+        /**
+         * 在锁画布之前调用，返回false的话这一次就不绘制了，比如帧还没有解码好
+         */
+        boolean prepareFrame();
+
+        /**
+         * 在prepareFrame之后调用，只有上一帧完整地提交了、后端支持局部重绘的时候才会调用
+         *
+         * @param dirty left top right bottom，空的表示和上一帧一样
+         * @return false表示整帧重绘
+         */
+        boolean getDirtyRect(int[] dirty);
+
+        void drawFrame(C canvas);
+
+        /**
+         * 提交之后调用，这个时候上一帧已经不再需要了；和上一帧一样的时候也会调用
+         */
+        void onFramePosted();
+    }
+
+    private final Callback<C> mCallback;
+    private final int[] mDirty = new int[4];
+    private volatile boolean mIsFullRedrawNeeded = true; //画布上的内容不是上一帧了，不能局部重绘
+    private volatile FrameStats mStats;
+
+    public FramePresenter(Callback<C> callback) {
+        mCallback = callback;
+    }
+
+    /**
+     * 画布上的内容不再是上一帧了（surface重建、被清空、换了后端），下一帧整帧重绘
+     */
+    public void invalidate() {
+        mIsFullRedrawNeeded = true;
+    }
+
+    public boolean isFullRedrawNeeded() {
+        return mIsFullRedrawNeeded;
+    }
+
+    /**
+     * 记录每一次提交的绘制和锁画布耗时，null表示不记录
+     *
+     * @param stats
+     */
+    public void setStats(FrameStats stats) {
+        mStats = stats;
+    }
+
+    /**
+     * 绘制一帧，只在绘制线程中调用
+     *
+     * @param renderer
+     * @return RESULT_开头的常量
+     */
+    public int present(FrameRenderer<C> renderer) {
+        if (!mCallback.prepareFrame()) {
+            return RESULT_SKIPPED;
+        }
+        final int[] dirty = mDirty;
+        final boolean isPartial = !mIsFullRedrawNeeded
+                && renderer.isDirtyRectSupported()
+                && mCallback.getDirtyRect(dirty);
+        if (isPartial && (dirty[2] <= dirty[0] || dirty[3] <= dirty[1])) { //画布上的内容不用动
+            mCallback.onFramePosted();
+            return RESULT_UNCHANGED;
+        }
+        //局部锁的时候画布已经裁剪到了dirty，绘制的时候不用管
+        final long lockStart = System.nanoTime();
+        final C canvas = renderer.lockCanvas(isPartial ? dirty : null);
+        if (null != canvas) {
+            final long drawStart = System.nanoTime();
+            mCallback.drawFrame(canvas);
+            final long drawEnd = System.nanoTime();
+            if (renderer.unlockCanvasAndPost(canvas)) {
+                final FrameStats stats = mStats;
+                if (null != stats) {
+                    stats.recordDraw(drawEnd - drawStart, drawStart - lockStart + System.nanoTime() - drawEnd);
+                }
+                mIsFullRedrawNeeded = false;
+                mCallback.onFramePosted();
+                return RESULT_POSTED;
+            }
+        }
+        mIsFullRedrawNeeded = true;
+        return RESULT_FAILED;
+    }
+}
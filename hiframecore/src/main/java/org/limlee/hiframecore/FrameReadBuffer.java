@@ -0,0 +1,86 @@
+package org.limlee.hiframecore;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 可以复用的读取缓冲区，每一帧都读到同一个byte[]中，只有遇到更大的帧才会重新分配，
+ * 稳定之后读取一帧不会产生垃圾。不是线程安全的，每个解码线程用自己的
+ */
+public final class FrameReadBuffer {
+    private static final int MIN_CAPACITY = 16 * 1024;
+
+    private byte[] mBuffer;
+    private int mLength;
+    private int mAllocationCount;
+
+    public FrameReadBuffer() {
+        this(MIN_CAPACITY);
+    }
+
+    public FrameReadBuffer(int initialCapacity) {
+        mBuffer = new byte[Math.max(1, initialCapacity)];
+        mAllocationCount = 1;
+    }
+
+    /**
+     * 把输入流剩下的内容全部读进缓冲区，不会关闭输入流
+     *
+     * @param in
+     * @return 读取的字节数
+     * @throws IOException
+     */
+    public int readFrom(InputStream in) throws IOException {
+        mLength = 0;
+        ensureCapacity(in.available());
+        while (true) {
+            if (mLength == mBuffer.length) {
+                final int next = in.read();
+                if (next < 0) {
+                    break;
+                }
+                ensureCapacity(mLength + 1);
+                mBuffer[mLength++] = (byte) next;
+                continue;
+            }
+            final int count = in.read(mBuffer, mLength, mBuffer.length - mLength);
+            if (count < 0) {
+                break;
+            }
+            mLength += count;
+        }
+        return mLength;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= mBuffer.length) {
+            return;
+        }
+        int newCapacity = mBuffer.length;
+        while (newCapacity < capacity) {
+            newCapacity = newCapacity > Integer.MAX_VALUE / 2 ? Integer.MAX_VALUE : newCapacity * 2;
+        }
+        final byte[] newBuffer = new byte[newCapacity];
+        System.arraycopy(mBuffer, 0, newBuffer, 0, mLength);
+        mBuffer = newBuffer;
+        mAllocationCount++;
+    }
+
+    /**
+     * 缓冲区，有效内容是[0, getLength())
+     */
+    public byte[] getBuffer() {
+        return mBuffer;
+    }
+
+    public int getLength() {
+        return mLength;
+    }
+
+    /**
+     * 缓冲区总共分配了多少次
+     */
+    public int getAllocationCount() {
+        return mAllocationCount;
+    }
+}
@@ -0,0 +1,31 @@
+package org.limlee.hiframecore;
+
+/**
+ * 把一帧提交到屏幕上的后端，比如软件画布或者硬件加速画布。
+ * 画布的类型是泛型的，不依赖android，在JVM上可以用假的实现测试{@link FramePresenter}
+ *
+ * @param <C> 画布的类型
+ */
+public interface FrameRenderer<C> {
+
+    /**
+     * 锁住画布准备绘制
+     *
+     * @param dirty 要重绘的区域，left top right bottom，可能会被扩大；null表示整帧重绘
+     * @return 锁不住（比如surface已经销毁）返回null
+     */
+    C lockCanvas(int[] dirty);
+
+    /**
+     * 提交画好的画布
+     *
+     * @param canvas
+     * @return 没有提交出去返回false，下一帧要整帧重绘
+     */
+    boolean unlockCanvasAndPost(C canvas);
+
+    /**
+     * 是否支持只锁一部分，锁住的画布上保留着上一帧的内容；不支持的话每一帧都整帧重绘
+     */
+    boolean isDirtyRectSupported();
+}
@@ -0,0 +1,151 @@
+package org.limlee.hiframecore;
+
+/**
+ * 一个动画的播放统计：解码、绘制和锁画布的耗时，丢帧、迟到的帧和显示延迟的分布，复用池命中率和解码的字节数。
+ * 解码线程和绘制线程都会记录，记录的时候不产生垃圾；
+ * 读取的时候先用{@link #copyTo(FrameStats)}拷贝一份快照，快照上的数字是一致的。
+ * 耗时都是微秒
+ */
+public final class FrameStats {
+    /**
+     * 比应该显示的时间晚了这么多（一个vsync）算迟到
+     */
+    public static final long LATE_THRESHOLD_MICROS = 16667;
+
+    private final LatencyHistogram mDecodeTimes = new LatencyHistogram();
+    private final LatencyHistogram mDrawTimes = new LatencyHistogram();
+    private final LatencyHistogram mLockTimes = new LatencyHistogram();
+    private final LatencyHistogram mFrameDelays = new LatencyHistogram();
+    private long mFrameCount;
+    private long mDroppedFrameCount;
+    private long mLateFrameCount;
+    private long mBytesDecoded;
+    private long mPoolHitCount;
+    private long mPoolMissCount;
+
+    /**
+     * @param nanos 解码一帧的耗时，包括读取
+     * @param bytes 解码出来的像素字节数
+     */
+    public synchronized void recordDecode(long nanos, long bytes) {
+        mDecodeTimes.record(nanos / 1000);
+        mBytesDecoded += bytes;
+    }
+
+    /**
+     * @param hit 复用池中有没有可以复用的bitmap
+     */
+    public synchronized void recordPoolAcquire(boolean hit) {
+        if (hit) {
+            mPoolHitCount++;
+        } else {
+            mPoolMissCount++;
+        }
+    }
+
+    /**
+     * @param drawNanos 在画布上绘制的耗时
+     * @param lockNanos 锁画布和提交的耗时
+     */
+    public synchronized void recordDraw(long drawNanos, long lockNanos) {
+        mDrawTimes.record(drawNanos / 1000);
+        mLockTimes.record(lockNanos / 1000);
+    }
+
+    /**
+     * 一帧显示出来了
+     *
+     * @param delayMicros   比时间轴上这一帧开始的时间晚了多少
+     * @param droppedFrames 和上一次显示的帧之间跳过了几帧
+     */
+    public synchronized void recordFrame(long delayMicros, int droppedFrames) {
+        mFrameDelays.record(delayMicros);
+        mFrameCount++;
+        mDroppedFrameCount += Math.max(0, droppedFrames);
+        if (delayMicros > LATE_THRESHOLD_MICROS) {
+            mLateFrameCount++;
+        }
+    }
+
+    public LatencyHistogram getDecodeTimes() {
+        return mDecodeTimes;
+    }
+
+    public LatencyHistogram getDrawTimes() {
+        return mDrawTimes;
+    }
+
+    public LatencyHistogram getLockTimes() {
+        return mLockTimes;
+    }
+
+    /**
+     * 每一帧的显示延迟，它的百分位就是抖动的分布
+     */
+    public LatencyHistogram getFrameDelays() {
+        return mFrameDelays;
+    }
+
+    public long getFrameCount() {
+        return mFrameCount;
+    }
+
+    public long getDroppedFrameCount() {
+        return mDroppedFrameCount;
+    }
+
+    public long getLateFrameCount() {
+        return mLateFrameCount;
+    }
+
+    public long getBytesDecoded() {
+        return mBytesDecoded;
+    }
+
+    public long getPoolHitCount() {
+        return mPoolHitCount;
+    }
+
+    public long getPoolMissCount() {
+        return mPoolMissCount;
+    }
+
+    /**
+     * @return 没有从复用池取过返回0
+     */
+    public float getPoolHitRate() {
+        final long total = mPoolHitCount + mPoolMissCount;
+        return total == 0 ? 0 : (float) mPoolHitCount / total;
+    }
+
+    /**
+     * 拷贝一份快照，dst只能由调用者自己使用
+     *
+     * @param dst
+     */
+    public synchronized void copyTo(FrameStats dst) {
+        mDecodeTimes.copyTo(dst.mDecodeTimes);
+        mDrawTimes.copyTo(dst.mDrawTimes);
+        mLockTimes.copyTo(dst.mLockTimes);
+        mFrameDelays.copyTo(dst.mFrameDelays);
+        dst.mFrameCount = mFrameCount;
+        dst.mDroppedFrameCount = mDroppedFrameCount;
+        dst.mLateFrameCount = mLateFrameCount;
+        dst.mBytesDecoded = mBytesDecoded;
+        dst.mPoolHitCount = mPoolHitCount;
+        dst.mPoolMissCount = mPoolMissCount;
+    }
+
+    public synchronized void reset() {
+        mDecodeTimes.reset();
+        mDrawTimes.reset();
+        mLockTimes.reset();
+        mFrameDelays.reset();
+        mFrameCount = 0;
+        mDroppedFrameCount = 0;
+        mLateFrameCount = 0;
+        mBytesDecoded = 0;
+        mPoolHitCount = 0;
+        mPoolMissCount = 0;
+    }
+}
@@ -0,0 +1,115 @@
+package org.limlee.hiframecore;
+
+import java.util.Arrays;
+
+/**
+ * 帧动画的时间轴，根据从开始播放到现在经过的时间算出应该显示哪一帧，
+ * 不会因为某一帧绘制慢了就把后面的帧都往后推，慢了就丢帧。
+ * 如果指定的播放时长和所有帧的时长总和不一样，每一帧的时长按比例缩放
+ */
+public final class FrameTimeline {
+    private final long[] mFrameEnds; //每一帧在一轮中结束的时间
+    private final long mDuration;
+
+    /**
+     * @param frameDurations 每一帧的时长
+     * @param duration       一轮的时长，小于等于0的话就是所有帧的时长总和
+     */
+    public FrameTimeline(long[] frameDurations, long duration) {
+        if (frameDurations.length == 0) {
+            throw new IllegalArgumentException("no frames");
+        }
+        final int numFrames = frameDurations.length;
+        long sum = 0;
+        for (long frameDuration : frameDurations) {
+            sum += Math.max(0, frameDuration);
+        }
+        if (duration <= 0) {
+            duration = sum;
+        }
+        if (duration <= 0) {
+            throw new IllegalArgumentException("duration must be positive");
+        }
+        mDuration = duration;
+        mFrameEnds = new long[numFrames];
+        long elapsed = 0;
+        for (int i = 0; i < numFrames; i++) {
+            if (sum > 0) {
+                elapsed += Math.max(0, frameDurations[i]);
+                mFrameEnds[i] = (long) ((double) elapsed * duration / sum);
+            } else { //都没有设置时长，平分
+                mFrameEnds[i] = (long) ((double) (i + 1) * duration / numFrames);
+            }
+        }
+        mFrameEnds[numFrames - 1] = duration;
+    }
+
+    public int getFrameCount() {
+        return mFrameEnds.length;
+    }
+
+    /**
+     * 一轮的时长
+     */
+    public long getDuration() {
+        return mDuration;
+    }
+
+    /**
+     * 这一帧在一轮中开始的时间
+     */
+    public long getFrameStart(int frame) {
+        return frame == 0 ? 0 : mFrameEnds[frame - 1];
+    }
+
+    /**
+     * 经过elapsed之后应该显示的帧
+     *
+     * @param elapsed 从开始播放到现在的时间
+     * @param loop    是否循环播放，不循环的话播放完了就一直是最后一帧
+     * @return
+     */
+    public int getFrameAt(long elapsed, boolean loop) {
+        if (elapsed < 0) {
+            return 0;
+        }
+        if (!loop && elapsed >= mDuration) {
+            return mFrameEnds.length - 1;
+        }
+        final long position = elapsed % mDuration;
+        int index = Arrays.binarySearch(mFrameEnds, position);
+        if (index >= 0) { //刚好是这一帧结束的时间，跳过所有时长为0的帧
+            while (index < mFrameEnds.length - 1 && mFrameEnds[index] == position) {
+                index++;
+            }
+            return index;
+        }
+        return -index - 1;
+    }
+
+    /**
+     * 经过elapsed之后，下一帧开始的时间（从开始播放算起）
+     *
+     * @param elapsed
+     * @param loop
+     * @return 不循环并且已经播放完了返回-1
+     */
+    public long getNextFrameTime(long elapsed, boolean loop) {
+        if (elapsed < 0) {
+            return 0;
+        }
+        if (!loop && elapsed >= mDuration) {
+            return -1;
+        }
+        final long loops = elapsed / mDuration;
+        final int frame = getFrameAt(elapsed, true);
+        return loops * mDuration + mFrameEnds[frame];
+    }
+
+    /**
+     * 经过elapsed之后已经完整播放了几轮
+     */
+    public long getLoopCount(long elapsed) {
+        return elapsed <= 0 ? 0 : elapsed / mDuration;
+    }
+}
@@ -0,0 +1,156 @@
+package org.limlee.hiframecore;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 只读取图片文件头，得到宽高以及是否有透明通道，不需要解码整张图片。
+ * 支持png、jpeg和webp
+ */
+public final class ImageHeader {
+    private static final long PNG_SIGNATURE = 0x89504E470D0A1A0AL;
+    private static final int PNG_IHDR = 0x49484452;
+    private static final int PNG_TRNS = 0x74524E53;
+    private static final int PNG_IDAT = 0x49444154;
+    private static final int PNG_COLOR_TYPE_ALPHA = 4;
+
+    private static final int RIFF = 0x52494646;
+    private static final int WEBP = 0x57454250;
+    private static final int WEBP_VP8 = 0x56503820;
+    private static final int WEBP_VP8L = 0x5650384C;
+    private static final int WEBP_VP8X = 0x56503858;
+    private static final int WEBP_VP8X_ALPHA = 0x10;
+
+    public final int width;
+    public final int height;
+    public final boolean hasAlpha;
+
+    private ImageHeader(int width, int height, boolean hasAlpha) {
+        this.width = width;
+        this.height = height;
+        this.hasAlpha = hasAlpha;
+    }
+
+    /**
+     * @param data 图片文件的内容，position不会改变
+     * @return 不认识的格式返回null
+     */
+    public static ImageHeader probe(ByteBuffer data) {
+        final ByteBuffer in = data.slice();
+        in.order(ByteOrder.BIG_ENDIAN);
+        try {
+            if (in.remaining() >= 24 && in.getLong(0) == PNG_SIGNATURE) {
+                return probePng(in);
+            }
+            if (in.remaining() >= 4 && (in.getShort(0) & 0xFFFF) == 0xFFD8) {
+                return probeJpeg(in);
+            }
+            if (in.remaining() >= 30 && in.getInt(0) == RIFF && in.getInt(8) == WEBP) {
+                return probeWebp(in);
+            }
+        } catch (IndexOutOfBoundsException e) {
+            //文件被截断了
+        }
+        return null;
+    }
+
+    public static ImageHeader probe(byte[] data) {
+        return probe(ByteBuffer.wrap(data));
+    }
+
+    public static ImageHeader probe(byte[] data, int offset, int length) {
+        return probe(ByteBuffer.wrap(data, offset, length));
+    }
+
+    private static ImageHeader probePng(ByteBuffer in) {
+        if (in.getInt(12) != PNG_IHDR) {
+            return null;
+        }
+        final int width = in.getInt(16);
+        final int height = in.getInt(20);
+        final int colorType = in.get(25) & 0xFF;
+        if ((colorType & PNG_COLOR_TYPE_ALPHA) != 0) {
+            return new ImageHeader(width, height, true);
+        }
+        //没有alpha通道的话，只有tRNS块能带来透明，它一定在IDAT之前
+        int position = 8;
+        while (position + 8 <= in.limit()) {
+            final long length = in.getInt(position) & 0xFFFFFFFFL;
+            final int type = in.getInt(position + 4);
+            if (type == PNG_TRNS) {
+                return new ImageHeader(width, height, true);
+            }
+            if (type == PNG_IDAT) {
+                return new ImageHeader(width, height, false);
+            }
+            final long next = position + 12 + length;
+            if (next > Integer.MAX_VALUE) {
+                break;
+            }
+            position = (int) next;
+        }
+        return new ImageHeader(width, height, true); //不确定的时候当成有透明
+    }
+
+    private static ImageHeader probeJpeg(ByteBuffer in) {
+        int position = 2;
+        while (position + 9 <= in.limit()) {
+            if ((in.get(position) & 0xFF) != 0xFF) {
+                return null;
+            }
+            final int marker = in.get(position + 1) & 0xFF;
+            if (marker == 0xFF) { //填充
+                position++;
+                continue;
+            }
+            if (marker >= 0xC0 && marker <= 0xCF
+                    && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+                final int height = in.getShort(position + 5) & 0xFFFF;
+                final int width = in.getShort(position + 7) & 0xFFFF;
+                return new ImageHeader(width, height, false);
+            }
+            position += 2 + (in.getShort(position + 2) & 0xFFFF);
+        }
+        return null;
+    }
+
+    private static ImageHeader probeWebp(ByteBuffer in) {
+        final int chunk = in.getInt(12);
+        in.order(ByteOrder.LITTLE_ENDIAN);
+        final int data = 20;
+        if (chunk == WEBP_VP8X) {
+            final boolean hasAlpha = (in.get(data) & WEBP_VP8X_ALPHA) != 0;
+            final int width = 1 + readUInt24(in, data + 4);
+            final int height = 1 + readUInt24(in, data + 7);
+            return new ImageHeader(width, height, hasAlpha);
+        }
+        if (chunk == WEBP_VP8L) {
+            if ((in.get(data) & 0xFF) != 0x2F) {
+                return null;
+            }
+            final int bits = in.getInt(data + 1);
+            final int width = 1 + (bits & 0x3FFF);
+            final int height = 1 + ((bits >>> 14) & 0x3FFF);
+            final boolean hasAlpha = ((bits >>> 28) & 1) != 0;
+            return new ImageHeader(width, height, hasAlpha);
+        }
+        if (chunk == WEBP_VP8) {
+            //3字节的帧标记，3字节的起始码9d 01 2a，然后是14位的宽和高
+            if ((in.get(data + 3) & 0xFF) != 0x9D
+                    || (in.get(data + 4) & 0xFF) != 0x01
+                    || (in.get(data + 5) & 0xFF) != 0x2A) {
+                return null;
+            }
+            final int width = in.getShort(data + 6) & 0x3FFF;
+            final int height = in.getShort(data + 8) & 0x3FFF;
+            return new ImageHeader(width, height, false);
+        }
+        return null;
+    }
+
+    private static int readUInt24(ByteBuffer in, int position) {
+        return (in.get(position) & 0xFF)
+                | (in.get(position + 1) & 0xFF) << 8
+                | (in.get(position + 2) & 0xFF) << 16;
+    }
+}
@@ -0,0 +1,116 @@
+package org.limlee.hiframecore;
+
+/**
+ * 耗时的直方图，桶是预先分配好的，记录的时候不产生垃圾。
+ * 每个2的幂的区间分成8个桶，统计出来的百分位最多比实际值大12.5%
+ * 不是线程安全的，由使用者（比如{@link FrameStats}）加锁
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final long MAX_VALUE = Integer.MAX_VALUE;
+    private static final int BUCKET_COUNT = bucketOf(MAX_VALUE) + 1;
+
+    private final long[] mCounts = new long[BUCKET_COUNT];
+    private long mCount;
+    private long mSum;
+    private long mMin;
+    private long mMax;
+
+    /**
+     * @param value 耗时，单位由使用者决定，小于0的当作0，太大的截断
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        } else if (value > MAX_VALUE) {
+            value = MAX_VALUE;
+        }
+        mCounts[bucketOf(value)]++;
+        mMin = mCount == 0 ? value : Math.min(mMin, value);
+        mMax = Math.max(mMax, value);
+        mCount++;
+        mSum += value;
+    }
+
+    public long getCount() {
+        return mCount;
+    }
+
+    public long getMin() {
+        return mMin;
+    }
+
+    public long getMax() {
+        return mMax;
+    }
+
+    public long getMean() {
+        return mCount == 0 ? 0 : mSum / mCount;
+    }
+
+    /**
+     * @param percentile 0到100，比如50、90、99
+     * @return 至少percentile%的记录不大于这个值；没有记录返回0
+     */
+    public long getPercentile(double percentile) {
+        if (mCount == 0) {
+            return 0;
+        }
+        if (percentile <= 0) {
+            return mMin;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(mCount * Math.min(100, Math.max(0, percentile)) / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mCounts[i];
+            if (seen >= rank) {
+                return Math.max(mMin, Math.min(mMax, upperBoundOf(i)));
+            }
+        }
+        return mMax;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mCounts[i] = 0;
+        }
+        mCount = 0;
+        mSum = 0;
+        mMin = 0;
+        mMax = 0;
+    }
+
+    public void copyTo(LatencyHistogram dst) {
+        System.arraycopy(mCounts, 0, dst.mCounts, 0, BUCKET_COUNT);
+        dst.mCount = mCount;
+        dst.mSum = mSum;
+        dst.mMin = mMin;
+        dst.mMax = mMax;
+    }
+
+    /**
+     * 小于8的值每个一个桶，之后每个2的幂的区间8个桶
+     */
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int shift = exponent - SUB_BUCKET_BITS;
+        final int subBucket = (int) (value >>> shift) & (SUB_BUCKET_COUNT - 1);
+        return SUB_BUCKET_COUNT + shift * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /**
+     * 桶中最大的值
+     */
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKET_COUNT) {
+            return bucket;
+        }
+        final int shift = (bucket - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT;
+        final int subBucket = (bucket - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+        return ((long) (SUB_BUCKET_COUNT + subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,218 @@
+package org.limlee.hiframecore;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 等待播放的动画队列，比如直播间的礼物：优先级高的先播，同优先级的先来先播；
+ * 排队中的同一种动画会合并成一个（比如连送10个合并成一次“x10”），一个最多合并maxCombo个；
+ * 队列满了的时候挤掉优先级最低的里面最晚来的，新来的优先级不比它高就丢掉新来的。
+ * 队列一般只有几个到几十个，直接线性查找；不是线程安全的，在UI线程中使用
+ *
+ * @param <T> 播放需要的数据
+ */
+public final class PlayQueue<T> {
+
+    public static final class Entry<T> {
+        private final String mKey;
+        private final T mPayload;
+        private int mPriority;
+        private int mCount;
+        private long mSequence; //先来的小
+
+        Entry(String key, T payload, int priority, int count, long sequence) {
+            mKey = key;
+            mPayload = payload;
+            mPriority = priority;
+            mCount = count;
+            mSequence = sequence;
+        }
+
+        /**
+         * 同一种动画的标识，比如礼物id；null的话不合并
+         */
+        public String getKey() {
+            return mKey;
+        }
+
+        /**
+         * 合并的时候用第一个的
+         */
+        public T getPayload() {
+            return mPayload;
+        }
+
+        /**
+         * 合并的时候取最高的
+         */
+        public int getPriority() {
+            return mPriority;
+        }
+
+        /**
+         * 合并了几个
+         */
+        public int getCount() {
+            return mCount;
+        }
+    }
+
+    private final List<Entry<T>> mEntries = new ArrayList<>();
+    private final int mCapacity;
+    private final int mMaxCombo;
+    private long mNextSequence;
+    private long mDroppedCount;
+
+    /**
+     * @param capacity 最多排多少个
+     * @param maxCombo 一个最多合并多少个，1表示不合并
+     */
+    public PlayQueue(int capacity, int maxCombo) {
+        if (capacity <= 0 || maxCombo <= 0) {
+            throw new IllegalArgumentException("capacity " + capacity + ", max combo " + maxCombo);
+        }
+        mCapacity = capacity;
+        mMaxCombo = maxCombo;
+    }
+
+    /**
+     * 加入队列，能合并的先合并到排队中的同一种动画上，超过maxCombo的部分另外排队
+     *
+     * @param key      同一种动画的标识，null的话不合并
+     * @param priority 越大越先播放
+     * @param count    几个，比如连送的个数
+     * @param payload
+     * @return false表示有的因为队列满了被丢掉了
+     */
+    public boolean offer(String key, int priority, int count, T payload) {
+        int remaining = Math.max(1, count);
+        if (null != key && mMaxCombo > 1) {
+            final Entry<T> combo = findCombo(key);
+            if (null != combo) {
+                final int merged = Math.min(remaining, mMaxCombo - combo.mCount);
+                combo.mCount += merged;
+                combo.mPriority = Math.max(combo.mPriority, priority);
+                remaining -= merged;
+            }
+        }
+        boolean accepted = true;
+        while (remaining > 0) {
+            final int chunk = Math.min(remaining, mMaxCombo);
+            remaining -= chunk;
+            if (mEntries.size() >= mCapacity && !evictLowerThan(priority)) {
+                mDroppedCount += chunk;
+                accepted = false;
+                continue;
+            }
+            mEntries.add(new Entry<>(key, payload, priority, chunk, mNextSequence++));
+        }
+        return accepted;
+    }
+
+    /**
+     * 最晚来的、还能再合并的同一种动画
+     */
+    private Entry<T> findCombo(String key) {
+        Entry<T> combo = null;
+        for (int i = 0; i < mEntries.size(); i++) {
+            final Entry<T> entry = mEntries.get(i);
+            if (key.equals(entry.mKey)
+                    && entry.mCount < mMaxCombo
+                    && (null == combo || entry.mSequence > combo.mSequence)) {
+                combo = entry;
+            }
+        }
+        return combo;
+    }
+
+    /**
+     * 挤掉优先级最低的里面最晚来的
+     *
+     * @return 没有比priority低的就返回false
+     */
+    private boolean evictLowerThan(int priority) {
+        int victim = -1;
+        for (int i = 0; i < mEntries.size(); i++) {
+            final Entry<T> entry = mEntries.get(i);
+            if (entry.mPriority >= priority) {
+                continue;
+            }
+            if (victim < 0
+                    || entry.mPriority < mEntries.get(victim).mPriority
+                    || (entry.mPriority == mEntries.get(victim).mPriority
+                    && entry.mSequence > mEntries.get(victim).mSequence)) {
+                victim = i;
+            }
+        }
+        if (victim < 0) {
+            return false;
+        }
+        mDroppedCount += mEntries.remove(victim).mCount;
+        return true;
+    }
+
+    /**
+     * 下一个要播放的，不取出
+     *
+     * @return 队列是空的返回null
+     */
+    public Entry<T> peek() {
+        final int index = indexOfNext();
+        return index >= 0 ? mEntries.get(index) : null;
+    }
+
+    /**
+     * 取出下一个要播放的
+     *
+     * @return 队列是空的返回null
+     */
+    public Entry<T> poll() {
+        final int index = indexOfNext();
+        return index >= 0 ? mEntries.remove(index) : null;
+    }
+
+    private int indexOfNext() {
+        int next = -1;
+        for (int i = 0; i < mEntries.size(); i++) {
+            final Entry<T> entry = mEntries.get(i);
+            if (next < 0
+                    || entry.mPriority > mEntries.get(next).mPriority
+                    || (entry.mPriority == mEntries.get(next).mPriority
+                    && entry.mSequence < mEntries.get(next).mSequence)) {
+                next = i;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * 把取出来还没播放的放回去，还是原来的位置，不受容量限制；
+     * 比如取出来准备播放的时候来了优先级更高的
+     *
+     * @param entry
+     */
+    public void requeue(Entry<T> entry) {
+        if (!mEntries.contains(entry)) {
+            mEntries.add(entry);
+        }
+    }
+
+    public int size() {
+        return mEntries.size();
+    }
+
+    public boolean isEmpty() {
+        return mEntries.isEmpty();
+    }
+
+    /**
+     * 因为队列满了丢掉的个数
+     */
+    public long getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    public void clear() {
+        mEntries.clear();
+    }
+}
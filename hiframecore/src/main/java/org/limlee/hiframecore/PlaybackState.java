@@ -0,0 +1,101 @@
+package org.limlee.hiframecore;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 播放状态机，所有的切换都是CAS，不加锁，任何线程调用都不会阻塞：
+ * <pre>
+ * IDLE --begin--> PREPARING --prepared--> RUNNING &lt;--pause/resume--&gt; PAUSED
+ *   ^                 |                       |                           |
+ *   +--abort----------+                       +----------stop-------------+
+ *   +--stopped-- STOPPING &lt;-------------------------------------------------+
+ * </pre>
+ * 同一时间只有一个线程能开始或者停止；准备的时候被停止了，由准备的一方负责释放
+ */
+public final class PlaybackState {
+    public static final int STATE_IDLE = 0;
+    public static final int STATE_PREPARING = 1;
+    public static final int STATE_RUNNING = 2;
+    public static final int STATE_PAUSED = 3;
+    public static final int STATE_STOPPING = 4;
+
+    private final AtomicInteger mState = new AtomicInteger(STATE_IDLE);
+
+    public int get() {
+        return mState.get();
+    }
+
+    /**
+     * 准备、运行或者暂停中
+     */
+    public boolean isActive() {
+        final int state = mState.get();
+        return state == STATE_PREPARING || state == STATE_RUNNING || state == STATE_PAUSED;
+    }
+
+    /**
+     * IDLE -> PREPARING
+     *
+     * @return false表示已经开始了或者正在停止
+     */
+    public boolean begin() {
+        return mState.compareAndSet(STATE_IDLE, STATE_PREPARING);
+    }
+
+    /**
+     * PREPARING -> RUNNING
+     *
+     * @return false表示准备的时候被停止了，调用者要释放准备好的东西再调用{@link #stopped()}
+     */
+    public boolean prepared() {
+        return mState.compareAndSet(STATE_PREPARING, STATE_RUNNING);
+    }
+
+    /**
+     * 准备失败，PREPARING或者STOPPING -> IDLE
+     */
+    public void abort() {
+        if (!mState.compareAndSet(STATE_PREPARING, STATE_IDLE)) {
+            mState.compareAndSet(STATE_STOPPING, STATE_IDLE);
+        }
+    }
+
+    /**
+     * RUNNING -> PAUSED
+     */
+    public boolean pause() {
+        return mState.compareAndSet(STATE_RUNNING, STATE_PAUSED);
+    }
+
+    /**
+     * PAUSED -> RUNNING
+     */
+    public boolean resume() {
+        return mState.compareAndSet(STATE_PAUSED, STATE_RUNNING);
+    }
+
+    /**
+     * PREPARING、RUNNING或者PAUSED -> STOPPING
+     *
+     * @return 之前的状态，已经停止或者正在停止的话返回{@link #STATE_IDLE}；
+     * 之前是PREPARING的话由准备的一方释放，否则调用者释放完之后调用{@link #stopped()}
+     */
+    public int stop() {
+        while (true) {
+            final int state = mState.get();
+            if (state == STATE_IDLE || state == STATE_STOPPING) {
+                return STATE_IDLE;
+            }
+            if (mState.compareAndSet(state, STATE_STOPPING)) {
+                return state;
+            }
+        }
+    }
+
+    /**
+     * STOPPING -> IDLE
+     */
+    public void stopped() {
+        mState.compareAndSet(STATE_STOPPING, STATE_IDLE);
+    }
+}
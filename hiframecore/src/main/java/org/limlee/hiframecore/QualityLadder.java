@@ -0,0 +1,149 @@
+package org.limlee.hiframecore;
+
+/**
+ * 内存紧张的时候一级一级降低播放质量，压力过去之后每隔一段时间升回一级：
+ * <pre>
+ * LEVEL_FULL             正常
+ * LEVEL_SMALL_BUFFERS    预解码最多1帧，复用池和缓存的上限减半
+ * LEVEL_RGB_565          没有透明的帧用RGB_565解码
+ * LEVEL_HALF_RESOLUTION  按画布一半的尺寸解码（inSampleSize加倍）
+ * LEVEL_PAUSE_LOW        低优先级的动画暂停
+ * </pre>
+ * 每一级都包含前面几级的降级；和系统的onTrimMemory级别的对应见{@link #levelForTrimMemory(int)}
+ */
+public final class QualityLadder {
+    public static final int LEVEL_FULL = 0;
+    public static final int LEVEL_SMALL_BUFFERS = 1;
+    public static final int LEVEL_RGB_565 = 2;
+    public static final int LEVEL_HALF_RESOLUTION = 3;
+    public static final int LEVEL_PAUSE_LOW = 4;
+
+    //和ComponentCallbacks2中的值一样，这个模块不依赖android
+    static final int TRIM_MEMORY_RUNNING_MODERATE = 5;
+    static final int TRIM_MEMORY_RUNNING_LOW = 10;
+    static final int TRIM_MEMORY_RUNNING_CRITICAL = 15;
+    static final int TRIM_MEMORY_UI_HIDDEN = 20;
+    static final int TRIM_MEMORY_COMPLETE = 80;
+
+    private final long mRecoveryInterval;
+    private int mLevel = LEVEL_FULL;
+    private long mLastChangeTime;
+
+    /**
+     * @param recoveryInterval 多久没有新的内存压力就升回一级，单位毫秒
+     */
+    public QualityLadder(long recoveryInterval) {
+        mRecoveryInterval = recoveryInterval;
+    }
+
+    public synchronized int getLevel() {
+        return mLevel;
+    }
+
+    /**
+     * 收到内存压力，降到level（已经更低了的话不变），重新开始计时
+     *
+     * @param level
+     * @param now   毫秒
+     * @return 级别是否变了
+     */
+    public synchronized boolean onPressure(int level, long now) {
+        level = Math.max(LEVEL_FULL, Math.min(LEVEL_PAUSE_LOW, level));
+        mLastChangeTime = now;
+        if (level <= mLevel) {
+            return false;
+        }
+        mLevel = level;
+        return true;
+    }
+
+    /**
+     * 收到onTrimMemory，按{@link #levelForTrimMemory(int)}降级；
+     * 已经按一半尺寸解码了还是收到前台的TRIM_MEMORY_RUNNING_CRITICAL，就暂停低优先级的动画
+     *
+     * @param trimLevel ComponentCallbacks2.TRIM_MEMORY_开头的常量
+     * @param now       毫秒
+     * @return 级别是否变了
+     */
+    public synchronized boolean onTrimMemory(int trimLevel, long now) {
+        int level = levelForTrimMemory(trimLevel);
+        if (level == LEVEL_HALF_RESOLUTION && mLevel >= LEVEL_HALF_RESOLUTION) {
+            level = LEVEL_PAUSE_LOW;
+        }
+        return onPressure(level, now);
+    }
+
+    /**
+     * 距离上一次压力或者升级足够久了就升回一级
+     *
+     * @param now 毫秒
+     * @return 级别是否变了
+     */
+    public synchronized boolean recover(long now) {
+        if (mLevel == LEVEL_FULL || now - mLastChangeTime < mRecoveryInterval) {
+            return false;
+        }
+        mLevel--;
+        mLastChangeTime = now;
+        return true;
+    }
+
+    /**
+     * 下一次可以升级的时间，已经是最高质量的话返回-1
+     */
+    public synchronized long getNextRecoveryTime() {
+        return mLevel == LEVEL_FULL ? -1 : mLastChangeTime + mRecoveryInterval;
+    }
+
+    /**
+     * onTrimMemory的级别对应的质量级别；后台的几个级别（包括TRIM_MEMORY_COMPLETE和onLowMemory）动画都已经挂起了，
+     * 只需要收缩缓冲区，不然回到前台之后要好几个恢复间隔才能升回正常的质量
+     *
+     * @param trimLevel ComponentCallbacks2.TRIM_MEMORY_开头的常量
+     * @return
+     */
+    public static int levelForTrimMemory(int trimLevel) {
+        if (trimLevel >= TRIM_MEMORY_UI_HIDDEN) {
+            return LEVEL_SMALL_BUFFERS;
+        }
+        if (trimLevel >= TRIM_MEMORY_RUNNING_CRITICAL) {
+            return LEVEL_HALF_RESOLUTION;
+        }
+        if (trimLevel >= TRIM_MEMORY_RUNNING_LOW) {
+            return LEVEL_RGB_565;
+        }
+        if (trimLevel >= TRIM_MEMORY_RUNNING_MODERATE) {
+            return LEVEL_SMALL_BUFFERS;
+        }
+        return LEVEL_FULL;
+    }
+
+    /**
+     * 这一级允许的预解码帧数
+     */
+    public static int getDecodeAhead(int level, int decodeAhead) {
+        return level >= LEVEL_SMALL_BUFFERS ? Math.min(1, decodeAhead) : decodeAhead;
+    }
+
+    /**
+     * 这一级的复用池、缓存的上限
+     */
+    public static long getBudget(int level, long budget) {
+        return level >= LEVEL_SMALL_BUFFERS ? budget / 2 : budget;
+    }
+
+    public static boolean isRgb565Preferred(int level) {
+        return level >= LEVEL_RGB_565;
+    }
+
+    /**
+     * 解码尺寸相对画布尺寸右移几位
+     */
+    public static int getResolutionShift(int level) {
+        return level >= LEVEL_HALF_RESOLUTION ? 1 : 0;
+    }
+
+    public static boolean isLowPriorityPaused(int level) {
+        return level >= LEVEL_PAUSE_LOW;
+    }
+}
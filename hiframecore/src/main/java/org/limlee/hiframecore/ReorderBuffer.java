@@ -0,0 +1,194 @@
+package org.limlee.hiframecore;
+
+/**
+ * 按顺序交付的环形缓冲区，几个线程并行生产，一个线程按顺序消费，比如并行预解码的帧。
+ * 生产者先按顺序{@link #reserve(int)}占一个位置再生产，生产完{@link #fill(long, Object)}，
+ * 先生产完的要等前面的都生产好了才能取出，消费者看到的还是按顺序的。
+ * 容量固定，放满之后{@link #reserve(int)}失败，不会阻塞；占了位置还没生产完的也算在容量中，
+ * 被丢弃或者清空的时候还没生产完的，在{@link #fill(long, Object)}被拒绝之前也还算在容量中，
+ * 所以同时存在的对象不会超过容量。丢弃和清空的对象交给{@link Adapter#onDropped(Object)}回收
+ *
+ * @param <T>
+ */
+public class ReorderBuffer<T> {
+
+    public interface Adapter<T> {
+
+        /**
+         * 对象实际占用的字节数，item不会是null
+         */
+        long getByteCount(T item);
+
+        /**
+         * 对象被丢弃或者清空，可以在这里回收；item可能是null
+         */
+        void onDropped(T item);
+    }
+
+    private final Adapter<T> mAdapter;
+    private final int[] mIndexes;
+    private final Object[] mItems;
+    private final boolean[] mIsFilled;
+    private long mHeadSeq; //队头的序号，每取出一个加一；位置是序号对容量取余
+    private long mTailSeq;
+    private int mStaleCount; //已经作废、还在生产的位置，fill的时候才减掉
+    private int mLimit; //最多放几个，内存紧张的时候比容量小
+
+    public ReorderBuffer(Adapter<T> adapter, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        mAdapter = adapter;
+        mIndexes = new int[capacity];
+        mItems = new Object[capacity];
+        mIsFilled = new boolean[capacity];
+        mLimit = capacity;
+    }
+
+    public int getCapacity() {
+        return mItems.length;
+    }
+
+    /**
+     * 最多放几个，不超过容量；已经放进去的不会丢掉，取走之后才生效
+     */
+    public synchronized void setLimit(int limit) {
+        mLimit = Math.max(1, Math.min(limit, mItems.length));
+    }
+
+    /**
+     * 缓冲区中的对象占用的字节数
+     */
+    public synchronized long getByteCount() {
+        long byteCount = 0;
+        for (long seq = mHeadSeq; seq < mTailSeq; seq++) {
+            final T item = itemAt(seq);
+            if (null != item) {
+                byteCount += mAdapter.getByteCount(item);
+            }
+        }
+        return byteCount;
+    }
+
+    private int slot(long seq) {
+        return (int) (seq % mItems.length);
+    }
+
+    @SuppressWarnings("unchecked")
+    private T itemAt(long seq) {
+        return (T) mItems[slot(seq)];
+    }
+
+    private int count() {
+        return (int) (mTailSeq - mHeadSeq);
+    }
+
+    /**
+     * 占用容量的个数，包括作废了还在生产的
+     */
+    public synchronized int usedCount() {
+        return count() + mStaleCount;
+    }
+
+    /**
+     * 按顺序给index占一个位置，不阻塞
+     *
+     * @param index 调用者自己的编号，比如帧序号，用来{@link #peek(int)}和{@link #contains(int)}
+     * @return 位置的序号，生产完之后用它{@link #fill(long, Object)}；满了返回-1
+     */
+    public synchronized long reserve(int index) {
+        if (usedCount() >= mLimit) {
+            return -1;
+        }
+        final int tail = slot(mTailSeq);
+        mIndexes[tail] = index;
+        mItems[tail] = null;
+        mIsFilled[tail] = false;
+        return mTailSeq++;
+    }
+
+    /**
+     * 占好的位置生产完了，生产失败的话item是null
+     *
+     * @return 这个位置已经被丢弃或者清空了返回false，调用者要自己回收item
+     */
+    public synchronized boolean fill(long seq, T item) {
+        if (seq < mHeadSeq) { //还没生产完就作废了，生产完才不再占容量
+            mStaleCount--;
+            return false;
+        }
+        if (seq >= mTailSeq) {
+            return false;
+        }
+        final int slot = slot(seq);
+        mItems[slot] = item;
+        mIsFilled[slot] = true;
+        return true;
+    }
+
+    /**
+     * 队头是否就是index，并且已经生产好了
+     */
+    public synchronized boolean isReady(int index) {
+        return count() > 0 && mIndexes[slot(mHeadSeq)] == index && mIsFilled[slot(mHeadSeq)];
+    }
+
+    /**
+     * 缓冲区中是否有index（包括还在生产的）
+     */
+    public synchronized boolean contains(int index) {
+        for (long seq = mHeadSeq; seq < mTailSeq; seq++) {
+            if (mIndexes[slot(seq)] == index) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 缓冲区中第position个的编号（可能还在生产），没有的话返回-1
+     */
+    public synchronized int peek(int position) {
+        return position < count() ? mIndexes[slot(mHeadSeq + position)] : -1;
+    }
+
+    /**
+     * 缓冲区中第position个是否已经生产好了
+     */
+    public synchronized boolean isFilled(int position) {
+        return position < count() && mIsFilled[slot(mHeadSeq + position)];
+    }
+
+    /**
+     * 取出队头，不会阻塞，生产失败或者还没生产完的返回null，之后由调用者负责回收
+     */
+    public synchronized T take() {
+        if (count() == 0) return null;
+        final int head = slot(mHeadSeq);
+        final T item = itemAt(mHeadSeq);
+        if (!mIsFilled[head]) { //还在生产，fill之前还占着容量
+            mStaleCount++;
+        }
+        mItems[head] = null;
+        mIsFilled[head] = false;
+        mHeadSeq++;
+        return item;
+    }
+
+    /**
+     * 丢弃队头；还在生产的话，生产完放不进来，由生产者回收
+     */
+    public synchronized void drop() {
+        if (count() == 0) return;
+        mAdapter.onDropped(take());
+    }
+
+    /**
+     * 清空缓冲区，之前占的位置都作废
+     */
+    public synchronized void clear() {
+        while (count() > 0) {
+            mAdapter.onDropped(take());
+        }
+    }
+}
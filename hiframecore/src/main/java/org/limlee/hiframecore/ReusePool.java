@@ -0,0 +1,291 @@
+package org.limlee.hiframecore;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 无锁的复用池，按分组（比如bitmap的config）和占用字节数分桶，
+ * 总字节数超过上限的时候按最近最少使用淘汰。
+ * 池里的对象都是强引用，不会被GC悄悄回收掉。
+ * 取出的时候只用CAS认领，不从LRU队列中删除，淘汰的时候跳过已经认领的，已经认领的太多了再清理一遍；
+ * 同一个对象重复放回会被忽略，空的桶会被移除。
+ * 只用到了api 9就有的并发容器，android上也可以用
+ *
+ * @param <T>
+ */
+public class ReusePool<T> {
+
+    public interface Adapter<T> {
+
+        /**
+         * 对象实际占用的字节数
+         */
+        long getByteCount(T item);
+
+        /**
+         * 对象被淘汰出池子，可以在这里回收
+         */
+        void onEvicted(T item);
+    }
+
+    private static final class Entry<T> {
+        final T item;
+        final long group;
+        final long byteCount;
+        private final AtomicBoolean mClaimed = new AtomicBoolean(false);
+
+        Entry(T item, long group, long byteCount) {
+            this.item = item;
+            this.group = group;
+            this.byteCount = byteCount;
+        }
+
+        /**
+         * 取出或者淘汰的时候只有一个线程能成功
+         */
+        boolean claim() {
+            return mClaimed.compareAndSet(false, true);
+        }
+
+        boolean isClaimed() {
+            return mClaimed.get();
+        }
+
+        /**
+         * 按对象本身判断是否相同，用来检查重复放回
+         */
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Entry && ((Entry<?>) o).item == item;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(item);
+        }
+    }
+
+    private static final int MIN_STALE_COUNT = 32;
+
+    private final Adapter<T> mAdapter;
+    private final ConcurrentMap<Long, ConcurrentNavigableMap<Long, ConcurrentLinkedQueue<Entry<T>>>> mGroups
+            = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Entry<T>> mLruQueue = new ConcurrentLinkedQueue<>();
+    private final ConcurrentMap<Entry<T>, Entry<T>> mEntries = new ConcurrentHashMap<>(); //池子里还没被认领的对象
+    private final AtomicInteger mStaleCount = new AtomicInteger(); //LRU队列中已经认领、还没移除的大概个数
+    private final AtomicLong mByteCount = new AtomicLong();
+    private volatile long mMaxByteCount;
+
+    private final AtomicLong mHitCount = new AtomicLong();
+    private final AtomicLong mMissCount = new AtomicLong();
+    private final AtomicLong mEvictionCount = new AtomicLong();
+
+    public ReusePool(Adapter<T> adapter, long maxByteCount) {
+        mAdapter = adapter;
+        mMaxByteCount = maxByteCount;
+    }
+
+    /**
+     * 从池子中取出一个同组的、至少有minByteCount字节的对象，优先取最小的能用的那个
+     *
+     * @param group
+     * @param minByteCount
+     * @return 没有的话返回null
+     */
+    public T acquire(long group, long minByteCount) {
+        final ConcurrentNavigableMap<Long, ConcurrentLinkedQueue<Entry<T>>> buckets = mGroups.get(group);
+        if (null != buckets) {
+            for (Map.Entry<Long, ConcurrentLinkedQueue<Entry<T>>> bucket : buckets.tailMap(minByteCount, true).entrySet()) {
+                Entry<T> entry;
+                while (null != (entry = bucket.getValue().poll())) {
+                    if (entry.claim()) { //留在LRU队列中，淘汰的时候跳过
+                        mEntries.remove(entry);
+                        mStaleCount.incrementAndGet();
+                        mByteCount.addAndGet(-entry.byteCount);
+                        mHitCount.incrementAndGet();
+                        removeIfEmpty(buckets, bucket.getKey(), bucket.getValue());
+                        return entry.item;
+                    }
+                }
+                removeIfEmpty(buckets, bucket.getKey(), bucket.getValue());
+            }
+        }
+        mMissCount.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * 把对象放回池子，之后可以被复用，放回之后调用者就不能再使用它了；已经在池子里的对象再放回会被忽略
+     *
+     * @param group
+     * @param item
+     */
+    public void release(long group, T item) {
+        if (null == item) return;
+        final long byteCount = mAdapter.getByteCount(item);
+        if (byteCount > mMaxByteCount) {
+            mEvictionCount.incrementAndGet();
+            mAdapter.onEvicted(item);
+            return;
+        }
+        final Entry<T> entry = new Entry<>(item, group, byteCount);
+        if (null != mEntries.putIfAbsent(entry, entry)) { //重复放回，同一个对象不能被取出两次
+            return;
+        }
+        mByteCount.addAndGet(byteCount);
+        offer(entry);
+        mLruQueue.offer(entry);
+        trimToSize(mMaxByteCount);
+        purgeStale();
+    }
+
+    /**
+     * 放到对应的桶里；放进去的同时这个桶可能因为空了被移除，那就再放到新的桶里，
+     * 两个桶里都有的话，认领的时候只有一个能成功
+     */
+    private void offer(Entry<T> entry) {
+        while (true) {
+            final ConcurrentNavigableMap<Long, ConcurrentLinkedQueue<Entry<T>>> buckets = bucketsOf(entry.group);
+            final ConcurrentLinkedQueue<Entry<T>> bucket = bucketOf(buckets, entry.byteCount);
+            bucket.offer(entry);
+            if (buckets.get(entry.byteCount) == bucket) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 移除空的桶；移除的同时有线程放进来的话，把还没认领的重新放到新的桶里
+     */
+    private void removeIfEmpty(ConcurrentNavigableMap<Long, ConcurrentLinkedQueue<Entry<T>>> buckets,
+                               long byteCount, ConcurrentLinkedQueue<Entry<T>> bucket) {
+        if (!bucket.isEmpty() || !buckets.remove(byteCount, bucket)) {
+            return;
+        }
+        for (Entry<T> entry : bucket) {
+            if (!entry.isClaimed()) {
+                offer(entry);
+            }
+        }
+    }
+
+    /**
+     * LRU队列中已经认领的比池子里的对象还多的时候清理一遍，平摊到每次取出是常数时间
+     */
+    private void purgeStale() {
+        final int staleCount = mStaleCount.get();
+        if (staleCount < MIN_STALE_COUNT
+                || staleCount < mEntries.size()
+                || !mStaleCount.compareAndSet(staleCount, 0)) {
+            return;
+        }
+        final Iterator<Entry<T>> iterator = mLruQueue.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isClaimed()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private ConcurrentNavigableMap<Long, ConcurrentLinkedQueue<Entry<T>>> bucketsOf(long group) {
+        ConcurrentNavigableMap<Long, ConcurrentLinkedQueue<Entry<T>>> buckets = mGroups.get(group);
+        if (null == buckets) {
+            final ConcurrentNavigableMap<Long, ConcurrentLinkedQueue<Entry<T>>> newBuckets = new ConcurrentSkipListMap<>();
+            buckets = mGroups.putIfAbsent(group, newBuckets);
+            if (null == buckets) {
+                buckets = newBuckets;
+            }
+        }
+        return buckets;
+    }
+
+    private static <T> ConcurrentLinkedQueue<Entry<T>> bucketOf(
+            ConcurrentNavigableMap<Long, ConcurrentLinkedQueue<Entry<T>>> buckets, long byteCount) {
+        ConcurrentLinkedQueue<Entry<T>> bucket = buckets.get(byteCount);
+        if (null == bucket) {
+            final ConcurrentLinkedQueue<Entry<T>> newBucket = new ConcurrentLinkedQueue<>();
+            bucket = buckets.putIfAbsent(byteCount, newBucket);
+            if (null == bucket) {
+                bucket = newBucket;
+            }
+        }
+        return bucket;
+    }
+
+    /**
+     * 淘汰最久没有使用的对象，直到总字节数不超过maxByteCount
+     *
+     * @param maxByteCount
+     */
+    public void trimToSize(long maxByteCount) {
+        while (mByteCount.get() > maxByteCount) {
+            final Entry<T> entry = mLruQueue.poll();
+            if (null == entry) {
+                break;
+            }
+            if (!entry.claim()) { //已经被取走了
+                mStaleCount.decrementAndGet();
+                continue;
+            }
+            mEntries.remove(entry);
+            final ConcurrentNavigableMap<Long, ConcurrentLinkedQueue<Entry<T>>> buckets = mGroups.get(entry.group);
+            if (null != buckets) {
+                final ConcurrentLinkedQueue<Entry<T>> bucket = buckets.get(entry.byteCount);
+                if (null != bucket) {
+                    bucket.remove(entry);
+                    removeIfEmpty(buckets, entry.byteCount, bucket);
+                }
+            }
+            mByteCount.addAndGet(-entry.byteCount);
+            mEvictionCount.incrementAndGet();
+            mAdapter.onEvicted(entry.item);
+        }
+    }
+
+    /**
+     * 清空池子
+     */
+    public void clear() {
+        trimToSize(0);
+    }
+
+    public void setMaxByteCount(long maxByteCount) {
+        mMaxByteCount = maxByteCount;
+        trimToSize(maxByteCount);
+    }
+
+    public long getMaxByteCount() {
+        return mMaxByteCount;
+    }
+
+    /**
+     * 池子里对象的总字节数
+     */
+    public long getByteCount() {
+        return mByteCount.get();
+    }
+
+    public int size() {
+        return mEntries.size();
+    }
+
+    public long getHitCount() {
+        return mHitCount.get();
+    }
+
+    public long getMissCount() {
+        return mMissCount.get();
+    }
+
+    public long getEvictionCount() {
+        return mEvictionCount.get();
+    }
+}
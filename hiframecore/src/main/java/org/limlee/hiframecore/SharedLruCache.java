@@ -0,0 +1,190 @@
+package org.limlee.hiframecore;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 按字节数限制大小的LRU缓存，多个使用者可以共用同一个值。
+ * 每个值有引用计数，{@link #acquire(Object)}和{@link #put(Object, Object, long)}成功之后计数加一，
+ * 用完要调用{@link #release(Object)}；计数不为0的值不会被淘汰，
+ * 放不下的时候put直接失败，而不是把正在用的值挤出去，调用者退回到不缓存的方式
+ *
+ * @param <K>
+ * @param <V>
+ */
+public class SharedLruCache<K, V> {
+
+    public interface Adapter<V> {
+
+        /**
+         * 值被淘汰出缓存，这时候已经没有使用者了
+         */
+        void onEvicted(V value);
+    }
+
+    private static final class Entry<V> {
+        final V value;
+        final long byteCount;
+        int refCount;
+
+        Entry(V value, long byteCount) {
+            this.value = value;
+            this.byteCount = byteCount;
+        }
+    }
+
+    private final Adapter<V> mAdapter;
+    private final LinkedHashMap<K, Entry<V>> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private long mByteCount;
+    private long mMaxByteCount;
+
+    private long mHitCount;
+    private long mMissCount;
+    private long mEvictionCount;
+
+    public SharedLruCache(Adapter<V> adapter, long maxByteCount) {
+        mAdapter = adapter;
+        mMaxByteCount = maxByteCount;
+    }
+
+    /**
+     * 取出缓存的值，引用计数加一
+     *
+     * @param key
+     * @return 没有缓存返回null
+     */
+    public synchronized V acquire(K key) {
+        final Entry<V> entry = mEntries.get(key);
+        if (null == entry) {
+            mMissCount++;
+            return null;
+        }
+        mHitCount++;
+        entry.refCount++;
+        return entry.value;
+    }
+
+    /**
+     * 放入缓存，空间不够的时候淘汰没人用的值；成功的话引用计数加一。
+     * 已经有别人放进去了的话返回已有的值，调用者应该改用返回的值
+     *
+     * @param key
+     * @param value
+     * @param byteCount value占用的字节数
+     * @return 缓存中的值，放不下返回null
+     */
+    public synchronized V put(K key, V value, long byteCount) {
+        final Entry<V> existing = mEntries.get(key);
+        if (null != existing) {
+            existing.refCount++;
+            return existing.value;
+        }
+        if (byteCount > mMaxByteCount || !evict(mMaxByteCount - byteCount)) {
+            return null;
+        }
+        final Entry<V> entry = new Entry<>(value, byteCount);
+        entry.refCount = 1;
+        mEntries.put(key, entry);
+        mByteCount += byteCount;
+        return value;
+    }
+
+    /**
+     * 不再使用acquire或者put得到的值
+     *
+     * @param key
+     */
+    public synchronized void release(K key) {
+        final Entry<V> entry = mEntries.get(key);
+        if (null != entry && entry.refCount > 0) {
+            entry.refCount--;
+            if (entry.refCount == 0 && mByteCount > mMaxByteCount) { //上限调小了，没人用了再淘汰
+                evict(mMaxByteCount);
+            }
+        }
+    }
+
+    /**
+     * 按最近最少使用淘汰没人用的值，直到总字节数不超过maxByteCount
+     *
+     * @param maxByteCount
+     * @return 能不能降到maxByteCount以下
+     */
+    private boolean evict(long maxByteCount) {
+        final Iterator<Entry<V>> iterator = mEntries.values().iterator();
+        while (mByteCount > maxByteCount && iterator.hasNext()) {
+            final Entry<V> entry = iterator.next();
+            if (entry.refCount > 0) {
+                continue;
+            }
+            iterator.remove();
+            mByteCount -= entry.byteCount;
+            mEvictionCount++;
+            mAdapter.onEvicted(entry.value);
+        }
+        return mByteCount <= maxByteCount;
+    }
+
+    /**
+     * 淘汰没人用的值，直到总字节数不超过maxByteCount
+     *
+     * @param maxByteCount
+     */
+    public synchronized void trimToSize(long maxByteCount) {
+        evict(Math.max(0, maxByteCount));
+    }
+
+    /**
+     * 淘汰所有没人用的值
+     */
+    public synchronized void clear() {
+        evict(0);
+    }
+
+    public synchronized void setMaxByteCount(long maxByteCount) {
+        mMaxByteCount = Math.max(0, maxByteCount);
+        evict(mMaxByteCount);
+    }
+
+    public synchronized long getMaxByteCount() {
+        return mMaxByteCount;
+    }
+
+    public synchronized long getByteCount() {
+        return mByteCount;
+    }
+
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    public synchronized boolean contains(K key) {
+        return mEntries.containsKey(key);
+    }
+
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    /**
+     * 当前所有值的引用计数之和，调试用
+     *
+     * @return
+     */
+    public synchronized int getRefCount() {
+        int refCount = 0;
+        for (Map.Entry<K, Entry<V>> entry : mEntries.entrySet()) {
+            refCount += entry.getValue().refCount;
+        }
+        return refCount;
+    }
+}
@@ -0,0 +1,219 @@
+package org.limlee.hiframecore;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 图集的帧表，一个或多个图集图片加上每一帧在图集中的位置，文本格式，每行一项：
+ * <pre>
+ * page &lt;图集图片的路径，相对于帧表所在的目录&gt;
+ * frame &lt;名字&gt; &lt;图集序号&gt; x y width height offsetX offsetY sourceWidth sourceHeight duration
+ * </pre>
+ * 打包的时候切掉了帧四周透明的部分，offsetX/offsetY是切剩的部分在原图中的位置，
+ * sourceWidth/sourceHeight是原图的尺寸；#开头的行是注释
+ */
+public final class SpriteSheet {
+    public static final String FILE_EXTENSION = ".atlas";
+
+    private static final int X = 0;
+    private static final int Y = 1;
+    private static final int WIDTH = 2;
+    private static final int HEIGHT = 3;
+    private static final int OFFSET_X = 4;
+    private static final int OFFSET_Y = 5;
+    private static final int SOURCE_WIDTH = 6;
+    private static final int SOURCE_HEIGHT = 7;
+    private static final int DURATION = 8;
+    private static final int PAGE = 9;
+    private static final int FIELD_COUNT = 10;
+
+    private final List<String> mPages = new ArrayList<>();
+    private final List<String> mNames = new ArrayList<>();
+    private final Map<String, Integer> mNameIndexes = new HashMap<>();
+    private int[] mFrames = new int[FIELD_COUNT * 16];
+
+    /**
+     * @param path 图集图片的路径，相对于帧表所在的目录
+     * @return 图集的序号
+     */
+    public int addPage(String path) {
+        mPages.add(path);
+        return mPages.size() - 1;
+    }
+
+    /**
+     * @param name         帧的名字，一般是原来的文件名
+     * @param page         图集的序号
+     * @param x            在图集中的位置
+     * @param y
+     * @param width        切掉透明部分之后的尺寸，0表示整帧都是透明的
+     * @param height
+     * @param offsetX      切剩的部分在原图中的位置
+     * @param offsetY
+     * @param sourceWidth  原图的尺寸
+     * @param sourceHeight
+     * @param duration     显示时长，单位毫秒
+     * @return
+     */
+    public SpriteSheet addFrame(String name, int page, int x, int y, int width, int height,
+                                int offsetX, int offsetY, int sourceWidth, int sourceHeight, int duration) {
+        if (page < 0 || page >= mPages.size()) {
+            throw new IllegalArgumentException("no page " + page + " for frame " + name);
+        }
+        final int frame = mNames.size();
+        if (mFrames.length < (frame + 1) * FIELD_COUNT) {
+            mFrames = Arrays.copyOf(mFrames, mFrames.length * 2);
+        }
+        final int base = frame * FIELD_COUNT;
+        mFrames[base + X] = x;
+        mFrames[base + Y] = y;
+        mFrames[base + WIDTH] = width;
+        mFrames[base + HEIGHT] = height;
+        mFrames[base + OFFSET_X] = offsetX;
+        mFrames[base + OFFSET_Y] = offsetY;
+        mFrames[base + SOURCE_WIDTH] = sourceWidth;
+        mFrames[base + SOURCE_HEIGHT] = sourceHeight;
+        mFrames[base + DURATION] = duration;
+        mFrames[base + PAGE] = page;
+        mNames.add(name);
+        mNameIndexes.put(name, frame);
+        return this;
+    }
+
+    public int getPageCount() {
+        return mPages.size();
+    }
+
+    public String getPage(int page) {
+        return mPages.get(page);
+    }
+
+    public int getFrameCount() {
+        return mNames.size();
+    }
+
+    public String getName(int frame) {
+        return mNames.get(frame);
+    }
+
+    /**
+     * @param name
+     * @return 找不到返回-1
+     */
+    public int indexOf(String name) {
+        final Integer frame = mNameIndexes.get(name);
+        return null != frame ? frame : -1;
+    }
+
+    public int getPageIndex(int frame) {
+        return mFrames[frame * FIELD_COUNT + PAGE];
+    }
+
+    public int getX(int frame) {
+        return mFrames[frame * FIELD_COUNT + X];
+    }
+
+    public int getY(int frame) {
+        return mFrames[frame * FIELD_COUNT + Y];
+    }
+
+    public int getWidth(int frame) {
+        return mFrames[frame * FIELD_COUNT + WIDTH];
+    }
+
+    public int getHeight(int frame) {
+        return mFrames[frame * FIELD_COUNT + HEIGHT];
+    }
+
+    public int getOffsetX(int frame) {
+        return mFrames[frame * FIELD_COUNT + OFFSET_X];
+    }
+
+    public int getOffsetY(int frame) {
+        return mFrames[frame * FIELD_COUNT + OFFSET_Y];
+    }
+
+    public int getSourceWidth(int frame) {
+        return mFrames[frame * FIELD_COUNT + SOURCE_WIDTH];
+    }
+
+    public int getSourceHeight(int frame) {
+        return mFrames[frame * FIELD_COUNT + SOURCE_HEIGHT];
+    }
+
+    /**
+     * 显示时长，单位毫秒
+     */
+    public int getDuration(int frame) {
+        return mFrames[frame * FIELD_COUNT + DURATION];
+    }
+
+    /**
+     * 读取帧表
+     *
+     * @param reader
+     * @return
+     * @throws IOException 格式不对
+     */
+    public static SpriteSheet parse(Reader reader) throws IOException {
+        final BufferedReader in = new BufferedReader(reader);
+        final SpriteSheet spriteSheet = new SpriteSheet();
+        String line;
+        int lineNumber = 0;
+        while (null != (line = in.readLine())) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            final String[] fields = line.split("\\s+");
+            try {
+                if ("page".equals(fields[0]) && fields.length == 2) {
+                    spriteSheet.addPage(fields[1]);
+                } else if ("frame".equals(fields[0]) && fields.length == 2 + FIELD_COUNT) {
+                    final int[] values = new int[FIELD_COUNT];
+                    for (int i = 0; i < FIELD_COUNT; i++) {
+                        values[i] = Integer.parseInt(fields[2 + i]);
+                    }
+                    spriteSheet.addFrame(fields[1], values[0], values[1], values[2], values[3], values[4],
+                            values[5], values[6], values[7], values[8], values[9]);
+                } else {
+                    throw new IOException("bad sprite sheet line " + lineNumber + ": " + line);
+                }
+            } catch (IllegalArgumentException e) { //NumberFormatException也是
+                throw new IOException("bad sprite sheet line " + lineNumber + ": " + line, e);
+            }
+        }
+        return spriteSheet;
+    }
+
+    /**
+     * 写成帧表，名字和路径中不能有空白字符
+     *
+     * @param writer
+     * @throws IOException
+     */
+    public void writeTo(Writer writer) throws IOException {
+        writer.write("# hiframe sprite sheet\n");
+        for (String page : mPages) {
+            writer.write("page " + page + "\n");
+        }
+        final StringBuilder line = new StringBuilder();
+        for (int i = 0; i < mNames.size(); i++) {
+            line.setLength(0);
+            line.append("frame ").append(mNames.get(i)).append(' ').append(getPageIndex(i));
+            for (int field = X; field <= DURATION; field++) {
+                line.append(' ').append(mFrames[i * FIELD_COUNT + field]);
+            }
+            writer.write(line.append('\n').toString());
+        }
+        writer.flush();
+    }
+}
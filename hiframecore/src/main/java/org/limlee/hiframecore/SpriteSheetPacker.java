@@ -0,0 +1,178 @@
+package org.limlee.hiframecore;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import javax.imageio.ImageIO;
+
+/**
+ * 图集打包工具，把一个序列帧目录（比如assets/youting）打包成图集图片加帧表：
+ * <pre>
+ * java org.limlee.hiframecore.SpriteSheetPacker &lt;输入目录&gt; &lt;输出目录&gt; &lt;名字&gt; [每帧时长ms] [图集最大边长]
+ * </pre>
+ * 输出 名字.atlas 和 名字_0.png、名字_1.png...；每一帧先切掉四周透明的部分，
+ * 再按高度从高到低一行一行地放进图集，一个图集放不下就放到下一个
+ */
+public final class SpriteSheetPacker {
+    public static final int DEFAULT_MAX_PAGE_SIZE = 2048;
+    private static final int PADDING = 2; //帧之间留空，缩放绘制的时候不会采样到旁边的帧
+
+    private SpriteSheetPacker() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("usage: SpriteSheetPacker <input dir> <output dir> <name> [frame duration ms] [max page size]");
+            System.exit(1);
+        }
+        final int duration = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+        final int maxPageSize = args.length > 4 ? Integer.parseInt(args[4]) : DEFAULT_MAX_PAGE_SIZE;
+        final SpriteSheet spriteSheet = pack(FramePacker.listFrames(new File(args[0])),
+                new File(args[1]), args[2], duration, maxPageSize);
+        System.out.println("packed " + spriteSheet.getFrameCount() + " frames into "
+                + spriteSheet.getPageCount() + " pages");
+    }
+
+    /**
+     * @param frames      按播放顺序排好的帧图片
+     * @param outputDir
+     * @param name        输出的帧表和图集图片的名字
+     * @param duration    每一帧的时长，单位毫秒
+     * @param maxPageSize 图集的最大边长，比它大的帧单独放一个图集
+     * @return
+     * @throws IOException
+     */
+    public static SpriteSheet pack(File[] frames, File outputDir, String name,
+                                   int duration, int maxPageSize) throws IOException {
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IOException("can not create " + outputDir);
+        }
+        final BufferedImage[] images = new BufferedImage[frames.length];
+        final int[][] bounds = new int[frames.length][]; //切掉透明部分之后的left top right bottom
+        for (int i = 0; i < frames.length; i++) {
+            images[i] = ImageIO.read(frames[i]);
+            if (null == images[i]) {
+                throw new IOException("can not read " + frames[i]);
+            }
+            bounds[i] = opaqueBounds(images[i]);
+        }
+
+        //高的先放，每一行的高度浪费得少
+        final Integer[] order = new Integer[frames.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer lhs, Integer rhs) {
+                final int lhsHeight = bounds[lhs][3] - bounds[lhs][1];
+                final int rhsHeight = bounds[rhs][3] - bounds[rhs][1];
+                return lhsHeight != rhsHeight ? rhsHeight - lhsHeight : lhs - rhs;
+            }
+        });
+
+        final int[] pages = new int[frames.length];
+        final int[] positions = new int[frames.length * 2];
+        final int[] pageSizes = new int[Math.max(1, frames.length) * 2]; //每个图集实际用到的宽高
+        int page = 0;
+        int x = 0;
+        int y = 0;
+        int rowHeight = 0;
+        int pageCount = 0;
+        for (int frame : order) {
+            final int width = bounds[frame][2] - bounds[frame][0];
+            final int height = bounds[frame][3] - bounds[frame][1];
+            if (width == 0 || height == 0) { //全透明的帧不占位置
+                continue;
+            }
+            if (pageCount == 0) {
+                pageCount = 1;
+            }
+            if (x > 0 && x + width > maxPageSize) { //换行
+                x = 0;
+                y += rowHeight + PADDING;
+                rowHeight = 0;
+            }
+            if (y > 0 && y + height > maxPageSize) { //换图集
+                page++;
+                pageCount++;
+                x = 0;
+                y = 0;
+                rowHeight = 0;
+            }
+            pages[frame] = page;
+            positions[frame * 2] = x;
+            positions[frame * 2 + 1] = y;
+            pageSizes[page * 2] = Math.max(pageSizes[page * 2], x + width);
+            pageSizes[page * 2 + 1] = Math.max(pageSizes[page * 2 + 1], y + height);
+            x += width + PADDING;
+            rowHeight = Math.max(rowHeight, height);
+        }
+
+        if (pageCount == 0) { //所有帧都是透明的，也要有一个图集
+            pageCount = 1;
+            pageSizes[0] = 1;
+            pageSizes[1] = 1;
+        }
+        final SpriteSheet spriteSheet = new SpriteSheet();
+        final BufferedImage[] pageImages = new BufferedImage[pageCount];
+        for (int i = 0; i < pageCount; i++) {
+            spriteSheet.addPage(name + "_" + i + ".png");
+            pageImages[i] = new BufferedImage(pageSizes[i * 2], pageSizes[i * 2 + 1], BufferedImage.TYPE_INT_ARGB);
+        }
+        for (int i = 0; i < frames.length; i++) {
+            final int[] frameBounds = bounds[i];
+            final int width = frameBounds[2] - frameBounds[0];
+            final int height = frameBounds[3] - frameBounds[1];
+            if (width > 0 && height > 0) {
+                final int[] pixels = images[i].getRGB(frameBounds[0], frameBounds[1], width, height, null, 0, width);
+                pageImages[pages[i]].setRGB(positions[i * 2], positions[i * 2 + 1], width, height, pixels, 0, width);
+            }
+            spriteSheet.addFrame(frames[i].getName(), pages[i], positions[i * 2], positions[i * 2 + 1],
+                    width, height, frameBounds[0], frameBounds[1],
+                    images[i].getWidth(), images[i].getHeight(), duration);
+        }
+        for (int i = 0; i < pageImages.length; i++) {
+            ImageIO.write(pageImages[i], "png", new File(outputDir, spriteSheet.getPage(i)));
+        }
+        final Writer writer = new OutputStreamWriter(
+                new FileOutputStream(new File(outputDir, name + SpriteSheet.FILE_EXTENSION)), "UTF-8");
+        try {
+            spriteSheet.writeTo(writer);
+        } finally {
+            writer.close();
+        }
+        return spriteSheet;
+    }
+
+    /**
+     * 不透明像素的外接矩形，全透明的话是空的
+     */
+    static int[] opaqueBounds(BufferedImage image) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+        int left = width;
+        int top = height;
+        int right = 0;
+        int bottom = 0;
+        for (int y = 0; y < height; y++) {
+            final int row = y * width;
+            for (int x = 0; x < width; x++) {
+                if ((pixels[row + x] >>> 24) != 0) {
+                    left = Math.min(left, x);
+                    right = Math.max(right, x + 1);
+                    top = Math.min(top, y);
+                    bottom = y + 1;
+                }
+            }
+        }
+        return right > left ? new int[]{left, top, right, bottom} : new int[]{0, 0, 0, 0};
+    }
+}
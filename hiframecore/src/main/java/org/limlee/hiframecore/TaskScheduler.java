@@ -0,0 +1,304 @@
+package org.limlee.hiframecore;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 多个定时任务共用的线程池，线程数固定。
+ * 每个任务按下一次执行的时间排队；同时到期的任务，优先级高的先执行。
+ * 时间由{@link Clock}提供，不依赖android，线程数是0的话不启动线程，由调用者{@link #runNext()}驱动
+ */
+public class TaskScheduler {
+    public static final int MAX_THREADS = 4;
+
+    public interface Clock {
+
+        /**
+         * 单调递增的毫秒数，android上是SystemClock.uptimeMillis
+         */
+        long now();
+    }
+
+    /**
+     * 一个需要定时执行的任务
+     */
+    public static abstract class Task {
+        private volatile int mPriority;
+        private long mDueTime;
+        private long mRescheduleTime = -1;
+        private boolean mIsQueued;
+        private boolean mIsRunning;
+        private boolean mIsCancelled;
+
+        /**
+         * 在线程池中执行
+         *
+         * @return 下一次执行的时间（和Clock同一个时基），小于0表示不用再执行了
+         */
+        protected abstract long run();
+
+        public int getPriority() {
+            return mPriority;
+        }
+    }
+
+    private static final Comparator<Task> DUE_TIME_ORDER = new Comparator<Task>() {
+        @Override
+        public int compare(Task lhs, Task rhs) {
+            return compareLong(lhs.mDueTime, rhs.mDueTime);
+        }
+    };
+
+    private static final Comparator<Task> PRIORITY_ORDER = new Comparator<Task>() {
+        @Override
+        public int compare(Task lhs, Task rhs) {
+            if (lhs.mPriority != rhs.mPriority) {
+                return lhs.mPriority > rhs.mPriority ? -1 : 1;
+            }
+            return compareLong(lhs.mDueTime, rhs.mDueTime);
+        }
+    };
+
+    private final Clock mClock;
+    private final String mThreadName;
+    private final ReentrantLock mLock = new ReentrantLock();
+    private final Condition mCondition = mLock.newCondition();
+    private final PriorityQueue<Task> mWaitingTasks = new PriorityQueue<>(16, DUE_TIME_ORDER); //还没到时间的
+    private final PriorityQueue<Task> mReadyTasks = new PriorityQueue<>(16, PRIORITY_ORDER); //已经到时间的
+    private final Thread[] mWorkers;
+    private boolean mIsStarted;
+
+    /**
+     * 按CPU核数算线程数，至少1个，最多{@link #MAX_THREADS}个
+     */
+    public static int getThreadCount(int processors) {
+        return Math.max(1, Math.min(processors, MAX_THREADS));
+    }
+
+    /**
+     * @param threads    线程数，第一次安排任务的时候才启动；0表示不启动线程
+     * @param threadName 线程名的前缀
+     * @param clock
+     */
+    public TaskScheduler(int threads, String threadName, Clock clock) {
+        mWorkers = new Thread[Math.max(0, threads)];
+        mThreadName = threadName;
+        mClock = clock;
+    }
+
+    public int getThreadCount() {
+        return mWorkers.length;
+    }
+
+    /**
+     * 安排任务在dueTime执行，如果已经在队列中就改成新的时间
+     *
+     * @param task
+     * @param dueTime
+     */
+    public void schedule(Task task, long dueTime) {
+        mLock.lock();
+        try {
+            startWorkersLocked();
+            task.mIsCancelled = false;
+            if (task.mIsRunning) { //正在执行，执行完再按新的时间排队
+                task.mRescheduleTime = dueTime;
+                return;
+            }
+            removeLocked(task);
+            task.mDueTime = dueTime;
+            task.mIsQueued = true;
+            mWaitingTasks.add(task);
+            mCondition.signalAll();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * 取消任务，如果正在执行，执行完之后就不会再排队了，不会等待它执行完
+     *
+     * @param task
+     */
+    public void cancel(Task task) {
+        mLock.lock();
+        try {
+            task.mIsCancelled = true;
+            task.mRescheduleTime = -1;
+            removeLocked(task);
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    public void setPriority(Task task, int priority) {
+        mLock.lock();
+        try {
+            if (task.mPriority == priority) {
+                return;
+            }
+            if (task.mIsQueued && mReadyTasks.remove(task)) {
+                task.mPriority = priority;
+                mReadyTasks.add(task);
+            } else {
+                task.mPriority = priority;
+            }
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * 任务是否在排队或者正在执行
+     */
+    public boolean isScheduled(Task task) {
+        mLock.lock();
+        try {
+            return task.mIsQueued || (task.mIsRunning && !task.mIsCancelled);
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    private void removeLocked(Task task) {
+        if (task.mIsQueued) {
+            if (!mWaitingTasks.remove(task)) {
+                mReadyTasks.remove(task);
+            }
+            task.mIsQueued = false;
+        }
+    }
+
+    private void startWorkersLocked() {
+        if (mIsStarted) return;
+        mIsStarted = true;
+        for (int i = 0; i < mWorkers.length; i++) {
+            mWorkers[i] = new Thread(mThreadName + "-" + i) {
+                @Override
+                public void run() {
+                    while (true) {
+                        final Task task;
+                        try {
+                            task = takeTask();
+                        } catch (InterruptedException e) {
+                            break;
+                        }
+                        execute(task);
+                    }
+                }
+            };
+            mWorkers[i].setDaemon(true);
+            mWorkers[i].start();
+        }
+    }
+
+    /**
+     * 到期的任务中优先级最高的一个，标记成正在执行，在锁中调用
+     */
+    private Task pollLocked(long now) {
+        Task task;
+        while (null != (task = mWaitingTasks.peek())
+                && task.mDueTime <= now) {
+            mWaitingTasks.poll();
+            mReadyTasks.add(task);
+        }
+        task = mReadyTasks.poll();
+        if (null != task) {
+            task.mIsQueued = false;
+            task.mIsRunning = true;
+        }
+        return task;
+    }
+
+    /**
+     * 取出下一个到期的任务，没有的话就等待
+     */
+    private Task takeTask() throws InterruptedException {
+        mLock.lock();
+        try {
+            while (true) {
+                final long now = mClock.now();
+                Task task = pollLocked(now);
+                if (null != task) {
+                    return task;
+                }
+                task = mWaitingTasks.peek();
+                if (null == task) {
+                    mCondition.await();
+                } else {
+                    mCondition.await(task.mDueTime - now, TimeUnit.MILLISECONDS);
+                }
+            }
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * 在当前线程执行一个已经到期的任务，没有线程的时候用来驱动任务
+     *
+     * @return 没有到期的任务返回false
+     */
+    public boolean runNext() {
+        final Task task;
+        mLock.lock();
+        try {
+            task = pollLocked(mClock.now());
+        } finally {
+            mLock.unlock();
+        }
+        if (null == task) {
+            return false;
+        }
+        execute(task);
+        return true;
+    }
+
+    private void execute(Task task) {
+        long nextTime = -1;
+        try {
+            nextTime = task.run();
+        } catch (RuntimeException e) {
+            onTaskFailed(task, e);
+        } finally {
+            finishTask(task, nextTime);
+        }
+    }
+
+    private void finishTask(Task task, long nextTime) {
+        mLock.lock();
+        try {
+            task.mIsRunning = false;
+            if (task.mIsCancelled) {
+                return;
+            }
+            if (task.mRescheduleTime >= 0) {
+                nextTime = task.mRescheduleTime;
+                task.mRescheduleTime = -1;
+            }
+            if (nextTime < 0) {
+                return;
+            }
+            task.mDueTime = nextTime;
+            task.mIsQueued = true;
+            mWaitingTasks.add(task);
+            mCondition.signal();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * 任务抛出了异常，之后不会再执行，除非重新安排
+     */
+    protected void onTaskFailed(Task task, RuntimeException e) {
+        e.printStackTrace();
+    }
+
+    private static int compareLong(long lhs, long rhs) {
+        return lhs < rhs ? -1 : (lhs == rhs ? 0 : 1);
+    }
+}
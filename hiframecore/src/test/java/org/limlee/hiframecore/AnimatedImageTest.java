@@ -0,0 +1,255 @@
+package org.limlee.hiframecore;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AnimatedImageTest {
+
+    @Test
+    public void parsesApng() throws Exception {
+        final byte[] apng = apng();
+        assertTrue(AnimatedImage.isAnimated(ByteBuffer.wrap(apng)));
+        final AnimatedImage image = AnimatedImage.parse(apng);
+        assertEquals(AnimatedImage.FORMAT_PNG, image.getFormat());
+        assertEquals(20, image.getWidth());
+        assertEquals(10, image.getHeight());
+        assertEquals(3, image.getLoopCount());
+        assertEquals(2, image.getFrameCount());
+        assertEquals(50, image.getDuration(0));
+        assertEquals(100, image.getDuration(1)); //0毫秒按100毫秒播放
+        assertEquals(AnimatedImage.DISPOSE_BACKGROUND, image.getDispose(0)); //第一帧的PREVIOUS当成BACKGROUND
+        assertEquals(4, image.getFrameX(1));
+        assertEquals(2, image.getFrameY(1));
+        assertEquals(8, image.getFrameWidth(1));
+        assertEquals(6, image.getFrameHeight(1));
+        assertTrue(image.isBlended(1));
+        assertTrue(image.isKeyFrame(0));
+        assertTrue(image.isKeyFrame(1)); //上一帧覆盖整个画布并且清空了
+    }
+
+    @Test
+    public void apngFramesDecodeAsPlainPng() throws Exception {
+        final AnimatedImage image = AnimatedImage.parse(apng());
+        for (int frame = 0; frame < image.getFrameCount(); frame++) {
+            final byte[] out = new byte[image.getFrameFileSize(frame)];
+            assertEquals(out.length, image.writeFrame(frame, out));
+            final BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(out));
+            assertEquals(image.getFrameWidth(frame), decoded.getWidth());
+            assertEquals(image.getFrameHeight(frame), decoded.getHeight());
+            assertEquals(frame == 0 ? 0xFFFF0000 : 0xFF0000FF, decoded.getRGB(1, 1));
+        }
+    }
+
+    @Test
+    public void parsesAnimatedWebp() throws Exception {
+        final byte[] webp = animatedWebp();
+        assertTrue(AnimatedImage.isAnimated(ByteBuffer.wrap(webp)));
+        final AnimatedImage image = AnimatedImage.parse(webp);
+        assertEquals(AnimatedImage.FORMAT_WEBP, image.getFormat());
+        assertEquals(64, image.getWidth());
+        assertEquals(32, image.getHeight());
+        assertEquals(0, image.getLoopCount());
+        assertEquals(2, image.getFrameCount());
+        assertEquals(80, image.getDuration(0));
+        assertEquals(AnimatedImage.DISPOSE_NONE, image.getDispose(0));
+        assertFalse(image.isBlended(0));
+        assertEquals(10, image.getFrameX(1));
+        assertEquals(4, image.getFrameY(1));
+        assertEquals(AnimatedImage.DISPOSE_BACKGROUND, image.getDispose(1));
+        assertTrue(image.isBlended(1));
+        assertFalse(image.isKeyFrame(1));
+    }
+
+    @Test
+    public void webpFramesAreStandaloneImages() throws Exception {
+        final AnimatedImage image = AnimatedImage.parse(animatedWebp());
+        byte[] out = new byte[image.getFrameFileSize(0)];
+        assertEquals(out.length, image.writeFrame(0, out));
+        ImageHeader header = ImageHeader.probe(out);
+        assertEquals(64, header.width);
+        assertEquals(32, header.height);
+        assertFalse(header.hasAlpha);
+
+        out = new byte[image.getFrameFileSize(1)];
+        assertEquals(out.length, image.writeFrame(1, out));
+        header = ImageHeader.probe(out); //带ALPH块的帧包装成扩展格式
+        assertEquals(20, header.width);
+        assertEquals(12, header.height);
+        assertTrue(header.hasAlpha);
+        assertEquals(out.length - 8, readIntLE(out, 4));
+    }
+
+    @Test
+    public void rejectsStillAndBrokenImages() throws Exception {
+        final byte[] png = encode(solid(4, 4, 0xFF00FF00));
+        assertFalse(AnimatedImage.isAnimated(ByteBuffer.wrap(png)));
+        try {
+            AnimatedImage.parse(png);
+            fail();
+        } catch (IOException expected) {
+        }
+        final byte[] apng = apng();
+        final byte[] truncated = new byte[apng.length - 40];
+        System.arraycopy(apng, 0, truncated, 0, truncated.length);
+        try {
+            AnimatedImage.parse(truncated);
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void writesOnlyTheRequestedFrame() throws Exception {
+        final AnimatedImage image = AnimatedImage.parse(apng());
+        final byte[] out = new byte[4096];
+        final int length = image.writeFrame(1, out);
+        final byte[] again = new byte[length];
+        image.writeFrame(1, again);
+        final byte[] first = new byte[length];
+        System.arraycopy(out, 0, first, 0, length);
+        assertArrayEquals(first, again);
+    }
+
+    private static BufferedImage solid(int width, int height, int argb) {
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, argb);
+            }
+        }
+        return image;
+    }
+
+    private static byte[] encode(BufferedImage image) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    /**
+     * 20x10的画布，第一帧整个画布是红色，第二帧在(4, 2)的位置画一个8x6的蓝色块
+     */
+    private static byte[] apng() throws IOException {
+        final byte[] first = encode(solid(20, 10, 0xFFFF0000));
+        final byte[] second = encode(solid(8, 6, 0xFF0000FF));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(first, 0, 8 + 25); //签名和IHDR
+        chunk(out, "acTL", ints(2, 3));
+        chunk(out, "fcTL", fctl(0, 20, 10, 0, 0, 1, 20, 2, 0));
+        int sequence = 1;
+        for (int position = 8; position < first.length; ) {
+            final int length = readInt(first, position);
+            if ("IDAT".equals(new String(first, position + 4, 4, "US-ASCII"))) {
+                out.write(first, position, 12 + length);
+            }
+            position += 12 + length;
+        }
+        chunk(out, "fcTL", fctl(++sequence, 8, 6, 4, 2, 0, 0, 0, 1));
+        for (int position = 8; position < second.length; ) {
+            final int length = readInt(second, position);
+            if ("IDAT".equals(new String(second, position + 4, 4, "US-ASCII"))) {
+                final byte[] data = new byte[4 + length];
+                System.arraycopy(ints(++sequence), 0, data, 0, 4);
+                System.arraycopy(second, position + 8, data, 4, length);
+                chunk(out, "fdAT", data);
+            }
+            position += 12 + length;
+        }
+        chunk(out, "IEND", new byte[0]);
+        return out.toByteArray();
+    }
+
+    private static byte[] fctl(int sequence, int width, int height, int x, int y,
+                               int delayNum, int delayDen, int dispose, int blend) {
+        final ByteBuffer buffer = ByteBuffer.allocate(26);
+        buffer.putInt(sequence).putInt(width).putInt(height).putInt(x).putInt(y)
+                .putShort((short) delayNum).putShort((short) delayDen).put((byte) dispose).put((byte) blend);
+        return buffer.array();
+    }
+
+    private static void chunk(ByteArrayOutputStream out, String type, byte[] data) throws IOException {
+        final byte[] typeBytes = type.getBytes("US-ASCII");
+        out.write(ints(data.length));
+        out.write(typeBytes);
+        out.write(data);
+        final CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data);
+        out.write(ints((int) crc.getValue()));
+    }
+
+    /**
+     * 64x32的画布，第一帧是整个画布的有损帧，第二帧是在(10, 4)的位置带ALPH块的20x12的帧
+     */
+    private static byte[] animatedWebp() throws IOException {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write("WEBP".getBytes("US-ASCII"));
+        riffChunk(body, "VP8X", new byte[]{0x12, 0, 0, 0, 63, 0, 0, 31, 0, 0});
+        riffChunk(body, "ANIM", new byte[]{0, 0, 0, 0, 0, 0});
+        final ByteArrayOutputStream first = new ByteArrayOutputStream();
+        first.write(anmf(0, 0, 64, 32, 80, 0x02));
+        riffChunk(first, "VP8 ", new byte[]{0x10, 0x02, 0x00, (byte) 0x9D, 0x01, 0x2A, 64, 0x00, 32, 0x00, 0x00});
+        riffChunk(body, "ANMF", first.toByteArray());
+        final ByteArrayOutputStream second = new ByteArrayOutputStream();
+        second.write(anmf(10, 4, 20, 12, 40, 0x01));
+        riffChunk(second, "ALPH", new byte[]{0, 1, 2});
+        riffChunk(second, "VP8 ", new byte[]{0x10, 0x02, 0x00, (byte) 0x9D, 0x01, 0x2A, 20, 0x00, 12, 0x00});
+        riffChunk(body, "ANMF", second.toByteArray());
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write("RIFF".getBytes("US-ASCII"));
+        out.write(intLE(body.size()));
+        body.writeTo(out);
+        return out.toByteArray();
+    }
+
+    private static byte[] anmf(int x, int y, int width, int height, int duration, int flags) {
+        return new byte[]{
+                (byte) (x / 2), 0, 0, (byte) (y / 2), 0, 0,
+                (byte) (width - 1), 0, 0, (byte) (height - 1), 0, 0,
+                (byte) duration, 0, 0, (byte) flags};
+    }
+
+    private static void riffChunk(ByteArrayOutputStream out, String type, byte[] data) throws IOException {
+        out.write(type.getBytes("US-ASCII"));
+        out.write(intLE(data.length));
+        out.write(data);
+        if ((data.length & 1) != 0) {
+            out.write(0);
+        }
+    }
+
+    private static byte[] ints(int... values) {
+        final ByteBuffer buffer = ByteBuffer.allocate(values.length * 4);
+        for (int value : values) {
+            buffer.putInt(value);
+        }
+        return buffer.array();
+    }
+
+    private static byte[] intLE(int value) {
+        return new byte[]{(byte) value, (byte) (value >> 8), (byte) (value >> 16), (byte) (value >> 24)};
+    }
+
+    private static int readInt(byte[] data, int position) {
+        return ByteBuffer.wrap(data).getInt(position);
+    }
+
+    private static int readIntLE(byte[] data, int position) {
+        return (data[position] & 0xFF) | (data[position + 1] & 0xFF) << 8
+                | (data[position + 2] & 0xFF) << 16 | (data[position + 3] & 0xFF) << 24;
+    }
+}
@@ -0,0 +1,71 @@
+package org.limlee.hiframecore;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FrameDiffTest {
+    private static final int WIDTH = 8;
+    private static final int HEIGHT = 6;
+
+    @Test
+    public void identicalFramesHaveEmptyBounds() {
+        final int[] pixels = new int[WIDTH * HEIGHT];
+        final int[] rect = {-1, -1, -1, -1};
+        FrameDiff.changedBounds(pixels, pixels.clone(), WIDTH, HEIGHT, rect);
+        assertArrayEquals(new int[]{0, 0, 0, 0}, rect);
+    }
+
+    @Test
+    public void boundsCoverAllChangedPixels() {
+        final int[] previous = new int[WIDTH * HEIGHT];
+        final int[] current = previous.clone();
+        current[1 * WIDTH + 5] = 0xFFFF0000;
+        current[4 * WIDTH + 2] = 0xFF00FF00;
+        final int[] rect = new int[4];
+        FrameDiff.changedBounds(previous, current, WIDTH, HEIGHT, rect);
+        assertArrayEquals(new int[]{2, 1, 6, 5}, rect);
+    }
+
+    @Test
+    public void transparentPixelsWithDifferentColorsAreEqual() {
+        final int[] previous = new int[WIDTH * HEIGHT];
+        final int[] current = previous.clone();
+        current[3] = 0x00FFFFFF;
+        final int[] rect = new int[4];
+        FrameDiff.changedBounds(previous, current, WIDTH, HEIGHT, rect);
+        assertArrayEquals(new int[]{0, 0, 0, 0}, rect);
+    }
+
+    @Test
+    public void demoAssetsChangeLessThanWholeFrame() throws Exception {
+        final File dir = new File("../app/src/main/assets/youting");
+        if (!dir.isDirectory()) {
+            return;
+        }
+        final File[] frames = FramePacker.listFrames(dir);
+        final int[] rect = new int[4];
+        long frameArea = 0;
+        long dirtyArea = 0;
+        int[] previous = null;
+        for (File frame : frames) {
+            final BufferedImage image = ImageIO.read(frame);
+            final int width = image.getWidth();
+            final int height = image.getHeight();
+            final int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+            if (null != previous && previous.length == pixels.length) {
+                FrameDiff.changedBounds(previous, pixels, width, height, rect);
+                frameArea += (long) width * height;
+                dirtyArea += (long) (rect[2] - rect[0]) * (rect[3] - rect[1]);
+            }
+            previous = pixels;
+        }
+        assertTrue(dirtyArea <= frameArea);
+    }
+}
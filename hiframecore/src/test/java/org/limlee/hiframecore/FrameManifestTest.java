@@ -0,0 +1,86 @@
+package org.limlee.hiframecore;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FrameManifestTest {
+
+    @Test
+    public void parsePatternAndRanges() throws Exception {
+        final FrameManifest manifest = FrameManifest.parse(new StringReader(
+                "# gift\n"
+                        + "count 5\n"
+                        + "pattern gift/frame_%03d.png 1\n"
+                        + "duration 100\n"
+                        + "duration 1 2 40\n"
+                        + "frame 4 gift/last.png\n"));
+        assertEquals(5, manifest.getFrameCount());
+        assertEquals("gift/frame_001.png", manifest.getName(0));
+        assertEquals("gift/frame_004.png", manifest.getName(3));
+        assertEquals("gift/last.png", manifest.getName(4));
+        assertEquals(100, manifest.getDuration(0));
+        assertEquals(40, manifest.getDuration(2));
+        assertEquals(100, manifest.getDuration(3));
+        assertFalse(manifest.hasTransforms());
+        assertEquals(1, manifest.getScale(0), 0);
+        assertEquals(380, manifest.createTimeline(0).getDuration());
+        assertEquals(1, manifest.createTimeline(0).getFrameAt(100, true));
+    }
+
+    @Test
+    public void writeAndParse() throws Exception {
+        final FrameManifest manifest = new FrameManifest(129, 100)
+                .setPattern("youting/youting_%d.png", 0)
+                .setDuration(10, 19, 60)
+                .setTransform(0, 128, 0, 0, 1, 1)
+                .setTransform(50, 60, 12.5f, -4, 0.5f, 0.8f);
+        final StringWriter out = new StringWriter();
+        manifest.writeTo(out);
+        //连续相同的合并成一行，不是每一帧一行
+        assertTrue(out.toString().split("\n").length < 10);
+
+        final FrameManifest parsed = FrameManifest.parse(new StringReader(out.toString()));
+        assertEquals(129, parsed.getFrameCount());
+        for (int i = 0; i < 129; i++) {
+            assertEquals(manifest.getName(i), parsed.getName(i));
+            assertEquals(manifest.getDuration(i), parsed.getDuration(i));
+            assertEquals(manifest.getX(i), parsed.getX(i), 0);
+            assertEquals(manifest.getY(i), parsed.getY(i), 0);
+            assertEquals(manifest.getScale(i), parsed.getScale(i), 0);
+            assertEquals(manifest.getAlpha(i), parsed.getAlpha(i), 0);
+        }
+        assertEquals("youting/youting_128.png", parsed.getName(128));
+        assertEquals(0.5f, parsed.getScale(55), 0);
+    }
+
+    @Test
+    public void rejectsBadManifests() {
+        final String[] manifests = {
+                "pattern a_%d.png\ncount 2\n", //count要在最前面
+                "count 2\nduration 100\n", //没有路径
+                "count 2\nframe 0 a.png\n", //第1帧没有路径
+                "count 2\npattern a_%3d.png\n",
+                "count 2\npattern a.png\n",
+                "count 2\npattern a_%d.png\nduration 0 2 100\n",
+                "count 2\npattern a_%d.png\ntransform 0 1 0 0 x 1\n",
+                "count 0\n",
+                ""
+        };
+        for (String manifest : manifests) {
+            try {
+                FrameManifest.parse(new StringReader(manifest));
+                fail(manifest);
+            } catch (IOException e) {
+                //格式不对
+            }
+        }
+    }
+}
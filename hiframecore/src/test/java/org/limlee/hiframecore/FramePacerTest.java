@@ -0,0 +1,86 @@
+package org.limlee.hiframecore;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class FramePacerTest {
+
+    private static FrameTimeline timeline(int frameCount, long frameDuration) {
+        final long[] durations = new long[frameCount];
+        for (int i = 0; i < frameCount; i++) {
+            durations[i] = frameDuration;
+        }
+        return new FrameTimeline(durations, 0);
+    }
+
+    @Test
+    public void costIsMovingAverage() {
+        final FramePacer pacer = new FramePacer();
+        assertEquals(0, pacer.getDecodeCost());
+        pacer.recordDecode(16000000);
+        assertEquals(16, pacer.getDecodeCost());
+        pacer.recordDecode(48000000);
+        assertEquals(20, pacer.getDecodeCost()); //16 + (48 - 16) / 8
+        pacer.recordDraw(2000000);
+        assertEquals(2, pacer.getDrawCost());
+        pacer.reset();
+        assertEquals(0, pacer.getDecodeCost());
+        assertEquals(0, pacer.getDrawCost());
+    }
+
+    @Test
+    public void effectiveFps() {
+        final FramePacer pacer = new FramePacer();
+        assertEquals(0f, pacer.getEffectiveFps(), 0f);
+        for (int i = 0; i < 10; i++) {
+            pacer.recordFrame(1000 + i * 40);
+        }
+        assertEquals(25f, pacer.getEffectiveFps(), 0.01f);
+        pacer.recordFrame(5000); //暂停了很久，不算
+        assertEquals(25f, pacer.getEffectiveFps(), 0.01f);
+    }
+
+    @Test
+    public void selectsTheFrameDueWhenReady() {
+        final FrameTimeline timeline = timeline(60, 16);
+        assertEquals(3, FramePacer.selectFrame(timeline, 50, true, 0, null, -1));
+        assertEquals(5, FramePacer.selectFrame(timeline, 50, true, 40, null, -1));
+        assertEquals(1, FramePacer.selectFrame(timeline, 950, true, 40, null, -1)); //跨过一轮
+        assertEquals(59, FramePacer.selectFrame(timeline, 950, false, 40, null, -1));
+    }
+
+    @Test
+    public void keepsKeyFramesThatAreNotStale() {
+        final FrameTimeline timeline = timeline(10, 10);
+        final boolean[] keyFrames = new boolean[10];
+        keyFrames[0] = true;
+        keyFrames[4] = true;
+        assertEquals(4, FramePacer.selectFrame(timeline, 35, true, 30, keyFrames, 2));
+        assertEquals(6, FramePacer.selectFrame(timeline, 45, true, 20, keyFrames, 4)); //已经显示过了
+        assertEquals(0, FramePacer.selectFrame(timeline, 85, true, 30, keyFrames, 7)); //下一轮的关键帧
+    }
+
+    @Test
+    public void decoderSkipsFramesItCannotKeepUpWith() {
+        final FrameTimeline timeline = timeline(60, 16);
+        final FramePacer pacer = new FramePacer();
+        assertEquals(1, pacer.getNextDecodeFrame(timeline, 0, true));
+        pacer.recordDecode(10000000); //比一帧快
+        assertEquals(1, pacer.getNextDecodeFrame(timeline, 0, true));
+        pacer.reset();
+        pacer.recordDecode(33000000); //两帧多
+        assertEquals(2, pacer.getNextDecodeFrame(timeline, 0, true));
+        assertEquals(0, pacer.getNextDecodeFrame(timeline, 58, true)); //跨过一轮
+        assertEquals(59, pacer.getNextDecodeFrame(timeline, 58, false)); //最后一帧要显示
+        assertEquals(60, pacer.getNextDecodeFrame(timeline, 59, false));
+        assertEquals(1, pacer.getNextDecodeFrame(timeline, 0, true, 4)); //4个线程一起解码就跟得上
+    }
+
+    @Test
+    public void distanceWrapsAround() {
+        assertEquals(3, FramePacer.getDistance(8, 1, 10));
+        assertEquals(0, FramePacer.getDistance(5, 5, 10));
+        assertEquals(2, FramePacer.getDistance(-1, 1, 10));
+    }
+}
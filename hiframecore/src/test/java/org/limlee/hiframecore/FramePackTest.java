@@ -0,0 +1,171 @@
+package org.limlee.hiframecore;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.io.RandomAccessFile;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FramePackTest {
+
+    @Test
+    public void writeAndParse() throws Exception {
+        final byte[] first = {1, 2, 3};
+        final byte[] second = {4, 5, 6, 7, 8};
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new FramePackWriter()
+                .addFrame("a_0.png", first, 100, 10, 20)
+                .addFrame("a_1.png", second, 40, 30, 40)
+                .writeTo(out);
+
+        final ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray());
+        final FramePackIndex index = FramePackIndex.parse(buffer);
+        assertEquals(2, index.getFrameCount());
+        assertEquals("a_0.png", index.getName(0));
+        assertEquals(1, index.indexOf("a_1.png"));
+        assertEquals(-1, index.indexOf("missing.png"));
+        assertEquals(40, index.getDuration(1));
+        assertEquals(30, index.getWidth(1));
+        assertEquals(40, index.getHeight(1));
+        assertEquals(0, buffer.position());
+
+        final ByteBuffer frame = index.slice(buffer, 1);
+        final byte[] read = new byte[frame.remaining()];
+        frame.get(read);
+        assertArrayEquals(second, read);
+    }
+
+    @Test
+    public void writeAndParseDirtyRect() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new FramePackWriter()
+                .addFrame("a_0.png", new byte[1], 100, 10, 20)
+                .addFrame("a_1.png", new byte[1], 100, 10, 20)
+                .setDirtyRect(1, 2, 3, 4, 5)
+                .writeTo(out);
+        final FramePackIndex index = FramePackIndex.parse(ByteBuffer.wrap(out.toByteArray()));
+        final int[] dirtyRect = new int[4];
+        assertFalse(index.getDirtyRect(0, dirtyRect));
+        assertTrue(index.getDirtyRect(1, dirtyRect));
+        assertArrayEquals(new int[]{2, 3, 4, 5}, dirtyRect);
+    }
+
+    @Test
+    public void parsesVersion1() throws Exception {
+        final ByteBuffer buffer = ByteBuffer.allocate(FramePackFormat.HEADER_SIZE
+                + FramePackFormat.INDEX_ENTRY_SIZE_V1 + 2 + 5 + 3);
+        final int nameOffset = FramePackFormat.HEADER_SIZE + FramePackFormat.INDEX_ENTRY_SIZE_V1;
+        buffer.putInt(FramePackFormat.MAGIC).putInt(FramePackFormat.VERSION_1).putInt(1).putInt(0);
+        buffer.putLong(nameOffset + 7).putInt(3).putInt(60).putInt(1).putInt(2)
+                .putInt(FramePackFormat.FLAG_DIRTY_RECT).putInt(nameOffset);
+        buffer.putShort((short) 5).put("a.png".getBytes("UTF-8")).put(new byte[]{7, 8, 9});
+        final FramePackIndex index = FramePackIndex.parse(buffer);
+        assertEquals("a.png", index.getName(0));
+        assertEquals(60, index.getDuration(0));
+        assertFalse(index.getDirtyRect(0, new int[4]));
+        assertEquals(3, index.slice(buffer, 0).remaining());
+    }
+
+    @Test
+    public void rejectsBadMagic() {
+        try {
+            FramePackIndex.parse(ByteBuffer.wrap(new byte[32]));
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("magic"));
+        }
+    }
+
+    @Test
+    public void rejectsTruncatedPack() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new FramePackWriter().addFrame("a.png", new byte[64], 100, 1, 1).writeTo(out);
+        final byte[] truncated = new byte[out.size() - 1];
+        System.arraycopy(out.toByteArray(), 0, truncated, 0, truncated.length);
+        try {
+            FramePackIndex.parse(ByteBuffer.wrap(truncated));
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("out of bounds"));
+        }
+    }
+
+    @Test
+    public void packDirectorySortsByFrameNumber() throws Exception {
+        final File dir = createTempDir();
+        final int[] numbers = {10, 2, 1, 0};
+        for (int number : numbers) {
+            final File frame = new File(dir, "gift_" + number + ".png");
+            frame.deleteOnExit();
+            ImageIO.write(new BufferedImage(8 + number, 4, BufferedImage.TYPE_INT_ARGB), "png", frame);
+        }
+        final File pack = new File(dir, "gift" + FramePackFormat.FILE_EXTENSION);
+        pack.deleteOnExit();
+        FramePacker.pack(dir, 80).writeTo(pack);
+
+        final RandomAccessFile file = new RandomAccessFile(pack, "r");
+        try {
+            final MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+            final FramePackIndex index = FramePackIndex.parse(buffer);
+            assertEquals(4, index.getFrameCount());
+            assertEquals("gift_0.png", index.getName(0));
+            assertEquals("gift_1.png", index.getName(1));
+            assertEquals("gift_2.png", index.getName(2));
+            assertEquals("gift_10.png", index.getName(3));
+            assertEquals(18, index.getWidth(3));
+            assertEquals(4, index.getHeight(3));
+            assertEquals(80, index.getDuration(0));
+            final BufferedImage decoded = ImageIO.read(new ByteBufferInputStream(index.slice(buffer, 3)));
+            assertEquals(18, decoded.getWidth());
+        } finally {
+            file.close();
+        }
+    }
+
+    @Test
+    public void packDemoAssets() throws Exception {
+        final File dir = new File("../app/src/main/assets/youting");
+        if (!dir.isDirectory()) {
+            return;
+        }
+        final File[] frames = FramePacker.listFrames(dir);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FramePacker.pack(dir, 100).writeTo(out);
+        final FramePackIndex index = FramePackIndex.parse(ByteBuffer.wrap(out.toByteArray()));
+        assertEquals(frames.length, index.getFrameCount());
+        for (int i = 0; i < index.getFrameCount(); i++) {
+            assertEquals("youting_" + i + ".png", index.getName(i));
+            assertEquals(frames[i].length(), index.getLength(i));
+            assertTrue(index.getWidth(i) > 0);
+        }
+        //每一帧都能解码，所以每一帧都有变化区域，并且在帧的范围内
+        final int[] dirtyRect = new int[4];
+        for (int i = 0; i < index.getFrameCount(); i++) {
+            assertTrue(index.getDirtyRect(i, dirtyRect));
+            assertTrue(dirtyRect[0] >= 0 && dirtyRect[2] <= index.getWidth(i));
+            assertTrue(dirtyRect[1] >= 0 && dirtyRect[3] <= index.getHeight(i));
+        }
+    }
+
+    private static File createTempDir() throws IOException {
+        final File dir = File.createTempFile("framepack", "");
+        if (!dir.delete() || !dir.mkdir()) {
+            throw new IOException("can not create " + dir);
+        }
+        dir.deleteOnExit();
+        return dir;
+    }
+}
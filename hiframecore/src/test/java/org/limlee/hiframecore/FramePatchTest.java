@@ -0,0 +1,163 @@
+package org.limlee.hiframecore;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FramePatchTest {
+    private static final int WIDTH = 40;
+    private static final int HEIGHT = 24;
+
+    /**
+     * 用int[]模拟bitmap
+     */
+    private static final class IntPixels implements FramePatch.PixelTarget {
+        final int[] pixels;
+        final int width;
+
+        IntPixels(int[] pixels, int width) {
+            this.pixels = pixels;
+            this.width = width;
+        }
+
+        @Override
+        public void setPixels(int[] src, int offset, int stride, int x, int y, int width, int height) {
+            for (int row = 0; row < height; row++) {
+                System.arraycopy(src, offset + row * stride, pixels, (y + row) * this.width + x, width);
+            }
+        }
+    }
+
+    @Test
+    public void patchRestoresCurrentFrame() throws Exception {
+        final int[] previous = new int[WIDTH * HEIGHT];
+        final int[] current = previous.clone();
+        current[3 * WIDTH + 35] = 0xFF102030; //最右边不完整的块
+        current[20 * WIDTH + 1] = 0x80FFFFFF; //最下面的块
+        for (int y = 0; y < HEIGHT; y++) { //跨两行块的一列
+            current[y * WIDTH + 17] = 0xFF00FF00;
+        }
+        final byte[] patch = FramePatchEncoder.encode(previous, current, WIDTH, HEIGHT);
+        assertTrue(FramePatch.isPatch(patch, 0, patch.length));
+
+        final IntPixels target = new IntPixels(previous.clone(), WIDTH);
+        new FramePatchDecoder().apply(patch, 0, patch.length, WIDTH, HEIGHT, target);
+        assertArrayEquals(current, target.pixels);
+    }
+
+    @Test
+    public void unchangedFrameHasNoRects() throws Exception {
+        final int[] pixels = new int[WIDTH * HEIGHT];
+        assertTrue(FramePatchEncoder.findChangedRects(pixels, pixels.clone(), WIDTH, HEIGHT).isEmpty());
+        final byte[] patch = FramePatchEncoder.encode(pixels, pixels, WIDTH, HEIGHT);
+        new FramePatchDecoder().apply(patch, 0, patch.length, WIDTH, HEIGHT, new IntPixels(pixels, WIDTH));
+    }
+
+    @Test
+    public void verticallyAlignedTilesAreMerged() {
+        final int[] previous = new int[WIDTH * HEIGHT];
+        final int[] current = previous.clone();
+        current[0] = 1;
+        current[20 * WIDTH] = 1;
+        //第一列的两个块上下相邻，合并成一个矩形
+        assertEquals(1, FramePatchEncoder.findChangedRects(previous, current, WIDTH, HEIGHT).size());
+    }
+
+    @Test
+    public void rejectsMismatchedSizeAndTruncatedPatch() {
+        final int[] previous = new int[WIDTH * HEIGHT];
+        final int[] current = previous.clone();
+        current[0] = 1;
+        final byte[] patch = FramePatchEncoder.encode(previous, current, WIDTH, HEIGHT);
+        final FramePatchDecoder decoder = new FramePatchDecoder();
+        try {
+            decoder.apply(patch, 0, patch.length, WIDTH + 1, HEIGHT, new IntPixels(new int[(WIDTH + 1) * HEIGHT], WIDTH + 1));
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("patch is"));
+        }
+        try {
+            decoder.apply(patch, 0, FramePatch.HEADER_SIZE + FramePatch.RECT_SIZE + 2, WIDTH, HEIGHT,
+                    new IntPixels(previous.clone(), WIDTH));
+            fail();
+        } catch (IOException e) {
+            //截断了
+        }
+        assertFalse(FramePatch.isPatch(new byte[]{(byte) 0x89, 'P', 'N', 'G'}, 0, 4));
+    }
+
+    @Test
+    public void packDemoAssetsWithPatches() throws Exception {
+        final File dir = new File("../app/src/main/assets/youting");
+        if (!dir.isDirectory()) {
+            return;
+        }
+        final ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        FramePacker.pack(dir, 100).writeTo(plain);
+        final ByteArrayOutputStream patched = new ByteArrayOutputStream();
+        FramePacker.pack(dir, 100, 16).writeTo(patched);
+        //比原图大的差量帧不会用，包只会变小
+        assertTrue(patched.size() <= plain.size());
+
+        //关键帧用ImageIO解码，差量帧覆盖到上一帧上，每一帧都要和原图一模一样
+        final ByteBuffer buffer = ByteBuffer.wrap(patched.toByteArray());
+        final FramePackIndex index = FramePackIndex.parse(buffer);
+        final File[] frames = FramePacker.listFrames(dir);
+        final FramePatchDecoder decoder = new FramePatchDecoder();
+        IntPixels current = null;
+        for (int i = 0; i < index.getFrameCount(); i++) {
+            final ByteBuffer frame = index.slice(buffer, i);
+            final int width = index.getWidth(i);
+            final int height = index.getHeight(i);
+            if (index.isPatch(i)) {
+                assertTrue(i % 16 != 0);
+                assertTrue(index.getKeyFrame(i) >= i - i % 16);
+                final byte[] data = new byte[frame.remaining()];
+                frame.get(data);
+                decoder.apply(data, 0, data.length, width, height, current);
+            } else {
+                final BufferedImage image = ImageIO.read(new ByteBufferInputStream(frame));
+                current = new IntPixels(image.getRGB(0, 0, width, height, null, 0, width), width);
+            }
+            final BufferedImage original = ImageIO.read(frames[i]);
+            assertArrayEquals("frame " + i, original.getRGB(0, 0, width, height, null, 0, width), current.pixels);
+        }
+        decoder.release();
+    }
+
+    @Test
+    public void demoAssetPatchesRestoreEveryFrame() throws Exception {
+        final File dir = new File("../app/src/main/assets/youting");
+        if (!dir.isDirectory()) {
+            return;
+        }
+        //不管大小，连续的帧都用差量帧叠加，误差会累积，所以每一帧都要完全一样
+        final File[] frames = FramePacker.listFrames(dir);
+        final FramePatchDecoder decoder = new FramePatchDecoder();
+        final BufferedImage first = ImageIO.read(frames[0]);
+        final int width = first.getWidth();
+        final int height = first.getHeight();
+        int[] previous = first.getRGB(0, 0, width, height, null, 0, width);
+        final IntPixels target = new IntPixels(previous.clone(), width);
+        for (int i = 1; i < Math.min(frames.length, 12); i++) {
+            final int[] current = ImageIO.read(frames[i]).getRGB(0, 0, width, height, null, 0, width);
+            final byte[] patch = FramePatchEncoder.encode(previous, current, width, height);
+            decoder.apply(patch, 0, patch.length, width, height, target);
+            assertArrayEquals("frame " + i, current, target.pixels);
+            previous = current;
+        }
+        decoder.release();
+    }
+}
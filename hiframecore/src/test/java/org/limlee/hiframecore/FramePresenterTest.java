@@ -0,0 +1,173 @@
+package org.limlee.hiframecore;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FramePresenterTest {
+
+    /**
+     * 假的后端，记录每一次锁的区域，画布就是一个StringBuilder
+     */
+    private static final class FakeRenderer implements FrameRenderer<StringBuilder> {
+        final boolean dirtyRectSupported;
+        final List<int[]> locks = new ArrayList<>();
+        final List<String> posted = new ArrayList<>();
+        boolean lockFails;
+        boolean postFails;
+
+        FakeRenderer(boolean dirtyRectSupported) {
+            this.dirtyRectSupported = dirtyRectSupported;
+        }
+
+        @Override
+        public StringBuilder lockCanvas(int[] dirty) {
+            locks.add(null != dirty ? dirty.clone() : null);
+            return lockFails ? null : new StringBuilder();
+        }
+
+        @Override
+        public boolean unlockCanvasAndPost(StringBuilder canvas) {
+            if (postFails) {
+                return false;
+            }
+            posted.add(canvas.toString());
+            return true;
+        }
+
+        @Override
+        public boolean isDirtyRectSupported() {
+            return dirtyRectSupported;
+        }
+    }
+
+    private boolean mPrepared;
+    private int[] mDirty; //null表示整帧重绘
+    private int mFrame;
+    private int mPostedCount;
+    private FramePresenter<StringBuilder> mPresenter;
+
+    @Before
+    public void setUp() {
+        mPrepared = true;
+        mPresenter = new FramePresenter<>(new FramePresenter.Callback<StringBuilder>() {
+            @Override
+            public boolean prepareFrame() {
+                return mPrepared;
+            }
+
+            @Override
+            public boolean getDirtyRect(int[] dirty) {
+                if (null == mDirty) {
+                    return false;
+                }
+                System.arraycopy(mDirty, 0, dirty, 0, 4);
+                return true;
+            }
+
+            @Override
+            public void drawFrame(StringBuilder canvas) {
+                canvas.append("frame").append(mFrame);
+            }
+
+            @Override
+            public void onFramePosted() {
+                mPostedCount++;
+            }
+        });
+    }
+
+    @Test
+    public void skipsUnpreparedFrame() {
+        final FakeRenderer renderer = new FakeRenderer(true);
+        mPrepared = false;
+        assertEquals(FramePresenter.RESULT_SKIPPED, mPresenter.present(renderer));
+        assertTrue(renderer.locks.isEmpty());
+        assertEquals(0, mPostedCount);
+    }
+
+    @Test
+    public void firstFrameIsFullThenPartial() {
+        final FakeRenderer renderer = new FakeRenderer(true);
+        mDirty = new int[]{1, 2, 3, 4};
+        assertEquals(FramePresenter.RESULT_POSTED, mPresenter.present(renderer));
+        assertNull(renderer.locks.get(0)); //第一帧画布上没有上一帧，整帧重绘
+        assertFalse(mPresenter.isFullRedrawNeeded());
+
+        mFrame = 1;
+        assertEquals(FramePresenter.RESULT_POSTED, mPresenter.present(renderer));
+        assertArrayEquals(new int[]{1, 2, 3, 4}, renderer.locks.get(1));
+        assertEquals("frame1", renderer.posted.get(1));
+        assertEquals(2, mPostedCount);
+
+        mPresenter.invalidate(); //比如surface被清空了
+        assertEquals(FramePresenter.RESULT_POSTED, mPresenter.present(renderer));
+        assertNull(renderer.locks.get(2));
+    }
+
+    @Test
+    public void unchangedFrameDoesNotLock() {
+        final FakeRenderer renderer = new FakeRenderer(true);
+        mPresenter.present(renderer);
+        mDirty = new int[]{0, 0, 0, 0};
+        assertEquals(FramePresenter.RESULT_UNCHANGED, mPresenter.present(renderer));
+        assertEquals(1, renderer.locks.size());
+        assertEquals(2, mPostedCount); //帧还是要释放
+    }
+
+    @Test
+    public void rendererWithoutDirtyRectAlwaysDrawsFullFrame() {
+        final FakeRenderer renderer = new FakeRenderer(false);
+        mDirty = new int[]{1, 2, 3, 4};
+        for (int i = 0; i < 3; i++) {
+            mFrame = i;
+            assertEquals(FramePresenter.RESULT_POSTED, mPresenter.present(renderer));
+            assertNull(renderer.locks.get(i));
+        }
+        mDirty = new int[]{0, 0, 0, 0}; //画布上的内容不保留，一样的帧也要重画
+        assertEquals(FramePresenter.RESULT_POSTED, mPresenter.present(renderer));
+        assertEquals(4, renderer.posted.size());
+    }
+
+    @Test
+    public void recordsOnlyPostedFrames() {
+        final FrameStats stats = new FrameStats();
+        mPresenter.setStats(stats);
+        final FakeRenderer renderer = new FakeRenderer(true);
+        mPresenter.present(renderer);
+        mDirty = new int[]{0, 0, 0, 0};
+        mPresenter.present(renderer); //没有锁画布
+        renderer.postFails = true;
+        mPresenter.present(renderer);
+        assertEquals(1, stats.getDrawTimes().getCount());
+        assertEquals(1, stats.getLockTimes().getCount());
+    }
+
+    @Test
+    public void failureForcesFullRedraw() {
+        final FakeRenderer renderer = new FakeRenderer(true);
+        mPresenter.present(renderer);
+        mDirty = new int[]{1, 2, 3, 4};
+
+        renderer.lockFails = true;
+        assertEquals(FramePresenter.RESULT_FAILED, mPresenter.present(renderer));
+        assertTrue(mPresenter.isFullRedrawNeeded());
+        assertEquals(1, mPostedCount);
+        renderer.lockFails = false;
+        mPresenter.present(renderer);
+        assertNull(renderer.locks.get(2));
+
+        renderer.postFails = true;
+        assertEquals(FramePresenter.RESULT_FAILED, mPresenter.present(renderer));
+        assertTrue(mPresenter.isFullRedrawNeeded());
+        assertEquals(2, mPostedCount);
+    }
+}
@@ -0,0 +1,123 @@
+package org.limlee.hiframecore;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FrameReadBufferTest {
+
+    @Test
+    public void steadyStateDoesNotAllocate() throws Exception {
+        final FrameReadBuffer buffer = new FrameReadBuffer(1024);
+        final byte[] frame = new byte[4000];
+        buffer.readFrom(new ByteArrayInputStream(frame));
+        final int allocations = buffer.getAllocationCount();
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(frame.length, buffer.readFrom(new ByteArrayInputStream(frame)));
+        }
+        assertEquals(allocations, buffer.getAllocationCount());
+    }
+
+    /**
+     * 用JVM统计的当前线程分配的字节数来检查，不只是缓冲区自己的计数：
+     * 稳定之后读1000帧，分配的内存比一帧还少
+     */
+    @Test
+    public void steadyStateReadAllocatesNoHeap() throws Exception {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) { //不是HotSpot，统计不了
+            return;
+        }
+        final com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        if (!allocations.isThreadAllocatedMemorySupported()) {
+            return;
+        }
+        allocations.setThreadAllocatedMemoryEnabled(true);
+        final FrameReadBuffer buffer = new FrameReadBuffer(1024);
+        final byte[] frame = new byte[4000];
+        final ByteArrayInputStream in = new ByteArrayInputStream(frame);
+        for (int i = 0; i < 10000; i++) { //预热，让JIT编译完
+            in.reset();
+            buffer.readFrom(in);
+        }
+        final long threadId = Thread.currentThread().getId();
+        final long before = allocations.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 1000; i++) {
+            in.reset();
+            buffer.readFrom(in);
+        }
+        final long allocated = allocations.getThreadAllocatedBytes(threadId) - before;
+        assertTrue("allocated " + allocated + " bytes", allocated < frame.length);
+    }
+
+    @Test
+    public void growsOnlyForLargerFrames() throws Exception {
+        final FrameReadBuffer buffer = new FrameReadBuffer(1024);
+        buffer.readFrom(new ByteArrayInputStream(new byte[1000]));
+        assertEquals(1, buffer.getAllocationCount());
+        buffer.readFrom(new ByteArrayInputStream(new byte[3000]));
+        assertEquals(2, buffer.getAllocationCount());
+        buffer.readFrom(new ByteArrayInputStream(new byte[2000]));
+        assertEquals(2, buffer.getAllocationCount());
+        assertEquals(2000, buffer.getLength());
+    }
+
+    @Test
+    public void readsStreamsWithoutAvailableHint() throws Exception {
+        final byte[] frame = new byte[5000];
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = (byte) i;
+        }
+        final FrameReadBuffer buffer = new FrameReadBuffer(16);
+        final InputStream in = new ByteArrayInputStream(frame) {
+            @Override
+            public synchronized int available() {
+                return 0;
+            }
+
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 7));
+            }
+        };
+        assertEquals(frame.length, buffer.readFrom(in));
+        for (int i = 0; i < frame.length; i++) {
+            assertEquals(frame[i], buffer.getBuffer()[i]);
+        }
+    }
+
+    @Test
+    public void demoAssetsAllocateOncePerLoop() throws IOException {
+        final File dir = new File("../app/src/main/assets/youting");
+        if (!dir.isDirectory()) {
+            return;
+        }
+        final File[] frames = FramePacker.listFrames(dir);
+        final FrameReadBuffer buffer = new FrameReadBuffer();
+        readAll(buffer, frames);
+        final int allocations = buffer.getAllocationCount();
+        readAll(buffer, frames);
+        readAll(buffer, frames);
+        assertEquals(allocations, buffer.getAllocationCount());
+    }
+
+    private static void readAll(FrameReadBuffer buffer, File[] frames) throws IOException {
+        for (File frame : frames) {
+            final InputStream in = new FileInputStream(frame);
+            try {
+                assertEquals(frame.length(), buffer.readFrom(in));
+            } finally {
+                in.close();
+            }
+        }
+    }
+}
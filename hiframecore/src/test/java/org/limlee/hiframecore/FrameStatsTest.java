@@ -0,0 +1,38 @@
+package org.limlee.hiframecore;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class FrameStatsTest {
+
+    @Test
+    public void snapshotIsIndependent() {
+        final FrameStats stats = new FrameStats();
+        stats.recordDecode(5000000, 4096);
+        stats.recordDecode(7000000, 4096);
+        stats.recordPoolAcquire(false);
+        stats.recordPoolAcquire(true);
+        stats.recordPoolAcquire(true);
+        stats.recordPoolAcquire(true);
+        stats.recordDraw(2000000, 1000000);
+        stats.recordFrame(1000, 0);
+        stats.recordFrame(FrameStats.LATE_THRESHOLD_MICROS + 1, 2);
+
+        final FrameStats snapshot = new FrameStats();
+        stats.copyTo(snapshot);
+        stats.reset();
+        assertEquals(0, stats.getFrameCount());
+
+        assertEquals(2, snapshot.getDecodeTimes().getCount());
+        assertEquals(5000, snapshot.getDecodeTimes().getMin());
+        assertEquals(8192, snapshot.getBytesDecoded());
+        assertEquals(0.75f, snapshot.getPoolHitRate(), 0.001f);
+        assertEquals(2000, snapshot.getDrawTimes().getMax());
+        assertEquals(1000, snapshot.getLockTimes().getMax());
+        assertEquals(2, snapshot.getFrameCount());
+        assertEquals(2, snapshot.getDroppedFrameCount());
+        assertEquals(1, snapshot.getLateFrameCount());
+        assertEquals(FrameStats.LATE_THRESHOLD_MICROS + 1, snapshot.getFrameDelays().getMax());
+    }
+}
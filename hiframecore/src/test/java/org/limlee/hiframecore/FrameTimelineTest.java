@@ -0,0 +1,77 @@
+package org.limlee.hiframecore;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class FrameTimelineTest {
+
+    @Test
+    public void framesFollowElapsedTime() {
+        final FrameTimeline timeline = new FrameTimeline(new long[]{100, 100, 100}, 0);
+        assertEquals(300, timeline.getDuration());
+        assertEquals(0, timeline.getFrameAt(0, true));
+        assertEquals(0, timeline.getFrameAt(99, true));
+        assertEquals(1, timeline.getFrameAt(100, true));
+        assertEquals(2, timeline.getFrameAt(299, true));
+        assertEquals(0, timeline.getFrameAt(300, true));
+        assertEquals(1, timeline.getFrameAt(3150, true));
+        assertEquals(10, timeline.getLoopCount(3150));
+    }
+
+    @Test
+    public void slowFramesAreDroppedNotDelayed() {
+        final FrameTimeline timeline = new FrameTimeline(new long[]{16, 16, 16, 16, 16}, 0);
+        //上一帧画了40ms，下一次应该直接显示第2帧，而不是第1帧
+        assertEquals(2, timeline.getFrameAt(40, true));
+        assertEquals(48, timeline.getNextFrameTime(40, true));
+    }
+
+    @Test
+    public void oneShotHoldsLastFrame() {
+        final FrameTimeline timeline = new FrameTimeline(new long[]{50, 50}, 0);
+        assertEquals(1, timeline.getFrameAt(100, false));
+        assertEquals(1, timeline.getFrameAt(10000, false));
+        assertEquals(-1, timeline.getNextFrameTime(100, false));
+        assertEquals(100, timeline.getNextFrameTime(60, false));
+    }
+
+    @Test
+    public void durationScalesFrames() {
+        final FrameTimeline timeline = new FrameTimeline(new long[]{100, 100, 200}, 200);
+        assertEquals(200, timeline.getDuration());
+        assertEquals(0, timeline.getFrameStart(0));
+        assertEquals(50, timeline.getFrameStart(1));
+        assertEquals(100, timeline.getFrameStart(2));
+        assertEquals(1, timeline.getFrameAt(75, true));
+    }
+
+    @Test
+    public void noDriftOverManyLoops() {
+        final long[] durations = new long[129];
+        for (int i = 0; i < durations.length; i++) {
+            durations[i] = 100;
+        }
+        final FrameTimeline timeline = new FrameTimeline(durations, 0);
+        final long oneHour = 60L * 60 * 1000;
+        assertEquals(oneHour / 12900, timeline.getLoopCount(oneHour));
+        assertEquals((oneHour % 12900) / 100, timeline.getFrameAt(oneHour, true));
+    }
+
+    @Test
+    public void zeroDurationFramesAreSkipped() {
+        final FrameTimeline timeline = new FrameTimeline(new long[]{100, 0, 100}, 0);
+        assertEquals(2, timeline.getFrameAt(100, true));
+    }
+
+    @Test
+    public void framesWithoutDurationShareTheTotal() {
+        final FrameTimeline timeline = new FrameTimeline(new long[]{0, 0, 0, 0}, 400);
+        assertEquals(2, timeline.getFrameAt(250, true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyTimeline() {
+        new FrameTimeline(new long[0], 100);
+    }
+}
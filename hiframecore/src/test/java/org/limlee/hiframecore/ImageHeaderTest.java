@@ -0,0 +1,116 @@
+package org.limlee.hiframecore;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ImageHeaderTest {
+
+    @Test
+    public void opaquePng() throws Exception {
+        final ImageHeader header = ImageHeader.probe(encode(new BufferedImage(31, 17, BufferedImage.TYPE_INT_RGB), "png"));
+        assertEquals(31, header.width);
+        assertEquals(17, header.height);
+        assertFalse(header.hasAlpha);
+    }
+
+    @Test
+    public void translucentPng() throws Exception {
+        final ImageHeader header = ImageHeader.probe(encode(new BufferedImage(5, 6, BufferedImage.TYPE_INT_ARGB), "png"));
+        assertEquals(5, header.width);
+        assertTrue(header.hasAlpha);
+    }
+
+    @Test
+    public void jpeg() throws Exception {
+        final ImageHeader header = ImageHeader.probe(encode(new BufferedImage(40, 30, BufferedImage.TYPE_INT_RGB), "jpg"));
+        assertEquals(40, header.width);
+        assertEquals(30, header.height);
+        assertFalse(header.hasAlpha);
+    }
+
+    @Test
+    public void lossyWebp() {
+        final byte[] data = webp("VP8 ", new byte[]{0x10, 0x02, 0x00, (byte) 0x9D, 0x01, 0x2A, (byte) 200, 0x00, 100, 0x00});
+        final ImageHeader header = ImageHeader.probe(data);
+        assertEquals(200, header.width);
+        assertEquals(100, header.height);
+        assertFalse(header.hasAlpha);
+    }
+
+    @Test
+    public void losslessWebp() {
+        //width-1 = 99, height-1 = 49, alpha = 1
+        final int bits = 99 | (49 << 14) | (1 << 28);
+        final byte[] data = webp("VP8L", new byte[]{0x2F, (byte) bits, (byte) (bits >> 8), (byte) (bits >> 16), (byte) (bits >> 24)});
+        final ImageHeader header = ImageHeader.probe(data);
+        assertEquals(100, header.width);
+        assertEquals(50, header.height);
+        assertTrue(header.hasAlpha);
+    }
+
+    @Test
+    public void extendedWebp() {
+        final byte[] data = webp("VP8X", new byte[]{0x10, 0, 0, 0, (byte) 0xFF, 0x01, 0x00, 0x7F, 0x00, 0x00});
+        final ImageHeader header = ImageHeader.probe(data);
+        assertEquals(512, header.width);
+        assertEquals(128, header.height);
+        assertTrue(header.hasAlpha);
+    }
+
+    @Test
+    public void unknownFormat() {
+        assertNull(ImageHeader.probe(new byte[64]));
+        assertNull(ImageHeader.probe(new byte[3]));
+    }
+
+    @Test
+    public void demoAssetsHaveAlpha() throws IOException {
+        final File frame = new File("../app/src/main/assets/youting/youting_0.png");
+        if (!frame.isFile()) {
+            return;
+        }
+        final byte[] data = new byte[(int) frame.length()];
+        final InputStream in = new FileInputStream(frame);
+        try {
+            int read = 0;
+            while (read < data.length) {
+                read += in.read(data, read, data.length - read);
+            }
+        } finally {
+            in.close();
+        }
+        final BufferedImage image = ImageIO.read(frame);
+        final ImageHeader header = ImageHeader.probe(data);
+        assertEquals(image.getWidth(), header.width);
+        assertEquals(image.getHeight(), header.height);
+        assertEquals(image.getColorModel().hasAlpha(), header.hasAlpha);
+    }
+
+    static byte[] encode(BufferedImage image, String format) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, format, out);
+        return out.toByteArray();
+    }
+
+    private static byte[] webp(String chunk, byte[] payload) {
+        final byte[] data = new byte[20 + Math.max(payload.length, 10)];
+        System.arraycopy("RIFF".getBytes(), 0, data, 0, 4);
+        System.arraycopy("WEBP".getBytes(), 0, data, 8, 4);
+        System.arraycopy(chunk.getBytes(), 0, data, 12, 4);
+        System.arraycopy(payload, 0, data, 20, payload.length);
+        return data;
+    }
+}
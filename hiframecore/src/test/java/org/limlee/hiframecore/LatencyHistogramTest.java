@@ -0,0 +1,60 @@
+package org.limlee.hiframecore;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsCoverEveryValue() {
+        int prevBucket = 0;
+        for (long value = 0; value < 100000; value++) {
+            final int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(bucket == prevBucket || bucket == prevBucket + 1);
+            assertTrue(value <= LatencyHistogram.upperBoundOf(bucket));
+            //误差不超过12.5%
+            assertTrue(LatencyHistogram.upperBoundOf(bucket) - value <= value / 8);
+            prevBucket = bucket;
+        }
+    }
+
+    @Test
+    public void percentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(99));
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 100);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(100, histogram.getMin());
+        assertEquals(10000, histogram.getMax());
+        assertEquals(5050, histogram.getMean());
+        assertInRange(5000, histogram.getPercentile(50));
+        assertInRange(9000, histogram.getPercentile(90));
+        assertInRange(9900, histogram.getPercentile(99));
+        assertEquals(10000, histogram.getPercentile(100));
+        assertEquals(100, histogram.getPercentile(0));
+    }
+
+    @Test
+    public void clampsAndCopies() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(0, histogram.getMin());
+        assertEquals(Integer.MAX_VALUE, histogram.getMax());
+
+        final LatencyHistogram copy = new LatencyHistogram();
+        histogram.copyTo(copy);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(2, copy.getCount());
+        assertEquals(Integer.MAX_VALUE, copy.getPercentile(99));
+    }
+
+    private static void assertInRange(long expected, long actual) {
+        assertTrue(expected + " vs " + actual, actual >= expected && actual <= expected + expected / 8);
+    }
+}
@@ -0,0 +1,84 @@
+package org.limlee.hiframecore;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PlayQueueTest {
+
+    @Test
+    public void higherPriorityFirstThenFifo() {
+        final PlayQueue<String> queue = new PlayQueue<>(10, 1);
+        queue.offer("rose", 0, 1, "a");
+        queue.offer("car", 5, 1, "b");
+        queue.offer("heart", 0, 1, "c");
+        queue.offer("rocket", 5, 1, "d");
+        assertEquals("b", queue.poll().getPayload());
+        assertEquals("d", queue.poll().getPayload());
+        assertEquals("a", queue.peek().getPayload());
+        assertEquals("a", queue.poll().getPayload());
+        assertEquals("c", queue.poll().getPayload());
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void sameKeyIsMergedUpToMaxCombo() {
+        final PlayQueue<String> queue = new PlayQueue<>(10, 10);
+        queue.offer("rose", 0, 1, "first");
+        queue.offer("car", 0, 1, "car");
+        queue.offer("rose", 3, 4, "second");
+        assertEquals(2, queue.size());
+        PlayQueue.Entry<String> rose = queue.poll(); //合并之后优先级取高的
+        assertEquals("first", rose.getPayload());
+        assertEquals(5, rose.getCount());
+        assertEquals(3, rose.getPriority());
+
+        queue.offer("rose", 0, 25, "combo");
+        assertEquals(4, queue.size());
+        assertEquals("car", queue.poll().getKey());
+        assertEquals(10, queue.poll().getCount());
+        assertEquals(10, queue.poll().getCount());
+        assertEquals(5, queue.poll().getCount());
+    }
+
+    @Test
+    public void nullKeyIsNeverMerged() {
+        final PlayQueue<String> queue = new PlayQueue<>(10, 10);
+        queue.offer(null, 0, 1, "a");
+        queue.offer(null, 0, 1, "b");
+        assertEquals(2, queue.size());
+    }
+
+    @Test
+    public void fullQueueEvictsLowestNewest() {
+        final PlayQueue<String> queue = new PlayQueue<>(3, 1);
+        queue.offer("a", 1, 1, "a");
+        queue.offer("b", 0, 1, "b");
+        queue.offer("c", 0, 1, "c");
+        assertTrue(queue.offer("d", 2, 1, "d"));
+        assertEquals(1, queue.getDroppedCount());
+        assertFalse(queue.offer("e", 0, 1, "e")); //不比最低的高，丢掉新来的
+        assertEquals(2, queue.getDroppedCount());
+        assertEquals("d", queue.poll().getPayload());
+        assertEquals("a", queue.poll().getPayload());
+        assertEquals("b", queue.poll().getPayload());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void requeueKeepsPosition() {
+        final PlayQueue<String> queue = new PlayQueue<>(2, 1);
+        queue.offer("a", 0, 1, "a");
+        queue.offer("b", 0, 1, "b");
+        final PlayQueue.Entry<String> a = queue.poll();
+        queue.offer("c", 0, 1, "c");
+        queue.requeue(a);
+        assertEquals(3, queue.size());
+        assertEquals("a", queue.poll().getPayload());
+        assertEquals("b", queue.poll().getPayload());
+    }
+}
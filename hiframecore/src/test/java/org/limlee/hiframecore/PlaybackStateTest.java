@@ -0,0 +1,96 @@
+package org.limlee.hiframecore;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PlaybackStateTest {
+
+    @Test
+    public void startPauseResumeStop() {
+        final PlaybackState state = new PlaybackState();
+        assertFalse(state.isActive());
+        assertTrue(state.begin());
+        assertFalse(state.begin());
+        assertFalse(state.pause()); //还在准备
+        assertTrue(state.prepared());
+        assertTrue(state.pause());
+        assertTrue(state.isActive());
+        assertFalse(state.pause());
+        assertTrue(state.resume());
+        assertEquals(PlaybackState.STATE_RUNNING, state.stop());
+        assertEquals(PlaybackState.STATE_IDLE, state.stop()); //正在停止
+        assertFalse(state.begin());
+        state.stopped();
+        assertEquals(PlaybackState.STATE_IDLE, state.get());
+    }
+
+    @Test
+    public void stopWhilePreparing() {
+        final PlaybackState state = new PlaybackState();
+        state.begin();
+        assertEquals(PlaybackState.STATE_PREPARING, state.stop());
+        assertFalse(state.prepared()); //准备的一方负责释放
+        state.stopped();
+        assertTrue(state.begin());
+        state.abort();
+        assertEquals(PlaybackState.STATE_IDLE, state.get());
+    }
+
+    @Test
+    public void pausedCanBeStopped() {
+        final PlaybackState state = new PlaybackState();
+        state.begin();
+        state.prepared();
+        state.pause();
+        assertEquals(PlaybackState.STATE_PAUSED, state.stop());
+        assertFalse(state.resume());
+    }
+
+    @Test
+    public void onlyOneThreadWins() throws Exception {
+        final PlaybackState state = new PlaybackState();
+        final AtomicInteger starts = new AtomicInteger();
+        final AtomicInteger stops = new AtomicInteger();
+        final CountDownLatch go = new CountDownLatch(1);
+        final Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        go.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < 10000; j++) {
+                        if (state.begin()) {
+                            starts.incrementAndGet();
+                            if (!state.prepared()) {
+                                state.stopped();
+                            }
+                        }
+                        final int stopped = state.stop();
+                        if (stopped != PlaybackState.STATE_IDLE) {
+                            stops.incrementAndGet();
+                            if (stopped != PlaybackState.STATE_PREPARING) {
+                                state.stopped();
+                            }
+                        }
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        go.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(starts.get(), stops.get());
+    }
+}
@@ -0,0 +1,82 @@
+package org.limlee.hiframecore;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class QualityLadderTest {
+
+    @Test
+    public void stepsDownAtOnceAndRecoversOneLevelAtATime() {
+        final QualityLadder ladder = new QualityLadder(1000);
+        assertEquals(-1, ladder.getNextRecoveryTime());
+        assertTrue(ladder.onPressure(QualityLadder.LEVEL_HALF_RESOLUTION, 0));
+        assertFalse(ladder.onPressure(QualityLadder.LEVEL_SMALL_BUFFERS, 500)); //更轻的压力不会升级，但是重新计时
+        assertEquals(1500, ladder.getNextRecoveryTime());
+        assertFalse(ladder.recover(1499));
+        assertTrue(ladder.recover(1500));
+        assertEquals(QualityLadder.LEVEL_RGB_565, ladder.getLevel());
+        assertFalse(ladder.recover(2000));
+        assertTrue(ladder.recover(2500));
+        assertTrue(ladder.recover(3500));
+        assertEquals(QualityLadder.LEVEL_FULL, ladder.getLevel());
+        assertFalse(ladder.recover(10000));
+    }
+
+    @Test
+    public void levelIsClamped() {
+        final QualityLadder ladder = new QualityLadder(1000);
+        ladder.onPressure(100, 0);
+        assertEquals(QualityLadder.LEVEL_PAUSE_LOW, ladder.getLevel());
+    }
+
+    @Test
+    public void backgroundTrimOnlyShrinksBuffers() {
+        final QualityLadder ladder = new QualityLadder(1000);
+        assertTrue(ladder.onTrimMemory(QualityLadder.TRIM_MEMORY_COMPLETE, 0));
+        assertEquals(QualityLadder.LEVEL_SMALL_BUFFERS, ladder.getLevel());
+        assertTrue(ladder.recover(1000)); //回到前台之后一个间隔就恢复了
+        assertEquals(QualityLadder.LEVEL_FULL, ladder.getLevel());
+    }
+
+    @Test
+    public void repeatedCriticalTrimPausesLowPriority() {
+        final QualityLadder ladder = new QualityLadder(1000);
+        ladder.onTrimMemory(QualityLadder.TRIM_MEMORY_RUNNING_CRITICAL, 0);
+        assertEquals(QualityLadder.LEVEL_HALF_RESOLUTION, ladder.getLevel());
+        ladder.onTrimMemory(QualityLadder.TRIM_MEMORY_RUNNING_CRITICAL, 10);
+        assertEquals(QualityLadder.LEVEL_PAUSE_LOW, ladder.getLevel());
+    }
+
+    @Test
+    public void trimMemoryLevels() {
+        assertEquals(QualityLadder.LEVEL_FULL, QualityLadder.levelForTrimMemory(0));
+        assertEquals(QualityLadder.LEVEL_SMALL_BUFFERS,
+                QualityLadder.levelForTrimMemory(QualityLadder.TRIM_MEMORY_RUNNING_MODERATE));
+        assertEquals(QualityLadder.LEVEL_RGB_565,
+                QualityLadder.levelForTrimMemory(QualityLadder.TRIM_MEMORY_RUNNING_LOW));
+        assertEquals(QualityLadder.LEVEL_HALF_RESOLUTION,
+                QualityLadder.levelForTrimMemory(QualityLadder.TRIM_MEMORY_RUNNING_CRITICAL));
+        assertEquals(QualityLadder.LEVEL_SMALL_BUFFERS,
+                QualityLadder.levelForTrimMemory(QualityLadder.TRIM_MEMORY_UI_HIDDEN));
+        assertEquals(QualityLadder.LEVEL_SMALL_BUFFERS, QualityLadder.levelForTrimMemory(40)); //BACKGROUND
+        assertEquals(QualityLadder.LEVEL_SMALL_BUFFERS, QualityLadder.levelForTrimMemory(60)); //MODERATE
+        assertEquals(QualityLadder.LEVEL_SMALL_BUFFERS,
+                QualityLadder.levelForTrimMemory(QualityLadder.TRIM_MEMORY_COMPLETE));
+    }
+
+    @Test
+    public void ladderSettings() {
+        assertEquals(3, QualityLadder.getDecodeAhead(QualityLadder.LEVEL_FULL, 3));
+        assertEquals(1, QualityLadder.getDecodeAhead(QualityLadder.LEVEL_SMALL_BUFFERS, 3));
+        assertEquals(0, QualityLadder.getDecodeAhead(QualityLadder.LEVEL_PAUSE_LOW, 0));
+        assertEquals(50, QualityLadder.getBudget(QualityLadder.LEVEL_RGB_565, 100));
+        assertFalse(QualityLadder.isRgb565Preferred(QualityLadder.LEVEL_SMALL_BUFFERS));
+        assertTrue(QualityLadder.isRgb565Preferred(QualityLadder.LEVEL_HALF_RESOLUTION));
+        assertEquals(0, QualityLadder.getResolutionShift(QualityLadder.LEVEL_RGB_565));
+        assertEquals(1, QualityLadder.getResolutionShift(QualityLadder.LEVEL_HALF_RESOLUTION));
+        assertTrue(QualityLadder.isLowPriorityPaused(QualityLadder.LEVEL_PAUSE_LOW));
+    }
+}
@@ -0,0 +1,145 @@
+package org.limlee.hiframecore;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ReorderBufferTest {
+    private final List<String> mDropped = new ArrayList<>();
+    private ReorderBuffer<String> mBuffer;
+
+    /**
+     * 用字符串模拟bitmap，长度就是占用的字节数
+     */
+    private final ReorderBuffer.Adapter<String> mAdapter = new ReorderBuffer.Adapter<String>() {
+        @Override
+        public long getByteCount(String item) {
+            return item.length();
+        }
+
+        @Override
+        public void onDropped(String item) {
+            mDropped.add(item);
+        }
+    };
+
+    @Before
+    public void setUp() {
+        mBuffer = new ReorderBuffer<>(mAdapter, 3);
+    }
+
+    @Test
+    public void outOfOrderFillPollsInOrder() {
+        final long first = mBuffer.reserve(10);
+        final long second = mBuffer.reserve(11);
+        final long third = mBuffer.reserve(12);
+        assertTrue(mBuffer.fill(third, "c"));
+        assertTrue(mBuffer.fill(second, "b"));
+        assertFalse(mBuffer.isReady(10)); //队头还没好，后面的不能先取
+        assertFalse(mBuffer.isFilled(0));
+        assertTrue(mBuffer.isFilled(1));
+
+        assertTrue(mBuffer.fill(first, "a"));
+        assertTrue(mBuffer.isReady(10));
+        assertEquals("a", mBuffer.take());
+        assertEquals(11, mBuffer.peek(0));
+        assertEquals("b", mBuffer.take());
+        assertEquals("c", mBuffer.take());
+        assertNull(mBuffer.take());
+        assertEquals(-1, mBuffer.peek(0));
+    }
+
+    @Test
+    public void reserveFailsWhenFull() {
+        final long first = mBuffer.reserve(0);
+        assertTrue(mBuffer.reserve(1) >= 0);
+        assertTrue(mBuffer.reserve(2) >= 0);
+        assertEquals(-1, mBuffer.reserve(3));
+        mBuffer.take(); //还没生产完就取走了，fill之前还占着
+        assertEquals(-1, mBuffer.reserve(3));
+        assertFalse(mBuffer.fill(first, "a"));
+        assertTrue(mBuffer.reserve(3) >= 0);
+    }
+
+    @Test
+    public void staleReservationsCountAgainstLimit() {
+        final long first = mBuffer.reserve(0);
+        final long second = mBuffer.reserve(1);
+        mBuffer.clear(); //两个都还在生产
+        assertEquals(2, mBuffer.usedCount());
+        assertTrue(mBuffer.reserve(5) >= 0);
+        assertEquals(-1, mBuffer.reserve(6)); //作废的还占着容量
+
+        assertFalse(mBuffer.fill(first, "a")); //生产完被拒绝，由生产者回收
+        assertEquals(2, mBuffer.usedCount());
+        assertTrue(mBuffer.reserve(6) >= 0);
+        assertFalse(mBuffer.fill(second, "b"));
+        assertEquals(2, mBuffer.usedCount());
+    }
+
+    @Test
+    public void lowerLimitAppliesAfterTake() {
+        mBuffer.fill(mBuffer.reserve(0), "a");
+        mBuffer.fill(mBuffer.reserve(1), "b");
+        mBuffer.setLimit(1);
+        assertEquals(-1, mBuffer.reserve(2));
+        mBuffer.take();
+        assertEquals(-1, mBuffer.reserve(2));
+        mBuffer.take();
+        assertTrue(mBuffer.reserve(2) >= 0);
+
+        mBuffer.setLimit(100); //不超过容量
+        assertTrue(mBuffer.reserve(3) >= 0);
+        assertTrue(mBuffer.reserve(4) >= 0);
+        assertEquals(-1, mBuffer.reserve(5));
+    }
+
+    @Test
+    public void seekClearsAndRestarts() {
+        mBuffer.fill(mBuffer.reserve(0), "a");
+        final long pending = mBuffer.reserve(1);
+        assertTrue(mBuffer.contains(1));
+        assertEquals(1, mBuffer.getByteCount());
+
+        mBuffer.clear(); //seek到第7帧
+        assertEquals("[a, null]", mDropped.toString());
+        assertFalse(mBuffer.contains(0));
+        assertFalse(mBuffer.contains(1));
+        assertEquals(0, mBuffer.getByteCount());
+
+        final long seeked = mBuffer.reserve(7);
+        assertFalse(mBuffer.fill(pending, "b"));
+        assertTrue(mBuffer.fill(seeked, "h"));
+        assertTrue(mBuffer.isReady(7));
+        assertEquals("h", mBuffer.take());
+    }
+
+    @Test
+    public void dropReleasesHead() {
+        mBuffer.fill(mBuffer.reserve(0), "a");
+        mBuffer.fill(mBuffer.reserve(1), "bb");
+        assertEquals(3, mBuffer.getByteCount());
+        mBuffer.drop();
+        assertEquals("[a]", mDropped.toString());
+        assertEquals(1, mBuffer.peek(0));
+        assertEquals(2, mBuffer.getByteCount());
+    }
+
+    @Test
+    public void sequenceWrapsAroundCapacity() {
+        for (int i = 0; i < 10; i++) {
+            final long seq = mBuffer.reserve(i);
+            assertTrue(mBuffer.fill(seq, String.valueOf(i)));
+            assertTrue(mBuffer.isReady(i));
+            assertEquals(String.valueOf(i), mBuffer.take());
+        }
+        assertEquals(0, mBuffer.usedCount());
+    }
+}
@@ -0,0 +1,167 @@
+package org.limlee.hiframecore;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ReusePoolTest {
+    private final List<long[]> mEvicted = new ArrayList<>();
+    private ReusePool<long[]> mPool;
+
+    /**
+     * 用long[1]模拟bitmap，内容就是占用的字节数
+     */
+    private final ReusePool.Adapter<long[]> mAdapter = new ReusePool.Adapter<long[]>() {
+        @Override
+        public long getByteCount(long[] item) {
+            return item[0];
+        }
+
+        @Override
+        public void onEvicted(long[] item) {
+            synchronized (mEvicted) {
+                mEvicted.add(item);
+            }
+        }
+    };
+
+    @Before
+    public void setUp() {
+        mPool = new ReusePool<>(mAdapter, 1000);
+    }
+
+    @Test
+    public void acquirePrefersSmallestFittingItem() {
+        final long[] small = {100};
+        final long[] medium = {200};
+        final long[] large = {400};
+        mPool.release(0, large);
+        mPool.release(0, small);
+        mPool.release(0, medium);
+        assertSame(medium, mPool.acquire(0, 150));
+        assertSame(large, mPool.acquire(0, 150));
+        assertNull(mPool.acquire(0, 150));
+        assertSame(small, mPool.acquire(0, 100));
+        assertEquals(3, mPool.getHitCount());
+        assertEquals(1, mPool.getMissCount());
+        assertEquals(0, mPool.getByteCount());
+    }
+
+    @Test
+    public void groupsAreSeparate() {
+        final long[] item = {100};
+        mPool.release(1, item);
+        assertNull(mPool.acquire(2, 100));
+        assertSame(item, mPool.acquire(1, 100));
+    }
+
+    @Test
+    public void evictsLeastRecentlyReleasedOverBudget() {
+        final long[] first = {400};
+        final long[] second = {400};
+        final long[] third = {400};
+        mPool.release(0, first);
+        mPool.release(0, second);
+        mPool.release(0, third);
+        assertEquals(1, mPool.getEvictionCount());
+        assertSame(first, mEvicted.get(0));
+        assertEquals(800, mPool.getByteCount());
+        assertEquals(2, mPool.size());
+    }
+
+    @Test
+    public void acquiredItemsAreNotEvicted() {
+        final long[] first = {600};
+        final long[] second = {600};
+        mPool.release(0, first);
+        assertSame(first, mPool.acquire(0, 600));
+        mPool.release(0, second);
+        assertEquals(0, mPool.getEvictionCount());
+        assertEquals(600, mPool.getByteCount());
+    }
+
+    @Test
+    public void releasingTwiceIsIgnored() {
+        final long[] item = {100};
+        mPool.release(0, item);
+        mPool.release(0, item);
+        assertEquals(100, mPool.getByteCount());
+        assertEquals(1, mPool.size());
+        assertSame(item, mPool.acquire(0, 100));
+        assertNull(mPool.acquire(0, 100));
+        mPool.release(0, item); //取出之后可以再放回
+        assertSame(item, mPool.acquire(0, 100));
+    }
+
+    @Test
+    public void claimedEntriesAreSkippedWhenEvicting() {
+        final long[] reused = {100};
+        for (int i = 0; i < 1000; i++) {
+            mPool.release(0, reused);
+            assertSame(reused, mPool.acquire(0, 100));
+        }
+        final long[] first = {600};
+        final long[] second = {600};
+        mPool.release(0, first);
+        mPool.release(0, second);
+        assertEquals(1, mEvicted.size());
+        assertSame(first, mEvicted.get(0));
+        assertEquals(600, mPool.getByteCount());
+        assertSame(second, mPool.acquire(0, 100));
+    }
+
+    @Test
+    public void itemLargerThanBudgetIsEvictedImmediately() {
+        final long[] huge = {2000};
+        mPool.release(0, huge);
+        assertSame(huge, mEvicted.get(0));
+        assertEquals(0, mPool.getByteCount());
+    }
+
+    @Test
+    public void shrinkingBudgetTrims() {
+        mPool.release(0, new long[]{300});
+        mPool.release(0, new long[]{300});
+        mPool.setMaxByteCount(300);
+        assertEquals(300, mPool.getByteCount());
+        mPool.clear();
+        assertEquals(0, mPool.getByteCount());
+        assertEquals(2, mEvicted.size());
+    }
+
+    @Test
+    public void concurrentAcquireRelease() throws Exception {
+        final ReusePool<long[]> pool = new ReusePool<>(mAdapter, 100 * 64);
+        final int threads = 4;
+        final AtomicInteger created = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        long[] item = pool.acquire(0, 64);
+                        if (null == item) {
+                            item = new long[]{64};
+                            created.incrementAndGet();
+                        }
+                        pool.release(0, item);
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+        assertTrue(created.get() <= threads + pool.getEvictionCount());
+        assertEquals(pool.size() * 64, pool.getByteCount());
+    }
+}
@@ -0,0 +1,100 @@
+package org.limlee.hiframecore;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SharedLruCacheTest {
+    private final List<String> mEvicted = new ArrayList<>();
+    private SharedLruCache<String, String> mCache;
+
+    @Before
+    public void setUp() {
+        mCache = new SharedLruCache<>(new SharedLruCache.Adapter<String>() {
+            @Override
+            public void onEvicted(String value) {
+                mEvicted.add(value);
+            }
+        }, 1000);
+    }
+
+    @Test
+    public void sharedValueIsDecodedOnce() {
+        assertNull(mCache.acquire("frame0"));
+        assertSame("a", mCache.put("frame0", "a", 100));
+        //另一个视图播放同样的帧，直接拿到缓存
+        assertSame("a", mCache.acquire("frame0"));
+        //两个视图同时解码了同一帧，后放进去的拿到先放进去的值
+        assertSame("a", mCache.put("frame0", "b", 100));
+        assertEquals(3, mCache.getRefCount());
+        assertEquals(100, mCache.getByteCount());
+        assertEquals(1, mCache.getHitCount());
+        assertEquals(1, mCache.getMissCount());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedUnreferencedValues() {
+        mCache.put("a", "a", 400);
+        mCache.put("b", "b", 400);
+        mCache.release("a");
+        mCache.release("b");
+        mCache.acquire("a");
+        mCache.release("a");
+        assertSame("c", mCache.put("c", "c", 400));
+        assertEquals(1, mEvicted.size());
+        assertEquals("b", mEvicted.get(0));
+        assertTrue(mCache.contains("a"));
+        assertEquals(800, mCache.getByteCount());
+    }
+
+    @Test
+    public void referencedValuesAreNotEvicted() {
+        mCache.put("a", "a", 600);
+        assertNull(mCache.put("b", "b", 600));
+        assertTrue(mEvicted.isEmpty());
+        assertFalse(mCache.contains("b"));
+        mCache.release("a");
+        assertSame("b", mCache.put("b", "b", 600));
+        assertEquals("a", mEvicted.get(0));
+    }
+
+    @Test
+    public void oversizeValueIsNotCached() {
+        mCache.put("a", "a", 100);
+        mCache.release("a");
+        assertNull(mCache.put("big", "big", 2000));
+        assertTrue(mEvicted.isEmpty());
+        assertEquals(100, mCache.getByteCount());
+    }
+
+    @Test
+    public void shrinkingEvictsOnceReleased() {
+        mCache.put("a", "a", 500);
+        mCache.put("b", "b", 500);
+        mCache.release("b");
+        mCache.setMaxByteCount(400);
+        assertEquals("b", mEvicted.get(0));
+        assertEquals(500, mCache.getByteCount());
+        mCache.release("a");
+        assertEquals(0, mCache.getByteCount());
+        assertEquals(2, mCache.getEvictionCount());
+    }
+
+    @Test
+    public void clearKeepsReferencedValues() {
+        mCache.put("a", "a", 100);
+        mCache.put("b", "b", 100);
+        mCache.release("b");
+        mCache.clear();
+        assertEquals(1, mCache.size());
+        assertTrue(mCache.contains("a"));
+    }
+}
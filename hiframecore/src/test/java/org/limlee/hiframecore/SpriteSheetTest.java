@@ -0,0 +1,169 @@
+package org.limlee.hiframecore;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SpriteSheetTest {
+
+    @Test
+    public void writeAndParse() throws Exception {
+        final SpriteSheet spriteSheet = new SpriteSheet();
+        spriteSheet.addPage("badge_0.png");
+        spriteSheet.addFrame("badge_0.png", 0, 2, 3, 10, 12, 4, 5, 32, 32, 80);
+        spriteSheet.addFrame("badge_1.png", 0, 14, 3, 0, 0, 0, 0, 32, 32, 40);
+        final StringWriter out = new StringWriter();
+        spriteSheet.writeTo(out);
+
+        final SpriteSheet parsed = SpriteSheet.parse(new StringReader(out.toString()));
+        assertEquals(1, parsed.getPageCount());
+        assertEquals("badge_0.png", parsed.getPage(0));
+        assertEquals(2, parsed.getFrameCount());
+        assertEquals(1, parsed.indexOf("badge_1.png"));
+        assertEquals(-1, parsed.indexOf("missing.png"));
+        assertEquals(2, parsed.getX(0));
+        assertEquals(3, parsed.getY(0));
+        assertEquals(10, parsed.getWidth(0));
+        assertEquals(12, parsed.getHeight(0));
+        assertEquals(4, parsed.getOffsetX(0));
+        assertEquals(5, parsed.getOffsetY(0));
+        assertEquals(32, parsed.getSourceWidth(0));
+        assertEquals(32, parsed.getSourceHeight(0));
+        assertEquals(80, parsed.getDuration(0));
+        assertEquals(40, parsed.getDuration(1));
+    }
+
+    @Test
+    public void rejectsBadLines() {
+        final String[] sheets = {
+                "page a.png\nframe a.png 0 1 2\n",
+                "frame a.png 0 0 0 1 1 0 0 1 1 100\n", //没有图集
+                "page a.png\nframe a.png 0 x 0 1 1 0 0 1 1 100\n",
+                "sprite a.png\n"
+        };
+        for (String sheet : sheets) {
+            try {
+                SpriteSheet.parse(new StringReader(sheet));
+                fail(sheet);
+            } catch (IOException e) {
+                assertTrue(e.getMessage().contains("line"));
+            }
+        }
+    }
+
+    @Test
+    public void packTrimsAndRestoresFrames() throws Exception {
+        final File dir = createTempDir();
+        final File[] frames = new File[5];
+        for (int i = 0; i < frames.length; i++) {
+            final BufferedImage image = new BufferedImage(20, 16, BufferedImage.TYPE_INT_ARGB);
+            if (i < frames.length - 1) { //最后一帧全透明
+                for (int y = 2; y < 6 + i; y++) {
+                    for (int x = 3 + i; x < 15; x++) {
+                        image.setRGB(x, y, 0xFF000000 | (i * 40 << 16) | (x << 8) | y);
+                    }
+                }
+            }
+            frames[i] = new File(dir, "frame_" + i + ".png");
+            frames[i].deleteOnExit();
+            ImageIO.write(image, "png", frames[i]);
+        }
+        //图集很小，一定会分成好几个
+        final SpriteSheet spriteSheet = SpriteSheetPacker.pack(frames, dir, "test", 60, 16);
+        assertTrue(spriteSheet.getPageCount() > 1);
+        assertEquals(0, spriteSheet.getWidth(frames.length - 1));
+        assertEquals(3, spriteSheet.getOffsetX(0));
+        assertEquals(2, spriteSheet.getOffsetY(0));
+        assertRestores(spriteSheet, dir, frames);
+
+        final SpriteSheet parsed = SpriteSheet.parse(new InputStreamReader(
+                new FileInputStream(new File(dir, "test" + SpriteSheet.FILE_EXTENSION)), "UTF-8"));
+        assertEquals(spriteSheet.getFrameCount(), parsed.getFrameCount());
+        assertEquals(60, parsed.getDuration(2));
+        deleteOnExit(dir, spriteSheet);
+    }
+
+    @Test
+    public void packDemoAssets() throws Exception {
+        final File assets = new File("../app/src/main/assets/youting");
+        if (!assets.isDirectory()) {
+            return;
+        }
+        final File[] frames = Arrays.copyOf(FramePacker.listFrames(assets), 8);
+        final File dir = createTempDir();
+        final SpriteSheet spriteSheet = SpriteSheetPacker.pack(frames, dir, "youting", 100,
+                SpriteSheetPacker.DEFAULT_MAX_PAGE_SIZE);
+        deleteOnExit(dir, spriteSheet);
+        assertEquals(frames.length, spriteSheet.getFrameCount());
+        for (int i = 0; i < spriteSheet.getPageCount(); i++) {
+            final BufferedImage page = ImageIO.read(new File(dir, spriteSheet.getPage(i)));
+            assertTrue(page.getWidth() <= SpriteSheetPacker.DEFAULT_MAX_PAGE_SIZE);
+            assertTrue(page.getHeight() <= SpriteSheetPacker.DEFAULT_MAX_PAGE_SIZE);
+        }
+        assertRestores(spriteSheet, dir, frames);
+    }
+
+    /**
+     * 把每一帧从图集中画回原图尺寸，要和原图一模一样
+     */
+    private static void assertRestores(SpriteSheet spriteSheet, File dir, File[] frames) throws IOException {
+        final BufferedImage[] pages = new BufferedImage[spriteSheet.getPageCount()];
+        for (int i = 0; i < pages.length; i++) {
+            pages[i] = ImageIO.read(new File(dir, spriteSheet.getPage(i)));
+        }
+        for (int i = 0; i < frames.length; i++) {
+            final BufferedImage original = ImageIO.read(frames[i]);
+            final int sourceWidth = spriteSheet.getSourceWidth(i);
+            final int sourceHeight = spriteSheet.getSourceHeight(i);
+            assertEquals(original.getWidth(), sourceWidth);
+            final int[] restored = new int[sourceWidth * sourceHeight];
+            final int width = spriteSheet.getWidth(i);
+            final int height = spriteSheet.getHeight(i);
+            if (width > 0) {
+                pages[spriteSheet.getPageIndex(i)].getRGB(spriteSheet.getX(i), spriteSheet.getY(i), width, height,
+                        restored, spriteSheet.getOffsetY(i) * sourceWidth + spriteSheet.getOffsetX(i), sourceWidth);
+            }
+            final int[] expected = original.getRGB(0, 0, sourceWidth, sourceHeight, null, 0, sourceWidth);
+            for (int p = 0; p < expected.length; p++) { //透明的像素颜色不重要
+                if ((expected[p] >>> 24) == 0) {
+                    expected[p] = 0;
+                }
+                if ((restored[p] >>> 24) == 0) {
+                    restored[p] = 0;
+                }
+            }
+            assertArrayEquals("frame " + i, expected, restored);
+        }
+    }
+
+    private static void deleteOnExit(File dir, SpriteSheet spriteSheet) {
+        for (int i = 0; i < spriteSheet.getPageCount(); i++) {
+            new File(dir, spriteSheet.getPage(i)).deleteOnExit();
+        }
+        new File(dir, "test" + SpriteSheet.FILE_EXTENSION).deleteOnExit();
+        new File(dir, "youting" + SpriteSheet.FILE_EXTENSION).deleteOnExit();
+    }
+
+    private static File createTempDir() throws IOException {
+        final File dir = File.createTempFile("spritesheet", "");
+        if (!dir.delete() || !dir.mkdir()) {
+            throw new IOException("can not create " + dir);
+        }
+        dir.deleteOnExit();
+        return dir;
+    }
+}
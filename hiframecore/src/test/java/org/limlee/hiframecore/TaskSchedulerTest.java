@@ -0,0 +1,215 @@
+package org.limlee.hiframecore;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TaskSchedulerTest {
+    private final List<String> mRuns = new ArrayList<>();
+    private long mNow;
+    private TaskScheduler mScheduler;
+
+    @Before
+    public void setUp() {
+        mNow = 1000;
+        mScheduler = new TaskScheduler(0, "test", new TaskScheduler.Clock() {
+            @Override
+            public long now() {
+                return mNow;
+            }
+        });
+    }
+
+    /**
+     * 执行一次就记下名字，返回的时间由nextTimes决定，用完了就不再执行
+     */
+    private TaskScheduler.Task task(final String name, final long... nextTimes) {
+        return new TaskScheduler.Task() {
+            private int mCount;
+
+            @Override
+            protected long run() {
+                mRuns.add(name);
+                return mCount < nextTimes.length ? nextTimes[mCount++] : -1;
+            }
+        };
+    }
+
+    private void runAll() {
+        while (mScheduler.runNext()) {
+        }
+    }
+
+    @Test
+    public void runsByDueTime() {
+        mScheduler.schedule(task("b"), 1020);
+        mScheduler.schedule(task("a"), 1010);
+        runAll();
+        assertTrue(mRuns.isEmpty());
+        mNow = 1015;
+        runAll();
+        assertEquals("[a]", mRuns.toString());
+        mNow = 1020;
+        runAll();
+        assertEquals("[a, b]", mRuns.toString());
+    }
+
+    @Test
+    public void higherPriorityFirstWhenBothDue() {
+        final TaskScheduler.Task low = task("low");
+        final TaskScheduler.Task high = task("high");
+        mScheduler.setPriority(low, -10);
+        mScheduler.setPriority(high, 10);
+        mScheduler.schedule(low, 990); //更早到期，但是优先级低
+        mScheduler.schedule(high, 1000);
+        runAll();
+        assertEquals("[high, low]", mRuns.toString());
+    }
+
+    @Test
+    public void priorityChangeOfReadyTaskReorders() {
+        final TaskScheduler.Task first = task("first");
+        final TaskScheduler.Task second = task("second");
+        mScheduler.schedule(first, 990);
+        mScheduler.schedule(second, 1000);
+        mScheduler.runNext(); //两个都移到到期队列，先执行first
+        mRuns.clear();
+        mScheduler.schedule(first, 1000);
+        mScheduler.setPriority(first, 5);
+        runAll();
+        assertEquals("first", mRuns.get(0));
+    }
+
+    @Test
+    public void cancelPendingTask() {
+        final TaskScheduler.Task task = task("a");
+        mScheduler.schedule(task, 1000);
+        assertTrue(mScheduler.isScheduled(task));
+        mScheduler.cancel(task);
+        assertFalse(mScheduler.isScheduled(task));
+        runAll();
+        assertTrue(mRuns.isEmpty());
+    }
+
+    @Test
+    public void rescheduleMovesDueTime() {
+        final TaskScheduler.Task task = task("a");
+        mScheduler.schedule(task, 2000);
+        mScheduler.schedule(task, 1000); //已经在队列中，改成新的时间
+        runAll();
+        assertEquals("[a]", mRuns.toString());
+        mNow = 2000;
+        runAll();
+        assertEquals("[a]", mRuns.toString()); //旧的时间不会再执行一次
+    }
+
+    @Test
+    public void returnedTimeSchedulesNextRun() {
+        mScheduler.schedule(task("a", 1016, 1032), 1000);
+        runAll();
+        mNow = 1016;
+        runAll();
+        mNow = 1032;
+        runAll();
+        mNow = 2000;
+        runAll();
+        assertEquals("[a, a, a]", mRuns.toString());
+    }
+
+    @Test
+    public void scheduleWhileRunningWinsOverReturnedTime() {
+        final TaskScheduler.Task[] self = new TaskScheduler.Task[1];
+        self[0] = new TaskScheduler.Task() {
+            @Override
+            protected long run() {
+                mRuns.add("a");
+                if (mRuns.size() == 1) {
+                    mScheduler.schedule(self[0], 1005); //比如执行中被唤醒
+                }
+                return -1;
+            }
+        };
+        mScheduler.schedule(self[0], 1000);
+        runAll();
+        mNow = 1005;
+        runAll();
+        assertEquals("[a, a]", mRuns.toString());
+    }
+
+    @Test
+    public void cancelWhileRunningDropsReturnedTime() {
+        final TaskScheduler.Task[] self = new TaskScheduler.Task[1];
+        self[0] = new TaskScheduler.Task() {
+            @Override
+            protected long run() {
+                mRuns.add("a");
+                mScheduler.cancel(self[0]);
+                return 1001;
+            }
+        };
+        mScheduler.schedule(self[0], 1000);
+        runAll();
+        mNow = 2000;
+        runAll();
+        assertEquals("[a]", mRuns.toString());
+    }
+
+    @Test
+    public void failedTaskIsNotRescheduled() {
+        mScheduler = new TaskScheduler(0, "test", new TaskScheduler.Clock() {
+            @Override
+            public long now() {
+                return mNow;
+            }
+        }) {
+            @Override
+            protected void onTaskFailed(Task task, RuntimeException e) {
+                mRuns.add("failed");
+            }
+        };
+        final TaskScheduler.Task task = new TaskScheduler.Task() {
+            @Override
+            protected long run() {
+                throw new IllegalStateException();
+            }
+        };
+        mScheduler.schedule(task, 1000);
+        runAll();
+        assertEquals("[failed]", mRuns.toString());
+        assertFalse(mScheduler.isScheduled(task));
+    }
+
+    @Test
+    public void threadCountIsBounded() {
+        assertEquals(1, TaskScheduler.getThreadCount(0));
+        assertEquals(2, TaskScheduler.getThreadCount(2));
+        assertEquals(TaskScheduler.MAX_THREADS, TaskScheduler.getThreadCount(64));
+    }
+
+    @Test
+    public void workersRunDueTasks() throws Exception {
+        final TaskScheduler scheduler = new TaskScheduler(2, "test", new TaskScheduler.Clock() {
+            @Override
+            public long now() {
+                return System.nanoTime() / 1000000;
+            }
+        });
+        final CountDownLatch done = new CountDownLatch(3);
+        scheduler.schedule(new TaskScheduler.Task() {
+            @Override
+            protected long run() {
+                done.countDown();
+                return done.getCount() > 0 ? System.nanoTime() / 1000000 + 5 : -1;
+            }
+        }, 0);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+}